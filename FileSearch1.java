@@ -5,7 +5,7 @@
   Java class name: FileSearch1
   Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL.
 
-  This is a Java 1.4 application to find files that contain (or don't contain)
+  This is a Java 9 application to find files that contain (or don't contain)
   a given string.  The string may be in plain text or it may be a Java regular
   expression.  Such a trivial search should be part of the operating system,
   and in fact, once was.  As bigger and more impressive features were added to
@@ -67,6 +67,22 @@
   line.  The graphical interface can be very slow when the output text area
   gets too big, which will happen if thousands of files are reported.
 
+  Small console searches spend most of their time starting Java.  Classes for
+  the graphical interface are not loaded by console searches.  Compiling with
+  an option to join strings without "invokedynamic" and running from a JAR
+  file with a class data sharing (CDS) archive both help.  Create the archive
+  once, after compiling, by running a typical search; then use the archive:
+
+      javac  -XDstringConcat=inline  FileSearch1.java
+      jar  cf  FileSearch1.jar  FileSearch1*.class
+      java  -XX:ArchiveClassesAtExit=FileSearch1.jsa  -cp  FileSearch1.jar
+        FileSearch1  -s  "fluffy snakes"  .
+      java  -XX:SharedArchiveFile=FileSearch1.jsa  -cp  FileSearch1.jar
+        FileSearch1  -s  "fluffy snakes"  d:\documents
+
+  The archive must be created again whenever FileSearch1 is compiled, or for a
+  different version of Java.  The -d option shows startup and search times.
+
   Restrictions and Limitations
   ----------------------------
   The speed of this program depends upon the speed of your computer's hardware
@@ -79,9 +95,11 @@
   be able to scan large files at 15 megabytes per second (MB/s) as raw data
   bytes with the "case" option enabled.  The "nulls" option (-n) to ignore
   <NUL> and <DEL> control characters is not for performance, but is useful when
-  plain text may appear as 7-bit ASCII or 16-bit Unicode.  Don't use the "(raw
-  data bytes)" encoding with 8-bit characters (or higher) unless you fully
-  understand character sets.
+  plain text may appear as 7-bit ASCII or 16-bit Unicode: plain text is then
+  found as UTF-8, UTF-16LE, or UTF-16BE in one pass over the raw bytes.  The
+  "(detect each file)" encoding guesses UTF-8 or UTF-16 from the first bytes of
+  each file.  Don't use the "(raw data bytes)" encoding with 8-bit characters
+  (or higher) unless you fully understand character sets.
 
   Suggestions for New Features
   ----------------------------
@@ -94,8 +112,16 @@
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.lang.invoke.*;        // reading bytes as long words
+import java.net.*;                // sockets for sharded search
+import java.nio.*;                // byte and character buffers for decoding
+import java.nio.charset.*;        // character set decoders
+import java.nio.file.*;           // atomic rename for checkpoints
+import java.security.*;           // message digests (hashes)
 import java.text.*;               // number formatting
 import java.util.*;               // calendars, dates, lists, maps, vectors
+import java.util.concurrent.*;    // thread pools
+import java.util.concurrent.atomic.*; // counters shared by threads
 import java.util.regex.*;         // regular expressions
 import javax.swing.*;             // newer Java GUI support
 
@@ -108,56 +134,135 @@ public class FileSearch1
   static final int BYTE_MASK = 0x000000FF; // gets low-order byte from integer
   static final String COPYRIGHT_NOTICE =
     "Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL.";
+  static final String[] COUNT_CHOICES = {"none", "files", "total", "ext"};
+                                  // names for count-only reports
+  static final String[] DEDUP_CHOICES = {"none", "inode", "hash"};
+                                  // names for duplicate detection methods
+  static final long DEFAULT_FOLLOW = 1000; // milliseconds between file polls
+  static final long DEFAULT_CHECKPOINT = 60; // seconds between checkpoints
   static final int DEFAULT_HEIGHT = -1; // default window height in pixels
   static final int DEFAULT_LEFT = 50; // default window left position ("x")
+  static final long DEFAULT_POOL_MEMORY = 32 * 1024 * 1024;
+                                  // bytes kept in pool of idle buffers
+  static final int DEFAULT_PREFETCH = 4; // number of files to read ahead
+  static final long DEFAULT_PREFETCH_MEMORY = 16 * 1024 * 1024;
+                                  // bytes allowed for read-ahead buffers
+  static final long DEFAULT_SPLIT = 64 * 1024 * 1024;
+                                  // bytes in each piece of a huge file
+  static final int DEFAULT_STREAM = 65536; // names sorted in memory at once
   static final int DEFAULT_TOP = 50; // default window top position ("y")
+  static final int DEFAULT_VIRTUAL = 256; // open files for virtual threads
   static final int DEFAULT_WIDTH = -1; // default window width in pixels
+  static final String DETECT_ENCODING = "(detect each file)";
+                                  // our special name for guessing encodings
+  static final int DETECT_SIZE = 0x1000; // bytes checked to guess encoding
   static final String EMPTY_STATUS = " "; // message when no status to display
+  static final String[] ENGINE_CHOICES = {"auto", "java", "linear"};
+                                  // names for regular expression engines
   static final String[] FONT_SIZES = {"10", "12", "14", "16", "18", "20", "24",
     "30"};                        // point sizes for text in output text area
   static final String LOCAL_ENCODING = "(default encoding)";
                                   // our special name for local character set
+  static final String[] IGNORE_FILES = {".gitignore", ".ignore",
+    ".filesearch1ignore"};        // rules for -ignore, in order of precedence
+  static final int LITERAL_SKIP = 0x100; // size of prefilter skip table
   static final int MATCH_WINDOW = 50; // display window around successful match
   static final int MIN_FRAME = 200; // minimum window height or width in pixels
   static final String PROGRAM_TITLE =
     "Search for Files that Contain a Given String - by: Keith Fenske";
+  static final String[] RATE_CHOICES = {FileSearch1Limit.NO_LIMIT,
+    "-rateadapt", "-rate=100m", "-rate=10m", "-rate=1m",
+    "-rate=1m -ratefiles=100"}; // suggested speed limits for GUI
   static final String RAW_ENCODING = "(raw data bytes)";
                                   // our special name for no data encoding
   static final String[] REPORT_CHOICES = {"found, show summary",
     "found, path only", "found, name only", "not found, summary",
     "not found, path", "not found, name", "all files, summary"};
+  static final int STREAM_BATCH = 4096; // files searched per streamed batch
   static final String SYSTEM_FONT = "Dialog"; // this font is always available
   static final int TIMER_DELAY = 700; // 0.700 seconds between status updates
 
   /* class variables */
 
+  static FileSearch1Approx approxEngine; // approximate search, or null
+  static int approxLimit;         // edits allowed by -approx, or -1 for exact
+  static Pattern batchAny;        // finds any batch query, or null if unsafe
+  static FileSearch1Regex[] batchEngines; // linear engine for each case rule
+  static Vector batchList;        // <FileSearch1Batch> queries, or null
+  static FileSearch1Pool bufferPool; // reusable buffers for reading files
   static JButton cancelButton;    // graphical button for <cancelFlag>
-  static boolean cancelFlag;      // our signal from user to stop processing
+  static volatile boolean cancelFlag; // signal from user to stop processing
   static JCheckBox caseCheckbox;  // graphical option for <caseFlag>
+  static FileSearch1Regex byteEngine; // plain text as UTF-8, UTF-16, or null
   static boolean caseFlag;        // true if uppercase/lowercase is significant
+  static FileSearch1Checkpoint checkpoint; // saved search position, or null
   static boolean consoleFlag;     // true if running as a console application
+  static int contextAfter;        // lines to show after each matching line
+  static int contextBefore;       // lines to show before each matching line
+  static TreeMap countExtensions; // long[] {files, lines, matches} by name
+  static int countIndex;          // user's selection from <COUNT_CHOICES>
+  static long countLines;         // total matching lines in all files
+  static long countMatches;       // total matches (occurrences) in all files
+  static ThreadLocal currentPiece; // <FileSearch1Piece> for this thread, or null
+  static ThreadLocal currentTask; // <FileSearch1Task> for this thread, or null
   static boolean debugFlag;       // true if we show debug information
+  static int dedupCount;          // number of duplicate files not searched
+  static Map dedupFirst;          // first path by file key or hash, in order
+  static Map dedupHashes;         // size and hash by path name, once hashed
+  static int dedupIndex;          // user's selection from <DEDUP_CHOICES>
+  static Map dedupMap;            // <FileSearch1Verdict> by file key or hash
+  static Map dedupPending;        // unhashed {File, verdict} by file size
+  static Set dedupSizes;          // sizes of files with a content hash
+  static Map dedupUnhashed;       // unhashed files by size, in report order
+  static Vector enginePool;       // copies of engines for threads
   static JComboBox encodeDialog;  // graphical option for <encodeName>
   static String encodeName;       // name of assumed character set encoding
+  static int engineIndex;         // user's selection from <ENGINE_CHOICES>
   static JButton exitButton;      // "Exit" button for ending this application
   static int failCount;           // number of files that don't match search
+  static long fileByteLimit;      // bytes to read from one file, or zero
   static JFileChooser fileChooser; // asks for input and output file names
+  static long fileTimeLimit;      // milliseconds to search one file, or zero
   static int folderCount;         // number of folders found
+  static char[] foldTable;        // folded case for each character, or null
+  static long followDelay;        // milliseconds between polls for new data
+  static boolean followFlag;      // true if we keep searching growing files
+  static Vector followList;       // <FileSearch1Follow> objects being followed
+  static Set followPaths;         // canonical path names in <followList>
   static String fontName;         // font name for text in output text area
   static JComboBox fontNameDialog; // graphical option for <fontName>
   static int fontSize;            // point size for text in output text area
   static JComboBox fontSizeDialog; // graphical option for <fontSize>
   static NumberFormat formatComma; // formats with commas (digit grouping)
   static boolean hiddenFlag;      // true if we process hidden files or folders
+  static boolean ignoreFlag;      // true if we skip files in .gitignore, etc
+  static Hashtable ignoreRules;   // <FileSearch1Ignore> by folder path
+  static char[] literalFilter;    // required literal in search, or null
+  static boolean literalFold;     // true if <literalFilter> ignores case
+  static boolean literalOnly;     // true if <literalFilter> is whole search
+  static int[] literalSkip;       // Horspool shifts for <literalFilter>
   static JFrame mainFrame;        // this application's window if GUI
   static int matchCount;          // number of files that match search string
+  static long maxSize;            // largest file size to search, or -1
+  static long minSize;            // smallest file size to search, or zero
   static boolean mswinFlag;       // true if running on Microsoft Windows
+  static long newerTime;          // search files modified since, or zero
   static JCheckBox nullCheckbox;  // graphical option for <nullFlag>
   static boolean nullFlag;        // true if we ignore <NUL> and <DEL> chars
+  static long olderTime;          // search files modified before, or zero
   static JButton openButton;      // "Open" button for files or folders
   static File[] openFileList;     // list of files selected by user
   static Thread openFilesThread;  // separate thread for doOpenButton() method
   static JTextArea outputText;    // generated report if running as GUI
+  static ExecutorService pieceExecutor; // searches pieces of huge files
+  static int prefetchDepth;       // files to read ahead, or zero for none
+  static long prefetchMemory;     // maximum bytes in read-ahead buffers
+  static FileSearch1Prefetch prefetcher; // read-ahead thread, or null
+  static FileSearch1Progress progress; // progress counters, or null
+  static int progressIndex;       // 0 none, 1 with size pre-pass, 2 without
+  static boolean queryFlag;       // true if search string is boolean query
+  static JComboBox rateDialog;    // graphical option for <rateLimit>
+  static FileSearch1Limit rateLimit; // limits bytes and files per second
   static JCheckBox recurseCheckbox; // graphical option for <recurseFlag>
   static boolean recurseFlag;     // true if we process folders and subfolders
   static JCheckBox regexCheckbox; // graphical option for <regexFlag>
@@ -166,11 +271,28 @@ public class FileSearch1
   static int reportIndex;         // user's selection from <REPORT_CHOICES>
   static JButton saveButton;      // "Save" button for writing output text
   static JTextField searchDialog; // graphical option for <searchString>
+  static volatile long searchDeadline; // system time to stop search, or zero
+  static FileSearch1Scan scanEngine; // skips lines that can't match, or null
+  static FileSearch1Regex searchEngine; // linear-time engine, or null
   static Pattern searchPattern;   // compiled regular expression for searching
+  static FileSearch1Query searchQuery; // compiled boolean query, or null
   static String searchString;     // Unicode text or expression to search for
+  static long searchTimeLimit;    // milliseconds for whole search, or zero
+  static long splitSize;          // bytes in each piece of a file, or zero
+  static long startTime;          // system time when main() started
   static JLabel statusDialog;     // status message during extended processing
   static String statusPending;    // will become <statusDialog> after delay
   static javax.swing.Timer statusTimer; // timer for updating status message
+  static int streamChunk;         // names sorted in memory when streaming
+  static int streamIndex;         // 0 list at once, 1 stream sorted, 2 unsorted
+  static ExecutorService taskExecutor; // runs tasks for parallel search
+  static Semaphore taskLimit;     // limits open files for virtual threads
+  static int threadCount;         // number of threads for searching files
+  static int timeoutCount;        // files stopped by time limits
+  static volatile boolean timeoutFlag; // true if search time limit expired
+  static boolean totalsFlag;      // true if summary is numbers only
+  static int virtualLimit;        // open files for virtual threads, or zero
+  static String workerList;       // local worker count or host:port list
 
 /*
   main() method
@@ -180,7 +302,6 @@ public class FileSearch1
 */
   public static void main(String[] args)
   {
-    ActionListener action;        // our shared action listener
     Font buttonFont;              // font for buttons, labels, status, etc
     int i;                        // index variable
     boolean maximizeFlag;         // true if we maximize our main window
@@ -190,29 +311,91 @@ public class FileSearch1
 
     /* Initialize variables used by both console and GUI applications. */
 
+    batchAny = null;              // no batch queries compiled yet
+    batchEngines = null;
+    batchList = null;             // by default, one search string
+    bufferPool = new FileSearch1Pool(DEFAULT_POOL_MEMORY); // no buffers yet
+    approxEngine = null;          // by default, no approximate search
+    approxLimit = -1;             // by default, search for exact text
     buttonFont = null;            // by default, don't use customized font
+    byteEngine = null;            // by default, there is no byte search
     cancelFlag = false;           // don't cancel unless user complains
     caseFlag = false;             // by default, uppercase lowercase are equal
+    checkpoint = null;            // by default, don't save search position
     consoleFlag = false;          // assume no files or folders on command line
+    contextAfter = contextBefore = 0; // by default, first match only
+    countExtensions = new TreeMap(); // no file name extensions counted yet
+    countIndex = 0;               // by default, report files, not counts
+    countLines = countMatches = 0; // no matching lines counted yet
+    currentPiece = new ThreadLocal(); // no pieces of huge files yet
+    currentTask = new ThreadLocal(); // no parallel tasks yet
     debugFlag = false;            // by default, don't show debug information
+    dedupCount = 0;               // no duplicate files found yet
+    dedupFirst = new HashMap();   // only used by thread that reports
+    dedupHashes = Collections.synchronizedMap(new HashMap());
+    dedupIndex = 0;               // by default, search every file
+    dedupMap = Collections.synchronizedMap(new HashMap()); // none searched
+    dedupPending = new HashMap(); // only used while synchronized
+    dedupSizes = Collections.synchronizedSet(new HashSet());
+    dedupUnhashed = new HashMap(); // only used by thread that reports
     encodeName = LOCAL_ENCODING;  // default name for character set encoding
+    engineIndex = 0;              // by default, choose engine automatically
     failCount = folderCount = matchCount = 0; // no files or folders found yet
+    fileByteLimit = 0;            // by default, no size limit for each file
+    fileTimeLimit = 0;            // by default, no time limit for each file
+    followDelay = DEFAULT_FOLLOW; // default delay between polls for new data
+    followFlag = false;           // by default, read each file only once
+    followList = new Vector();    // no files are being followed yet
+    followPaths = Collections.synchronizedSet(new HashSet());
     fontName = "Verdana";         // preferred font name for output text area
     fontSize = 16;                // default point size for output text area
     hiddenFlag = true;            // by default, process hidden files, folders
+    ignoreFlag = false;           // by default, don't read .gitignore files
+    ignoreRules = new Hashtable(); // no ignore files read yet
+    foldTable = null;             // case-folding table is created when needed
+    literalFilter = null;         // by default, there is no literal prefilter
+    literalOnly = false;
     maximizeFlag = false;         // by default, don't maximize our main window
+    maxSize = -1;                 // by default, no limits on file size
+    minSize = 0;
     mswinFlag = System.getProperty("os.name").startsWith("Windows");
+    newerTime = olderTime = 0;    // by default, no limits on file dates
     nullFlag = false;             // by default, keep <NUL> and <DEL> chars
+    pieceExecutor = null;         // thread pool is created when needed
+    prefetchDepth = 0;            // by default, don't read ahead
+    prefetchMemory = DEFAULT_PREFETCH_MEMORY;
+    prefetcher = null;            // read-ahead thread is created when needed
+    progress = null;              // progress counters are created when needed
+    progressIndex = 0;            // by default, don't report progress
+    queryFlag = false;            // by default, search string is one pattern
+    rateLimit = new FileSearch1Limit(); // by default, read at full speed
     recurseFlag = false;          // by default, don't process subfolders
     regexFlag = false;            // by default, search is plain Unicode text
     reportIndex = 0;              // by default, report only successful matches
+    scanEngine = null;            // by default, don't skip any lines
+    searchDeadline = 0;           // no search has started yet
+    searchEngine = null;          // by default, there is no linear engine
     searchPattern = null;         // by default, there is no compiled search
+    searchQuery = null;           // by default, there is no boolean query
     searchString = "";            // by default, we don't have a search string
+    searchTimeLimit = 0;          // by default, no time limit for all files
+    splitSize = 0;                // by default, search each file in one piece
+    startTime = System.currentTimeMillis(); // for debug timing of startup
     statusPending = EMPTY_STATUS; // begin with no text for <statusDialog>
+    streamChunk = DEFAULT_STREAM; // names sorted in memory when streaming
+    streamIndex = 0;              // by default, list each folder all at once
+    taskExecutor = null;          // thread pool is created when needed
+    taskLimit = null;
+    threadCount = 1;              // by default, search files one at a time
+    timeoutCount = 0;             // no files stopped by limits yet
+    timeoutFlag = false;          // search time limit hasn't expired
+    totalsFlag = false;           // by default, summary is in words
+    virtualLimit = 0;             // by default, don't use virtual threads
     windowHeight = DEFAULT_HEIGHT; // default window position and size
     windowLeft = DEFAULT_LEFT;
     windowTop = DEFAULT_TOP;
     windowWidth = DEFAULT_WIDTH;
+    workerList = null;            // by default, search in this process only
 
     /* Initialize number formatting styles. */
 
@@ -239,6 +422,110 @@ public class FileSearch1
         System.exit(0);           // exit application after printing help
       }
 
+      else if (word.startsWith("-approx=")
+        || (mswinFlag && word.startsWith("/approx=")))
+      {
+        int edits = -1;           // default value for number of edits
+        try                       // try to parse remainder as unsigned integer
+        {
+          edits = Integer.parseInt(word.substring(8));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          edits = -1;             // set result to an illegal value
+        }
+        if ((edits < 0) || (edits > FileSearch1Approx.MAX_LENGTH))
+        {
+          System.err.println("Approximate edits must be from 0 to "
+            + FileSearch1Approx.MAX_LENGTH + ": " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        approxLimit = edits;      // insertions, deletions, substitutions
+      }
+
+      else if (word.startsWith("-after=") || word.startsWith("-before=")
+        || word.startsWith("-context=") || (mswinFlag
+        && (word.startsWith("/after=") || word.startsWith("/before=")
+        || word.startsWith("/context="))))
+      {
+        /* Lines of context after, before, or around each matching line.  The
+        number follows the equal sign. */
+
+        int lines = -1;           // default value for number of lines
+        try                       // try to parse remainder as unsigned integer
+        {
+          lines = Integer.parseInt(word.substring(word.indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          lines = -1;             // set result to an illegal value
+        }
+        if ((lines < 0) || (lines > 1000))
+        {
+          System.err.println("Lines of context must be from 0 to 1000: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        if (word.startsWith("after=", 1) == false) // before or context?
+          contextBefore = lines;
+        if (word.startsWith("before=", 1) == false) // after or context?
+          contextAfter = lines;
+      }
+
+      else if (word.startsWith("-batch=")
+        || (mswinFlag && word.startsWith("/batch=")))
+      {
+        /* This option is followed by the name of a text file with one search
+        string per line, or "-" for standard input.  All of these searches are
+        done with one pass through the files, and each has its own report.  A
+        line may start with -c, -r, or -m# options for that search only. */
+
+        batchList = new Vector(); // queries from batch file
+        try                       // read all queries before searching
+        {
+          String name = args[i].substring(7); // keep uppercase, lowercase
+          BufferedReader reader = new BufferedReader(name.equals("-")
+            ? new InputStreamReader(System.in) : new FileReader(name));
+          String line;            // one query with its options
+          while ((line = reader.readLine()) != null)
+          {
+            if ((line.trim().length() > 0) && (line.startsWith("#") == false))
+              batchList.add(new FileSearch1Batch(line, (batchList.size() + 1)));
+          }
+          reader.close();
+        }
+        catch (IOException ioe)   // file not found, or can't read
+        {
+          System.err.println("Can't read batch file " + args[i] + ": "
+            + ioe.getMessage());
+          System.exit(-1);        // exit application without help
+        }
+        if (batchList.size() == 0) // nothing to search for?
+        {
+          System.err.println("No search strings in batch file: " + args[i]);
+          System.exit(-1);        // exit application without help
+        }
+      }
+
+      else if (word.equals("-count") || (mswinFlag && word.equals("/count")))
+      {
+        countIndex = 1;           // count matches in files, folders, total
+      }
+      else if (word.startsWith("-count=")
+        || (mswinFlag && word.startsWith("/count=")))
+      {
+        countIndex = Arrays.asList(COUNT_CHOICES).indexOf(word.substring(7));
+        if (countIndex < 0)       // not one of our names
+        {
+          System.err.println("Count option must be -count=none, -count=files,"
+            + " -count=total, or -count=ext, not: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
       else if (word.equals("-c") || (mswinFlag && word.equals("/c"))
         || word.equals("-c1") || (mswinFlag && word.equals("/c1")))
       {
@@ -247,6 +534,37 @@ public class FileSearch1
       else if (word.equals("-c0") || (mswinFlag && word.equals("/c0")))
         caseFlag = false;         // uppercase and lowercase are equal
 
+      else if (word.startsWith("-checkpoint=")
+        || (mswinFlag && word.startsWith("/checkpoint=")))
+      {
+        if (checkpoint == null)   // keep time if given before name
+          checkpoint = new FileSearch1Checkpoint(args);
+        checkpoint.file = new File(args[i].substring(12)); // keep case
+      }
+      else if (word.startsWith("-checkpointtime=")
+        || (mswinFlag && word.startsWith("/checkpointtime=")))
+      {
+        int seconds = -1;         // default value for seconds
+        try                       // try to parse remainder as unsigned integer
+        {
+          seconds = Integer.parseInt(word.substring(16));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          seconds = -1;           // set result to an illegal value
+        }
+        if ((seconds < 1) || (seconds > 86400))
+        {
+          System.err.println("Checkpoint time must be from 1 to 86400 seconds: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        if (checkpoint == null)   // name must come later
+          checkpoint = new FileSearch1Checkpoint(args);
+        checkpoint.delay = seconds * 1000L; // convert seconds to milliseconds
+      }
+
       else if (word.equals("-d") || (mswinFlag && word.equals("/d")))
       {
         debugFlag = true;         // show debug information
@@ -255,11 +573,175 @@ public class FileSearch1
           System.err.println("main args[" + k + "] = <" + args[k] + ">");
       }
 
+      else if (word.equals("-dedup") || (mswinFlag && word.equals("/dedup")))
+      {
+        dedupIndex = 1;           // skip hard links and other duplicate paths
+      }
+      else if (word.startsWith("-dedup=")
+        || (mswinFlag && word.startsWith("/dedup=")))
+      {
+        dedupIndex = Arrays.asList(DEDUP_CHOICES).indexOf(word.substring(7));
+        if (dedupIndex < 0)       // not one of our names
+        {
+          System.err.println("Dedup option must be -dedup=none, -dedup=inode,"
+            + " or -dedup=hash, not: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-engine=")
+        || (mswinFlag && word.startsWith("/engine=")))
+      {
+        /* This option is followed by the name of an engine for regular
+        expressions, from <ENGINE_CHOICES>. */
+
+        engineIndex = Arrays.asList(ENGINE_CHOICES).indexOf(word.substring(8));
+        if (engineIndex < 0)      // not one of our names
+        {
+          System.err.println("Engine option must be -engine=auto, -engine=java,"
+            + " or -engine=linear, not: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
       else if (word.startsWith("-e") || (mswinFlag && word.startsWith("/e")))
       {
         encodeName = args[i].substring(2); // accept any string from user
       }
 
+      else if (word.startsWith("-filebytes=")
+        || (mswinFlag && word.startsWith("/filebytes=")))
+      {
+        /* This option is followed by the maximum number of bytes that we read
+        from one file, with an optional K, M, or G.  Zero means no limit. */
+
+        fileByteLimit = parseSizeOption(word.substring(11));
+        if (fileByteLimit < 0)    // bad syntax or number too big
+        {
+          System.err.println("File size limit must be a number of bytes,"
+            + " with optional K, M, or G: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-filelist=")
+        || (mswinFlag && word.startsWith("/filelist=")))
+      {
+        /* This option is followed by the name of a text file with one file or
+        folder name per line, or "-" for standard input.  These names are
+        searched as if they were given on the command line, which avoids limits
+        on the length of the command line. */
+
+        Vector names = new Vector(); // file and folder names from list
+        if ((searchString.length() == 0) && (batchList == null))
+        {                         // search string must come first
+          System.err.println("Search string must be given before: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        try                       // read all names before searching
+        {
+          String name = args[i].substring(10); // keep uppercase, lowercase
+          BufferedReader reader = new BufferedReader(name.equals("-")
+            ? new InputStreamReader(System.in) : new FileReader(name));
+          String line;            // one file or folder name
+          while ((line = reader.readLine()) != null)
+            if (line.length() > 0) names.add(new File(line));
+          reader.close();
+        }
+        catch (IOException ioe)   // file not found, or can't read
+        {
+          System.err.println("Can't read file list " + args[i] + ": "
+            + ioe.getMessage());
+          System.exit(-1);        // exit application without help
+        }
+        consoleFlag = true;       // don't allow GUI methods to be called
+        if (workerList != null)   // split files among worker processes?
+        {
+          processShards(args, i, names);
+          break;                  // workers got all names, ignore the rest
+        }
+        if ((progressIndex > 0) && (progress == null)
+          && (followFlag == false)) // show progress for listed files?
+        {
+          progress = new FileSearch1Progress();
+          for (int k = 0; k < names.size(); k ++)
+            progress.addRoot((File) names.get(k));
+          progress.start(progressIndex == 1); // measure total size first?
+        }
+        for (int k = 0; k < names.size(); k ++)
+        {
+          if ((checkpoint == null) || checkpoint.startRoot((File)
+            names.get(k)))        // not finished before last checkpoint?
+          {
+            processFileOrFolder((File) names.get(k));
+          }
+          if (cancelFlag && (timeoutFlag == false)) // if fatal error reported
+          {
+            showHelp();           // show help summary
+            System.exit(-1);      // exit application after printing help
+          }
+        }
+      }
+
+      else if (word.startsWith("-filetime=")
+        || (mswinFlag && word.startsWith("/filetime=")))
+      {
+        /* This option is followed by the maximum number of seconds that we
+        spend reading and searching one file. */
+
+        int seconds = -1;         // default value for limit in seconds
+        try                       // try to parse remainder as unsigned integer
+        {
+          seconds = Integer.parseInt(word.substring(10));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          seconds = -1;           // set result to an illegal value
+        }
+        if (seconds < 0)
+        {
+          System.err.println("File time limit must be zero or more seconds: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        fileTimeLimit = seconds * 1000L; // convert seconds to milliseconds
+      }
+
+      else if (word.equals("-follow") || (mswinFlag && word.equals("/follow")))
+      {
+        followFlag = true;        // keep searching files as they grow
+      }
+      else if (word.startsWith("-follow=")
+        || (mswinFlag && word.startsWith("/follow=")))
+      {
+        /* This option is followed by the number of seconds between checks for
+        new data appended to the files that we are following. */
+
+        int seconds = -1;         // default value for delay in seconds
+        try                       // try to parse remainder as unsigned integer
+        {
+          seconds = Integer.parseInt(word.substring(8));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          seconds = -1;           // set result to an illegal value
+        }
+        if ((seconds < 1) || (seconds > 3600))
+        {
+          System.err.println("Follow delay must be from 1 to 3600 seconds: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        followDelay = seconds * 1000L; // convert seconds to milliseconds
+        followFlag = true;        // keep searching files as they grow
+      }
+
       else if (word.startsWith("-f") || (mswinFlag && word.startsWith("/f")))
       {
         searchString = args[i].substring(2); // accept any string from user
@@ -273,6 +755,34 @@ public class FileSearch1
       else if (word.equals("-h0") || (mswinFlag && word.equals("/h0")))
         hiddenFlag = false;       // ignore hidden files or subfolders
 
+      else if (word.equals("-ignore") || (mswinFlag && word.equals("/ignore")))
+        ignoreFlag = true;        // skip files excluded by .gitignore, etc
+
+      else if (word.startsWith("-maxsize=")
+        || (mswinFlag && word.startsWith("/maxsize=")))
+      {
+        maxSize = parseSizeOption(word.substring(9));
+        if (maxSize < 0)          // bad syntax or number too big
+        {
+          System.err.println("Maximum file size must be a number of bytes,"
+            + " with optional K, M, or G: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+      else if (word.startsWith("-minsize=")
+        || (mswinFlag && word.startsWith("/minsize=")))
+      {
+        minSize = parseSizeOption(word.substring(9));
+        if (minSize < 0)          // bad syntax or number too big
+        {
+          System.err.println("Minimum file size must be a number of bytes,"
+            + " with optional K, M, or G: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
       else if (word.startsWith("-m") || (mswinFlag && word.startsWith("/m")))
       {
         /* This option is followed by an index into <REPORT_CHOICES> for the
@@ -303,1299 +813,10417 @@ public class FileSearch1
       else if (word.equals("-n0") || (mswinFlag && word.equals("/n0")))
         nullFlag = false;         // keep <NUL> and <DEL> chars as file text
 
-      else if (word.equals("-r") || (mswinFlag && word.equals("/r"))
-        || word.equals("-r1") || (mswinFlag && word.equals("/r1")))
+      else if (word.startsWith("-newer=")
+        || (mswinFlag && word.startsWith("/newer=")))
       {
-        regexFlag = true;         // search string is a Java regular expression
+        newerTime = parseTimeOption(args[i].substring(7));
+        if (newerTime <= 0)       // bad syntax for age or date
+        {
+          System.err.println("Newer option must be an age like 12h or 7d, or"
+            + " a date like 2007-12-31: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
       }
-      else if (word.equals("-r0") || (mswinFlag && word.equals("/r0")))
-        regexFlag = false;        // search string is plain Unicode text
 
-      else if (word.equals("-s") || (mswinFlag && word.equals("/s"))
-        || word.equals("-s1") || (mswinFlag && word.equals("/s1")))
+      else if (word.startsWith("-older=")
+        || (mswinFlag && word.startsWith("/older=")))
       {
-        recurseFlag = true;       // start doing subfolders
+        olderTime = parseTimeOption(args[i].substring(7));
+        if (olderTime <= 0)       // bad syntax for age or date
+        {
+          System.err.println("Older option must be an age like 12h or 7d, or"
+            + " a date like 2007-12-31: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
       }
-      else if (word.equals("-s0") || (mswinFlag && word.equals("/s0")))
-        recurseFlag = false;      // stop doing subfolders
 
-      else if (word.startsWith("-u") || (mswinFlag && word.startsWith("/u")))
+      else if (word.startsWith("-poolmem=")
+        || (mswinFlag && word.startsWith("/poolmem=")))
       {
-        /* This option is followed by a font point size that will be used for
-        buttons, dialogs, labels, etc. */
-
-        int size = -1;            // default value for font point size
+        int size = -1;            // default value for megabytes
         try                       // try to parse remainder as unsigned integer
         {
-          size = Integer.parseInt(word.substring(2));
+          size = Integer.parseInt(word.substring(9));
         }
         catch (NumberFormatException nfe) // if not a number or bad syntax
         {
           size = -1;              // set result to an illegal value
         }
-        if ((size < 10) || (size > 99))
+        if ((size < 0) || (size > 4096))
         {
-          System.err.println("Dialog font size must be from 10 to 99: "
+          System.err.println("Buffer pool memory must be from 0 to 4096 MB: "
             + args[i]);           // notify user of our arbitrary limits
           showHelp();             // show help summary
           System.exit(-1);        // exit application after printing help
         }
-        buttonFont = new Font(SYSTEM_FONT, Font.PLAIN, size); // for big sizes
-//      buttonFont = new Font(SYSTEM_FONT, Font.BOLD, size); // for small sizes
-        fontSize = size;          // use same point size for output text font
+        bufferPool.budget = size * 1024L * 1024L; // convert megabytes to bytes
       }
 
-      else if (word.startsWith("-w") || (mswinFlag && word.startsWith("/w")))
+      else if (word.equals("-prefetch") || (mswinFlag
+        && word.equals("/prefetch")))
       {
-        /* This option is followed by a list of four numbers for the initial
-        window position and size.  All values are accepted, but small heights
-        or widths will later force the minimum packed size for the layout. */
-
-        Pattern pattern = Pattern.compile(
-          "\\s*\\(\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*\\)\\s*");
-        Matcher matcher = pattern.matcher(word.substring(2)); // parse option
-        if (matcher.matches())    // if option has proper syntax
+        prefetchDepth = DEFAULT_PREFETCH; // read ahead while searching
+      }
+      else if (word.startsWith("-prefetch=")
+        || (mswinFlag && word.startsWith("/prefetch=")))
+      {
+        int depth = -1;           // default value for number of files
+        try                       // try to parse remainder as unsigned integer
         {
-          windowLeft = Integer.parseInt(matcher.group(1));
-          windowTop = Integer.parseInt(matcher.group(2));
-          windowWidth = Integer.parseInt(matcher.group(3));
-          windowHeight = Integer.parseInt(matcher.group(4));
+          depth = Integer.parseInt(word.substring(10));
         }
-        else                      // bad syntax or too many digits
+        catch (NumberFormatException nfe) // if not a number or bad syntax
         {
-          System.err.println("Invalid window position or size: " + args[i]);
+          depth = -1;             // set result to an illegal value
+        }
+        if ((depth < 0) || (depth > 1000))
+        {
+          System.err.println("Prefetch depth must be from 0 to 1000 files: "
+            + args[i]);           // notify user of our arbitrary limits
           showHelp();             // show help summary
           System.exit(-1);        // exit application after printing help
         }
+        prefetchDepth = depth;    // zero means don't read ahead
       }
-
-      else if (word.equals("-x") || (mswinFlag && word.equals("/x")))
-        maximizeFlag = true;      // true if we maximize our main window
-
-      else if (word.startsWith("-") || (mswinFlag && word.startsWith("/")))
-      {
-        System.err.println("Option not recognized: " + args[i]);
-        showHelp();               // show help summary
-        System.exit(-1);          // exit application after printing help
-      }
-
-      else
+      else if (word.startsWith("-prefetchmem=")
+        || (mswinFlag && word.startsWith("/prefetchmem=")))
       {
-        /* Parameter does not look like an option.  The first non-option is a
-        search string.  Second and later non-options are file or folder names.
-        Even through there is no graphical interface, the <cancelFlag> can
-        still be set if the search string is an invalid regular expression. */
-
-        if (searchString.length() == 0)
+        int size = -1;            // default value for megabytes
+        try                       // try to parse remainder as unsigned integer
         {
-          searchString = args[i]; // accept anything for a search string
+          size = Integer.parseInt(word.substring(13));
         }
-        else
+        catch (NumberFormatException nfe) // if not a number or bad syntax
         {
-          consoleFlag = true;     // don't allow GUI methods to be called
-          processFileOrFolder(new File(args[i]));
-          if (cancelFlag)         // if some fatal error was reported
-          {
-            showHelp();           // show help summary
-            System.exit(-1);      // exit application after printing help
-          }
+          size = -1;              // set result to an illegal value
         }
+        if ((size < 1) || (size > 4096))
+        {
+          System.err.println("Prefetch memory must be from 1 to 4096 MB: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        prefetchMemory = size * 1024L * 1024L; // convert megabytes to bytes
+        if (prefetchDepth == 0)   // does this imply reading ahead?
+          prefetchDepth = DEFAULT_PREFETCH;
       }
-    }
 
-    /* If running as a console application, print a summary of what we found.
-    Exit to the system with an integer status that has the number of files
-    successfully matched or not matched. */
+      else if (word.equals("-progress") || (mswinFlag
+        && word.equals("/progress")))
+      {
+        progressIndex = 1;        // measure total size, then show progress
+      }
+      else if (word.equals("-progress=noscan") || (mswinFlag
+        && word.equals("/progress=noscan")))
+      {
+        progressIndex = 2;        // show progress without total size
+      }
 
-    if (consoleFlag)              // was at least one file/folder given?
-    {
-      putError("Matched " + prettyPlural(matchCount, "file")
-        + " and didn't match " + prettyPlural(failCount, "file") + " in "
-        + prettyPlural(folderCount, "folder") + ".");
-      System.exit(((reportIndex >= 3) && (reportIndex <= 5)) ? failCount
+      else if (word.equals("-query") || (mswinFlag && word.equals("/query")))
+        queryFlag = true;         // search string has AND, OR, NOT, etc
+
+      else if (word.startsWith("-rate=") || (mswinFlag
+        && word.startsWith("/rate=")))
+      {
+        long size = parseSizeOption(word.substring(6));
+        if (size < 0)
+        {
+          System.err.println("Read rate must be bytes per second (or #K, #M, #G): "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        rateLimit.byteRate = size; // zero means no limit
+      }
+      else if (word.equals("-rateadapt") || (mswinFlag
+        && word.equals("/rateadapt")))
+      {
+        rateLimit.adaptive = true; // slow down when reads get slower
+      }
+      else if (word.startsWith("-ratecontrol=") || (mswinFlag
+        && word.startsWith("/ratecontrol=")))
+      {
+        rateLimit.control = new File(args[i].substring(13)); // keep case
+      }
+      else if (word.startsWith("-ratefiles=") || (mswinFlag
+        && word.startsWith("/ratefiles=")))
+      {
+        int count = -1;           // default value for files per second
+        try                       // try to parse remainder as unsigned integer
+        {
+          count = Integer.parseInt(word.substring(11));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          count = -1;             // set result to an illegal value
+        }
+        if ((count < 0) || (count > 1000000))
+        {
+          System.err.println("File rate must be from 0 to 1000000 per second: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        rateLimit.fileRate = count; // zero means no limit
+      }
+
+      else if (word.equals("-r") || (mswinFlag && word.equals("/r"))
+        || word.equals("-r1") || (mswinFlag && word.equals("/r1")))
+      {
+        regexFlag = true;         // search string is a Java regular expression
+      }
+      else if (word.equals("-r0") || (mswinFlag && word.equals("/r0")))
+        regexFlag = false;        // search string is plain Unicode text
+
+      else if (word.equals("-resume") || (mswinFlag && word.equals("/resume")))
+      {
+        if ((checkpoint == null) || (checkpoint.file == null))
+        {
+          System.err.println("The -resume option must follow -checkpoint=name");
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        checkpoint.resume = true; // continue after last saved position
+      }
+
+      else if (word.equals("-s") || (mswinFlag && word.equals("/s"))
+        || word.equals("-s1") || (mswinFlag && word.equals("/s1")))
+      {
+        recurseFlag = true;       // start doing subfolders
+      }
+      else if (word.equals("-s0") || (mswinFlag && word.equals("/s0")))
+        recurseFlag = false;      // stop doing subfolders
+
+      else if (word.equals("-split") || (mswinFlag && word.equals("/split")))
+        splitSize = DEFAULT_SPLIT; // search huge files in pieces
+      else if (word.startsWith("-split=")
+        || (mswinFlag && word.startsWith("/split=")))
+      {
+        splitSize = parseSizeOption(word.substring(7));
+        if (splitSize < 0x100000) // bad syntax, too big, or too small
+        {
+          System.err.println("Piece size must be at least 1M bytes, with"
+            + " optional K, M, or G: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.equals("-stream") || (mswinFlag && word.equals("/stream")))
+        streamIndex = 1;          // list folders in batches, still sorted
+      else if (word.equals("-stream=unsorted") || (mswinFlag
+        && word.equals("/stream=unsorted")))
+      {
+        streamIndex = 2;          // search in the order the system lists
+      }
+      else if (word.startsWith("-stream=")
+        || (mswinFlag && word.startsWith("/stream=")))
+      {
+        int count = -1;           // default value for number of names
+        try                       // try to parse remainder as unsigned integer
+        {
+          count = Integer.parseInt(word.substring(8));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          count = -1;             // set result to an illegal value
+        }
+        if ((count < 1000) || (count > 10000000))
+        {
+          System.err.println("Stream sort size must be from 1000 to 10000000 names: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        streamChunk = count;      // sort this many names in memory
+        streamIndex = 1;          // and stream sorted folders
+      }
+
+      else if (word.startsWith("-threads=")
+        || (mswinFlag && word.startsWith("/threads=")))
+      {
+        int count = -1;           // default value for number of threads
+        try                       // try to parse remainder as unsigned integer
+        {
+          count = Integer.parseInt(word.substring(9));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          count = -1;             // set result to an illegal value
+        }
+        if ((count < 1) || (count > 256))
+        {
+          System.err.println("Number of threads must be from 1 to 256: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        threadCount = count;      // one means search files in order
+      }
+
+      else if (word.startsWith("-timelimit=")
+        || (mswinFlag && word.startsWith("/timelimit=")))
+      {
+        /* This option is followed by the maximum number of seconds for the
+        whole search.  Console searches start now.  GUI searches start their
+        own time limit when the user opens files or folders. */
+
+        int seconds = -1;         // default value for limit in seconds
+        try                       // try to parse remainder as unsigned integer
+        {
+          seconds = Integer.parseInt(word.substring(11));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          seconds = -1;           // set result to an illegal value
+        }
+        if (seconds < 0)
+        {
+          System.err.println("Search time limit must be zero or more seconds: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        searchTimeLimit = seconds * 1000L; // convert seconds to milliseconds
+        startTimeLimit();         // zero cancels any earlier limit
+      }
+
+      else if (word.equals("-totals") || (mswinFlag && word.equals("/totals")))
+        totalsFlag = true;        // summary is numbers for other programs
+
+      else if (word.startsWith("-u") || (mswinFlag && word.startsWith("/u")))
+      {
+        /* This option is followed by a font point size that will be used for
+        buttons, dialogs, labels, etc. */
+
+        int size = -1;            // default value for font point size
+        try                       // try to parse remainder as unsigned integer
+        {
+          size = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          size = -1;              // set result to an illegal value
+        }
+        if ((size < 10) || (size > 99))
+        {
+          System.err.println("Dialog font size must be from 10 to 99: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        buttonFont = new Font(SYSTEM_FONT, Font.PLAIN, size); // for big sizes
+//      buttonFont = new Font(SYSTEM_FONT, Font.BOLD, size); // for small sizes
+        fontSize = size;          // use same point size for output text font
+      }
+
+      else if (word.equals("-virtual") || (mswinFlag
+        && word.equals("/virtual")))
+      {
+        virtualLimit = DEFAULT_VIRTUAL; // one virtual thread per file, folder
+      }
+      else if (word.startsWith("-virtual=")
+        || (mswinFlag && word.startsWith("/virtual=")))
+      {
+        int limit = -1;           // default value for number of open files
+        try                       // try to parse remainder as unsigned integer
+        {
+          limit = Integer.parseInt(word.substring(9));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          limit = -1;             // set result to an illegal value
+        }
+        if ((limit < 0) || (limit > 100000))
+        {
+          System.err.println("Virtual thread limit must be from 0 to 100000"
+            + " open files: " + args[i]); // notify user of our limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        virtualLimit = limit;     // zero means don't use virtual threads
+      }
+
+      else if (word.startsWith("-worker=")
+        || (mswinFlag && word.startsWith("/worker=")))
+      {
+        /* This option is followed by a port number, or a host address and a
+        port number, where we listen for searches from a coordinator.  We never
+        return from runWorker(). */
+
+        if (word.matches(".worker=(.+:)?\\d{1,5}") == false)
+        {
+          System.err.println("Worker option must be a port number, or a host"
+            + " address and port number: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+        runWorker(args[i].substring(8));
+      }
+
+      else if (word.startsWith("-workers=")
+        || (mswinFlag && word.startsWith("/workers=")))
+      {
+        /* This option is followed by the number of local worker processes to
+        start, or a list of host names and port numbers for workers that are
+        already listening. */
+
+        workerList = args[i].substring(9); // keep uppercase, lowercase
+        if ((workerList.matches("[^,]+:\\d{1,5}(,[^,]+:\\d{1,5})*") == false)
+          && ((workerList.matches("\\d{1,3}") == false)
+          || (Integer.parseInt(workerList) < 1)
+          || (Integer.parseInt(workerList) > 256)))
+        {
+          System.err.println("Workers option must be from 1 to 256 local"
+            + " processes, or a list of host:port names: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-w") || (mswinFlag && word.startsWith("/w")))
+      {
+        /* This option is followed by a list of four numbers for the initial
+        window position and size.  All values are accepted, but small heights
+        or widths will later force the minimum packed size for the layout. */
+
+        Pattern pattern = Pattern.compile(
+          "\\s*\\(\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*,\\s*(\\d{1,5})\\s*\\)\\s*");
+        Matcher matcher = pattern.matcher(word.substring(2)); // parse option
+        if (matcher.matches())    // if option has proper syntax
+        {
+          windowLeft = Integer.parseInt(matcher.group(1));
+          windowTop = Integer.parseInt(matcher.group(2));
+          windowWidth = Integer.parseInt(matcher.group(3));
+          windowHeight = Integer.parseInt(matcher.group(4));
+        }
+        else                      // bad syntax or too many digits
+        {
+          System.err.println("Invalid window position or size: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.equals("-x") || (mswinFlag && word.equals("/x")))
+        maximizeFlag = true;      // true if we maximize our main window
+
+      else if (word.startsWith("-") || (mswinFlag && word.startsWith("/")))
+      {
+        System.err.println("Option not recognized: " + args[i]);
+        showHelp();               // show help summary
+        System.exit(-1);          // exit application after printing help
+      }
+
+      else
+      {
+        /* Parameter does not look like an option.  The first non-option is a
+        search string.  Second and later non-options are file or folder names.
+        Even through there is no graphical interface, the <cancelFlag> can
+        still be set if the search string is an invalid regular expression. */
+
+        if ((searchString.length() == 0) && (batchList == null))
+        {
+          searchString = args[i]; // accept anything for a search string
+        }
+        else if (workerList != null) // split files among worker processes?
+        {
+          consoleFlag = true;     // don't allow GUI methods to be called
+          if (batchList != null)  // each query has one report, in order
+          {
+            System.err.println(
+              "Batch queries can't be split among worker processes.");
+            System.exit(-1);      // exit application without help
+          }
+          Vector names = new Vector(); // file and folder names
+          for (int k = i; k < args.length; k ++) // guess which are files
+          {
+            if ((args[k].length() > 0) && (args[k].startsWith("-") == false)
+              && ((mswinFlag == false) || (args[k].startsWith("/") == false)))
+            {
+              names.add(new File(args[k]));
+            }
+          }
+          processShards(args, i, names);
+          break;                  // workers got all names, ignore the rest
+        }
+        else
+        {
+          consoleFlag = true;     // don't allow GUI methods to be called
+          if ((progressIndex > 0) && (progress == null)
+            && (followFlag == false)) // show progress for remaining files?
+          {
+            progress = new FileSearch1Progress();
+            for (int k = i; k < args.length; k ++) // guess which are files
+            {
+              if ((args[k].length() > 0) && (args[k].startsWith("-") == false)
+                && ((mswinFlag == false) || (args[k].startsWith("/") == false)))
+              {
+                progress.addRoot(new File(args[k]));
+              }
+            }
+            progress.start(progressIndex == 1); // measure total size first?
+          }
+          if ((checkpoint == null) || checkpoint.startRoot(new File(args[i])))
+            processFileOrFolder(new File(args[i])); // not finished before
+          if (cancelFlag && (timeoutFlag == false)) // if fatal error reported
+          {
+            showHelp();           // show help summary
+            System.exit(-1);      // exit application after printing help
+          }
+        }
+      }
+    }
+
+    /* If running as a console application, print a summary of what we found.
+    Exit to the system with an integer status that has the number of files
+    successfully matched or not matched. */
+
+    if (consoleFlag)              // was at least one file/folder given?
+    {
+      if (progress != null)       // remove progress line before summary
+        progress.stop();
+      if (followFlag)             // keep searching files as they grow?
+        followFiles();            // only returns if there is an error
+      if (cancelFlag && (timeoutFlag == false)) // did workers fail to start?
+        System.exit(-1);          // error was already reported
+      if (checkpoint != null)     // save position, or remove finished search
+        checkpoint.finish(timeoutFlag == false);
+      if (totalsFlag)             // numbers only, for a coordinator or script
+      {
+        putError("Totals: " + matchCount + " " + failCount + " "
+          + folderCount + " " + dedupCount + " " + countLines + " "
+          + countMatches + " " + timeoutCount);
+      }
+      else
+      {
+        if (batchList != null)    // separate report for each query?
+          reportBatchResults();
+        putError("Matched " + prettyPlural(matchCount, "file")
+          + " and didn't match " + prettyPlural(failCount, "file") + " in "
+          + prettyPlural(folderCount, "folder") + ".");
+        if (dedupCount > 0)       // were any duplicate files not searched?
+          putError("Reused results for " + prettyPlural(dedupCount,
+            "duplicate file") + ".");
+        if (timeoutCount > 0)     // were any files stopped by limits?
+          putError("Gave up on " + prettyPlural(timeoutCount, "file")
+            + " at time limits.");
+        if (timeoutFlag)          // did we stop before searching everything?
+          putError("Search time limit exceeded; not all files were searched.");
+        if (countIndex > 0)       // were we counting matches?
+          reportCountTotals();
+      }
+      if (debugFlag)              // does user want debug information?
+      {
+        long javaStart = startTime; // assume Java started with main()
+        if (ProcessHandle.current().info().startInstant().isPresent())
+          javaStart = ProcessHandle.current().info().startInstant().get()
+            .toEpochMilli();      // time process started, if system knows
+        System.err.println("main " + bufferPool.report());
+        System.err.println("main " + rateLimit.report());
+        System.err.println("main startup " + (startTime - javaStart)
+          + " ms before main(), search " + (System.currentTimeMillis()
+          - startTime) + " ms after main()");
+      }
+      System.exit(((reportIndex >= 3) && (reportIndex <= 5)) ? failCount
         : matchCount);            // exit from application with status
     }
 
-    /* There were no file or folder names on the command line.  Open the
-    graphical user interface (GUI).  We don't need to be inside an if-then-else
-    construct here because the console application called System.exit() above.
-    The standard Java interface style is the most reliable, but you can switch
-    to something closer to the local system, if you want. */
+    /* There were no file or folder names on the command line.  Open the
+    graphical user interface (GUI).  We don't need to be inside an if-then-else
+    construct here because the console application called System.exit() above.
+    The window is created by another class, so that console searches don't
+    load (or verify) any of the AWT or Swing classes, which takes longer than
+    searching a few small files. */
+
+    checkpoint = null;            // checkpoints are only for console searches
+    FileSearch1Window.createWindow(buttonFont, maximizeFlag, windowHeight,
+      windowLeft, windowTop, windowWidth);
+
+  } // end of main() method
+
+// ------------------------------------------------------------------------- //
+
+/*
+  checkFileFilter() method
+
+  Check a file's size and date against the user's limits, before the file is
+  opened.  Both are fetched with one request to the file system.  Return null
+  if the file should be searched, or a word saying why not: "large", "new",
+  "old", or "small".
+*/
+  static String checkFileFilter(File givenFile)
+  {
+    java.nio.file.attribute.BasicFileAttributes attrs; // size and dates
+    long modified;                // date and time file was last changed
+    long size;                    // file size in bytes
+
+    if ((maxSize < 0) && (minSize <= 0) && (newerTime <= 0)
+      && (olderTime <= 0))        // are there any limits?
+    {
+      return(null);               // no, don't fetch attributes
+    }
+    try
+    {
+      attrs = java.nio.file.Files.readAttributes(givenFile.toPath(),
+        java.nio.file.attribute.BasicFileAttributes.class);
+    }
+    catch (IOException ioe)       // no attributes, let search report error
+    {
+      return(null);
+    }
+    catch (RuntimeException re)   // invalid path names, etc
+    {
+      return(null);
+    }
+    modified = attrs.lastModifiedTime().toMillis();
+    size = attrs.size();
+    if ((maxSize >= 0) && (size > maxSize)) return("large");
+    if (size < minSize) return("small");
+    if ((newerTime > 0) && (modified < newerTime)) return("old");
+    if ((olderTime > 0) && (modified >= olderTime)) return("new");
+    return(null);                 // file should be searched
+
+  } // end of checkFileFilter() method
+
+
+/*
+  compileApprox() method
+
+  Set up an approximate search for plain text, with a limit on the number of
+  edits.  There is no literal prefilter, because a match may not contain any
+  particular part of the search string.  A compiled pattern is still kept,
+  because other methods check it to see if the search is ready.  Return false
+  after reporting an error if the search can't be done this way.
+*/
+  static boolean compileApprox()
+  {
+    String error;                 // error message, or null
+
+    error = null;                 // assume no errors
+    if (regexFlag || queryFlag || (batchList != null))
+      error = "Approximate search is only for plain text, not with -r, -query,"
+        + " or -batch.";
+    else if ((searchString.length() == 0) || (searchString.length()
+      > FileSearch1Approx.MAX_LENGTH))
+    {
+      error = "Approximate search string must be 1 to "
+        + FileSearch1Approx.MAX_LENGTH + " characters.";
+    }
+    else if (approxLimit >= searchString.length())
+      error = "Approximate search must allow fewer edits than the "
+        + searchString.length() + " characters in the search string.";
+    if (error != null)            // can't search this way
+    {
+      cancelFlag = true;          // stop looking at files or folders
+      if (consoleFlag)            // are we running in console mode?
+        putError(error);
+      else
+        FileSearch1Window.showMessage(error);
+      return(false);
+    }
+
+    approxEngine = new FileSearch1Approx(searchString, approxLimit,
+      (caseFlag == false));
+    byteEngine = null;            // no byte search for approximate text
+    literalFilter = null;         // no prefilter, any part may be changed
+    searchEngine = null;          // no linear-time regular expressions
+    searchPattern = Pattern.compile(makeRegularPlain(searchString), (caseFlag
+      ? 0 : (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+    if (debugFlag)                // does user want debug information?
+      System.err.println("compileApprox length = " + searchString.length()
+        + ", edits = " + approxLimit + ", fold = " + (caseFlag == false));
+    return(true);                 // ready to search files
+  }
+
+
+/*
+  compileBatch() method
+
+  Compile each query from a batch file, and one pattern that finds any query,
+  so that lines without any match are skipped with one search.  Queries can't
+  be combined if they have back references, since group numbers would change.
+  The linear-time engine has one rule for uppercase and lowercase, so queries
+  are combined into one engine for each rule (if it supports every query),
+  which finds any query in one or two passes.  Return false if a query has
+  poor syntax, after reporting the error.
+*/
+  static boolean compileBatch()
+  {
+    StringBuffer any;             // combined expression for all queries
+    StringBuffer exact;           // queries where case is significant
+    StringBuffer folded;          // queries where uppercase equals lowercase
+    int i;                        // index variable
+    String message;               // error message, if any
+    FileSearch1Batch query;       // one query from batch file
+    boolean safe;                 // true if queries can be combined
+
+    batchAny = null;              // no combined pattern yet
+    batchEngines = null;
+    literalFilter = null;         // no prefilter or engine for batches
+    searchEngine = null;
+    if (followFlag)               // each query is decided once for each file
+      message = "Batch queries can't be used when following files that grow.";
+    else if (countIndex > 0)      // counts have no separate reports
+      message = "Batch queries can't be used when counting matches.";
+    else if ((contextAfter > 0) || (contextBefore > 0)) // lines of context?
+      message = "Batch queries can't be used with lines of context.";
+    else if (dedupIndex > 0)      // duplicates reuse one result per file
+      message = "Batch queries can't be used when skipping duplicate files.";
+    else if (queryFlag)           // boolean query is one search string
+      message = "Batch queries can't be used with a boolean query.";
+    else
+    {
+      try                         // attempt to compile every query
+      {
+        any = new StringBuffer();
+        exact = new StringBuffer();
+        folded = new StringBuffer();
+        safe = true;              // assume we can combine queries
+        for (i = 0; i < batchList.size(); i ++)
+        {
+          query = (FileSearch1Batch) batchList.get(i);
+          query.compile(caseFlag, regexFlag, reportIndex); // our defaults
+          if (query.regexFlag && Pattern.compile("\\\\([0-9]|k<)")
+            .matcher(query.express).find())
+          {
+            safe = false;         // might have back references
+          }
+          any.append(((i > 0) ? "|" : "") + (query.caseFlag ? "(?:" : "(?iu:")
+            + query.express + ")");
+          StringBuffer plain = query.caseFlag ? exact : folded; // same rule
+          plain.append(((plain.length() > 0) ? "|" : "") + "(?:"
+            + query.express + ")");
+        }
+        batchAny = safe ? Pattern.compile(any.toString()) : null;
+        if (safe && (engineIndex != 1)) // try linear-time engines?
+        {
+          Vector engines = new Vector(); // one engine for each case rule
+          if (exact.length() > 0)
+            engines.add(new FileSearch1Regex(exact.toString(), false));
+          if (folded.length() > 0)
+            engines.add(new FileSearch1Regex(folded.toString(), true));
+          batchEngines = (FileSearch1Regex[]) engines.toArray(
+            new FileSearch1Regex[0]);
+          for (i = 0; i < batchEngines.length; i ++)
+            if (batchEngines[i].supported == false) // lookaround, etc?
+              batchEngines = null; // use <batchAny> instead
+        }
+        searchPattern = (batchAny != null) ? batchAny
+          : ((FileSearch1Batch) batchList.get(0)).pattern; // compiled
+        if (debugFlag)            // does user want debug information?
+          System.err.println("compileBatch queries = " + batchList.size()
+            + ", any = <" + any + ">, engine = " + ((batchEngines != null)
+            ? ("linear x" + batchEngines.length) : (safe ? "java" : "none")));
+        return(true);             // ready to search files
+      }
+      catch (PatternSyntaxException pse) // bad regular expression
+      {
+        message = "Batch query has poor syntax as a regular expression:\n"
+          + pse.getPattern();
+      }
+      catch (IllegalArgumentException iae) // no search string after options
+      {
+        message = "Batch query has poor syntax:\n" + iae.getMessage();
+      }
+    }
+    cancelFlag = true;            // stop looking at files or folders
+    batchAny = null;              // invalidate anything created above
+    batchEngines = null;
+    searchPattern = null;
+    if (consoleFlag)              // are we running in console mode?
+      putError(message.replace('\n', ' '));
+    else
+      FileSearch1Window.showMessage(message);
+    return(false);
+
+  } // end of compileBatch() method
+
+
+/*
+  compileQuery() method
+
+  Compile the search string as a boolean query.  Each term in the query is
+  plain text or a regular expression, the same as a normal search string.  We
+  don't use the literal prefilter or the linear-time engine for queries.
+  Return false if the query has poor syntax, after reporting the error.
+*/
+  static boolean compileQuery()
+  {
+    String message;               // error message, if any
+
+    literalFilter = null;         // no prefilter or engine for queries
+    searchEngine = null;
+    if (followFlag)               // queries decide once for whole file
+      message = "A query can't be used when following files that grow.";
+    else if (countIndex > 0)      // queries don't have occurrences
+      message = "A query can't be used when counting matches.";
+    else
+    {
+      try                         // attempt to compile query and its terms
+      {
+        searchQuery = new FileSearch1Query(searchString, regexFlag,
+          (caseFlag ? 0 : (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+        searchPattern = (searchQuery.anyPattern != null)
+          ? searchQuery.anyPattern : searchQuery.termPatterns[0]; // compiled
+        if (debugFlag)            // does user want debug information?
+          System.err.println("compileQuery query = " + searchQuery);
+        return(true);             // ready to search files
+      }
+      catch (PatternSyntaxException pse) // bad regular expression in a term
+      {
+        message = "Search term has poor syntax as a regular expression:\n"
+          + pse.getPattern();
+      }
+      catch (IllegalArgumentException iae) // bad syntax for query
+      {
+        message = "Search string has poor syntax as a query:\n"
+          + iae.getMessage();
+      }
+    }
+    cancelFlag = true;            // stop looking at files or folders
+    searchPattern = null;         // invalidate anything created above
+    searchQuery = null;
+    if (consoleFlag)              // are we running in console mode?
+      putError(message.replace('\n', ' '));
+    else
+      FileSearch1Window.showMessage(message);
+    return(false);
+
+  } // end of compileQuery() method
+
+
+/*
+  compileSearch() method
+
+  Compile the search string as a regular expression, and choose the engine and
+  prefilter for searching.  Regular expressions may be slower to compile, but
+  once compiled, they can be quickly reused from file to file.  Return false if
+  the expression has poor syntax, after reporting the error.
+*/
+  static boolean compileSearch()
+  {
+    String express;               // regular expression for search string
+    int flags;                    // flags for compiling <express>
+
+    approxEngine = null;          // forget any previous approximate search
+    enginePool = new Vector();    // forget engines from any previous search
+    scanEngine = null;            // assume every line is assembled and searched
+    literalOnly = false;          // until we know the search is plain text
+    if (caseFlag == false)        // fold case with a table, not method calls
+      makeFoldTable();
+    if (approxLimit >= 0)         // plain text with some edits?
+      return(compileApprox());
+    if (batchList != null)        // many queries from a batch file?
+      return(compileBatch());
+    if (queryFlag)                // is the search string a boolean query?
+      return(compileQuery());
+
+    express = regexFlag ? searchString
+      : makeRegularPlain(searchString); // use given regex or convert plain
+    flags = caseFlag ? 0 : (Pattern.CASE_INSENSITIVE
+      | Pattern.UNICODE_CASE);    // are uppercase and lowercase different?
+    if (debugFlag)                // does user want debug information?
+      System.err.println("compileSearch express = <" + express
+        + ">, flags = " + flags);
+    try                           // attempt to compile regular expression
+    {
+      searchPattern = Pattern.compile(express, flags);
+      makeLiteralFilter(express, (caseFlag == false)); // after good syntax
+    }
+    catch (PatternSyntaxException pse) // if expression syntax is invalid
+    {
+      cancelFlag = true;          // stop looking at files or folders
+      literalFilter = null;       // invalidate anything created above
+      searchPattern = null;
+      if (consoleFlag)            // are we running in console mode?
+        putError("Invalid regular expression: " + express);
+      else
+        FileSearch1Window.showMessage(
+          "Search string has poor syntax as a regular expression:\n"
+          + express);
+      return(false);              // return early from this method
+    }
+
+    /* Choose an engine for the regular expression.  Plain text can't have
+    catastrophic backtracking, so we use the Pattern class, which has a fast
+    Boyer-Moore search for literals.  The linear-time engine is used for
+    regular expressions that it supports, unless the user says otherwise.
+    Anything else falls back to the Pattern class, with a time limit. */
+
+    if ((engineIndex == 2) || (regexFlag && (engineIndex == 0)))
+    {
+      searchEngine = new FileSearch1Regex(express, (caseFlag == false));
+      if (searchEngine.supported == false) // back references, lookaround?
+        searchEngine = null;      // must use java.util.regex instead
+    }
+
+    /* Plain text is the same as its literal prefilter, which gives the
+    position of the first match.  Neither engine is needed for plain text,
+    with or without case.  There is no prefilter for surrogate pairs that
+    ignore case, so that text goes to an engine, which folds code points. */
+
+    literalOnly = (regexFlag == false) && (literalFilter != null)
+      && (literalFilter.length == searchString.length());
+    if (debugFlag)                // does user want debug information?
+      System.err.println("compileSearch engine = " + (literalOnly ? "literal"
+        : (searchEngine != null) ? "linear" : "java"));
+
+    /* Plain text can also be found in UTF-8, UTF-16LE, and UTF-16BE at the
+    same time, by searching raw bytes for each encoding of the text.  This is
+    used for binary files, and to ignore nulls.  Building the engine takes
+    longer than searching a few small files, so don't build it otherwise. */
+
+    byteEngine = null;            // assume there is no byte search
+    if ((regexFlag == false) && (countIndex == 0) && (nullFlag
+      || encodeName.equals(DETECT_ENCODING))) // binary files or no nulls?
+    {
+      makeByteEngine();
+    }
+    if (debugFlag)                // does user want debug information?
+      System.err.println("compileSearch prefilter = "
+        + ((literalFilter == null) ? "none, full pattern on every line"
+        : ("literal <" + new String(literalFilter) + ">"
+        + (literalFold ? " ignoring case" : ""))));
+
+    /* Lines of plain text that don't have a character that could start a
+    match are skipped while reading, without copying them into the line
+    buffer.  Only their line ends are counted. */
+
+    if (literalOnly && (searchString.length() > 0))
+    {
+      scanEngine = new FileSearch1Scan(searchString, (caseFlag == false),
+        nullFlag);
+      if (debugFlag)              // does user want debug information?
+        System.err.println("compileSearch scan = " + scanEngine);
+    }
+    return(true);                 // ready to search files
+
+  } // end of compileSearch() method
+
+
+/*
+  countLine() method
+
+  Return the number of matches (occurrences) in a line of text, or zero.  Most
+  lines don't match, and are rejected by the same quick checks as searchLine().
+  Matches are counted the same way as Matcher.find(), without overlapping.
+*/
+  static int countLine(
+    StringBuffer text,            // line of text to search
+    long deadline)                // system time in milliseconds, or zero
+  {
+    char[] chars;                 // one copy of <text> for all matches
+    int count;                    // number of matches found
+    FileSearch1Regex engine;      // linear-time engine for this thread
+    int from;                     // index where next search starts
+    int[] match;                  // starting and ending index of one match
+    Matcher matcher;              // pattern matcher for <searchPattern>
+
+    if (searchLine(text, deadline) == null) // is there at least one match?
+      return(0);
+    if (approxEngine != null)     // approximate matches, without overlapping
+      return(approxEngine.count(text));
+    count = 0;
+
+    /* The linear-time engine continues from the end of each match, the same
+    as Matcher.find(), so counting can't backtrack either. */
+
+    if (searchEngine != null)     // linear-time engine for this expression?
+    {
+      engine = searchEngine;      // only one thread is searching
+      if ((currentTask.get() != null) || (currentPiece.get() != null))
+      {
+        synchronized (enginePool) // each thread needs its own DFA cache
+        {
+          engine = (enginePool.size() > 0) ? (FileSearch1Regex)
+            enginePool.remove(enginePool.size() - 1) : searchEngine.copy();
+        }
+      }
+      try                         // may be interrupted by cancel or time limit
+      {
+        chars = new char[text.length()]; // don't copy again for each match
+        text.getChars(0, chars.length, chars, 0);
+        from = 0;
+        while ((from <= chars.length) && ((match = engine.find(chars,
+          chars.length, from)) != null)) // for each match in this line
+        {
+          count ++;
+          from = (match[1] > match[0]) ? match[1] : (match[1] + 1);
+          if (cancelFlag || ((deadline > 0) && ((count & 0xFF) == 0)
+            && (System.currentTimeMillis() > deadline)))
+          {
+            throw new FileSearch1Timeout(); // many matches in a huge line
+          }
+        }
+      }
+      finally
+      {
+        if (engine != searchEngine) // return engine for another thread
+          enginePool.add(engine); // <Vector> is synchronized
+      }
+      return(Math.max(1, count)); // engines may differ on empty matches
+    }
+    matcher = searchPattern.matcher(new FileSearch1Text(text, deadline));
+    while (matcher.find())        // for each match in this line
+      count ++;
+    return(Math.max(1, count));   // engines may differ on empty matches
+  }
+
+
+/*
+  decodeLine() method
+
+  A line found by the byte search is raw bytes.  Decode the line in the file's
+  encoding and remove <NUL> and <DEL> characters, which is how the -n option
+  showed lines before there was a byte search, and find the search string
+  again for the match window.  A UTF-16 line after the first has an odd byte
+  left over from the line feed: first for little-endian, last for big-endian.
+  The byte order mark (BOM) is not shown.  If decoding loses the match (such
+  as UTF-8 text in a single-byte encoding), keep the raw bytes without nulls
+  instead.  Return the positions of the match in the new line, or null if the
+  caller has no match.
+*/
+  static int[] decodeLine(
+    StringBuffer text,            // raw bytes as characters, changed in place
+    int[] position,               // start and end of match, or null
+    String encoding)              // name of encoding, or our special names
+  {
+    byte[] bytes;                 // raw bytes from <text>
+    Charset charset;              // encoding for <bytes>
+    char ch;                      // one character
+    String decoded;               // <bytes> decoded with <charset>
+    int end, start;               // bytes to decode from <bytes>
+    int i;                        // index into original text
+    int k;                        // index into shorter text
+    int[] result;                 // positions in shorter text, or null
+
+    bytes = new byte[text.length()];
+    for (i = 0; i < bytes.length; i ++)
+      bytes[i] = (byte) text.charAt(i);
+    try
+    {
+      charset = encoding.equals(LOCAL_ENCODING) ? Charset.defaultCharset()
+        : encoding.equals(RAW_ENCODING) ? Charset.forName("ISO-8859-1")
+        : Charset.forName(encoding);
+    }
+    catch (IllegalArgumentException iae) // unknown name, never used to read
+    {
+      charset = Charset.forName("ISO-8859-1");
+    }
+    start = 0;                    // assume all bytes are decoded
+    end = bytes.length;
+    if (((bytes.length % 2) != 0) && charset.name().startsWith("UTF-16"))
+    {
+      if (charset.name().equals("UTF-16LE")) start = 1; else end --;
+    }
+    decoded = new String(bytes, start, (end - start), charset);
+    text.setLength(0);
+    for (i = 0; i < decoded.length(); i ++)
+    {
+      ch = decoded.charAt(i);
+      if ((ch != 0x00) && (ch != 0x7F) && (ch != 0xFEFF)) // keep others
+        text.append(ch);
+    }
+    if (position == null)         // context line, not a match
+      return(null);
+    result = searchLine(text, 0); // plain text, so no deadline needed
+    if (result != null)           // still matches after decoding?
+      return(result);
+
+    /* Use the raw bytes, and move the match to where it is without nulls. */
+
+    result = position.clone();
+    text.setLength(0);
+    for (i = 0; i < bytes.length; i ++)
+    {
+      k = text.length();
+      if (i == position[0]) result[0] = k;
+      if (i == position[1]) result[1] = k;
+      if ((bytes[i] != 0x00) && (bytes[i] != 0x7F))
+        text.append((char) (bytes[i] & BYTE_MASK));
+    }
+    if (position[1] >= bytes.length) // match ends at end of line
+      result[1] = text.length();
+    return(result);
+
+  } // end of decodeLine() method
+
+
+/*
+  dedupHash() method
+
+  Return a string with the size and SHA-256 hash of a file's contents, either
+  from a message digest that has already been updated with all bytes in the
+  file, or by reading the file.  Return null if the file can't be read.  Each
+  file is read for its hash at most once, because a parallel search finds
+  copies again in report order.
+*/
+  static String dedupHash(
+    File givenFile,               // file to be hashed
+    MessageDigest digest)         // completed digest, or null to read file
+  {
+    byte[] buffer;                // buffer for reading raw 8-bit bytes
+    int count;                    // number of bytes used in <buffer>
+    String result;                // size and hash of file contents
+    InputStream stream;           // input stream for raw 8-bit bytes
+
+    try                           // catch specific and general I/O errors
+    {
+      result = (String) dedupHashes.get(givenFile.getPath());
+      if (result != null)         // already hashed this file?
+        return(result);
+      if (digest == null)         // must we read the file ourself?
+      {
+        buffer = new byte[BUFFER_SIZE]; // allocate space for reading
+        digest = MessageDigest.getInstance("SHA-256");
+        stream = rateLimit.open(givenFile);
+        while ((cancelFlag == false) && ((count = stream.read(buffer)) > 0))
+          digest.update(buffer, 0, count);
+        stream.close();
+        if (cancelFlag) return(null); // digest isn't complete
+      }
+      result = givenFile.length() + " "
+        + (new java.math.BigInteger(1, digest.digest())).toString(16);
+      dedupHashes.put(givenFile.getPath(), result);
+      return(result);
+    }
+    catch (IOException ioe)       // file can't be read
+    {
+      return(null);               // caller will report the error later
+    }
+    catch (NoSuchAlgorithmException nsae) // every Java has SHA-256
+    {
+      return(null);
+    }
+  } // end of dedupHash() method
+
+
+/*
+  dedupLookup() method
+
+  Return the result for an earlier file with the same contents as the caller's
+  file, or null if there is no such file.  Another name for the same file (a
+  hard link) has the same file key, which costs nothing to check.  A file with
+  the same size as an earlier file may be a copy, so we hash its contents
+  without decoding or searching, and compare hashes.  Earlier files with this
+  size that weren't read to the end are hashed now, the first time they are
+  needed.
+*/
+  static FileSearch1Verdict dedupLookup(
+    File givenFile,               // file that we are about to search
+    Object fileKey)               // unique file identifier, or null
+  {
+    String hash;                  // size and hash of file contents
+    int i;                        // index variable
+    Vector pending;               // earlier files with this size, no hash
+    FileSearch1Verdict result;    // our result, if found
+    Long size;                    // size of caller's file
+
+    result = (fileKey == null) ? null
+      : (FileSearch1Verdict) dedupMap.get(fileKey); // same device and inode?
+    size = Long.valueOf(givenFile.length());
+    if ((result == null) && (dedupIndex == 2))
+    {
+      synchronized (dedupPending) { pending = (Vector) dedupPending.remove(
+        size); }                  // we hash them, not another thread
+      for (i = 0; (pending != null) && (i < pending.size()); i ++)
+      {
+        Object[] earlier = (Object[]) pending.get(i); // {File, verdict}
+        hash = dedupHash((File) earlier[0], null);
+        if (hash != null)         // can still read earlier file?
+        {
+          dedupMap.put(hash, earlier[1]);
+          dedupSizes.add(size);
+        }
+      }
+    }
+    if ((result == null) && (dedupIndex == 2) && dedupSizes.contains(size))
+    {
+      hash = dedupHash(givenFile, null); // read file for its hash only
+      result = (hash == null) ? null : (FileSearch1Verdict) dedupMap.get(hash);
+      if ((result != null) && (fileKey != null)) // found copy by content?
+        dedupMap.put(fileKey, result); // remember this file key too
+    }
+    return(result);               // give caller whatever we found
+
+  } // end of dedupLookup() method
+
+
+/*
+  dedupSave() method
+
+  Remember the result for a file that may have copies, after searching the
+  file.  A file that was read to the end has a complete hash.  A file where we
+  stopped early (because the search string was found) isn't read again just
+  for its hash.  It waits with other files of the same size, and is hashed
+  only if another file with that size is found later.
+*/
+  static void dedupSave(
+    File givenFile,               // file that was searched
+    FileSearch1Verdict verdict,   // result of search
+    MessageDigest digest)         // completed digest, or null if not complete
+  {
+    Vector pending;               // earlier files with this size, no hash
+    Long size;                    // size of caller's file
+
+    size = Long.valueOf(givenFile.length());
+    if (digest != null)           // read to end, so hash is complete
+    {
+      dedupMap.put(dedupHash(givenFile, digest), verdict);
+      dedupSizes.add(size);
+      return;
+    }
+    synchronized (dedupPending)
+    {
+      pending = (Vector) dedupPending.get(size);
+      if (pending == null)        // first unhashed file with this size?
+      {
+        pending = new Vector();
+        dedupPending.put(size, pending);
+      }
+      pending.add(new Object[] {givenFile, verdict});
+    }
+  } // end of dedupSave() method
+
+
+/*
+  detectEncoding() method
+
+  Guess the character set encoding of a file from a sample of its first bytes.
+  A byte order mark (BOM) decides between UTF-8 and UTF-16.  Text in UTF-16
+  without a BOM has a null in every other byte for ASCII characters: odd bytes
+  for little-endian, even bytes for big-endian.  Any other nulls mean a binary
+  file, and we return <DETECT_ENCODING> to say that no encoding was found.
+  Text with valid UTF-8 sequences (including plain ASCII) is UTF-8; all other
+  text is in the local system's encoding.
+*/
+  static String detectEncoding(
+    byte[] sample,                // first bytes of file
+    int count)                    // number of bytes in <sample>
+  {
+    int evenNulls, oddNulls;      // nulls in even and odd positions
+    int i, k;                     // index variables
+    int value;                    // one byte as unsigned integer
+
+    if ((count >= 3) && (sample[0] == (byte) 0xEF)
+      && (sample[1] == (byte) 0xBB) && (sample[2] == (byte) 0xBF))
+    {
+      return("UTF-8");            // UTF-8 with byte order mark
+    }
+    if ((count >= 2) && (((sample[0] == (byte) 0xFF)
+      && (sample[1] == (byte) 0xFE)) || ((sample[0] == (byte) 0xFE)
+      && (sample[1] == (byte) 0xFF))))
+    {
+      return("UTF-16");           // decoder uses BOM for byte order
+    }
+
+    /* Count nulls in even and odd positions.  Mostly ASCII text in UTF-16
+    has nulls in at least half of one position, and very few in the other. */
+
+    evenNulls = oddNulls = 0;
+    for (i = 0; i < count; i ++)
+    {
+      if (sample[i] == 0)
+      {
+        if ((i & 1) == 0) evenNulls ++; else oddNulls ++;
+      }
+    }
+    if ((oddNulls >= (count / 4)) && (evenNulls <= (count / 32))
+      && (oddNulls > 0))
+    {
+      return("UTF-16LE");
+    }
+    if ((evenNulls >= (count / 4)) && (oddNulls <= (count / 32))
+      && (evenNulls > 0))
+    {
+      return("UTF-16BE");
+    }
+    if ((evenNulls + oddNulls) > 0) // nulls anywhere else mean binary data
+      return(DETECT_ENCODING);
+
+    /* Check that every byte over 0x7F is part of a valid UTF-8 sequence.  A
+    sequence may be cut off at the end of the sample. */
+
+    i = 0;
+    while (i < count)
+    {
+      value = sample[i ++] & BYTE_MASK;
+      if (value < 0x80)           // ASCII character
+        continue;
+      else if ((value >= 0xC2) && (value <= 0xDF)) k = 1; // two bytes
+      else if ((value >= 0xE0) && (value <= 0xEF)) k = 2; // three bytes
+      else if ((value >= 0xF0) && (value <= 0xF4)) k = 3; // four bytes
+      else                        // not a valid first byte
+        return(LOCAL_ENCODING);
+      while ((k > 0) && (i < count))
+      {
+        if ((sample[i ++] & 0xC0) != 0x80) // not a continuation byte
+          return(LOCAL_ENCODING);
+        k --;
+      }
+    }
+    return("UTF-8");              // ASCII is a subset of UTF-8
+
+  } // end of detectEncoding() method
+
+
+/*
+  findLiteralFilter() method
+
+  Return the index of the literal string required by any match of the compiled
+  search pattern, or -1 if the literal isn't in a line of text.  This is a
+  Boyer-Moore-Horspool scan, which is much faster than the full regular
+  expression, so the expression is only applied to lines that might match.
+  When uppercase and lowercase are equal, characters are folded with the same
+  table as the literal, the same way as the Pattern class does for
+  CASE_INSENSITIVE and UNICODE_CASE, so the results are identical.  The line
+  is copied to an array first, because StringBuffer.charAt() is synchronized,
+  and that costs more than the copy.
+*/
+  static int findLiteralFilter(StringBuffer text)
+  {
+    char[] chars;                 // copy of caller's text
+    char end;                     // last character in window, maybe folded
+    char[] fold;                  // folded characters, or null
+    int i;                        // index of last character in window
+    int k;                        // index variable for comparing backwards
+    int last;                     // index of last character in literal
+    int length;                   // size of caller's text in characters
+
+    fold = literalFold ? foldTable : null; // fold once per character
+    last = literalFilter.length - 1; // literal is never empty
+    length = text.length();       // get size of caller's text in characters
+    chars = new char[length];     // one copy is faster than many charAt()
+    text.getChars(0, length, chars, 0);
+    i = last;                     // first window ends at this character
+    while (i < length)            // while the window fits inside the text
+    {
+      end = chars[i];             // last character in current window
+      if (fold != null)           // are uppercase and lowercase equal?
+        end = fold[end];
+      if (end == literalFilter[last]) // possible match, compare backwards
+      {
+        k = 1;                    // number of characters that have matched
+        while ((k <= last) && (((fold != null) ? fold[chars[i - k]]
+          : chars[i - k]) == literalFilter[last - k]))
+        {
+          k ++;                   // same character, compare previous
+        }
+        if (k > last)             // did every character match?
+          return(i - last);       // yes, full pattern may match here
+      }
+      i += literalSkip[end & (LITERAL_SKIP - 1)]; // safe distance to shift
+    }
+    return(-1);                   // literal not found, pattern can't match
+
+  } // end of findLiteralFilter() method
+
+
+/*
+  foldCase() method
+
+  Return the lowercase of the uppercase for a Unicode code point, from the
+  table when we have one.
+*/
+  static int foldCase(int ch)
+  {
+    if ((ch >= 0) && (ch < 0x10000) && (foldTable != null)) // in table?
+      return(foldTable[ch]);
+    return(Character.toLowerCase(Character.toUpperCase(ch)));
+  }
+
+
+/*
+  foldVariants() method
+
+  Return the supplementary characters (above the Basic Multilingual Plane, so
+  not in <foldTable>) that fold the same as a given one, including itself.
+  The Pattern class folds each code point to the lowercase of its uppercase,
+  so any other variant must be the uppercase, lowercase, or titlecase.
+*/
+  static int[] foldVariants(int ch)
+  {
+    int[] cases;                  // possible case variants
+    int count;                    // number of variants in <result>
+    int i, k;                     // index variables
+    int[] result;                 // our result, before trimming
+
+    cases = new int[] {ch, Character.toUpperCase(ch),
+      Character.toLowerCase(ch), Character.toTitleCase(ch), foldCase(ch)};
+    result = new int[cases.length];
+    count = 0;
+    for (i = 0; i < cases.length; i ++)
+    {
+      for (k = 0; (k < count) && (result[k] != cases[i]); k ++) { }
+      if ((k == count) && Character.isSupplementaryCodePoint(cases[i])
+        && (foldCase(cases[i]) == foldCase(ch))) // new variant, same fold?
+      {
+        result[count ++] = cases[i];
+      }
+    }
+    return(Arrays.copyOf(result, count));
+  }
+
+
+/*
+  followAdd() method
+
+  Add a file to our list of files being followed, and search the data already
+  in the file.  Line breaks are found by looking at raw bytes, so this only
+  works for character set encodings where CR and LF are single bytes with the
+  same values as in ASCII.  That excludes UTF-16 and UTF-32.
+*/
+  static void followAdd(File givenFile)
+  {
+    byte[] newline;               // newline character in current encoding
+    String path;                  // canonical path name for <givenFile>
+    FileSearch1Follow state;      // information about one followed file
+
+    /* Check that we can find line breaks before the first file is added. */
+
+    if (followList.size() == 0)   // only need to check the encoding once
+    {
+      try                         // encoding names may not be supported
+      {
+        newline = followEncoding() == null ? "\n".getBytes()
+          : "\n".getBytes(followEncoding());
+      }
+      catch (UnsupportedEncodingException uee)
+      {
+        newline = null;           // same as an encoding we can't follow
+      }
+      if ((newline == null) || (newline.length != 1) || (newline[0] != '\n'))
+      {
+        cancelFlag = true;        // stop looking at files or folders
+        putError("Can't follow files with character set encoding <"
+          + encodeName + ">.");
+        return;
+      }
+    }
+
+    /* Ignore duplicates, which happen when the user gives a file twice, or
+    gives the same file by two different names. */
+
+    try { path = givenFile.getCanonicalPath(); }
+    catch (IOException ioe) { path = givenFile.getAbsolutePath(); }
+    if (followPaths.add(path) == false) // already following this file?
+      return;
+    state = new FileSearch1Follow(givenFile); // start at beginning of file
+    followList.add(state);        // remember file for later polls
+    followScan(state);            // search data that is already in the file
+
+  } // end of followAdd() method
+
+
+/*
+  followEncoding() method
+
+  Return the character set name for decoding lines in followed files, or null
+  for the local system's default encoding.  Raw data bytes are the same as the
+  ISO-8859-1 encoding, which maps each byte to the Unicode character with the
+  same value.
+*/
+  static String followEncoding()
+  {
+    if (encodeName.equals(LOCAL_ENCODING)) // use local system's encoding?
+      return(null);
+    else if (encodeName.equals(RAW_ENCODING)) // use raw bytes as characters?
+      return("ISO-8859-1");
+    else if (encodeName.equals(DETECT_ENCODING)) // growing files have no BOM
+      return(null);               // ... so use local system's encoding
+    else                          // must be some named character set encoding
+      return(encodeName);
+  }
+
+
+/*
+  followFiles() method
+
+  Poll the files that we are following, searching any new data appended since
+  the last poll.  One thread handles all files, so there is no limit on how
+  many files can be followed, other than the time to check their sizes.  We
+  return only if the user cancels (GUI) or there is a fatal error.
+*/
+  static void followFiles()
+  {
+    int i;                        // index variable
+
+    if (followList.size() == 0)   // were any files found and added?
+      return;                     // nothing to follow
+    setStatusMessage("Following " + prettyPlural(followList.size(), "file"));
+    while (cancelFlag == false)   // until the user hits the panic button
+    {
+      try { Thread.sleep(followDelay); } // wait for files to grow
+      catch (InterruptedException ie) { break; } // stop if interrupted
+      for (i = 0; i < followList.size(); i ++)
+      {
+        if (cancelFlag) break;    // exit from <for> loop if user cancelled
+        followScan((FileSearch1Follow) followList.get(i));
+      }
+    }
+  } // end of followFiles() method
+
+
+/*
+  followLine() method
+
+  Decode one line of bytes from a followed file, and search the line.  Unlike
+  processUnknownFile(), every matching line is reported, not just the first.
+*/
+  static void followLine(
+    FileSearch1Follow state,      // information about followed file
+    ByteArrayOutputStream bytes)  // bytes for one line of text, not including
+                                  // ... end-of-line characters
+    throws UnsupportedEncodingException
+  {
+    StringBuffer lineBuffer;      // decoded line of text
+    int[] position;               // starting and ending index of match
+
+    lineBuffer = new StringBuffer((followEncoding() == null) ? bytes.toString()
+      : bytes.toString(followEncoding())); // decode bytes as characters
+    bytes.reset();                // empty the caller's byte buffer
+    try { position = searchLine(lineBuffer, 0); } // attempt to match
+    catch (FileSearch1Timeout fst) { return; } // user has cancelled
+    if (position != null)         // if the search pattern is found
+    {
+      if (state.found == false)   // first match for this file?
+      {
+        state.found = true;       // don't count this file again
+        matchCount ++;            // one more file matches search pattern
+        if (reportIndex == 1)     // show match path only?
+          putOutput(state.file.getPath());
+        else if (reportIndex == 2) // show match name only?
+          putOutput(state.file.getName());
+      }
+      if ((reportIndex == 0) || (reportIndex == 6)) // match summary?
+      {
+        putOutput("Match found for " + state.file.getPath() + " at line "
+          + formatComma.format(state.lineNumber) + (((position.length > 2)
+          && (position[2] > 0)) ? (" with " + prettyPlural(position[2],
+          "edit")) : "") + ": " + formatMatchWindow(lineBuffer, position[0],
+          position[1]), true);
+      }
+    }
+  } // end of followLine() method
+
+
+/*
+  followScan() method
+
+  Search new data that has been appended to a followed file, starting from the
+  byte offset and line number where we last stopped.  Only complete lines are
+  consumed; a partial line at the end of the file is read again on the next
+  poll, after the writer has finished it.  A file that gets shorter, or that is
+  replaced by a different file with the same name, is assumed to have been
+  truncated or rotated, and is searched again from the beginning.
+*/
+  static void followScan(FileSearch1Follow state)
+  {
+    byte[] buffer;                // buffer for reading raw 8-bit bytes
+    int ch;                       // one input byte as an unsigned integer
+    int count;                    // number of bytes used in <buffer>
+    Object fileKey;               // unique file identifier, or null if unknown
+    long fileSize;                // current size of file in bytes
+    int i;                        // index variable
+    ByteArrayOutputStream lineBytes; // bytes for one line of text
+    long position;                // file offset of next byte in <buffer>
+    RandomAccessFile stream;      // input file positioned at our offset
+
+    if (cancelFlag) return;       // stop if user hit the panic button
+    if (state.file.isFile() == false) // missing while a log is being rotated?
+      return;                     // try again on the next poll
+
+    fileKey = getFileKey(state.file); // is this still the same file?
+    fileSize = state.file.length(); // get total file size in bytes
+    if ((fileSize < state.offset) || ((fileKey != null)
+      && (state.fileKey != null) && (fileKey.equals(state.fileKey) == false)))
+    {
+      if (state.offset > 0)       // only tell user if we had read something
+        putError("Restarting " + state.file.getPath()
+          + " after rotation or truncation.");
+      state.lineNumber = 1;       // search again from the beginning
+      state.offset = 0;
+      state.wasCr = false;
+    }
+    state.fileKey = fileKey;      // remember identity of file we are reading
+    if (fileSize == state.offset) // has anything been added since last time?
+      return;                     // no, nothing more to do
+
+    try                           // catch specific and general I/O errors
+    {
+      buffer = new byte[BUFFER_SIZE]; // allocate space for reading
+      lineBytes = new ByteArrayOutputStream(); // empty line buffer
+      stream = new RandomAccessFile(state.file, "r");
+      stream.seek(state.offset);  // continue from where we last stopped
+      position = state.offset;    // file offset of first byte read
+      while ((cancelFlag == false) && (position < fileSize))
+      {
+        count = stream.read(buffer, 0, (int) Math.min(buffer.length,
+          (fileSize - position))); // don't read past size we were given
+        if (count <= 0)           // if nothing read, file was truncated
+          break;                  // catch this on the next poll
+        for (i = 0; i < count; i ++)
+        {
+          ch = buffer[i] & BYTE_MASK; // get next byte as unsigned integer
+          position ++;            // file offset of the following byte
+          if (nullFlag && ((ch == 0x00) || (ch == 0x7F)))
+          {
+            /* Ignore <NUL> and <DEL> bytes inside lines of text. */
+          }
+          else if ((ch == '\n') && state.wasCr) // LF after CR is not a line
+          {
+            state.offset = position; // consumed CR and LF together
+            state.wasCr = false;  // clear previous CR status
+          }
+          else if ((ch == '\n') || (ch == '\r')) // end of one line of text
+          {
+            followLine(state, lineBytes); // search this complete line
+            state.lineNumber ++;  // increment count for next line number
+            state.offset = position; // we will never read this line again
+            state.wasCr = (ch == '\r'); // remember CR in case next is LF
+          }
+          else                    // must be text character, or other control
+          {
+            lineBytes.write(ch);  // put text byte into line buffer
+            state.wasCr = false;  // clear any previous CR status
+            if (lineBytes.size() >= BUFFER_SIZE) // too long for one line?
+            {
+              followLine(state, lineBytes); // search what we have so far
+              state.offset = position; // same line number continues
+            }
+          }
+        }
+      }
+      stream.close();             // try to close input file
+    }
+    catch (IOException ioe)       // all I/O errors, including encodings
+    {
+      putError("Can't read from file: " + ioe.getMessage());
+    }
+  } // end of followScan() method
+
+
+/*
+  formatMatchWindow() method
+
+  Format and return a small portion of an input line that surrounds the
+  starting and ending positions of a matched pattern.
+*/
+  static String formatMatchWindow(
+    StringBuffer text,            // input text from caller's string buffer
+    int start,                    // index of first matching character
+    int end)                      // index plus one of last matching character
+  {
+    StringBuffer buffer;          // faster than String for multiple appends
+    char ch;                      // one character from input string
+    int i;                        // index variable
+    int left, right;              // our starting and ending(+1) positions
+
+    /* Try to center left side, or stop at start of string. */
+
+    left = Math.max(0, (start - ((MATCH_WINDOW + start - end) / 2)));
+
+    /* Try to use maximum window for right side, or stop at end of string. */
+
+    right = Math.min((left + MATCH_WINDOW), text.length());
+
+    /* Try to use maximum window for left side, or stop at start of string. */
+
+    left = Math.max(0, (right - MATCH_WINDOW));
+
+    /* Extract the characters, substituting anything that's not printable. */
+
+    buffer = new StringBuffer();  // allocate empty string buffer for result
+    for (i = left; i < right; i ++)
+    {
+      ch = text.charAt(i);        // get one character from caller's string
+      if (Character.isISOControl(ch) || (Character.isDefined(ch) == false))
+        buffer.append('.');       // replace with the ever-present period
+      else
+        buffer.append(ch);        // copy character unchanged to result
+    }
+    return(buffer.toString());    // give caller our converted string
+
+  } // end of formatMatchWindow() method
+
+
+/*
+  formatReport() method
+
+  Return the report line for one file, according to a choice of report from
+  <REPORT_CHOICES>, or null if this report doesn't show this file.
+*/
+  static String formatReport(
+    File givenFile,               // file that was searched
+    FileSearch1Verdict verdict,   // result of search
+    int report,                   // index of report in <REPORT_CHOICES>
+    String suffix)                // added to summary lines, or empty string
+  {
+    if (verdict.found)            // if the search pattern was found
+    {
+      if (((report == 0) || (report == 6))
+        && (verdict.window == null)) // query decided at end of file?
+      {
+        return("Match found for " + givenFile.getPath() + suffix);
+      }
+      else if ((report == 0) || (report == 6)) // match summary?
+      {
+        return("Match found for " + givenFile.getPath() + " at line "
+          + formatComma.format(verdict.lineNumber) + ((verdict.edits > 0)
+          ? (" with " + prettyPlural(verdict.edits, "edit")) : "") + ": "
+          + verdict.window + suffix);
+      }
+      else if (report == 1)       // show match path only?
+        return(givenFile.getPath());
+      else if (report == 2)       // show match name only?
+        return(givenFile.getName());
+    }
+    else                          // search pattern was not found
+    {
+      if ((report == 3) || (report == 6)) // show failure summary?
+        return("Failed to match " + givenFile.getPath() + suffix);
+      else if (report == 4)       // show failure path only?
+        return(givenFile.getPath());
+      else if (report == 5)       // show failure name only?
+        return(givenFile.getName());
+    }
+    return(null);                 // this file isn't in this report
+  }
+
+
+/*
+  getFileKey() method
+
+  Return an object that uniquely identifies a file (the device and inode on
+  UNIX), or null if the file system doesn't have such identifiers.  This needs
+  Java 7 or later.
+*/
+  static Object getFileKey(File givenFile)
+  {
+    try
+    {
+      return(java.nio.file.Files.readAttributes(givenFile.toPath(),
+        java.nio.file.attribute.BasicFileAttributes.class).fileKey());
+    }
+    catch (IOException ioe)       // no attributes, so no file key
+    {
+      return(null);
+    }
+    catch (RuntimeException re)   // invalid path names, etc
+    {
+      return(null);
+    }
+  }
+
+
+/*
+  makeByteEngine() method
+
+  Create <byteEngine> to find the plain text search string in raw bytes, as
+  UTF-8, UTF-16LE, UTF-16BE, or the user's single-byte encoding, all at the
+  same time.  Each encoding becomes one alternative in a regular expression
+  where every byte is a character from 0x00 to 0xFF.  When uppercase and
+  lowercase are equal, each character is replaced by a group with all of its
+  case variants from <foldTable>, since folding bytes doesn't fold characters.
+  Surrogate pairs are folded as whole characters, with foldVariants().
+*/
+  static void makeByteEngine()
+  {
+    String[] alternatives;        // case variants for each search character
+    StringBuffer buffer;          // one encoding as a regular expression
+    int ch;                       // one character, or the first of a pair
+    Vector encodings;             // names of character set encodings
+    StringBuffer express;         // all encodings as a regular expression
+    int i, k, n;                  // index variables
+    String local;                 // name of user's encoding, if single-byte
+    int size;                     // number of characters in one unit
+    Vector units;                 // String[] of case variants for each unit
+
+    /* Split the search string into units: one character or one surrogate
+    pair, with its case variants. */
+
+    units = new Vector();
+    i = 0;
+    while (i < searchString.length())
+    {
+      ch = searchString.charAt(i);
+      size = Character.isHighSurrogate((char) ch) ? 2 : 1;
+      size = Math.min(size, (searchString.length() - i));
+      if ((size == 1) && (caseFlag == false)
+        && (Character.isSurrogate((char) ch) == false))
+      {
+        Vector variants = new Vector();
+        for (k = 0; k < foldTable.length; k ++) // every char that folds same
+        {
+          if ((foldTable[k] == foldTable[ch])
+            && (Character.isSurrogate((char) k) == false))
+          {
+            variants.add(String.valueOf((char) k));
+          }
+        }
+        units.add(variants.toArray(new String[0]));
+      }
+      else if ((size == 2) && (caseFlag == false)
+        && Character.isLowSurrogate(searchString.charAt(i + 1)))
+      {
+        int[] cases = foldVariants(searchString.codePointAt(i));
+        String[] variants = new String[cases.length];
+        for (k = 0; k < cases.length; k ++)
+          variants[k] = new String(Character.toChars(cases[k]));
+        units.add(variants);
+      }
+      else
+        units.add(new String[] {searchString.substring(i, (i + size))});
+      i += size;
+    }
+
+    /* The user's encoding is included if it has one byte per character, such
+    as the local system's default encoding on many computers. */
+
+    encodings = new Vector();
+    encodings.add("UTF-8");
+    encodings.add("UTF-16LE");
+    encodings.add("UTF-16BE");
+    local = encodeName.equals(RAW_ENCODING) ? "ISO-8859-1"
+      : (encodeName.equals(LOCAL_ENCODING)
+      || encodeName.equals(DETECT_ENCODING)) ? null : encodeName;
+    try
+    {
+      java.nio.charset.Charset charset = (local == null)
+        ? java.nio.charset.Charset.defaultCharset()
+        : java.nio.charset.Charset.forName(local);
+      if (charset.newEncoder().maxBytesPerChar() == 1.0f)
+        encodings.add(charset.name());
+    }
+    catch (IllegalArgumentException iae) { } // unknown name, for reading too
+
+    /* Each encoding is one alternative.  Characters that can't be encoded are
+    left out of their group, and an encoding is dropped if a whole unit can't
+    be encoded.  Duplicates, such as ASCII in UTF-8 and ISO-8859-1, are only
+    searched once. */
+
+    express = new StringBuffer();
+    alternatives = new String[encodings.size()];
+    for (n = 0; n < encodings.size(); n ++)
+    {
+      java.nio.charset.Charset charset = java.nio.charset.Charset.forName(
+        (String) encodings.get(n));
+      java.nio.charset.CharsetEncoder encoder = charset.newEncoder();
+      buffer = new StringBuffer();
+      for (i = 0; (buffer != null) && (i < units.size()); i ++)
+      {
+        String[] variants = (String[]) units.get(i);
+        int found = 0;            // variants that can be encoded
+        buffer.append("(?:");
+        for (k = 0; k < variants.length; k ++)
+        {
+          if (encoder.canEncode(variants[k]) == false)
+            continue;             // not in this character set
+          buffer.append((found ++ > 0) ? "|" : "");
+          byte[] bytes = variants[k].getBytes(charset);
+          for (int b = 0; b < bytes.length; b ++)
+          {
+            if (Character.isLetterOrDigit((char) (bytes[b] & BYTE_MASK))
+              && (bytes[b] > 0)) // plain ASCII letter or digit
+            {
+              buffer.append((char) bytes[b]);
+            }
+            else
+              buffer.append("\\x" + Integer.toHexString(0x100
+                | (bytes[b] & BYTE_MASK)).substring(1));
+          }
+        }
+        buffer.append(")");
+        if (found == 0)           // can't encode this unit at all
+          buffer = null;
+      }
+      if (buffer == null)         // drop this encoding
+        continue;
+      alternatives[n] = buffer.toString();
+      if (Arrays.asList(alternatives).indexOf(alternatives[n]) == n)
+        express.append(((express.length() > 0) ? "|" : "") + "(?:"
+          + alternatives[n] + ")");
+    }
+
+    /* Use the linear-time engine, or nothing if it doesn't accept the
+    expression (for example, if it's too big). */
+
+    if (express.length() > 0)
+    {
+      byteEngine = new FileSearch1Regex(express.toString(), false);
+      if (byteEngine.supported == false) // shouldn't happen
+        byteEngine = null;
+    }
+    if (debugFlag)                // does user want debug information?
+      System.err.println("makeByteEngine express = <" + express + ">, engine = "
+        + ((byteEngine != null) ? "linear" : "none"));
+  }
+
+
+/*
+  makeFoldTable() method
+
+  Create the table of folded characters, once, for searches where uppercase
+  and lowercase are equal.  Each character maps to the lowercase of its
+  uppercase, which is how the Pattern class compares characters for
+  CASE_INSENSITIVE and UNICODE_CASE.  Looking up one char[] entry is much
+  faster than calling two Character methods for every character of every
+  line.  The table has 64K entries, for all of the Basic Multilingual Plane,
+  and that includes raw bytes and single-byte character sets.
+*/
+  static void makeFoldTable()
+  {
+    int i;                        // index variable
+    char[] table;                 // new table, before it is shared
+
+    if (foldTable != null)        // already created by an earlier search?
+      return;
+    table = new char[0x10000];    // one entry for each <char> value
+    for (i = 0; i < table.length; i ++)
+      table[i] = Character.toLowerCase(Character.toUpperCase((char) i));
+    foldTable = table;
+  }
+
+
+/*
+  makeLiteralFilter() method
+
+  Look for literal text that must appear in every match of a (syntactically
+  valid) regular expression, and set up <literalFilter> for the longest such
+  string.  We only look at the top level of the expression, and give up if
+  there is an alternation or an embedded flag, which could change the meaning
+  of what follows.  Anything we don't understand simply ends the current run
+  of literal characters, so the result may be shorter than possible, but is
+  never wrong.
+*/
+  static void makeLiteralFilter(
+    String express,               // regular expression that has compiled
+    boolean fold)                 // true if uppercase and lowercase are equal
+  {
+    String best;                  // longest required literal found so far
+    char ch;                      // one character from expression
+    int depth;                    // nesting level for groups being skipped
+    int i;                        // index variable
+    boolean lastLiteral;          // true if last atom was a literal character
+    int length;                   // size of expression in characters
+    int minimum;                  // minimum repeat count for a quantifier
+    StringBuffer run;             // current run of required literal characters
+
+    best = "";                    // no literal found yet
+    lastLiteral = false;          // no atoms before start of expression
+    length = express.length();    // get size of expression in characters
+    literalFilter = null;         // assume that there is no prefilter
+    run = new StringBuffer();     // no current run of literal characters
+    i = 0;                        // start at beginning of expression
+    while (i < length)
+    {
+      ch = express.charAt(i ++);  // get next character from expression
+      minimum = -1;               // assume this is not a quantifier
+      if (ch == '\\')            // escaped character or special sequence
+      {
+        ch = express.charAt(i ++); // valid syntax has something after escape
+        if (ch == 'Q')            // literal quote until \E or end of string
+        {
+          int end = express.indexOf("\\E", i); // find end of quoted text
+          if (end < 0) end = length; // quote may run to end of expression
+          run.append(express.substring(i, end)); // all quoted text is literal
+          lastLiteral = end > i;  // quantifier would apply to last character
+          i = Math.min(length, (end + 2)); // skip over quote and \E
+        }
+        else if (Character.isLetterOrDigit(ch)) // class, escape, or reference
+        {
+          /* Skip any arguments for this escape, such as octal digits, hex
+          digits, group numbers, property names, or group names. */
+
+          if (ch == 'c') i ++;    // control character
+          else if (ch == 'u') i += 4; // hex digits for Unicode escape
+          else if ((ch == 'x') && ((i >= length) || (express.charAt(i) != '{')))
+            i += 2;               // two hex digits for character escape
+          else if (Character.isDigit(ch)) // octal escape or back reference
+          {
+            while ((i < length) && Character.isDigit(express.charAt(i)))
+              i ++;
+          }
+          if ((i < length) && ((express.charAt(i) == '{')
+            || ((ch == 'k') && (express.charAt(i) == '<'))))
+          {
+            i = express.indexOf(((ch == 'k') ? '>' : '}'), i) + 1;
+          }
+          best = (run.length() > best.length()) ? run.toString() : best;
+          run.setLength(0);       // this atom is not a literal character
+          lastLiteral = false;
+        }
+        else                      // escaped punctuation is a literal
+        {
+          run.append(ch);
+          lastLiteral = true;
+        }
+      }
+      else if ((ch == '[') || (ch == '('))
+      {
+        /* Skip over a character class or a group, including nested groups and
+        classes, and escaped characters inside them. */
+
+        if ((ch == '(') && (i < length) && (express.charAt(i) == '?')
+          && (i + 1 < length) && (":=!<>".indexOf(express.charAt(i + 1)) < 0))
+        {
+          return;                 // embedded flags change meaning, give up
+        }
+        depth = 0;                // nesting level for parentheses
+        int inClass = 0;          // nesting level for brackets (classes)
+        i --;                     // back up to opening character
+        while (i < length)
+        {
+          ch = express.charAt(i ++);
+          if ((ch == '\\') && (i < length) && (express.charAt(i) == 'Q'))
+          {
+            i = express.indexOf("\\E", i); // skip quoted text
+            i = (i < 0) ? length : (i + 2);
+          }
+          else if (ch == '\\') i ++; // skip escaped character
+          else if (ch == '[')     // start of a character class
+          {
+            if (inClass ++ == 0)  // leading "^" and "]" are part of class
+            {
+              if ((i < length) && (express.charAt(i) == '^')) i ++;
+              if ((i < length) && (express.charAt(i) == ']')) i ++;
+            }
+          }
+          else if (inClass > 0)   // inside a class, only brackets matter
+          {
+            if ((ch == ']') && (-- inClass == 0) && (depth == 0))
+              break;              // end of class at the top level
+          }
+          else if (ch == '(') depth ++; // start of nested group
+          else if ((ch == ')') && (-- depth == 0))
+            break;                // end of outermost group
+        }
+        best = (run.length() > best.length()) ? run.toString() : best;
+        run.setLength(0);         // a group or class is not a literal
+        lastLiteral = false;
+      }
+      else if (ch == '|')         // alternation at the top level
+      {
+        return;                   // no single literal is required, give up
+      }
+      else if ((ch == '*') || (ch == '?'))
+        minimum = 0;              // previous atom is optional
+      else if (ch == '+')
+        minimum = 1;              // previous atom is required at least once
+      else if (ch == '{')         // counted repeat: {n} or {n,} or {n,m}
+      {
+        int end = i;              // find end of digits for minimum count
+        while ((end < length) && Character.isDigit(express.charAt(end)))
+          end ++;
+        minimum = Integer.parseInt(express.substring(i, end));
+        i = express.indexOf('}', end) + 1; // skip over rest of repeat count
+      }
+      else if ((ch == '.') || (ch == '^') || (ch == '$'))
+      {
+        best = (run.length() > best.length()) ? run.toString() : best;
+        run.setLength(0);         // these atoms are not literal characters
+        lastLiteral = false;
+      }
+      else                        // any other character is a literal
+      {
+        run.append(ch);
+        lastLiteral = true;
+      }
+
+      /* A quantifier applies to the last atom, and ends the current run.  If
+      the atom is a literal character that may appear zero times, then it must
+      be removed from the run.  Skip lazy or possessive suffixes. */
+
+      if (minimum >= 0)
+      {
+        if (lastLiteral && (minimum == 0) && (run.length() > 0))
+        {
+          run.setLength(run.length() - 1); // remove optional character
+          if ((run.length() > 0)
+            && Character.isHighSurrogate(run.charAt(run.length() - 1)))
+          {
+            run.setLength(run.length() - 1); // and first half of surrogate
+          }
+        }
+        best = (run.length() > best.length()) ? run.toString() : best;
+        run.setLength(0);         // quantified atom ends the current run
+        lastLiteral = false;
+        if ((i < length) && ((express.charAt(i) == '?')
+          || (express.charAt(i) == '+')))
+        {
+          i ++;                   // skip lazy or possessive suffix
+        }
+      }
+    }
+    best = (run.length() > best.length()) ? run.toString() : best;
+
+    /* Supplementary characters can't be folded one char at a time. */
+
+    if (best.length() == 0)       // did we find any required literal text?
+      return;                     // no, full pattern must be used everywhere
+    for (i = 0; i < best.length(); i ++)
+    {
+      if (fold && Character.isSurrogate(best.charAt(i)))
+        return;                   // give up on folding surrogate pairs
+    }
+
+    /* Build the literal and Horspool's table of shift distances.  Table entries
+    are shared by all characters with the same low-order bits, so we keep the
+    smallest shift for each entry. */
+
+    literalFilter = best.toCharArray();
+    literalFold = fold;
+    literalSkip = new int[LITERAL_SKIP];
+    Arrays.fill(literalSkip, literalFilter.length); // default is full length
+    for (i = 0; i < literalFilter.length; i ++)
+    {
+      if (fold)                   // are uppercase and lowercase equal?
+        literalFilter[i] = foldTable[literalFilter[i]];
+      if (i < (literalFilter.length - 1)) // last char has no shift of its own
+        literalSkip[literalFilter[i] & (LITERAL_SKIP - 1)] =
+          literalFilter.length - 1 - i;
+    }
+  } // end of makeLiteralFilter() method
+
+
+/*
+  makeRegularPlain() method
+
+  Convert plain text into an equivalent regular expression.  This allows us to
+  search for plain text with the same algorithm as regular expressions -- and
+  isn't much slower.
+*/
+  static String makeRegularPlain(String text)
+  {
+    StringBuffer buffer;          // faster than String for multiple appends
+    char ch;                      // one character from input string
+    int i;                        // index variable
+    int length;                   // size of input string in characters
+
+    buffer = new StringBuffer();  // allocate empty string buffer for result
+    length = text.length();       // get size of caller's string in characters
+    for (i = 0; i < length; i ++) // do all characters in caller's string
+    {
+      ch = text.charAt(i);        // get one character from caller's string
+      if ((ch == '$') || (ch == '(') || (ch == ')') || (ch == '*')
+        || (ch == '+') || (ch == '.') || (ch == '?') || (ch == '[')
+        || (ch == '\\') || (ch == ']') || (ch == '^') || (ch == '{')
+        || (ch == '|') || (ch == '}'))
+      {
+        buffer.append('\\');      // escape this special character
+      }
+      buffer.append(ch);          // and append the original character
+    }
+    return(buffer.toString());    // give caller our converted string
+
+  } // end of makeRegularPlain() method
+
+
+/*
+  parseSizeOption() method
+
+  Parse a file size from a command-line option: a number of bytes, with an
+  optional suffix K, M, or G for binary kilobytes, megabytes, or gigabytes.
+  Return -1 if the syntax is wrong.
+*/
+  static long parseSizeOption(String text)
+  {
+    long multiplier;              // bytes in each unit
+    String number;                // digits without the suffix
+
+    number = text.trim().toLowerCase();
+    multiplier = 1;               // assume plain number of bytes
+    if (number.endsWith("k")) multiplier = 1024L;
+    else if (number.endsWith("m")) multiplier = 1024L * 1024L;
+    else if (number.endsWith("g")) multiplier = 1024L * 1024L * 1024L;
+    if (multiplier > 1)           // remove suffix from number
+      number = number.substring(0, (number.length() - 1));
+    try                           // try to parse remainder as unsigned integer
+    {
+      long result = Long.parseLong(number);
+      if ((result < 0) || (result > (Long.MAX_VALUE / multiplier)))
+        return(-1);               // negative or too big
+      return(result * multiplier);
+    }
+    catch (NumberFormatException nfe) // if not a number or bad syntax
+    {
+      return(-1);
+    }
+  }
+
+
+/*
+  parseTimeOption() method
+
+  Parse a date and time from a command-line option.  This is either an age
+  before now, as a number with a suffix S, M, H, D, or W (seconds, minutes,
+  hours, days, weeks), or a local date as yyyy-MM-dd with an optional time as
+  HH:mm or HH:mm:ss.  Return the time in milliseconds, or -1 if the syntax is
+  wrong.
+*/
+  static long parseTimeOption(String text)
+  {
+    String[] formats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss",
+      "yyyy-MM-dd HH:mm", "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd"};
+    int i;                        // index variable
+    Matcher matcher;              // pattern matcher for ages
+    long unit;                    // milliseconds in each unit of age
+
+    matcher = Pattern.compile("(\\d{1,9})([smhdw])").matcher(
+      text.trim().toLowerCase());
+    if (matcher.matches())        // is this an age like 12h or 7d?
+    {
+      switch (matcher.group(2).charAt(0))
+      {
+        case 's': unit = 1000L; break;
+        case 'm': unit = 60L * 1000L; break;
+        case 'h': unit = 60L * 60L * 1000L; break;
+        case 'd': unit = 24L * 60L * 60L * 1000L; break;
+        default: unit = 7L * 24L * 60L * 60L * 1000L; break;
+      }
+      return(Math.max(1, (System.currentTimeMillis()
+        - (Long.parseLong(matcher.group(1)) * unit))));
+    }
+    for (i = 0; i < formats.length; i ++) // try each date format in order
+    {
+      SimpleDateFormat parser = new SimpleDateFormat(formats[i]);
+      parser.setLenient(false);   // reject dates like 2007-02-31
+      ParsePosition position = new ParsePosition(0);
+      Date date = parser.parse(text.trim(), position);
+      if ((date != null) && (position.getIndex() == text.trim().length()))
+        return(Math.max(1, date.getTime())); // entire text was parsed
+    }
+    return(-1);                   // not an age or a date
+
+  } // end of parseTimeOption() method
+
+
+/*
+  prettyPlural() method
+
+  Return a string that formats a number and appends a lowercase "s" to a word
+  if the number is plural (not one).  Also provide a more general method that
+  accepts both a singular word and a plural word.
+*/
+  static String prettyPlural(
+    long number,                  // number to be formatted
+    String singular)              // singular word
+  {
+    return(prettyPlural(number, singular, (singular + "s")));
+  }
+
+  static String prettyPlural(
+    long number,                  // number to be formatted
+    String singular,              // singular word
+    String plural)                // plural word
+  {
+    final String[] names = {"zero", "one", "two"};
+                                  // names for small counting numbers
+    String result;                // our converted result
+
+    if ((number >= 0) && (number < names.length))
+      result = names[(int) number]; // use names for small counting numbers
+    else
+      result = formatComma.format(number); // format number with digit grouping
+
+    if (number == 1)              // is the number singular or plural?
+      result += " " + singular;   // append singular word
+    else
+      result += " " + plural;     // append plural word
+
+    return(result);               // give caller our converted string
+
+  } // end of prettyPlural() method
+
+
+/*
+  processContents() method
+
+  Search some or all of the contents of a folder, in order: files directly,
+  and subfolders by calling processFileOrFolder().  When searching in
+  parallel, each file or subfolder is a new task.
+*/
+  static void processContents(
+    File[] contents,              // files and subfolders from one folder
+    FileSearch1Task task)         // our task if parallel search, or null
+  {
+    int i, k;                     // index variables
+    File next;                    // next File object from <contents>
+    int prefetchNext;             // index of first file not yet read ahead
+
+    prefetchNext = 0;             // nothing in this list read ahead yet
+    for (i = 0; i < contents.length; i ++) // for each file in order
+    {
+      if (cancelFlag) return;     // stop if user hit the panic button
+      next = contents[i];         // get next File object from <contents>
+      if ((checkpoint != null) && checkpoint.skipped(next))
+        continue;                 // finished before last checkpoint
+      if ((hiddenFlag == false) && next.isHidden()) // hidden file or folder?
+      {
+        if (reportIndex == 6)     // are we reporting all files?
+          putOutput("Ignoring hidden " + next.getPath());
+      }
+      else if (next.isDirectory()) // a subfolder inside caller's folder?
+      {
+        if (recurseFlag && (task != null)) // searching in parallel?
+          task.start(next);       // another task handles this subfolder
+        else if (recurseFlag)     // do subfolders only if option selected
+          processFileOrFolder(next); // call ourself to handle subfolders
+        else if (reportIndex == 6) // are we reporting all files?
+          putOutput("Ignoring subfolder " + next.getPath());
+      }
+      else if (next.isFile())     // we do want to look at normal files
+      {
+        String reason = checkFileFilter(next); // size or date excluded?
+        if (reason != null)       // don't open files that are filtered out
+        {
+          if (reportIndex == 6)   // are we reporting all files?
+            putOutput("Ignoring " + reason + " " + next.getPath());
+          continue;
+        }
+
+        /* Files are searched in the same order as they are listed, until we
+        find a subfolder.  Give this run of files to the read-ahead thread,
+        so that reading overlaps with searching. */
+
+        if (task != null)         // searching in parallel?
+        {
+          task.start(next);       // another task handles this file
+          continue;
+        }
+        if ((prefetcher != null) && (i >= prefetchNext)) // new run?
+        {
+          for (k = i; k < contents.length; k ++)
+          {
+            if ((hiddenFlag == false) && contents[k].isHidden())
+              continue;           // hidden files will be ignored
+            if ((checkpoint != null) && checkpoint.skipped(contents[k]))
+              continue;           // finished before last checkpoint
+            if (recurseFlag && contents[k].isDirectory())
+              break;              // subfolder will be searched before more
+            if (contents[k].isFile() // only normal files are searched
+              && (checkFileFilter(contents[k]) == null))
+            {
+              prefetcher.add(contents[k]);
+            }
+          }
+          prefetchNext = k;       // next run of files starts after this
+        }
+        processUnknownFile(next); // figure out what to do with this file
+      }
+      else if (reportIndex == 6) // file directory has an invalid entry
+      {
+        putOutput("Ignoring unknown " + next.getPath());
+      }
+    }
+  } // end of processContents() method
+
+
+/*
+  processFileOrFolder() method
+
+  The caller gives us a Java File object that may be a file, a folder, or just
+  random garbage.  Search all files.  Get folder contents and process each file
+  found, doing subfolders only if the <recurseFlag> is true.
+*/
+  static void processFileOrFolder(File givenFile)
+  {
+    File[] contents;              // contents if <givenFile> is a folder
+    FileSearch1Listing listing;   // lists contents in sorted order
+    long startFiles, startLines, startMatches; // counts before this folder
+    FileSearch1Task task;         // our task if parallel search, or null
+
+    if (cancelFlag) return;       // stop if user hit the panic button
+    task = (FileSearch1Task) currentTask.get();
+    if ((task == null) && (followFlag == false)
+      && ((threadCount > 1) || (virtualLimit > 0))) // search in parallel?
+    {
+      processParallel(givenFile); // search with many threads, report in order
+      return;
+    }
+
+    /* Decide what kind of File object this is, or if it's even real!  The code
+    when we find a subfolder mimics the overall structure of this method, with
+    the exception of hidden files or folders.  We always process files given to
+    us by the user, whether hidden or not. */
+
+    if (givenFile.isDirectory())  // is this "file" actually a folder?
+    {
+      if ((checkpoint == null) || (checkpoint.resumed(givenFile) == false))
+        synchronized (FileSearch1.class) { folderCount ++; } // one more folder
+      if ((checkpoint != null) && (task == null)) // in order, no tasks?
+        checkpoint.folderDone(givenFile);
+      startFiles = matchCount;    // totals for this folder are differences
+      startLines = countLines;
+      startMatches = countMatches;
+      if (task != null)           // tasks for contents will report totals
+        task.folder = true;
+      setStatusMessage("Folder " + givenFile.getPath());
+      rateLimit.takeFile();       // listing a folder counts as a file
+      if ((prefetchDepth > 0) && (followFlag == false) && (task == null)
+        && (prefetcher == null))  // read ahead when searching one at a time?
+        prefetcher = new FileSearch1Prefetch(prefetchDepth, prefetchMemory);
+
+      /* Usually the whole folder is listed and sorted at once.  When streaming,
+      the folder is listed and searched in batches, so that a folder with
+      millions of files doesn't need an array of millions of File objects. */
+
+      listing = null;
+      try
+      {
+        listing = new FileSearch1Listing(givenFile, (streamIndex > 0),
+          (streamIndex != 2), streamChunk); // sorted unless user says not
+        while ((cancelFlag == false) && ((contents = listing.next(
+          STREAM_BATCH)).length > 0)) // whole folder if not streaming
+        {
+          if (ignoreFlag)         // remove files excluded by ignore files?
+            contents = removeIgnored(givenFile, contents, (reportIndex == 6));
+          processContents(contents, task);
+        }
+      }
+      catch (AccessDeniedException ade) // same as listFiles() returning null
+        { /* no contents for a protected folder */ }
+      catch (IOException ioe)     // temporary file for sorting, etc
+      {
+        putError("Can't list folder " + givenFile.getPath() + ": "
+          + ioe.getMessage());
+      }
+      finally
+      {
+        if (listing != null)      // delete any temporary files
+          listing.close();
+      }
+      if (prefetcher != null)     // forget files that weren't searched
+        prefetcher.clear();
+      if ((countIndex == 1) && (task == null)) // folder totals, in order?
+      {
+        reportFolderCount(givenFile, (matchCount - startFiles),
+          (countLines - startLines), (countMatches - startMatches));
+      }
+    }
+    else if (givenFile.isFile())  // we do want to look at normal files
+    {
+      String reason = checkFileFilter(givenFile); // size or date excluded?
+      if (reason == null)         // file isn't filtered out
+        processUnknownFile(givenFile); // figure out what to do with this file
+      else if (reportIndex == 6)  // are we reporting all files?
+        putOutput("Ignoring " + reason + " " + givenFile.getPath());
+    }
+    else                          // user gave bad file or folder name
+    {
+      putError("Not a file or folder: " + givenFile.getPath());
+    }
+  } // end of processFileOrFolder() method
+
+
+/*
+  processParallel() method
+
+  Search a file or folder with many threads.  Each file and each folder is a
+  separate task.  A task for a folder lists the folder and starts new tasks for
+  its contents, without waiting for them.  The threads are either a fixed pool
+  of platform threads (best when searching is limited by the CPU), or one
+  virtual thread per task (best when opening and reading files is slow, such
+  as on network drives).  Virtual threads need Java 21 or later, so we find
+  them by name; a semaphore limits the number of files and folders open at the
+  same time.  Output from each task is saved, and reported in the same order
+  as searching one file at a time.
+*/
+  static void processParallel(File givenFile)
+  {
+    FileSearch1Task root;         // task for caller's file or folder
+
+    if ((searchPattern == null) && (compileSearch() == false))
+      return;                     // return early, error already reported
+
+    /* Create the thread pool the first time we need it, and keep it for later
+    searches. */
+
+    if (taskExecutor == null)     // have we already created a thread pool?
+    {
+      ThreadFactory factory = new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "FileSearch1Task");
+          thread.setDaemon(true); // don't keep application alive
+          return(thread); } };
+
+      if (virtualLimit > 0)       // does user want virtual threads?
+      {
+        try                       // Java 21: new virtual thread for each task
+        {
+          taskExecutor = (ExecutorService) Executors.class.getMethod(
+            "newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e)       // older Java, no virtual threads
+        {
+          putError("Virtual threads need Java 21 or later; using platform"
+            + " threads.");
+          taskExecutor = Executors.newCachedThreadPool(factory);
+        }
+        taskLimit = new Semaphore(virtualLimit); // limit open files, folders
+      }
+      else
+        taskExecutor = Executors.newFixedThreadPool(threadCount, factory);
+      if (debugFlag)              // does user want debug information?
+        System.err.println("processParallel taskExecutor = " + taskExecutor);
+    }
+
+    /* Start the first task, then report results as tasks finish, in order. */
+
+    root = new FileSearch1Task(givenFile, taskLimit);
+    taskExecutor.execute(root);   // start searching on other threads
+    root.report();                // wait for results in order
+
+  } // end of processParallel() method
+
+
+/*
+  processPieces() method
+
+  Search a huge file in pieces, on a pool of threads, and report the result.
+  Each piece starts after the first line feed at or after a multiple of the
+  piece size, so lines are never split between pieces, and a piece starts
+  with nothing left over from the piece before.  This only works when a byte
+  with the value of a line feed is always a line feed, as in UTF-8 and other
+  encodings with one byte per character, and where decoding can start at any
+  line.  Line numbers are counted in each piece, and added in order for the
+  first match.  Pieces after a match stop early.  Searches that need every
+  line in order (counting, context, boolean queries, batches) aren't split.
+  Return false if the file should be searched in the usual way.
+*/
+  static boolean processPieces(File givenFile, Object fileKey)
+  {
+    long before;                  // line ends in pieces before <first>
+    byte[] buffer;                // bytes for finding line feeds
+    Charset charset;              // character set encoding for this file
+    int count;                    // number of bytes used in <buffer>
+    long deadline;                // time limit for whole file, or zero
+    FileSearch1Piece first;       // earliest piece that decides the result
+    int i;                        // index variable
+    long length;                  // size of caller's file in bytes
+    long offset;                  // file offset while finding pieces
+    FileSearch1Piece[] pieces;    // all pieces of the file
+    long read;                    // bytes read by all pieces, if counted
+    Vector starts;                // <Long> file offsets where pieces start
+    RandomAccessFile stream;      // file for finding line feeds
+    FileSearch1Verdict verdict;   // result for the whole file
+
+    if ((batchList != null) || (searchQuery != null) || (countIndex > 0)
+      || (contextAfter > 0) || (contextBefore > 0) || (byteEngine != null)
+      || (prefetcher != null) || (fileByteLimit > 0) || (dedupIndex == 2)
+      || encodeName.equals(DETECT_ENCODING))
+    {
+      return(false);              // search needs the whole file in order
+    }
+    if (encodeName.equals(RAW_ENCODING) == false) // decode characters?
+    {
+      try                         // encoding names may not be supported
+      {
+        charset = encodeName.equals(LOCAL_ENCODING) ? Charset.defaultCharset()
+          : Charset.forName(encodeName);
+        if ((charset.name().equals("UTF-8") == false)
+          && ((charset.newEncoder().maxBytesPerChar() != 1)
+          || (Arrays.equals("\r\n".getBytes(charset), new byte[] {'\r',
+          '\n'}) == false)))     // not one byte each, with ASCII line ends?
+        {
+          return(false);
+        }
+      }
+      catch (RuntimeException re) // bad name, or decoding only
+      {
+        return(false);            // report errors in the usual way
+      }
+    }
+
+    /* Find where each piece starts.  A file without line feeds after the
+    first piece is searched in the usual way. */
+
+    buffer = new byte[BUFFER_SIZE]; // allocate space for reading
+    length = givenFile.length();  // get total file size in bytes
+    starts = new Vector();        // first piece starts at beginning of file
+    starts.add(Long.valueOf(0));
+    try                           // catch general I/O errors
+    {
+      stream = new RandomAccessFile(givenFile, "r");
+      offset = 0;
+      while ((offset += splitSize) < length) // where next piece would start
+      {
+        stream.seek(offset);
+        i = -1;                   // no line feed found yet
+        while ((i < 0) && ((count = stream.read(buffer)) > 0))
+        {
+          for (i = 0; (i < count) && (buffer[i] != '\n'); i ++)
+            { /* do nothing: find first line feed */ }
+          if (i >= count)         // not in this buffer, try the next
+          {
+            offset += count;
+            i = -1;
+          }
+        }
+        if (i < 0) break;         // no more line feeds in file
+        offset += i + 1;          // next piece starts after line feed
+        if (offset < length)      // anything left for the next piece?
+          starts.add(Long.valueOf(offset));
+      }
+      stream.close();
+    }
+    catch (IOException ioe)       // report errors in the usual way
+    {
+      return(false);
+    }
+    if (starts.size() < 2)        // only one piece?
+      return(false);
+
+    /* Create the thread pool the first time we need it.  There is one thread
+    for each file that is searched at the same time, or one per processor. */
+
+    if (pieceExecutor == null)    // have we already created a thread pool?
+    {
+      ThreadFactory factory = new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "FileSearch1Piece");
+          thread.setDaemon(true); // don't keep application alive
+          return(thread); } };
+
+      pieceExecutor = Executors.newFixedThreadPool(((threadCount > 1)
+        ? threadCount : Runtime.getRuntime().availableProcessors()), factory);
+      if (debugFlag)              // does user want debug information?
+        System.err.println("processPieces pieceExecutor = " + pieceExecutor);
+    }
+
+    /* Search all pieces, and wait for every piece to finish.  Pieces after
+    the first match stop soon after it is found. */
+
+    if (debugFlag)                // does user want debug information?
+      System.err.println("processPieces " + prettyPlural(starts.size(),
+        "piece") + " for givenFile = <" + givenFile.getPath() + ">");
+    setStatusMessage("Reading " + givenFile.getPath() + " in "
+      + prettyPlural(starts.size(), "piece"));
+    deadline = (fileTimeLimit > 0) ? (System.currentTimeMillis()
+      + fileTimeLimit) : 0;       // when we give up on this file, if ever
+    pieces = new FileSearch1Piece[starts.size()];
+    for (i = 0; i < pieces.length; i ++)
+    {
+      pieces[i] = new FileSearch1Piece(givenFile, pieces, i,
+        ((Long) starts.get(i)).longValue(), (((i + 1) < pieces.length)
+        ? ((Long) starts.get(i + 1)).longValue() : length), deadline);
+    }
+    for (i = 0; i < pieces.length; i ++)
+      pieceExecutor.execute(pieces[i]);
+    read = 0;                     // no bytes read yet
+    for (i = 0; i < pieces.length; i ++)
+    {
+      pieces[i].waitDone();       // wait for this piece to finish
+      read += pieces[i].read;
+    }
+    if (progress != null)         // rest of file counts as done, if not read
+      progress.addFile(Math.max(0, (length - read)));
+
+    /* The first piece that found a match, ran out of time, or had an error
+    decides the result.  Earlier pieces were searched to the end, and their
+    lines come before the lines in this piece. */
+
+    before = 0;                   // no lines in earlier pieces yet
+    first = null;                 // no piece has decided yet
+    for (i = 0; i < pieces.length; i ++)
+    {
+      if (pieces[i].found || pieces[i].timeout || (pieces[i].error != null))
+      {
+        first = pieces[i];
+        break;
+      }
+      before += pieces[i].lines;  // all lines in piece were searched
+    }
+    if ((first != null) && (first.error != null)) // couldn't read file?
+    {
+      putError(first.error);
+      return(true);
+    }
+    if ((first != null) && first.timeout && ((cancelFlag == false)
+      || timeoutFlag))            // neither found nor not found
+    {
+      synchronized (FileSearch1.class) { timeoutCount ++; } // one more file
+      putError("Time limit exceeded for " + givenFile.getPath() + " at line "
+        + formatComma.format(before + first.lineNumber));
+    }
+    else if ((cancelFlag == false) || timeoutFlag) // found or not found
+    {
+      verdict = new FileSearch1Verdict(givenFile.getPath()); // not found
+      if (first != null)          // found, in this piece
+      {
+        verdict = first.verdict;
+        verdict.lineNumber += before; // line number in whole file
+      }
+      reportFile(givenFile, verdict, null);
+      if (fileKey != null)        // can we find hard links to this file?
+        dedupMap.put(fileKey, verdict);
+      if (dedupIndex == 2)        // pieces don't hash, so wait for copies
+        dedupSave(givenFile, verdict, null);
+    }
+    return(true);                 // file has been searched and reported
+
+  } // end of processPieces() method
+
+
+/*
+  processShards() method
+
+  Split the files to be searched among worker processes, which may be on this
+  computer or others, and merge their results in order.  We walk the folders
+  here, with the same rules as a normal search, so that the list of files is
+  in the same order as a normal search.  Each worker gets a contiguous part of
+  this list, balanced by size, and results are reported one worker at a time:
+  the first worker's results as they arrive, and later workers' results after
+  they have been saved.  Totals are added from each worker's summary.
+
+  Options for the workers are the options on our command line, except the
+  options that only make sense for us.
+*/
+  static void processShards(
+    String[] args,                // command-line parameters
+    int first,                    // index of first file name in <args>
+    Vector roots)                 // File objects given by the user
+  {
+    long done;                    // weight of files given to workers so far
+    Vector files;                 // File objects to be searched, in order
+    int i, k;                     // index variables
+    Vector options;               // command-line options for workers
+    int[] ports;                  // port numbers for workers
+    Process[] processes;          // local worker processes, or null
+    FileSearch1Shard[] shards;    // one connection for each worker
+    Vector sizes;                 // Long sizes for <files>
+    int start;                    // index of first file for next worker
+    String token;                 // password that workers expect from us
+    long total;                   // total weight of all files
+    String[] workers;             // host names for workers
+    String word;                  // one parameter from command line
+
+    if (followFlag)               // workers would never finish
+    {
+      putError("Can't follow growing files with -workers option.");
+      cancelFlag = true;          // tell main() to stop
+      return;
+    }
+    if (checkpoint != null)       // workers don't report files in order
+    {
+      putError("Can't save checkpoints with -workers option.");
+      cancelFlag = true;          // tell main() to stop
+      return;
+    }
+    if ((countIndex == 1) || (countIndex == 3)) // workers only see files
+    {
+      putError("Can't count folders or extensions with -workers option; use"
+        + " -count=total.");
+      cancelFlag = true;          // tell main() to stop
+      return;
+    }
+
+    /* Find the files to be searched. */
+
+    files = new Vector();
+    sizes = new Vector();
+    for (i = 0; i < roots.size(); i ++)
+      shardFiles((File) roots.get(i), files, sizes);
+
+    /* Options for workers are everything on the command line that isn't a
+    file name, without options for coordinators, workers, progress, or the
+    graphical interface.  Workers refuse options that aren't for searching. */
+
+    options = new Vector();
+    for (i = 0; i < args.length; i ++)
+    {
+      word = args[i].toLowerCase(); // easier to process if consistent case
+      if ((i >= first) && (word.startsWith("-") == false)
+        && ((mswinFlag == false) || (word.startsWith("/") == false)))
+      {
+        continue;                 // file or folder name
+      }
+      if (word.startsWith("checkpoint", 1) || word.startsWith("filelist=", 1)
+        || word.startsWith("progress", 1) || word.startsWith("totals", 1)
+        || word.startsWith("u", 1) || word.startsWith("w", 1)
+        || word.equals("-x") || (mswinFlag && word.equals("/x")))
+      {
+        continue;                 // option for ourself, not workers
+      }
+      options.add(args[i]);
+    }
+
+    /* Start local workers, or use the list of host names and port numbers.
+    Local workers listen on any free port, and tell us which port.  They get a
+    new random password in their environment, where other users can't see it.
+    Workers that are already listening have the user's password. */
+
+    processes = null;             // no local workers yet
+    token = System.getenv(FileSearch1Worker.TOKEN_NAME);
+    try
+    {
+      if (workerList.indexOf(':') < 0) // number of local workers?
+      {
+        byte[] random = new byte[16]; // 128 bits is plenty for a password
+        new SecureRandom().nextBytes(random);
+        token = "";
+        for (i = 0; i < random.length; i ++)
+          token += Integer.toHexString((random[i] & 0xFF) | 0x100).substring(1);
+        processes = new Process[Integer.parseInt(workerList)];
+        workers = new String[processes.length];
+        ports = new int[processes.length];
+        for (i = 0; i < processes.length; i ++) // start all before waiting
+        {
+          Vector command = FileSearch1Worker.command();
+          command.add("-worker=0"); // any free port on localhost
+          ProcessBuilder builder = new ProcessBuilder(command);
+          builder.environment().put(FileSearch1Worker.TOKEN_NAME, token);
+          builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+          processes[i] = builder.start();
+        }
+        for (i = 0; i < processes.length; i ++) // "listening on ... port #"
+        {
+          String line = new BufferedReader(new InputStreamReader(
+            processes[i].getInputStream())).readLine();
+          if (line == null)       // worker didn't start
+            throw new IOException("no port number from worker process");
+          workers[i] = "127.0.0.1";
+          ports[i] = Integer.parseInt(line.substring(line.lastIndexOf(' ')
+            + 1));
+        }
+      }
+      else                        // workers that are already listening
+      {
+        if ((token == null) || (token.length() == 0))
+        {
+          putError("Workers need a password in the "
+            + FileSearch1Worker.TOKEN_NAME + " environment variable.");
+          cancelFlag = true;      // tell main() to stop
+          return;
+        }
+        String[] list = workerList.split(",");
+        workers = new String[list.length];
+        ports = new int[list.length];
+        for (i = 0; i < list.length; i ++)
+        {
+          k = list[i].lastIndexOf(':');
+          workers[i] = list[i].substring(0, k);
+          ports[i] = Integer.parseInt(list[i].substring(k + 1));
+        }
+      }
+    }
+    catch (IOException ioe)       // can't start Java, or no port number
+    {
+      putError("Can't start worker processes: " + ioe.getMessage());
+      if (processes != null)      // stop any that did start
+        for (i = 0; i < processes.length; i ++)
+          if (processes[i] != null) processes[i].destroy();
+      cancelFlag = true;          // tell main() to stop
+      return;
+    }
+
+    /* Split the list of files into contiguous parts with about the same total
+    size.  Each file counts one extra byte, so empty files are also shared. */
+
+    total = files.size();
+    for (i = 0; i < sizes.size(); i ++)
+      total += ((Long) sizes.get(i)).longValue();
+    shards = new FileSearch1Shard[workers.length];
+    done = 0;
+    start = 0;
+    for (i = 0; i < workers.length; i ++)
+    {
+      k = start;                  // take at least one file, if any remain
+      while ((k < files.size()) && ((k == start) || (i == (workers.length - 1))
+        || (done < ((total * (i + 1)) / workers.length))))
+      {
+        done += ((Long) sizes.get(k)).longValue() + 1;
+        k ++;
+      }
+      shards[i] = new FileSearch1Shard(workers[i], ports[i], token, options,
+        new Vector(files.subList(start, k)));
+      if (debugFlag)              // does user want debug information?
+        System.err.println("processShards worker " + workers[i] + ":"
+          + ports[i] + " gets " + (k - start) + " files");
+      start = k;
+      if (shards[i].files.size() > 0) // don't bother idle workers
+        new Thread(shards[i], "FileSearch1Shard").start();
+      else
+        shards[i].done = true;
+    }
+
+    /* Report results in order, and add totals from each worker. */
+
+    for (i = 0; i < shards.length; i ++)
+    {
+      shards[i].report();         // returns when this worker is finished
+      if (shards[i].totals != null) // did the worker finish properly?
+      {
+        matchCount += (int) shards[i].totals[0];
+        failCount += (int) shards[i].totals[1];
+        folderCount += (int) shards[i].totals[2];
+        dedupCount += (int) shards[i].totals[3];
+        countLines += shards[i].totals[4];
+        countMatches += shards[i].totals[5];
+        if (shards[i].totals.length > 6) // older workers don't have this
+          timeoutCount += (int) shards[i].totals[6];
+      }
+    }
+    if (processes != null)        // stop our local workers
+      for (i = 0; i < processes.length; i ++)
+        processes[i].destroy();
+
+  } // end of processShards() method
+
+
+/*
+  processUnknownFile() method
+
+  The caller gives us a Java File object that is known to be a file, not a
+  directory.  Read until we either find the search string or reach the end of
+  the file.  When called for one piece of a huge file, read only that piece,
+  and save the results in the piece instead of reporting them.
+*/
+  static void processUnknownFile(File givenFile)
+  {
+    FileSearch1Verdict[] batch;   // result for each batch query, or null
+    int batchLeft;                // batch queries not found yet
+    FileSearch1Regex byteSearch;  // byte search for this file, or null
+    int ch;                       // one input character, or -1 for end-of-file
+    char[] charBuffer;            // decoded characters, from <decoder>
+    int charCount;                // number of characters used in <charBuffer>
+    int charNext;                 // index of next character in <charBuffer>
+    long charRead;                // number of characters read (not bytes)
+    long charTold;                // we've told user about this many characters
+    String charsetName;           // encoding for this file, maybe detected
+    String decodeName;            // encoding for showing byte search lines
+    String detected;              // encoding guessed from first bytes
+    FileSearch1Context context;   // lines around each match, or null
+    long deadline;                // time limit for this file, or zero
+    FileSearch1Decoder decoder;   // decodes bytes into characters, or null
+    MessageDigest digest;         // hash of file contents, or null
+    boolean done;                 // true when we are done reading from file
+    boolean eof;                  // true if we read to the end of the file
+    Object fileKey;               // unique file identifier, or null
+    String fileName;              // name for caller's file, fetched once only
+//  long fileSize;                // size of caller's file in bytes (not chars)
+    boolean found;                // true if the search pattern was found
+    StringBuffer lineBuffer;      // buffer for assembling one line of text
+    int lineCount;                // number of characters used in <lineBuffer>
+    long lineNumber;              // current line number in file, assuming text
+    boolean lineReady;            // true when line buffer is complete or full
+    FileSearch1Piece piece;       // piece of a huge file, or null
+    int[] position;               // starting and ending index of match
+    FileSearch1Query query;       // state of boolean query for this file
+    byte[] rawBuffer;             // buffer for raw 8-bit bytes, from pool
+    int rawCount;                 // number of bytes used in <rawBuffer>
+    int rawNext;                  // index of next byte "read" in <rawBuffer>
+    InputStream rawStream;        // input stream for raw 8-bit bytes
+    FileSearch1ProgressStream readCount; // counts bytes read, or null
+    FileSearch1Scan scan;         // skips lines that can't match, or null
+    int scanAfter;                // don't skip again until after this index
+    boolean timeout;              // true if time limit expired for this file
+    FileSearch1Verdict verdict;   // result for this file, or a duplicate
+    boolean wasCr;                // true if last character was carriage return
+
+    /* Get some basic information about the caller's file.  Fetching the name
+    and the size won't cause any errors (exceptions). */
+
+    if (cancelFlag) return;       // stop if user hit the panic button
+    fileName = givenFile.getPath(); // use full path name as the file name
+//  fileSize = givenFile.length(); // get total file size in bytes (not chars)
+
+    /* Compile the search string as a regular expression, if we haven't already
+    done so. */
+
+    if ((searchPattern == null) && (compileSearch() == false))
+      return;                     // return early, error already reported
+
+    /* When following files that grow, such as log files, the file is searched
+    from the beginning by the same method that later searches new data. */
+
+    if (followFlag)               // keep searching this file as it grows?
+    {
+      followAdd(givenFile);       // remember file, search existing contents
+      return;                     // there is no final result for this file
+    }
+
+    /* Don't search a file with the same contents as a file we have already
+    searched.  Reuse the earlier result, and say that it's a duplicate. */
+
+    fileKey = null;               // assume no unique file identifier
+    piece = (FileSearch1Piece) currentPiece.get(); // piece of a huge file?
+    if ((dedupIndex > 0) && (piece == null)) // looking for duplicate files?
+    {
+      fileKey = getFileKey(givenFile); // same as an earlier file?
+      verdict = dedupLookup(givenFile, fileKey);
+      if (verdict != null)        // yes, this is a duplicate
+      {
+        if (currentTask.get() == null) // parallel search counts in order
+          synchronized (FileSearch1.class) { dedupCount ++; }
+        if (progress != null)     // duplicate counts as done
+          progress.addFile(givenFile.length());
+        reportFile(givenFile, verdict, verdict.path);
+        return;
+      }
+    }
+
+    /* A huge file may be split into pieces that are searched at the same
+    time.  Each piece calls this method again, on another thread. */
+
+    if ((piece == null) && (splitSize > 0) && (givenFile.length() > splitSize)
+      && processPieces(givenFile, fileKey)) // searched and reported?
+    {
+      return;
+    }
+
+    /* Tell GUI users which file we are about to open and read.  This status
+    will be updated later for really big files. */
+
+    setStatusMessage("Reading " + fileName);
+
+    /* Buffers for raw bytes, decoded characters, and the line of text come
+    from a pool shared by all threads, and are returned when we are done with
+    this file.  Small files would otherwise spend more time allocating and
+    clearing buffers than searching. */
+
+    charBuffer = bufferPool.takeChars();
+    lineBuffer = bufferPool.takeLine();
+    rawBuffer = bufferPool.takeBytes();
+
+    /* Try to open the data file for reading. */
+
+    try                           // catch specific and general I/O errors
+    {
+      charCount = charNext = 0;   // mark character buffer empty
+      decoder = null;             // assume there will be no decoder
+      digest = null;              // assume we don't need a content hash
+      eof = false;                // haven't reached end of file yet
+      rawCount = rawNext = 0;     // mark raw buffer empty
+      rawStream = (prefetcher == null) ? null : prefetcher.open(givenFile);
+      if (rawStream == null)      // if this file wasn't read ahead
+        rawStream = rateLimit.open(givenFile); // always need raw bytes
+      if (piece != null)          // read only our piece of a huge file
+        rawStream = new FileSearch1PieceStream(rawStream, piece);
+      readCount = null;           // assume no progress counters
+      if ((progress != null) || (fileByteLimit > 0)) // count bytes read?
+        rawStream = readCount = new FileSearch1ProgressStream(rawStream,
+          progress, fileByteLimit);
+      if (dedupIndex == 2)        // hash contents while we read the file?
+      {
+        digest = MessageDigest.getInstance("SHA-256");
+        rawStream = new DigestInputStream(rawStream, digest);
+      }
+
+      /* Guess the encoding of each file from a sample of its first bytes.  A
+      byte order mark (BOM) for UTF-8 is skipped here; the UTF-16 decoder
+      skips its own BOM.  Binary files are read as raw bytes.  The sample stays
+      in the raw buffer, to be searched or decoded first.  The byte search for
+      the -n option also takes a sample, only to show UTF-16 lines. */
+
+      charsetName = encodeName;   // assume user's choice for all files
+      detected = encodeName;      // assume nothing guessed
+      if (encodeName.equals(DETECT_ENCODING) // guess for each file?
+        || ((byteEngine != null) && nullFlag))
+      {
+        int got;                  // bytes from one read
+        while ((rawCount < DETECT_SIZE) && ((got = rawStream.read(rawBuffer,
+          rawCount, (DETECT_SIZE - rawCount))) > 0))
+        {
+          rawCount += got;
+        }
+        detected = detectEncoding(rawBuffer, rawCount);
+      }
+      if (encodeName.equals(DETECT_ENCODING)) // guess for each file?
+      {
+        charsetName = detected;
+        if ((rawCount >= 3) && (rawBuffer[0] == (byte) 0xEF)
+          && (rawBuffer[1] == (byte) 0xBB) && (rawBuffer[2] == (byte) 0xBF))
+        {
+          rawNext = 3;            // skip UTF-8 BOM, still hashed
+        }
+        if (debugFlag)            // does user want debug information?
+          System.err.println("processUnknownFile detected " + charsetName
+            + " for givenFile = <" + fileName + ">");
+      }
+
+      /* Plain text can be found in raw bytes as UTF-8 or UTF-16 at the same
+      time, which is better than ignoring nulls after decoding.  Each thread
+      needs its own copy of the engine's DFA cache. */
+
+      byteSearch = null;          // assume search after decoding
+      decodeName = charsetName.equals(DETECT_ENCODING) ? RAW_ENCODING
+        : charsetName;            // binary files have no encoding
+      if (detected.startsWith("UTF-16")) // lines may start on either byte
+      {
+        decodeName = detected.equals("UTF-16") ? (((rawCount >= 2)
+          && (rawBuffer[0] == (byte) 0xFF)) ? "UTF-16LE" : "UTF-16BE")
+          : detected;             // byte order from BOM, else as detected
+      }
+      if ((byteEngine != null) && (nullFlag
+        || (charsetName.equals(DETECT_ENCODING)))) // binary or ignore nulls?
+      {
+        byteSearch = ((currentTask.get() == null)
+          && (currentPiece.get() == null)) ? byteEngine
+          : byteEngine.copy();
+        charsetName = RAW_ENCODING; // search raw bytes, without nulls removed
+      }
+      else if (charsetName.equals(DETECT_ENCODING)) // binary, other search?
+        charsetName = RAW_ENCODING;
+
+      if (charsetName.equals(LOCAL_ENCODING)) // use local system's encoding?
+      {
+        decoder = new FileSearch1Decoder(Charset.defaultCharset(), rawBuffer,
+          rawNext, rawCount, charBuffer);
+      }
+      else if (charsetName.equals(RAW_ENCODING)) // use raw bytes as characters?
+      {
+        /* do nothing: raw buffer already allocated, may have sample */
+      }
+      else                        // must be some named character set encoding
+      {
+        try { decoder = new FileSearch1Decoder(Charset.forName(charsetName),
+          rawBuffer, rawNext, rawCount, charBuffer); }
+        catch (IllegalArgumentException iae) // bad or unsupported name
+          { throw new UnsupportedEncodingException(charsetName); }
+      }
+
+      /* Basic loop is to assemble one "line" of text, breaking at the standard
+      newline characters (DOS CR/LF, UNIX NL), or when the buffer gets full. */
+
+      charRead = charTold = 0;    // we haven't read any characters yet
+      deadline = (fileTimeLimit > 0) ? (System.currentTimeMillis()
+        + fileTimeLimit) : 0;     // when we give up on this file, if ever
+      if (piece != null)          // same time limit for all pieces
+        deadline = piece.deadline;
+      done = false;               // true when we are done reading from file
+      found = false;              // assume that search pattern won't be found
+      lineNumber = 1;             // first line is number one, assuming text
+      query = (searchQuery == null) ? null : searchQuery.start(); // no terms
+      context = null;             // assume we stop at first match
+      if (((contextAfter > 0) || (contextBefore > 0)) && (query == null)
+        && (countIndex == 0) && ((reportIndex == 0) || (reportIndex == 6))) // show every match?
+      {
+        context = new FileSearch1Context(contextBefore, contextAfter);
+      }
+      timeout = false;            // time limits haven't expired
+      verdict = new FileSearch1Verdict(fileName); // assume not found
+      batch = null;               // assume one search string
+      batchLeft = 0;
+      if (batchList != null)      // many queries from a batch file?
+      {
+        batch = new FileSearch1Verdict[batchList.size()];
+        for (batchLeft = 0; batchLeft < batch.length; batchLeft ++)
+          batch[batchLeft] = new FileSearch1Verdict(fileName);
+      }
+      scan = null;                // assume every line is assembled
+      if ((scanEngine != null) && (byteSearch == null))
+        scan = ((currentTask.get() == null) && (currentPiece.get() == null))
+          ? scanEngine : scanEngine.copy();
+      scanAfter = -1;             // nothing in buffers has been scanned
+      wasCr = false;              // no last character, not DOS carriage return
+      while (done == false)
+      {
+        if (cancelFlag) break;    // exit early; this could be a very big file
+        if ((piece != null) && piece.stopped()) // earlier piece has a match?
+          break;
+
+        /* Skip lines at the start of the buffer that can't match, until the
+        first character that could start a match.  That character's line is
+        assembled as usual.  The rest of the buffer isn't scanned again until
+        we get past that character, or the buffer is filled again. */
+
+        if ((scan != null) && (decoder == null) && (rawNext > scanAfter)
+          && (rawNext < rawCount) && ((context == null)
+          || (context.afterLeft == 0))) // skip raw bytes?
+        {
+          int next = scan.skipBytes(rawBuffer, rawNext, rawCount, wasCr);
+          if ((context != null) && (next > rawNext)) // lines before match?
+            context.addSkipped(rawBuffer, null, rawNext, next, wasCr,
+              nullFlag, (lineNumber + scan.lines));
+          charRead += next - rawNext; // bytes are characters
+          rawNext = next;
+          scanAfter = (scan.found < 0) ? rawCount : scan.found;
+          lineNumber += scan.lines;
+          wasCr = scan.wasCr;
+        }
+        else if ((scan != null) && (decoder != null) && (charNext > scanAfter)
+          && (charNext < charCount) && ((context == null)
+          || (context.afterLeft == 0))) // skip decoded characters?
+        {
+          int next = scan.skipChars(charBuffer, charNext, charCount, wasCr);
+          if ((context != null) && (next > charNext)) // lines before match?
+            context.addSkipped(null, charBuffer, charNext, next, wasCr,
+              nullFlag, (lineNumber + scan.lines));
+          charRead += next - charNext;
+          charNext = next;
+          scanAfter = (scan.found < 0) ? charCount : scan.found;
+          lineNumber += scan.lines;
+          wasCr = scan.wasCr;
+        }
+        if ((deadline > 0) && (((lineNumber & 0xFF) == 0) || ((scan != null)
+          && (scan.lines > 0))) && (System.currentTimeMillis() > deadline))
+        {                         // check now and then
+          timeout = true;         // out of time for this file
+          break;
+        }
+
+        /* Update the running status, if this is a big file.  It would be good
+        to tell the user how many megabytes or what percent we have finished,
+        but the only information we have is the total size of the file in bytes
+        and the number of characters we've read so far.  There is no guaranteed
+        relationship between input bytes and input characters.  While calls to
+        the setStatusMessage() method have no effect for console applications,
+        we still avoid the repeated formatting of this message. */
+
+        if ((consoleFlag == false) && ((charRead - charTold) > BIG_FILE_SIZE))
+        {
+          charTold = charRead;    // remember what we last told the user
+          setStatusMessage("Reading " + fileName + " - "
+            + formatComma.format(charRead) + " characters");
+        }
+
+        /* Fill the line buffer by adding one byte or character at a time.  */
+
+        lineBuffer.setLength(0);  // empty anything already in line buffer
+        lineCount = 0;            // mark that we have nothing in line buffer
+        lineReady = false;        // line buffer is not full, not complete
+        do                        // repeat until we have a line in buffer
+        {
+          /* Get the next input byte/character, or -1 for end-of-file. */
+
+          if (decoder == null)    // are we reading raw 8-bit bytes?
+          {
+            if (rawNext >= rawCount) // should we fill the buffer again?
+            {
+              rawCount = rawStream.read(rawBuffer); // fill some or all buffer
+              rawNext = 0;        // assume we will use first byte in buffer
+              scanAfter = -1;     // new bytes haven't been scanned
+              if (rawCount <= 0)  // if nothing read, reached end-of-file
+                ch = -1;          // mark this as the end of the file
+              else
+                ch = rawBuffer[rawNext ++] & BYTE_MASK; // get first byte
+            }
+            else
+              ch = rawBuffer[rawNext ++] & BYTE_MASK; // get next byte
+          }
+          else if (charNext < charCount) // more characters already decoded?
+            ch = charBuffer[charNext ++]; // get next character
+          else
+          {
+            charCount = decoder.fill(rawStream); // decode more characters
+            charNext = 0;         // assume we will use first character
+            scanAfter = -1;       // new characters haven't been scanned
+            if (charCount <= 0)   // if nothing decoded, reached end-of-file
+              ch = -1;            // mark this as the end of the file
+            else
+              ch = charBuffer[charNext ++]; // get first character
+          }
+
+          /* Decide if this input character is text, marks the end of the line,
+          or marks the end of the file. */
+
+          if (ch < 0)             // negative is for end-of-file
+            done = eof = lineReady = true; // don't read anything more
+          else if (nullFlag && (byteSearch == null) && ((ch == 0x00)
+            || (ch == 0x7F)))     // ignore nulls after decoding?
+          {
+            charRead ++;          // count as characters, but otherwise ignore
+          }
+          else if (ch == '\n')    // is this a UNIX newline or DOS line feed?
+          {
+            charRead ++;          // count number of characters read
+            lineReady = ! wasCr;  // bare NL or LF means end of line
+            wasCr = false;        // clear any previous CR status
+          }
+          else if (ch == '\r')    // is this a DOS carriage return?
+          {
+            charRead ++;          // count number of characters read
+            lineReady = true;     // bare CR or start CR/LF means end of line
+            wasCr = true;         // remember this CR in case next is LF
+          }
+          else if ((ch == 0x00) && wasCr && (byteSearch != null))
+            charRead ++;          // UTF-16LE CR/LF has a null in the middle
+          else                    // must be text character, or other control
+          {
+            charRead ++;          // count number of characters read
+            lineBuffer.append((char) ch); // put text character into buffer
+            lineCount ++;         // remember how many characters are in buffer
+            wasCr = false;        // clear any previous CR status
+          }
+        } while ((lineReady == false) && (lineCount < BUFFER_SIZE));
+
+        /* The last line feed in UTF-16LE leaves one null in raw bytes, which is
+        not another line.  A null starting a line in UTF-16BE is kept. */
+
+        if (eof && (byteSearch != null) && (lineCount == 1)
+          && (lineBuffer.charAt(0) == 0x00))
+        {
+          lineBuffer.setLength(0); // forget the half of a line feed
+          lineCount = 0;
+        }
+
+        /* We now have a line of text, or the end of the file, or both.  This
+        may be just be a buffer full of garbage for binary files. */
+
+        if (debugFlag && (lineCount >= BUFFER_SIZE)) // show debug information?
+        {
+          System.err.println("processUnknownFile lineCount = " + lineCount
+            + " (full) at charRead = " + charRead + " for givenFile = <"
+            + givenFile.getPath() + ">");
+        }
+        if ((done == false) || (lineCount > 0)) // is there anything to scan?
+        {
+          try                     // may be interrupted by cancel or time limit
+          {
+            if (countIndex > 0)   // count every match in file?
+            {
+              int count = countLine(lineBuffer, deadline);
+              position = null;    // don't format any matches
+              if (count > 0)      // were there any matches on this line?
+              {
+                found = verdict.found = true;
+                verdict.lines ++;
+                verdict.matches += count;
+              }
+            }
+            else if (batch != null) // look for every query not yet found
+            {
+              position = null;    // each query has its own result
+              batchLeft = searchBatch(lineBuffer, lineNumber, deadline, batch,
+                batchLeft);
+              if (batchLeft == 0) // all queries found?
+                done = true;      // don't read anything more after this
+            }
+            else if (query != null) // look for every term in a boolean query
+            {
+              position = query.scanLine(lineBuffer, lineNumber, deadline);
+              if (query.verdict == 0) // false no matter what comes later?
+                done = true;      // stop early, such as "NOT" term found
+            }
+            else if (byteSearch != null) // plain text in any of its encodings
+              position = byteSearch.find(lineBuffer);
+            else
+              position = searchLine(lineBuffer, deadline); // attempt to match
+          }
+          catch (FileSearch1Timeout fst) // user cancelled or out of time
+          {
+            position = null;      // no match found
+            done = timeout = true; // don't read anything more after this
+          }
+          if ((byteSearch != null) && ((position != null)
+            || (context != null))) // show raw bytes without nulls, like -n
+          {
+            position = decodeLine(lineBuffer, position, decodeName);
+          }
+          if ((position != null) && (found == false)) // first match?
+          {
+            verdict.found = true; // remember where and what we found
+            verdict.lineNumber = lineNumber;
+            verdict.window = formatMatchWindow(lineBuffer, position[0],
+              position[1]);
+            if (position.length > 2) // approximate search counts edits
+              verdict.edits = position[2];
+            if (piece != null)    // stop later pieces of the same file
+              piece.found = true;
+          }
+          if (position != null)   // if the search pattern is found
+          {
+            found = true;         // file matches, and maybe more lines
+            done = done || (context == null); // read more for context only
+          }
+          if (context != null)    // remember or show lines around matches
+            context.addLine(lineBuffer, lineNumber, (position != null));
+          if ((done == false) && (timeout == false))
+            lineNumber ++;        // increment count for next line number
+        }
+      } // end of <while> read loop
+
+      /* The -filebytes option ends the file early, and the last line is cut at
+      the limit.  The file is found or not found in the bytes we searched, but
+      their hash isn't for the whole file. */
+
+      if ((readCount != null) && readCount.over) // more after size limit?
+        eof = false;              // didn't read the real end of the file
+
+      /* A file that was still being searched when the search time limit
+      expired is reported as timed out, not as found or not found. */
+
+      if (cancelFlag && timeoutFlag && (done == false))
+        timeout = true;           // stopped by time limit, not by the user
+
+      /* Some queries aren't decided until the end of the file, such as when a
+      term must not be found. */
+
+      if ((query != null) && (found == false) && (timeout == false)
+        && (cancelFlag == false) && query.finish()) // true at end of file?
+      {
+        found = true;             // report without line number or text
+        verdict.found = true;
+      }
+
+      /* Close the input file.  The decoder doesn't need to be closed. */
+
+      rawStream.close();          // always close low-level byte stream
+      if ((progress != null) && (piece == null)) // rest of file counts as done
+        progress.addFile(Math.max(0, (givenFile.length() - readCount.count)));
+
+      /* Report whether or not we found what we were looking for, and remember
+      the result for duplicates of this file. */
+
+      if (piece != null)          // caller combines results from all pieces
+      {
+        piece.finish(verdict, lineNumber, timeout, ((readCount != null)
+          ? readCount.count : 0));
+      }
+      else if (timeout && ((cancelFlag == false) || timeoutFlag))
+      {                           // neither found nor not found
+        synchronized (FileSearch1.class) { timeoutCount ++; } // one more file
+        putError("Time limit exceeded for " + fileName + " at line "
+          + formatComma.format(lineNumber));
+      }
+      else if (((cancelFlag == false) || timeoutFlag) && (batch != null))
+        reportBatch(givenFile, batch); // found or not found for each query
+      else if ((cancelFlag == false) || timeoutFlag) // found or not found
+      {
+        reportFile(givenFile, verdict, null);
+        if (context != null)      // show lines saved for each match
+          context.report();
+        if (fileKey != null)      // can we find hard links to this file?
+          dedupMap.put(fileKey, verdict);
+        if ((digest != null) && (cancelFlag == false)) // copies by hash?
+          dedupSave(givenFile, verdict, (eof ? digest : null));
+      }
+    }
+
+    /* Catch any file I/O errors, here or in called methods. */
+
+    catch (UnsupportedEncodingException uee) // instance of IOException
+    {
+      cancelFlag = true;          // stop looking at files or folders
+      putError("Can't read with character set encoding <" + encodeName + ">.");
+    }
+    catch (IOException ioe)       // all other I/O errors
+    {
+      if (piece != null)          // caller reports first error in file
+        piece.error = "Can't read from file: " + ioe.getMessage();
+      else
+        putError("Can't read from file: " + ioe.getMessage());
+    }
+    catch (NoSuchAlgorithmException nsae) // every Java has SHA-256
+    {
+      putError("Can't hash file contents: " + nsae.getMessage());
+    }
+
+    /* Return our buffers to the pool for the next file.  Nothing that we
+    found or reported still refers to them. */
+
+    bufferPool.release(charBuffer);
+    bufferPool.release(lineBuffer);
+    bufferPool.release(rawBuffer);
+
+  } // end of processUnknownFile() method
+
+
+/*
+  putBatch() method
+
+  Save one line for the report of a batch query.  Reports are shown after the
+  search, one query at a time.  Parallel tasks save lines with their other
+  output, so that lines are in the same order as searching with one thread.
+*/
+  static void putBatch(FileSearch1Batch query, String text)
+  {
+    FileSearch1Task task = (FileSearch1Task) currentTask.get();
+    if (task != null)             // running as a task in parallel search?
+      task.add(new Object[] {query, text}); // save until earlier files
+    else
+      query.output.add(text);     // <Vector> is synchronized
+  }
+
+
+/*
+  putError() method
+
+  Similar to putOutput() except write on standard error if running as a console
+  application.  See putOutput() for details.  This method is more for tracing
+  execution than for generating a report.  Routines that can only be called
+  from within GUI applications should always call putOutput().
+*/
+  static void putError(String text)
+  {
+    FileSearch1Task task = (FileSearch1Task) currentTask.get();
+    if (task != null)             // running as a task in parallel search?
+      task.add(new String[] {text}); // save until earlier files are reported
+    else if (consoleFlag)              // are we running as a console application?
+      System.err.println(text);   // console output goes onto standard error
+    else
+    {
+      outputText.append(text + "\n"); // graphical output goes into text area
+      outputText.select(999999999, 999999999); // force scroll to end of text
+    }
+  }
+
+
+/*
+  putOutput() method
+
+  Append a complete line of text to the end of the output text area.  We add a
+  newline character at the end of the line, not the caller.  By forcing all
+  output to go through this same method, one complete line at a time, the
+  generated output is cleaner and can be redirected.
+
+  The output text area is forced to scroll to the end, after the text line is
+  written, by selecting character positions that are much too large (and which
+  are allowed by the definition of the JTextComponent.select() method).  This
+  is easier and faster than manipulating the scroll bars directly.  However, it
+  does cancel any selection that the user might have made, for example, to copy
+  text from the output area.
+*/
+  static void putOutput(String text)
+  {
+    putOutput(text, false);       // by default, do not scroll output lines
+  }
+
+  static void putOutput(String text, boolean scroll)
+  {
+    FileSearch1Task task = (FileSearch1Task) currentTask.get();
+    if (task != null)             // running as a task in parallel search?
+      task.add(text);             // save until earlier files are reported
+    else if (consoleFlag)              // are we running as a console application?
+      System.out.println(text);   // console output goes onto standard output
+    else
+    {
+      outputText.append(text + "\n"); // graphical output goes into text area
+      if (scroll)                 // does caller want us to scroll?
+        outputText.select(999999999, 999999999); // force scroll to end of text
+    }
+  }
+
+
+/*
+  removeIgnored() method
+
+  Read the ignore files in a folder, add their rules to the rules for the
+  folder above, and return the folder's contents without the files and
+  subfolders that are excluded.  Excluded subfolders are never listed.  The
+  rules for each folder are saved for its subfolders, which may be searched
+  later by other threads, and for later batches of a streamed folder.  Rules
+  don't come from folders above the folders given by the user.
+*/
+  static File[] removeIgnored(
+    File folder,                  // folder being searched
+    File[] contents,              // files and subfolders in <folder>
+    boolean report)               // true if we report excluded files
+  {
+    boolean directory;            // true if an entry is a subfolder
+    int i, k;                     // index variables
+    File next;                    // one file or subfolder, or ignore file
+    FileSearch1Ignore parent;     // rules for folder above, or null
+    Vector result;                // contents that aren't excluded
+    FileSearch1Ignore rules;      // rules for this folder, or null
+
+    rules = (FileSearch1Ignore) ignoreRules.get(folder.getPath());
+    if (rules == null)            // not read for an earlier batch?
+    {
+      parent = (folder.getParentFile() == null) ? null : (FileSearch1Ignore)
+        ignoreRules.get(folder.getParentFile().getPath());
+      rules = new FileSearch1Ignore(folder, parent);
+      for (k = 0; k < IGNORE_FILES.length; k ++) // later files take precedence
+      {
+        next = new File(folder, IGNORE_FILES[k]);
+        if (next.isFile())        // found an ignore file in this folder?
+        {
+          try { rules.load(next); }
+          catch (IOException ioe) // can't read file, no rules from it
+          {
+            putError("Can't read ignore file: " + ioe.getMessage());
+          }
+        }
+      }
+      if (rules.rules.size() == 0) // no rules of our own?
+        rules = parent;           // same rules as folder above, if any
+      if (rules != null)          // save rules for subfolders
+        ignoreRules.put(folder.getPath(), rules);
+    }
+
+    result = new Vector();
+    for (i = 0; i < contents.length; i ++)
+    {
+      next = contents[i];
+      directory = next.isDirectory();
+      if ((directory && next.getName().equals(".git")) || ((rules != null)
+        && rules.ignored(next.getPath(), directory))) // excluded?
+      {
+        if (report)               // are we reporting all files?
+          putOutput("Ignoring excluded " + next.getPath());
+      }
+      else
+        result.add(next);
+    }
+    return((File[]) result.toArray(new File[result.size()]));
+
+  } // end of removeIgnored() method
+
+
+/*
+  reportBatch() method
+
+  Count and report the result of searching one file for each batch query.  A
+  file matches (for our totals) if any query was found.
+*/
+  static synchronized void reportBatch(
+    File givenFile,               // file that was searched
+    FileSearch1Verdict[] verdicts) // result for each query
+  {
+    boolean any;                  // true if any query was found
+    int i;                        // index variable
+    FileSearch1Batch query;       // one query from batch file
+    String text;                  // formatted report line, or null
+
+    any = false;                  // assume no query was found
+    for (i = 0; i < verdicts.length; i ++)
+    {
+      query = (FileSearch1Batch) batchList.get(i);
+      if (verdicts[i].found)      // was this query found?
+      {
+        any = true;
+        query.matchCount ++;
+      }
+      else
+        query.failCount ++;
+      text = formatReport(givenFile, verdicts[i], query.reportIndex, "");
+      if (text != null)           // does this query's report show this file?
+        putBatch(query, text);
+    }
+    if (any) matchCount ++; else failCount ++;
+  }
+
+
+/*
+  reportBatchResults() method
+
+  Show the report for each batch query, one after the other, with its own
+  summary.  Called once at the end of a search.
+*/
+  static void reportBatchResults()
+  {
+    int i, k;                     // index variables
+    FileSearch1Batch query;       // one query from batch file
+
+    for (i = 0; i < batchList.size(); i ++)
+    {
+      query = (FileSearch1Batch) batchList.get(i);
+      putOutput("Query " + query.number + ": " + query.line);
+      for (k = 0; k < query.output.size(); k ++)
+        putOutput((String) query.output.get(k));
+      putOutput("Query " + query.number + " matched "
+        + prettyPlural(query.matchCount, "file") + " and didn't match "
+        + prettyPlural(query.failCount, "file") + ".");
+      putOutput("");              // blank line between queries
+      query.output.clear();       // release memory, report only once
+    }
+  }
+
+
+/*
+  reportCountTotals() method
+
+  Report the total number of matching lines and matches, after all files have
+  been searched.  Totals for file name extensions are in alphabetical order.
+*/
+  static void reportCountTotals()
+  {
+    Iterator iterator;            // for file name extensions
+    String name;                  // one file name extension
+    long[] totals;                // counts for one extension
+
+    if (countIndex == 3)          // totals for each file name extension?
+    {
+      iterator = countExtensions.keySet().iterator();
+      while (iterator.hasNext())
+      {
+        name = (String) iterator.next();
+        totals = (long[]) countExtensions.get(name);
+        putOutput(((name.length() > 0) ? ("*." + name) : "(no extension)")
+          + ": " + totals[1] + " lines, " + totals[2] + " matches in "
+          + totals[0] + " files"); // plain numbers are easy to parse
+      }
+    }
+    putError("Counted " + prettyPlural(countLines, "matching line") + " with "
+      + prettyPlural(countMatches, "match", "matches") + ".");
+  }
+
+
+/*
+  reportDuplicate() method
+
+  A parallel search finds duplicates in whatever order files are finished, so
+  the file that is searched may come after its copy.  Reports are put in order
+  by the thread that started the search, which calls us for each file.  Here
+  the first file in report order with the same file key (or the same contents)
+  is the original, and later files are its duplicates, the same as when files
+  are searched one at a time.  Files are hashed only when a later file has the
+  same size, and each file is hashed at most once.
+*/
+  static void reportDuplicate(
+    File givenFile,               // file that was searched or reused
+    FileSearch1Verdict verdict)   // result of search
+  {
+    String duplicate;             // path of earlier copy, or null
+    Object fileKey;               // unique file identifier, or null
+    String hash;                  // size and hash of file contents
+    int i;                        // index variable
+    String path;                  // path name of caller's file
+    Vector unhashed;              // earlier files with this size, no hash
+    Long size;                    // size of caller's file
+    String text;                  // formatted report line, or null
+
+    path = givenFile.getPath();
+    fileKey = getFileKey(givenFile); // same as an earlier file?
+    duplicate = (fileKey == null) ? null : (String) dedupFirst.get(fileKey);
+    if ((duplicate == null) && (dedupIndex == 2)) // compare contents?
+    {
+      size = Long.valueOf(givenFile.length());
+      unhashed = (Vector) dedupUnhashed.get(size);
+      if (unhashed == null)       // first file with this size
+      {
+        unhashed = new Vector();
+        unhashed.add(givenFile);
+        dedupUnhashed.put(size, unhashed);
+      }
+      else
+      {
+        for (i = 0; i < unhashed.size(); i ++) // earlier files, in order
+        {
+          hash = dedupHash((File) unhashed.get(i), null);
+          if ((hash != null) && (dedupFirst.containsKey(hash) == false))
+            dedupFirst.put(hash, ((File) unhashed.get(i)).getPath());
+        }
+        unhashed.clear();         // later files with this size are hashed
+        hash = dedupHash(givenFile, null);
+        if (hash != null)         // can read caller's file?
+        {
+          duplicate = (String) dedupFirst.get(hash);
+          if (duplicate == null)  // first file with these contents
+            dedupFirst.put(hash, path);
+        }
+      }
+    }
+    if (fileKey != null)          // hard links go to the same original
+      dedupFirst.put(fileKey, ((duplicate == null) ? path : duplicate));
+    if (duplicate != null)        // one more duplicate file
+      dedupCount ++;
+    if (countIndex > 0)           // counts were already reported
+      return;
+    text = formatReport(givenFile, verdict, reportIndex, ((duplicate == null)
+      ? "" : (" (duplicate of " + duplicate + ")")));
+    if (text != null)             // does this report show this file?
+      putOutput(text);
+  }
+
+
+/*
+  reportFolderCount() method
+
+  Report the number of matching lines and matches in a folder and all of its
+  subfolders, if there were any.
+*/
+  static void reportFolderCount(
+    File givenFolder,             // folder that was searched
+    long files,                   // number of files with matches
+    long lines,                   // number of matching lines
+    long matches)                 // number of matches
+  {
+    if (files > 0)                // don't report folders without matches
+    {
+      putOutput(givenFolder.getPath() + File.separator + ": " + lines
+        + " lines, " + matches + " matches in " + files + " files");
+    }
+  }
+
+
+/*
+  reportFile() method
+
+  Count and report the result of searching one file, according to the user's
+  choice of report.  The caller gives us the line number and surrounding text
+  for the first match, if found.  Duplicate files that were not searched have
+  the path of the earlier file that was searched.  A parallel search looking
+  for duplicates saves the result, and reportDuplicate() formats it later.
+*/
+  static synchronized void reportFile(
+    File givenFile,               // file that was searched
+    FileSearch1Verdict verdict,   // result of search
+    String duplicate)             // path of earlier copy, or null
+  {
+    String extension;             // file name extension, for counting
+    String suffix;                // added to summary lines for duplicates
+    FileSearch1Task task;         // our task if parallel search, or null
+    String text;                  // formatted report line, or null
+    long[] totals;                // counts for one file name extension
+
+    /* When counting, only add to the totals, with no formatted text except one
+    line per file that has matches (if requested). */
+
+    task = (FileSearch1Task) currentTask.get();
+    if ((task != null) && (dedupIndex > 0)) // copies may finish in any order
+      task.add(verdict);          // reportDuplicate() decides in report order
+    if (checkpoint != null)       // remember position after this file
+    {
+      if (task != null)           // parallel search reports files later
+        task.verdict = verdict;
+      else
+        checkpoint.fileDone(givenFile, verdict);
+    }
+    if (countIndex > 0)           // count matches, don't report them
+    {
+      if (verdict.found) matchCount ++; else failCount ++;
+      countLines += verdict.lines;
+      countMatches += verdict.matches;
+      if (task != null)           // parallel search reports folders later
+      {
+        task.files += verdict.found ? 1 : 0;
+        task.lines += verdict.lines;
+        task.matches += verdict.matches;
+      }
+      if ((countIndex == 1) && verdict.found) // count for each file?
+      {
+        putOutput(givenFile.getPath() + ": " + verdict.lines + " lines, "
+          + verdict.matches + " matches");
+      }
+      else if (countIndex == 3)   // totals for each file name extension?
+      {
+        extension = givenFile.getName();
+        extension = (extension.lastIndexOf('.') > 0) ? extension.substring(
+          extension.lastIndexOf('.') + 1).toLowerCase() : "";
+        totals = (long[]) countExtensions.get(extension);
+        if (totals == null)       // first file with this extension?
+        {
+          totals = new long[3];
+          countExtensions.put(extension, totals);
+        }
+        totals[0] += verdict.found ? 1 : 0;
+        totals[1] += verdict.lines;
+        totals[2] += verdict.matches;
+      }
+      return;
+    }
+
+    if (verdict.found)            // if the search pattern was found
+      matchCount ++;              // one more file matches search pattern
+    else                          // search pattern was not found
+      failCount ++;               // one more file doesn't match pattern
+    if ((task != null) && (dedupIndex > 0)) // reported later, in order?
+      return;
+    suffix = (duplicate == null) ? "" : (" (duplicate of " + duplicate + ")");
+    text = formatReport(givenFile, verdict, reportIndex, suffix);
+    if (text != null)             // does this report show this file?
+      putOutput(text);
+  } // end of reportFile() method
+
+
+/*
+  runWorker() method
+
+  Listen for searches from a coordinator, which sends us options and a list of
+  files.  Each search is done by a new Java process, so that options from one
+  search don't affect another.  We never return.  A worker on port zero was
+  started by a coordinator, and stops when its standard input is closed.
+
+  Anybody who can reach our port can ask for a search, so coordinators must
+  know the password in our environment, and only a few searches run at once.
+*/
+  static void runWorker(String address)
+  {
+    String host;                  // host address for listening
+    int i;                        // index of colon in <address>
+    int port;                     // port number for listening
+    ServerSocket server;          // listens for connections
+    Socket socket;                // one connection from a coordinator
+    Semaphore slots;              // limit on searches running at once
+    String token;                 // password expected from coordinators
+
+    i = address.lastIndexOf(':');
+    host = (i < 0) ? "127.0.0.1" : address.substring(0, i); // localhost only
+    port = Integer.parseInt(address.substring(i + 1)); // syntax checked
+    slots = new Semaphore(FileSearch1Worker.MAX_CONNECTIONS);
+    token = System.getenv(FileSearch1Worker.TOKEN_NAME);
+    if ((token == null) || (token.length() == 0))
+    {
+      System.err.println("Worker needs a password in the "
+        + FileSearch1Worker.TOKEN_NAME + " environment variable.");
+      System.exit(-1);            // exit application without help
+    }
+    try
+    {
+      server = new ServerSocket(port, 50, InetAddress.getByName(host));
+      System.out.println("FileSearch1 worker listening on " + host + " port "
+        + server.getLocalPort()); // coordinator reads this line
+      System.out.flush();
+      if (port == 0)              // started by a coordinator?
+      {
+        Thread watcher = new Thread(new Runnable() {
+          public void run() {
+            try { while (System.in.read() >= 0) { } }
+            catch (IOException ioe) { }
+            System.exit(0); } }, "FileSearch1Worker");
+        watcher.setDaemon(true);  // stop when coordinator closes our input
+        watcher.start();
+      }
+      while (true)                // accept connections until we're killed
+      {
+        socket = server.accept();
+        if (debugFlag)            // does user want debug information?
+          System.err.println("runWorker connection from "
+            + socket.getRemoteSocketAddress());
+        if (slots.tryAcquire() == false) // too many searches already?
+        {
+          System.err.println("Worker refused connection from "
+            + socket.getRemoteSocketAddress() + ": too many searches.");
+          try { socket.close(); } catch (IOException ioe) { }
+          continue;
+        }
+        new Thread(new FileSearch1Worker(socket, token, slots),
+          "FileSearch1Worker").start();
+      }
+    }
+    catch (IOException ioe)       // bad address, port in use, etc
+    {
+      System.err.println("Worker can't listen on " + address + ": "
+        + ioe.getMessage());
+      System.exit(-1);            // exit application without help
+    }
+  } // end of runWorker() method
+
+
+/*
+  searchBatch() method
+
+  Search one line of text for each batch query not already found in this
+  file, after checking for any query with <batchEngines> or <batchAny> (which
+  is also <searchPattern>).  Remember the line number and text for the first
+  match of each query.  Return the number of queries still not found.
+*/
+  static int searchBatch(
+    StringBuffer text,            // line of text to search
+    long lineNumber,              // line number in file
+    long deadline,                // system time in milliseconds, or zero
+    FileSearch1Verdict[] verdicts, // result for each query in this file
+    int left)                     // number of queries not found yet
+  {
+    FileSearch1Regex[] engines;   // linear-time engines for this thread
+    int i;                        // index variable
+    Matcher matcher;              // pattern matcher for one query
+    boolean shared;               // true if only one thread is searching
+    CharSequence timed;           // text with time limit, for regex
+
+    timed = new FileSearch1Text(text, deadline); // can be cancelled
+    if (batchEngines != null)     // linear-time engine for each case rule?
+    {
+      engines = batchEngines;
+      shared = (currentTask.get() == null) && (currentPiece.get() == null);
+      if (shared == false)        // each thread needs its own DFA caches
+      {
+        synchronized (enginePool)
+        {
+          if (enginePool.size() > 0) // copies from another thread?
+            engines = (FileSearch1Regex[]) enginePool.remove(enginePool
+              .size() - 1);
+          else
+          {
+            engines = new FileSearch1Regex[batchEngines.length];
+            for (i = 0; i < engines.length; i ++)
+              engines[i] = batchEngines[i].copy();
+          }
+        }
+      }
+      for (i = 0; (i < engines.length) && (engines[i].find(text) == null);
+        i ++) { }
+      if (shared == false)        // give copies back for other threads
+        enginePool.add(engines);  // <Vector> is synchronized
+      if (i >= engines.length)    // no queries on this line
+        return(left);
+    }
+    else if ((batchAny != null) && (batchAny.matcher(timed).find() == false))
+      return(left);               // no queries on this line, one search
+    for (i = 0; i < verdicts.length; i ++)
+    {
+      if (verdicts[i].found)      // already found, don't need to know again
+        continue;
+      matcher = ((FileSearch1Batch) batchList.get(i)).pattern.matcher(timed);
+      if (matcher.find())         // is this query on this line?
+      {
+        verdicts[i].found = true;
+        verdicts[i].lineNumber = lineNumber;
+        verdicts[i].window = formatMatchWindow(text, matcher.start(),
+          matcher.end());
+        left --;
+      }
+    }
+    return(left);
+  }
+
+
+/*
+  searchLine() method
+
+  Search one line of text (or one buffer full of data) with the compiled search
+  string, and return the starting and ending index of the first match, or null
+  if there is no match.  (An approximate search also returns the number of
+  edits, for its best match.)  The literal prefilter is checked first, and is
+  the whole search for plain text.  Regular
+  expressions given to the Pattern class are wrapped so that they can be
+  interrupted if the user cancels or the time limit expires, in which case we
+  throw an unchecked FileSearch1Timeout exception.
+*/
+  static int[] searchLine(
+    StringBuffer text,            // line of text to search
+    long deadline)                // system time in milliseconds, or zero
+  {
+    FileSearch1Regex engine;      // linear-time engine for this thread
+    int index;                    // index of literal prefilter in <text>
+    Matcher matcher;              // pattern matcher for <searchPattern>
+    int[] result;                 // starting and ending index of match
+
+    if (approxEngine != null)     // approximate search has no other parts
+      return(approxEngine.find(text));
+    if (literalFilter != null)    // is there a literal prefilter?
+    {
+      index = findLiteralFilter(text);
+      if (index < 0)              // quick check says there is no match
+        return(null);
+      if (literalOnly)            // plain text, so literal is the match
+        return(new int[] {index, (index + literalFilter.length)});
+    }
+    if (searchEngine != null)     // linear-time engine for this expression?
+    {
+      if ((currentTask.get() == null) && (currentPiece.get() == null))
+        return(searchEngine.find(text)); // only one thread is searching
+      synchronized (enginePool)   // each thread needs its own DFA cache
+      {
+        engine = (enginePool.size() > 0) ? (FileSearch1Regex)
+          enginePool.remove(enginePool.size() - 1) : searchEngine.copy();
+      }
+      result = engine.find(text); // search without holding the lock
+      enginePool.add(engine);     // <Vector> is synchronized
+      return(result);
+    }
+    matcher = searchPattern.matcher(regexFlag ? (CharSequence)
+      new FileSearch1Text(text, deadline) : text); // plain text is safe
+    if (matcher.find())           // if the search pattern is found
+      return(new int[] {matcher.start(), matcher.end()});
+    return(null);                 // no match in this text
+
+  } // end of searchLine() method
+
+
+/*
+  setStatusMessage() method
+
+  Set the text for the status message if we are running as a GUI application.
+  This gives the user some indication of our progress if processing is slow.
+  If the update timer is running, then this message will not appear until the
+  timer kicks in.  This prevents the status from being updated too often, and
+  hence being unreadable.
+*/
+  static void setStatusMessage(String text)
+  {
+    statusPending = text;         // save caller's message for later
+    if (consoleFlag)              // are we running as a console application?
+    {
+      /* Do nothing: console doesn't show running status messages. */
+    }
+    else if (statusTimer.isRunning()) // are we updating on a timed basis?
+    {
+      /* Do nothing: wait for timer to kick in and update GUI text. */
+    }
+    else
+      statusDialog.setText(text); // show the status message now
+  }
+
+
+/*
+  shardFiles() method
+
+  Make a list of files to be searched by workers, and their sizes, using the
+  same rules and order as processFileOrFolder().  Folders are counted here,
+  because workers only see files.
+*/
+  static void shardFiles(
+    File givenFile,               // file or folder given by user
+    Vector files,                 // add File objects to this list
+    Vector sizes)                 // add Long sizes to this list
+  {
+    File[] contents;              // contents if <givenFile> is a folder
+    int i;                        // index variable
+    File next;                    // next File object from <contents>
+
+    if (givenFile.isDirectory())  // is this "file" actually a folder?
+    {
+      folderCount ++;             // one more folder
+      rateLimit.takeFile();       // listing a folder counts as a file
+      contents = sortFileList(givenFile.listFiles()); // same order as search
+      if (ignoreFlag)             // workers search every file we give them
+        contents = removeIgnored(givenFile, contents, false);
+      for (i = 0; i < contents.length; i ++)
+      {
+        next = contents[i];
+        if ((hiddenFlag == false) && next.isHidden())
+          continue;               // hidden files and folders are ignored
+        if (next.isDirectory())   // subfolder
+        {
+          if (recurseFlag)        // do subfolders only if option selected
+            shardFiles(next, files, sizes); // call ourself for subfolders
+        }
+        else if (next.isFile() && (checkFileFilter(next) == null))
+        {
+          files.add(next);        // normal file that will be searched
+          sizes.add(Long.valueOf(next.length()));
+        }
+      }
+    }
+    else if (givenFile.isFile())  // files from user are never hidden
+    {
+      if (checkFileFilter(givenFile) == null) // size and date are good?
+      {
+        files.add(givenFile);
+        sizes.add(Long.valueOf(givenFile.length()));
+      }
+    }
+    else                          // user gave bad file or folder name
+    {
+      putError("Not a file or folder: " + givenFile.getPath());
+    }
+  }
+
+
+/*
+  showHelp() method
+
+  Show the help summary.  This is a UNIX standard and is expected for all
+  console applications, even very simple ones.
+*/
+  static void showHelp()
+  {
+    System.err.println();
+    System.err.println(PROGRAM_TITLE);
+    System.err.println();
+    System.err.println("  java  FileSearch1  [options]  search_string  files_or_folders");
+    System.err.println();
+    System.err.println("Options:");
+    System.err.println("  -? = -help = show summary of command-line syntax");
+    System.err.println("  -after=# = with -m0 or -m6, show every matching line and # lines after");
+    System.err.println("  -approx=# = find plain text with up to # characters inserted, deleted, or");
+    System.err.println("      changed; search string is 1 to " + FileSearch1Approx.MAX_LENGTH + " characters");
+    System.err.println("  -batch=name = search for each line in file (or - for stdin) as a separate");
+    System.err.println("      query with its own report, reading files only once; a line may start");
+    System.err.println("      with -c#, -r#, -m# options for that query, or -- before the string");
+    System.err.println("  -before=# = with -m0 or -m6, show every matching line and # lines before");
+    System.err.println("  -c0 = uppercase and lowercase are equal (default)");
+    System.err.println("  -c1 = -c = uppercase and lowercase are different");
+    System.err.println("  -checkpoint=name = save search position and totals in file, with -resume");
+    System.err.println("  -checkpointtime=# = seconds between checkpoints; default " + DEFAULT_CHECKPOINT);
+    System.err.println("  -context=# = same as -after=# -before=#");
+    System.err.println("  -count = -count=files = count matching lines and matches in each file, folder");
+    System.err.println("  -count=ext = count only totals, and totals for each file name extension");
+    System.err.println("  -count=total = count only totals for all files");
+    System.err.println("  -d = show debug information (may be verbose)");
+    System.err.println("  -dedup = -dedup=inode = don't search hard links to files already searched");
+    System.err.println("  -dedup=hash = also don't search copies, by size and SHA-256 hash of contents");
+    System.err.println("  -e\"name\" = name of character set encoding for reading files");
+    System.err.println("  -e\"" + DETECT_ENCODING + "\" = guess UTF-8, UTF-16, local, or binary from each file");
+    System.err.println("  -engine=auto = linear-time engine for supported regular expressions (default)");
+    System.err.println("  -engine=java = always use java.util.regex for regular expressions");
+    System.err.println("  -engine=linear = linear-time engine for plain text and regular expressions");
+    System.err.println("  -f\"string\" = use when search string looks like an option");
+    System.err.println("  -filebytes=# = read only # bytes from each file (or #K, #M, #G); default 0 (all)");
+    System.err.println("  -filelist=name = search files and folders listed in a text file, one per line;");
+    System.err.println("      -filelist=- reads the list from standard input");
+    System.err.println("  -filetime=# = seconds to read and search one file; default 0 (no limit)");
+    System.err.println("  -follow = keep searching files for new lines as they grow (report all)");
+    System.err.println("  -follow=# = same as -follow, checking for new data every # seconds");
+    System.err.println("  -h0 = ignore hidden files or folders except given by user");
+    System.err.println("  -h1 = -h = process hidden files and folders (default)");
+    System.err.println("  -ignore = skip files and folders excluded by .gitignore, .ignore, or");
+    System.err.println("      .filesearch1ignore files in each folder, and .git folders");
+    System.err.println("  -m0 = report files that contain the search string (default)");
+    System.err.println("  -m1 = report file name and path only if string found");
+    System.err.println("  -m2 = report file name only (no path) if string found");
+    System.err.println("  -m3 = report files that don't contain the search string");
+    System.err.println("  -m4 = report file name and path only if string not found");
+    System.err.println("  -m5 = report file name only (no path) if string not found");
+    System.err.println("  -m6 = report all files as to whether string is found");
+    System.err.println("  -maxsize=# = search only files up to # bytes (or #K, #M, #G)");
+    System.err.println("  -minsize=# = search only files with at least # bytes (or #K, #M, #G)");
+    System.err.println("  -n0 = keep <NUL> and <DEL> characters as file text (default)");
+    System.err.println("  -n1 = -n = find plain text as UTF-8 and UTF-16 in raw bytes; for regular");
+    System.err.println("      expressions, ignore <NUL> and <DEL> control characters");
+    System.err.println("  -newer=# = search only files modified in last #s, #m, #h, #d, or since date");
+    System.err.println("  -older=# = search only files not modified in last #s, #m, #h, #d, or before date");
+    System.err.println("  -poolmem=# = megabytes of idle buffers kept for reuse; default "
+      + (DEFAULT_POOL_MEMORY / (1024 * 1024)));
+    System.err.println("  -prefetch = -prefetch=" + DEFAULT_PREFETCH + " = read ahead next blocks and files while searching");
+    System.err.println("  -prefetch=# = number of files to read ahead; default 0 (none)");
+    System.err.println("  -prefetchmem=# = megabytes for read-ahead buffers; default "
+      + (DEFAULT_PREFETCH_MEMORY / (1024 * 1024)));
+    System.err.println("  -progress = show MB/s, files/s, percent done, and time left on status line");
+    System.err.println("  -progress=noscan = same as -progress, without measuring total size first");
+    System.err.println("  -query = search string is a query: terms with AND, OR, NOT, NEAR/#, ( );");
+    System.err.println("      example: -query \"error AND (disk OR tape) AND NOT retry\"");
+    System.err.println("  -r0 = search string is plain Unicode text (default)");
+    System.err.println("  -r1 = -r = search string is a Java regular expression");
+    System.err.println("  -rate=# = read at most # bytes per second (or #K, #M, #G); default 0 (no limit)");
+    System.err.println("  -rateadapt = slow down when reading takes longer than usual (busy disk)");
+    System.err.println("  -ratecontrol=name = read new -rate options from this file when it changes;");
+    System.err.println("      example: echo -rate=5m -ratefiles=50 > name");
+    System.err.println("  -ratefiles=# = open at most # files or folders per second; default 0 (no limit)");
+    System.err.println("  -resume = with -checkpoint=name, continue after the last file saved there;");
+    System.err.println("      other options and file names must be the same as the first time");
+    System.err.println("  -s0 = do only given files or folders, no subfolders (default)");
+    System.err.println("  -s1 = -s = process files, folders, and subfolders");
+    System.err.println("  -split = -split=" + (DEFAULT_SPLIT / (1024 * 1024)) + "M = search files bigger than " + (DEFAULT_SPLIT / (1024 * 1024)) + " MB in pieces on many threads");
+    System.err.println("  -split=# = search files bigger than # bytes (or #K, #M, #G) in pieces of #");
+    System.err.println("      bytes, one per -threads or per processor; not for UTF-16, or with -count,");
+    System.err.println("      -context, -query, -batch, -n, -prefetch, -filebytes, -dedup=hash");
+    System.err.println("  -stream = list huge folders in batches, sorting " + DEFAULT_STREAM + " names at a time in");
+    System.err.println("      memory and merging from temporary files; same order as usual");
+    System.err.println("  -stream=# = same as -stream, sorting # names at a time in memory");
+    System.err.println("  -stream=unsorted = search files in the order listed by the system");
+    System.err.println("  -threads=# = search # files at once on a pool of threads; default 1");
+    System.err.println("  -timelimit=# = seconds for whole search, then report what was found; default 0");
+    System.err.println("  -totals = summary is one line of numbers: matched, not matched, folders,");
+    System.err.println("      duplicates, matching lines, matches, stopped at limits");
+    System.err.println("  -u# = font size for buttons, dialogs, etc; default is local system;");
+    System.err.println("      example: -u16");
+    System.err.println("  -virtual = -virtual=" + DEFAULT_VIRTUAL + " = one virtual thread per file and folder (Java 21)");
+    System.err.println("  -virtual=# = same as -virtual, with at most # files or folders open");
+    System.err.println("  -worker=# = listen on local port # for searches from -workers, with a password");
+    System.err.println("      in the FILESEARCH1_TOKEN environment variable for workers and coordinator;");
+    System.err.println("      -worker=host:# listens on another network interface");
+    System.err.println("  -workers=# = split files among # local worker processes, and merge results");
+    System.err.println("  -workers=host:#,host:# = split files among workers that are listening");
+    System.err.println("  -w(#,#,#,#) = normal window position: left, top, width, height;");
+    System.err.println("      example: -w(50,50,700,500)");
+    System.err.println("  -x = maximize application window; default is normal window");
+    System.err.println();
+    System.err.println("Output may be redirected with the \">\" operator.  If no file or folder names");
+    System.err.println("are given on the command line, then a graphical interface will open.  Java");
+    System.err.println("may interpret special characters in command-line options or parameters.");
+    System.err.println();
+    System.err.println(COPYRIGHT_NOTICE);
+//  System.err.println();
+
+  } // end of showHelp() method
+
+
+/*
+  sortFileList() method
+
+  When we ask for a list of files or subfolders in a directory, the list is not
+  likely to be in our preferred order.  Java does not guarantee any particular
+  order, and the observed order is whatever is supplied by the underlying file
+  system (which can be very jumbled for FAT16/FAT32).  We would like the file
+  names to be sorted, and since we recurse on subfolders, we also want the
+  subfolders to appear in order.
+
+  The caller's parameter may be <null> and this may happen if the caller asks
+  File.listFiles() for the contents of a protected system directory.  All calls
+  to listFiles() in this program are wrapped inside a call to us, so we replace
+  a null parameter with an empty array as our result.
+*/
+  static File[] sortFileList(File[] input)
+  {
+    int i;                        // index variable
+    TreeMap list;                 // our list of files
+    File[] result;                // our result
+
+    if (input == null)            // were we given a null pointer?
+      result = new File[0];       // yes, replace with an empty array
+    else if (input.length < 2)    // don't sort lists with zero or one element
+      result = input;             // just copy input array as result array
+    else
+    {
+      /* First, create a sorted list with our choice of index keys and the File
+      objects as data.  Names are sorted as files or folders, then in lowercase
+      to ignore differences in uppercase versus lowercase, then in the original
+      form for systems where case is distinct. */
+
+      list = new TreeMap();       // create empty sorted list with keys
+      for (i = 0; i < input.length; i ++)
+        list.put(sortKey(input[i]), input[i]); // put file into sorted list
+
+      /* Second, now that the TreeMap object has done all the hard work of
+      sorting, pull the File objects from the list in order as determined by
+      the sort keys that we created. */
+
+      result = (File[]) list.values().toArray(new File[0]);
+    }
+    return(result);               // give caller whatever we could find
+
+  } // end of sortFileList() method
+
+
+/*
+  sortKey() method
+
+  Return the key for sorting a file or folder in its folder.  Names are sorted
+  as files or folders, then in lowercase to ignore differences in uppercase
+  versus lowercase, then in the original form for systems where case is
+  distinct.
+*/
+  static String sortKey(File givenFile)
+  {
+    String fileName;              // file name without the path
+    StringBuffer result;          // created sorting key
+
+    result = new StringBuffer();
+    if (givenFile.isDirectory())  // is this "file" actually a folder?
+      result.append("2 ");        // yes, put subfolders after files
+    else                          // must be a file or an unknown object
+      result.append("1 ");        // put files before subfolders
+
+    fileName = givenFile.getName(); // get the file name without the path
+    result.append(fileName.toLowerCase()); // start by ignoring case
+    result.append(" ");           // separate lowercase from original case
+    result.append(fileName);      // then sort file name on original case
+    return(result.toString());
+  }
+
+
+/*
+  startTimeLimit() method
+
+  Start the time limit for the whole search, if there is one.  A thread sleeps
+  until the deadline, then stops the search as if the user had cancelled, and
+  says why.  The thread does nothing if the search has finished or a new
+  search has started, because <searchDeadline> will have changed.
+*/
+  static void startTimeLimit()
+  {
+    final long deadline;          // our copy of <searchDeadline>
+    Thread thread;                // sleeps until deadline
+
+    if (searchTimeLimit <= 0)     // is there a time limit?
+    {
+      searchDeadline = 0;         // no, and cancel any earlier limit
+      return;
+    }
+    deadline = searchDeadline = System.currentTimeMillis() + searchTimeLimit;
+    thread = new Thread(new Runnable() {
+      public void run() {
+        long delay;               // milliseconds until deadline
+        while ((searchDeadline == deadline) && ((delay = (deadline
+          - System.currentTimeMillis())) > 0))
+        {
+          try { Thread.sleep(delay); } catch (InterruptedException ie) { }
+        }
+        if (searchDeadline == deadline) // still the same search?
+        {
+          timeoutFlag = true;     // set before <cancelFlag> for other threads
+          cancelFlag = true;      // stop reading and searching files
+        } } }, "FileSearch1Timer");
+    thread.setDaemon(true);       // don't keep application alive
+    thread.start();
+  }
+
+
+} // end of FileSearch1 class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Window class
+
+  This class creates the graphical interface and handles its buttons.  It is
+  separate from the main FileSearch1 class so that the Java run-time doesn't
+  load the AWT and Swing classes for console searches.  (Verifying a class
+  loads the classes that its methods pass or assign to other types.)  As a
+  subclass, it uses the same static variables and methods as FileSearch1.
+*/
+
+class FileSearch1Window extends FileSearch1
+{
+/*
+  createWindow() method
+
+  Create the main window for the graphical interface, and show it.  Our
+  caller's options for fonts and window placement come from the command line.
+*/
+  static void createWindow(
+    Font buttonFont,              // font for buttons, labels, status, etc
+    boolean maximizeFlag,         // true if we maximize our main window
+    int windowHeight,             // normal window height in pixels
+    int windowLeft,               // normal window left position ("x")
+    int windowTop,                // normal window top position ("y")
+    int windowWidth)              // normal window width in pixels
+  {
+    ActionListener action;        // our shared action listener
+    int i;                        // index variable
+    String word;                  // font size as a string
+
+    /* The standard Java interface style is the most reliable, but you can
+    switch to something closer to the local system, if you want. */
+
+//  try
+//  {
+//    UIManager.setLookAndFeel(
+//      UIManager.getCrossPlatformLookAndFeelClassName());
+////    UIManager.getSystemLookAndFeelClassName());
+//  }
+//  catch (Exception ulafe)
+//  {
+//    System.err.println("Unsupported Java look-and-feel: " + ulafe);
+//  }
+
+    /* Initialize shared graphical objects. */
+
+    action = new FileSearch1User(); // create our shared action listener
+    fileChooser = new JFileChooser(); // create our shared file chooser
+    statusTimer = new javax.swing.Timer(TIMER_DELAY, action);
+                                  // update status message on clock ticks only
+
+    /* If our preferred font is not available for the output text area, then
+    use the boring default font for the local system. */
+
+    if (fontName.equals((new Font(fontName, Font.PLAIN, fontSize)).getFamily())
+      == false)                   // create font, read back created name
+    {
+      fontName = SYSTEM_FONT;     // must replace with standard system font
+    }
+
+    /* Create the graphical interface as a series of little panels inside
+    bigger panels.  The intermediate panel names are of no lasting importance
+    and hence are only numbered (panel01, panel02, etc). */
+
+    /* Create a vertical box to stack buttons and options. */
+
+    JPanel panel01 = new JPanel();
+    panel01.setLayout(new BoxLayout(panel01, BoxLayout.Y_AXIS));
+
+    /* Create a horizontal panel for the action buttons. */
+
+    JPanel panel11 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+
+    openButton = new JButton("Open File/Folder...");
+    openButton.addActionListener(action);
+    if (buttonFont != null) openButton.setFont(buttonFont);
+    openButton.setMnemonic(KeyEvent.VK_O);
+    openButton.setToolTipText("Start finding/opening files.");
+    panel11.add(openButton);
+    panel11.add(Box.createHorizontalStrut(50));
+
+    cancelButton = new JButton("Cancel");
+    cancelButton.addActionListener(action);
+    cancelButton.setEnabled(false);
+    if (buttonFont != null) cancelButton.setFont(buttonFont);
+    cancelButton.setMnemonic(KeyEvent.VK_C);
+    cancelButton.setToolTipText("Stop finding/opening files.");
+    panel11.add(cancelButton);
+    panel11.add(Box.createHorizontalStrut(50));
+
+    saveButton = new JButton("Save Output...");
+    saveButton.addActionListener(action);
+    if (buttonFont != null) saveButton.setFont(buttonFont);
+    saveButton.setMnemonic(KeyEvent.VK_S);
+    saveButton.setToolTipText("Copy output text to a file.");
+    panel11.add(saveButton);
+    panel11.add(Box.createHorizontalStrut(50));
+
+    exitButton = new JButton("Exit");
+    exitButton.addActionListener(action);
+    if (buttonFont != null) exitButton.setFont(buttonFont);
+    exitButton.setMnemonic(KeyEvent.VK_X);
+    exitButton.setToolTipText("Close this program.");
+    panel11.add(exitButton);
+
+    panel01.add(panel11);
+    panel01.add(Box.createVerticalStrut(10)); // space between panels
+
+    /* Create a horizontal panel for the search string and encoding. */
+
+    JPanel panel21 = new JPanel(new BorderLayout(10, 0));
+
+    JLabel label22 = new JLabel("Search:");
+    if (buttonFont != null) label22.setFont(buttonFont);
+    panel21.add(label22, BorderLayout.WEST);
+
+    searchDialog = new JTextField(searchString, 20);
+    if (buttonFont != null) searchDialog.setFont(buttonFont);
+    searchDialog.setMargin(new Insets(1, 3, 2, 3)); // top, left, bottom, right
+//  searchDialog.addActionListener(action); // do last so don't fire early
+    panel21.add(searchDialog, BorderLayout.CENTER);
+
+    encodeDialog = new JComboBox();
+    encodeDialog.addItem(LOCAL_ENCODING); // start with our special names
+    encodeDialog.addItem(RAW_ENCODING);
+    encodeDialog.addItem(DETECT_ENCODING);
+    Object[] list23 = java.nio.charset.Charset.availableCharsets().keySet()
+      .toArray();                 // get character set names from local system
+    for (i = 0; i < list23.length; i ++)
+      encodeDialog.addItem((String) list23[i]); // insert each encoding name
+    encodeDialog.setEditable(true); // allow user to enter alternate names
+    if (buttonFont != null) encodeDialog.setFont(buttonFont);
+    encodeDialog.setSelectedItem(encodeName); // selected item is our default
+    encodeDialog.setToolTipText(
+      "Select name of character set encoding for reading files.");
+    encodeDialog.addActionListener(action); // do last so don't fire early
+    panel21.add(encodeDialog, BorderLayout.EAST);
+
+    panel01.add(panel21);
+    panel01.add(Box.createVerticalStrut(10)); // space between panels
+
+    /* Create a horizontal panel for search options. */
+
+    JPanel panel31 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+
+    JLabel label32 = new JLabel("Options:");
+    if (buttonFont != null) label32.setFont(buttonFont);
+    panel31.add(label32);
+    panel31.add(Box.createHorizontalStrut(10));
+
+    caseCheckbox = new JCheckBox("exact case", caseFlag);
+    if (buttonFont != null) caseCheckbox.setFont(buttonFont);
+    caseCheckbox.setToolTipText(
+      "Select if uppercase and lowercase are different.");
+    caseCheckbox.addActionListener(action); // do last so don't fire early
+    panel31.add(caseCheckbox);
+    panel31.add(Box.createHorizontalStrut(10));
+
+    nullCheckbox = new JCheckBox("ignore nulls", nullFlag);
+    if (buttonFont != null) nullCheckbox.setFont(buttonFont);
+    nullCheckbox.setToolTipText(
+      "Select to ignore <NUL> and <DEL> characters.");
+    nullCheckbox.addActionListener(action); // do last so don't fire early
+    panel31.add(nullCheckbox);
+    panel31.add(Box.createHorizontalStrut(10));
+
+    regexCheckbox = new JCheckBox("regular expression", regexFlag);
+    if (buttonFont != null) regexCheckbox.setFont(buttonFont);
+    regexCheckbox.setToolTipText(
+      "Select if search string is a Java regular expression.");
+    regexCheckbox.addActionListener(action); // do last so don't fire early
+    panel31.add(regexCheckbox);
+    panel31.add(Box.createHorizontalStrut(10));
+
+    recurseCheckbox = new JCheckBox("search subfolders", recurseFlag);
+    if (buttonFont != null) recurseCheckbox.setFont(buttonFont);
+    recurseCheckbox.setToolTipText("Select to search folders and subfolders.");
+    recurseCheckbox.addActionListener(action); // do last so don't fire early
+    panel31.add(recurseCheckbox);
+
+    panel01.add(panel31);
+    panel01.add(Box.createVerticalStrut(10)); // space between panels
+
+    /* Create a horizontal panel for report options. */
+
+    JPanel panel41 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+
+    JLabel label42 = new JLabel("Display:");
+    if (buttonFont != null) label42.setFont(buttonFont);
+    panel41.add(label42);
+    panel41.add(Box.createHorizontalStrut(10));
+
+    reportDialog = new JComboBox(REPORT_CHOICES);
+    reportDialog.setEditable(false); // user must select one of our choices
+    if (buttonFont != null) reportDialog.setFont(buttonFont);
+    reportDialog.setSelectedIndex(reportIndex); // select default level
+    reportDialog.setToolTipText("Select which files to report.");
+    reportDialog.addActionListener(action); // do last so don't fire early
+    panel41.add(reportDialog);
+    panel41.add(Box.createHorizontalStrut(40));
+
+    JLabel label44 = new JLabel("Speed:");
+    if (buttonFont != null) label44.setFont(buttonFont);
+    panel41.add(label44);
+    panel41.add(Box.createHorizontalStrut(10));
+
+    rateDialog = new JComboBox(RATE_CHOICES);
+    rateDialog.setEditable(true); // allow user to enter other limits
+    if (buttonFont != null) rateDialog.setFont(buttonFont);
+    rateDialog.setSelectedItem(rateLimit.toString()); // limits from options
+    rateDialog.setToolTipText(
+      "Limit reading to protect a busy disk.  Changes apply immediately.");
+    rateDialog.addActionListener(action); // do last so don't fire early
+    panel41.add(rateDialog);
+    panel41.add(Box.createHorizontalStrut(40));
+
+    JLabel label43 = new JLabel("Font:");
+    if (buttonFont != null) label43.setFont(buttonFont);
+    panel41.add(label43);
+    panel41.add(Box.createHorizontalStrut(10));
+
+    fontNameDialog = new JComboBox(GraphicsEnvironment
+      .getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
+    fontNameDialog.setEditable(false); // user must select one of our choices
+    if (buttonFont != null) fontNameDialog.setFont(buttonFont);
+    fontNameDialog.setSelectedItem(fontName); // select default font name
+    fontNameDialog.setToolTipText("Font name for output text.");
+    fontNameDialog.addActionListener(action); // do last so don't fire early
+    panel41.add(fontNameDialog);
+    panel41.add(Box.createHorizontalStrut(10));
+
+    TreeSet sizelist = new TreeSet(); // collect font sizes 10 to 99 in order
+    word = String.valueOf(fontSize); // convert number to a string we can use
+    sizelist.add(word);           // add default or user's chosen font size
+    for (i = 0; i < FONT_SIZES.length; i ++) // add our preferred size list
+      sizelist.add(FONT_SIZES[i]); // assume sizes are all two digits (10-99)
+    fontSizeDialog = new JComboBox(sizelist.toArray()); // give user nice list
+    fontSizeDialog.setEditable(false); // user must select one of our choices
+    if (buttonFont != null) fontSizeDialog.setFont(buttonFont);
+    fontSizeDialog.setSelectedItem(word); // selected item is our default size
+    fontSizeDialog.setToolTipText("Point size for output text.");
+    fontSizeDialog.addActionListener(action); // do last so don't fire early
+    panel41.add(fontSizeDialog);
+
+    panel01.add(panel41);
+
+    /* Put above boxed options in a panel that is centered horizontally.  Use
+    FlowLayout's horizontal gap to add padding on the left and right sides. */
+
+    JPanel panel51 = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+    panel51.add(panel01);
+
+    /* Use another BorderLayout for precise control over the margins. */
+
+    JPanel panel52 = new JPanel(new BorderLayout(0, 0));
+    panel52.add(Box.createVerticalStrut(11), BorderLayout.NORTH);
+    panel52.add(Box.createHorizontalStrut(5), BorderLayout.WEST);
+    panel52.add(panel51, BorderLayout.CENTER);
+    panel52.add(Box.createHorizontalStrut(5), BorderLayout.EAST);
+    panel52.add(Box.createVerticalStrut(10), BorderLayout.SOUTH);
+
+    /* Create a scrolling text area for the generated output. */
+
+    outputText = new JTextArea(20, 40);
+    outputText.setEditable(false); // user can't change this text area
+    outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+    outputText.setLineWrap(false); // don't wrap text lines
+    outputText.setMargin(new Insets(5, 6, 5, 6)); // top, left, bottom, right
+    outputText.setText(
+      "\nSearch for files that contain or don't contain a given string."
+      + "\n\nChoose your options; then open files or folders to search."
+      + "\n\nCopyright (c) 2007 by Keith Fenske.  By using this program, you"
+      + "\nagree to terms and conditions of the Apache License and/or GNU"
+      + "\nGeneral Public License.\n\n");
+
+    /* Create an entire panel just for the status message.  We do this so that
+    we have some control over the margins.  Put the status text in the middle
+    of a BorderLayout so that it expands with the window size. */
+
+    JPanel panel53 = new JPanel(new BorderLayout(0, 0));
+    statusDialog = new JLabel(EMPTY_STATUS, JLabel.LEFT);
+    if (buttonFont != null) statusDialog.setFont(buttonFont);
+    statusDialog.setToolTipText(
+      "Running status as files are processed by the Open button.");
+    panel53.add(Box.createVerticalStrut(4), BorderLayout.NORTH);
+    panel53.add(Box.createHorizontalStrut(10), BorderLayout.WEST);
+    panel53.add(statusDialog, BorderLayout.CENTER);
+    panel53.add(Box.createHorizontalStrut(10), BorderLayout.EAST);
+    panel53.add(Box.createVerticalStrut(3), BorderLayout.SOUTH);
+
+    /* Create the main window frame for this application.  Stack buttons and
+    options above the text area.  Keep text in the center so that it expands
+    horizontally and vertically.  Put status message at the bottom, which also
+    expands. */
+
+    mainFrame = new JFrame(PROGRAM_TITLE);
+    Container panel54 = mainFrame.getContentPane(); // where content meets frame
+    panel54.setLayout(new BorderLayout(0, 0));
+    panel54.add(panel52, BorderLayout.NORTH); // buttons and options
+    panel54.add(new JScrollPane(outputText), BorderLayout.CENTER); // text area
+    panel54.add(panel53, BorderLayout.SOUTH); // status message
+
+    mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    mainFrame.setLocation(windowLeft, windowTop); // normal top-left corner
+    if ((windowHeight < MIN_FRAME) || (windowWidth < MIN_FRAME))
+      mainFrame.pack();           // do component layout with minimum size
+    else                          // the user has given us a window size
+      mainFrame.setSize(windowWidth, windowHeight); // size of normal window
+    if (maximizeFlag) mainFrame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+    mainFrame.validate();         // recheck application window layout
+    mainFrame.setVisible(true);   // and then show application window
+
+    /* Let the graphical interface run the application now. */
+
+    searchDialog.requestFocusInWindow(); // sometimes works, sometimes doesn't
+
+  } // end of createWindow() method
+
+
+/*
+  doCancelButton() method
+
+  This method is called while we are opening files or folders if the user wants
+  to end the processing early, perhaps because it is taking too long.  We must
+  cleanly terminate any secondary threads.  Leave whatever output has already
+  been generated in the output text area.
+*/
+  static void doCancelButton()
+  {
+    cancelFlag = true;            // tell other threads that all work stops now
+    putError("Cancelled by user."); // print message and scroll
+  }
+
+
+/*
+  doOpenButton() method
+
+  Allow the user to select one or more files or folders for processing.
+*/
+  static void doOpenButton()
+  {
+    /* The only option that must be supplied by the user is a search string. */
+
+    searchString = searchDialog.getText(); // plain text or regular expression
+    if (searchString.length() == 0)
+    {
+      JOptionPane.showMessageDialog(mainFrame,
+        "Please enter a search string before opening files or folders.");
+      return;                     // end the Open button early
+    }
+
+    /* Ask the user for input files or folders. */
+
+    fileChooser.resetChoosableFileFilters(); // remove any existing filters
+    fileChooser.setDialogTitle("Open Files or Folders...");
+    fileChooser.setFileHidingEnabled(! hiddenFlag); // may show hidden files
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+    fileChooser.setMultiSelectionEnabled(true); // allow more than one file
+    if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+      return;                     // user cancelled file selection dialog box
+    openFileList = sortFileList(fileChooser.getSelectedFiles());
+                                  // get list of files selected by user
+
+    /* We have a list of files or folders.  Disable the "Open" button until we
+    are done, and enable a "Cancel" button in case our secondary thread runs
+    for a long time and the user panics. */
+
+    cancelButton.setEnabled(true); // enable button to cancel this processing
+    cancelFlag = false;           // but don't cancel unless user complains
+    countExtensions = new TreeMap(); // forget counts from previous search
+    countLines = countMatches = 0;
+    dedupCount = 0;               // no duplicate files found yet
+    dedupFirst = new HashMap();
+    dedupHashes = Collections.synchronizedMap(new HashMap());
+    dedupMap = Collections.synchronizedMap(new HashMap()); // forget old files
+    dedupPending = new HashMap();
+    dedupSizes = Collections.synchronizedSet(new HashSet());
+    dedupUnhashed = new HashMap();
+    failCount = folderCount = matchCount = 0; // no files or folders found yet
+    followList = new Vector();    // forget files followed by any previous search
+    followPaths = Collections.synchronizedSet(new HashSet());
+    ignoreRules.clear();          // read ignore files again, may have changed
+    timeoutCount = 0;             // no files stopped by limits yet
+    timeoutFlag = false;          // search time limit hasn't expired
+    openButton.setEnabled(false); // suspend "Open" button until we are done
+    outputText.setText("");       // clear output text area
+    approxEngine = null;          // no approximate search until compiled
+    byteEngine = null;            // no byte search until search is compiled
+    scanEngine = null;            // no line skipping until search is compiled
+    literalFilter = null;         // no prefilter until search is compiled
+    searchEngine = null;          // no engine until search is compiled
+    searchPattern = null;         // we haven't compiled the search string yet
+    searchQuery = null;
+    setStatusMessage(EMPTY_STATUS); // clear status message at bottom of window
+    statusTimer.start();          // start updating the status message
+
+    openFilesThread = new Thread(new FileSearch1User(), "doOpenRunner");
+    openFilesThread.setPriority(Thread.MIN_PRIORITY);
+                                  // use low priority for heavy-duty workers
+    openFilesThread.start();      // run separate thread to open files, report
+
+  } // end of doOpenButton() method
+
+
+/*
+  doOpenRunner() method
+
+  This method is called inside a separate thread by the runnable interface of
+  our "user" class to process the user's selected files in the context of the
+  "main" class.  By doing all the heavy-duty work in a separate thread, we
+  won't stall the main thread that runs the graphical interface, and we allow
+  the user to cancel the processing if it takes too long.
+*/
+  static void doOpenRunner()
+  {
+    int i;                        // index variable
+
+    /* Loop once for each file name selected.  Don't assume that these are all
+    valid file names. */
+
+    startTimeLimit();             // stop search after time limit, if any
+    progress = null;              // assume no progress counters
+    if ((progressIndex > 0) && (followFlag == false)) // show progress?
+    {
+      progress = new FileSearch1Progress();
+      for (i = 0; i < openFileList.length; i ++)
+        progress.addRoot(openFileList[i]);
+      progress.start(progressIndex == 1); // measure total size first?
+    }
+    for (i = 0; i < openFileList.length; i ++)
+    {
+      if (cancelFlag) break;      // exit from <for> loop if user cancelled
+      processFileOrFolder(openFileList[i]); // process this file or folder
+    }
+    if (progress != null)         // stop updating progress
+      progress.stop();
+    if (prefetcher != null)       // release any buffers read ahead
+      prefetcher.clear();
+    if (followFlag)               // keep searching files as they grow?
+      followFiles();              // returns when the user cancels
+    searchDeadline = 0;           // time limit no longer applies
+
+
+    /* Print a summary and scroll the output, even if we were cancelled. */
+
+    if (batchList != null)        // separate report for each query?
+      reportBatchResults();
+    putError("Matched " + prettyPlural(matchCount, "file")
+      + " and didn't match " + prettyPlural(failCount, "file") + " in "
+      + prettyPlural(folderCount, "folder") + ".");
+    if (dedupCount > 0)           // were any duplicate files not searched?
+      putError("Reused results for " + prettyPlural(dedupCount,
+        "duplicate file") + ".");
+    if (timeoutCount > 0)         // were any files stopped by limits?
+      putError("Gave up on " + prettyPlural(timeoutCount, "file")
+        + " at time limits.");
+    if (timeoutFlag)              // did we stop before searching everything?
+      putError("Search time limit exceeded; not all files were searched.");
+    if (countIndex > 0)           // were we counting matches?
+      reportCountTotals();
+    if (debugFlag)                // does user want debug information?
+    {
+      System.err.println("doOpenRunner " + bufferPool.report());
+      System.err.println("doOpenRunner " + rateLimit.report());
+    }
+
+    /* We are done.  Turn off the "Cancel" button and allow the user to click
+    the "Start" button again. */
+
+    cancelButton.setEnabled(false); // disable "Cancel" button
+    openButton.setEnabled(true);  // enable "Open" button
+    statusTimer.stop();           // stop updating status on timer ticks
+    setStatusMessage(EMPTY_STATUS); // and clear any previous status message
+
+  } // end of doOpenRunner() method
+
+
+/*
+  doSaveButton() method
+
+  Ask the user for an output file name, create or replace that file, and copy
+  the contents of our output text area to that file.  The output file will be
+  in the default character set for the system, so if there are special Unicode
+  characters in the displayed text (Arabic, Chinese, Eastern European, etc),
+  then you are better off copying and pasting the output text directly into a
+  Unicode-aware application like Microsoft Word.
+*/
+  static void doSaveButton()
+  {
+    FileWriter output;            // output file stream
+    File userFile;                // file chosen by the user
+
+    /* Ask the user for an output file name. */
+
+    fileChooser.resetChoosableFileFilters(); // remove any existing filters
+    fileChooser.setDialogTitle("Save Output as Text File...");
+    fileChooser.setFileHidingEnabled(true); // don't show hidden files
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+    fileChooser.setMultiSelectionEnabled(false); // allow only one file
+    if (fileChooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+      return;                     // user cancelled file selection dialog box
+    userFile = fileChooser.getSelectedFile();
+
+    /* See if we can write to the user's chosen file. */
+
+    if (userFile.isDirectory())   // can't write to directories or folders
+    {
+      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
+        + " is a directory or folder.\nPlease select a normal file."));
+      return;
+    }
+    else if (userFile.isHidden()) // won't write to hidden (protected) files
+    {
+      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
+        + " is a hidden or protected file.\nPlease select a normal file."));
+      return;
+    }
+    else if (userFile.isFile() == false) // if file doesn't exist
+    {
+      /* Maybe we can create a new file by this name.  Do nothing here. */
+    }
+    else if (userFile.canWrite() == false) // file exists, but is read-only
+    {
+      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
+        + " is locked or write protected.\nCan't write to this file."));
+      return;
+    }
+    else if (JOptionPane.showConfirmDialog(mainFrame, (userFile.getName()
+      + " already exists.\nDo you want to replace this with a new file?"))
+      != JOptionPane.YES_OPTION)
+    {
+      return;                     // user cancelled file replacement dialog
+    }
+
+    /* Write lines to output file. */
+
+    try                           // catch file I/O errors
+    {
+      output = new FileWriter(userFile); // try to open output file
+      outputText.write(output);   // couldn't be much easier for writing!
+      output.close();             // try to close output file
+    }
+    catch (IOException ioe)
+    {
+      putError("Can't write to text file: " + ioe.getMessage());
+    }
+  } // end of doSaveButton() method
+
+
+/*
+  showMessage() method
+
+  Show an error message in a dialog box for GUI users.  Methods in the main
+  FileSearch1 class call here, so that they don't refer to GUI classes.
+*/
+  static void showMessage(String text)
+  {
+    JOptionPane.showMessageDialog(mainFrame, text);
+  }
+
+
+/*
+  userButton() method
+
+  This method is called by our action listener actionPerformed() to process
+  buttons, in the context of the main FileSearch1 class.
+*/
+  static void userButton(ActionEvent event)
+  {
+    Object source = event.getSource(); // where the event came from
+    if (source == cancelButton)   // "Cancel" button
+    {
+      doCancelButton();           // stop opening files or folders
+    }
+    else if (source == caseCheckbox) // if uppercase differs from lowercase
+    {
+      caseFlag = caseCheckbox.isSelected();
+    }
+    else if (source == encodeDialog) // name of assumed character set encoding
+    {
+      /* Accept anything for a character set name, because availableCharsets()
+      can be incomplete.  For example, MacRoman is optional on Java 1.4 for
+      Windows and is missing from the official list even if installed.  Illegal
+      names will generate an error message when they are first used. */
+
+      encodeName = (String) encodeDialog.getSelectedItem();
+    }
+    else if (source == exitButton) // "Exit" button
+    {
+      System.exit(0);             // always exit with zero status from GUI
+    }
+    else if (source == fontNameDialog) // font name for output text area
+    {
+      /* We can safely assume that the font name is valid, because we obtained
+      the names from getAvailableFontFamilyNames(), and the user can't edit
+      this dialog field. */
+
+      fontName = (String) fontNameDialog.getSelectedItem();
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+    }
+    else if (source == fontSizeDialog) // point size for output text area
+    {
+      /* We can safely parse the point size as an integer, because we supply
+      the only choices allowed, and the user can't edit this dialog field. */
+
+      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+    }
+    else if (source == nullCheckbox) // if <NUL> and <DEL> chars are ignored
+    {
+      nullFlag = nullCheckbox.isSelected();
+    }
+    else if (source == openButton) // "Open" button for files or folders
+    {
+      doOpenButton();             // open files or folders for processing
+    }
+    else if (source == rateDialog) // speed limit, even while searching
+    {
+      if (rateLimit.setLimits((String) rateDialog.getSelectedItem()) == false)
+      {
+        showMessage("Speed limit must be " + FileSearch1Limit.NO_LIMIT
+          + " or options like -rate=10m -ratefiles=100 -rateadapt");
+        rateDialog.setSelectedItem(rateLimit.toString());
+      }
+    }
+    else if (source == recurseCheckbox) // recursion for folders, subfolders
+    {
+      recurseFlag = recurseCheckbox.isSelected();
+    }
+    else if (source == regexCheckbox) // if search is Java regular expression
+    {
+      regexFlag = regexCheckbox.isSelected();
+    }
+    else if (source == reportDialog) // select which files to report
+    {
+      reportIndex = reportDialog.getSelectedIndex();
+    }
+    else if (source == saveButton) // "Save Output" button
+    {
+      doSaveButton();             // write output text area to a file
+    }
+    else if (source == statusTimer) // update timer for status message text
+    {
+      if (statusPending.equals(statusDialog.getText()) == false)
+        statusDialog.setText(statusPending); // new message, update the display
+    }
+    else                          // fault in program logic, not by user
+    {
+      System.err.println("Error in userButton(): unknown ActionEvent: "
+        + event);                 // should never happen, so write on console
+    }
+  } // end of userButton() method
+
+} // end of FileSearch1Window class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1User class
+
+  This class listens to input from the user and passes back event parameters to
+  a static method in the main class.
+*/
+
+class FileSearch1User implements ActionListener, Runnable
+{
+  /* empty constructor */
+
+  public FileSearch1User() { }
+
+  /* button listener, dialog boxes, etc */
+
+  public void actionPerformed(ActionEvent event)
+  {
+    FileSearch1Window.userButton(event);
+  }
+
+  /* separate heavy-duty processing thread */
+
+  public void run()
+  {
+    FileSearch1Window.doOpenRunner();
+  }
+
+} // end of FileSearch1User class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Approx class
+
+  This class finds plain text with up to a given number of edits (characters
+  inserted, deleted, or changed), using the bit-parallel algorithm of Gene
+  Myers (1999).  One column of the edit distance table is kept as bits in two
+  <long> words, for search strings up to 64 characters, so each character of
+  text takes a dozen or so operations, no matter how many edits are allowed.
+  The bits for each character are in a table with one entry for every <char>,
+  and when uppercase and lowercase are equal, every character that folds to
+  the same as a character in the search string gets the same bits; the text
+  is never folded.  A surrogate pair is folded as one character: both halves
+  of each case variant get the bits for the pair.  Searches don't change the
+  object, so threads share it.
+*/
+
+class FileSearch1Approx
+{
+  /* constants */
+
+  static final int MAX_LENGTH = 64; // bits in a <long>
+
+  /* instance variables */
+
+  long high;                      // bit for last character of search string
+  int length;                     // characters in search string
+  int limit;                      // maximum number of edits for a match
+  long mask;                      // one bit for each character of string
+  long[] peq;                     // bits where each <char> appears in string
+
+  public FileSearch1Approx(
+    String pattern,               // plain text to search for
+    int givenLimit,               // maximum number of edits
+    boolean fold)                 // true if uppercase and lowercase are equal
+  {
+    int ch;                       // one character from table
+    int i;                        // index variable
+
+    length = pattern.length();
+    limit = givenLimit;
+    high = 1L << (length - 1);
+    mask = (length == 64) ? -1L : ((1L << length) - 1);
+    peq = new long[0x10000];      // one entry for each <char> value
+    for (i = 0; i < length; i ++)
+      peq[pattern.charAt(i)] |= 1L << i;
+    if (fold)                     // copy bits to all equal characters
+    {
+      long[] folded = new long[0x10000]; // bits by folded character
+      for (ch = 0; ch < 0x10000; ch ++)
+        folded[FileSearch1.foldTable[ch]] |= peq[ch];
+      for (ch = 0; ch < 0x10000; ch ++)
+        peq[ch] = folded[FileSearch1.foldTable[ch]];
+      for (i = 0; i < (length - 1); i ++) // supplementary characters
+      {
+        if (Character.isHighSurrogate(pattern.charAt(i))
+          && Character.isLowSurrogate(pattern.charAt(i + 1)))
+        {
+          int[] cases = FileSearch1.foldVariants(pattern.codePointAt(i));
+          for (ch = 0; ch < cases.length; ch ++)
+          {
+            peq[Character.highSurrogate(cases[ch])] |= 1L << i;
+            peq[Character.lowSurrogate(cases[ch])] |= 1L << (i + 1);
+          }
+          i ++;                   // skip low surrogate
+        }
+      }
+    }
+  }
+
+/*
+  count() method
+
+  Return the number of approximate matches in a line, without overlapping:
+  after each match, the search starts over with the next character.
+*/
+  int count(StringBuffer text)
+  {
+    char[] chars;                 // copy of caller's text
+    int count;                    // number of matches found
+    long eq, mh, mv, ph, pv, xh, xv; // bit vectors for one column
+    int i;                        // index variable
+    int score;                    // edits for best match ending here
+
+    chars = new char[text.length()]; // one copy is faster than many charAt()
+    text.getChars(0, chars.length, chars, 0);
+    count = 0;
+    pv = mask;                    // every row is one more than the row above
+    mv = 0;
+    score = length;               // empty text needs every character inserted
+    for (i = 0; i < chars.length; i ++)
+    {
+      eq = peq[chars[i]];
+      xv = eq | mv;
+      xh = (((eq & pv) + pv) ^ pv) | eq;
+      ph = mv | ~(xh | pv);
+      mh = pv & xh;
+      if ((ph & high) != 0) score ++;
+      else if ((mh & high) != 0) score --;
+      ph <<= 1;
+      mh <<= 1;
+      pv = mh | ~(xv | ph);
+      mv = ph & xv;
+      if (score <= limit)         // match ends here, start over after it
+      {
+        count ++;
+        pv = mask;
+        mv = 0;
+        score = length;
+      }
+    }
+    return(count);
+  }
+
+/*
+  find() method
+
+  Search one line for the match with the fewest edits (the first one, if more
+  than one has the same number of edits).  Return the starting and ending
+  index of the match, and the number of edits, or null if there is no match.
+*/
+  int[] find(StringBuffer text)
+  {
+    int best;                     // fewest edits found so far
+    int bestEnd;                  // index after last character of best match
+    char[] chars;                 // copy of caller's text
+    long eq, mh, mv, ph, pv, xh, xv; // bit vectors for one column
+    int i;                        // index variable
+    int score;                    // edits for best match ending here
+
+    chars = new char[text.length()]; // one copy is faster than many charAt()
+    text.getChars(0, chars.length, chars, 0);
+    best = limit + 1;             // no match yet
+    bestEnd = -1;
+    pv = mask;                    // every row is one more than the row above
+    mv = 0;
+    score = length;               // empty text needs every character inserted
+    for (i = 0; i < chars.length; i ++)
+    {
+      eq = peq[chars[i]];
+      xv = eq | mv;
+      xh = (((eq & pv) + pv) ^ pv) | eq;
+      ph = mv | ~(xh | pv);
+      mh = pv & xh;
+      if ((ph & high) != 0) score ++;
+      else if ((mh & high) != 0) score --;
+      ph <<= 1;
+      mh <<= 1;
+      pv = mh | ~(xv | ph);
+      mv = ph & xv;
+      if (score < best)           // better than any match so far?
+      {
+        best = score;
+        bestEnd = i + 1;
+        if (best == 0) break;     // can't do better than exact match
+      }
+    }
+    if (bestEnd < 0)              // no match within the limit
+      return(null);
+    return(new int[] {findStart(chars, bestEnd, best), bestEnd, best});
+  }
+
+/*
+  findStart() method
+
+  Find where a match starts, given where it ends and its number of edits, by
+  filling in the edit distance table backwards from the end.  Choose the
+  earliest start with the same number of edits.  This is only done for one
+  match per line, so it doesn't need to be fast.
+*/
+  int findStart(char[] chars, int end, int edits)
+  {
+    int[] column;                 // edits for suffixes of search string
+    int i, j;                     // index variables
+    int[] next;                   // column for one more character of text
+    int start;                    // best start found so far
+    int[] swap;                   // for exchanging <column> and <next>
+
+    column = new int[length + 1]; // zero characters of text, all inserted
+    next = new int[length + 1];
+    for (i = 0; i <= length; i ++)
+      column[i] = i;
+    start = end;
+    for (j = 1; (j <= (length + edits)) && (j <= end); j ++)
+    {
+      next[0] = j;                // text with empty search string, deleted
+      for (i = 1; i <= length; i ++)
+      {
+        next[i] = Math.min(Math.min((next[i - 1] + 1), (column[i] + 1)),
+          (column[i - 1] + ((((peq[chars[end - j]] >>> (length - i)) & 1)
+          != 0) ? 0 : 1)));       // compare backwards from end
+      }
+      if (next[length] == edits)  // match can start here
+        start = end - j;
+      swap = column; column = next; next = swap;
+    }
+    return(start);
+  }
+
+} // end of FileSearch1Approx class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Batch class
+
+  This class has one query from a batch file: a search string with its own
+  options and report.  Options at the start of the line are -c, -c0, -c1, -r,
+  -r0, -r1, and -m0 to -m6, with the same meaning as on the command line.  The
+  options end at the first word that isn't one of these, or after "--".  The
+  rest of the line is the search string.  Options not given are the same as on
+  the command line.
+*/
+
+class FileSearch1Batch
+{
+  boolean caseFlag;               // true if uppercase/lowercase is significant
+  String express;                 // regular expression for <pattern>
+  int failCount;                  // number of files that don't match
+  String line;                    // line from batch file, with options
+  int matchCount;                 // number of files that match
+  int number;                     // query number, starting from one
+  Vector output;                  // lines of report, until end of search
+  Pattern pattern;                // compiled search string
+  boolean regexFlag;              // true if search is Java regular expression
+  int reportIndex;                // selection from <REPORT_CHOICES>
+  String text;                    // search string, without options
+
+  public FileSearch1Batch(String givenLine, int givenNumber)
+  {
+    line = givenLine;             // compiled later, with default options
+    number = givenNumber;
+    output = new Vector();        // no report yet
+    pattern = null;               // not compiled yet
+  }
+
+/*
+  compile() method
+
+  Separate options from the search string, and compile the search string.
+  Throw PatternSyntaxException for a bad regular expression, or
+  IllegalArgumentException if there is no search string.
+*/
+  void compile(
+    boolean defaultCase,          // default for <caseFlag>
+    boolean defaultRegex,         // default for <regexFlag>
+    int defaultReport)            // default for <reportIndex>
+  {
+    int end;                      // index after end of one word
+    int start;                    // index of start of one word
+    String word;                  // one option, in lowercase
+
+    caseFlag = defaultCase;
+    regexFlag = defaultRegex;
+    reportIndex = defaultReport;
+    start = 0;                    // start at beginning of line
+    while (true)
+    {
+      while ((start < line.length())
+        && Character.isWhitespace(line.charAt(start))) // skip leading spaces
+      {
+        start ++;
+      }
+      end = start;
+      while ((end < line.length())
+        && (Character.isWhitespace(line.charAt(end)) == false)) // one word
+      {
+        end ++;
+      }
+      word = line.substring(start, end).toLowerCase();
+      if (word.equals("-c") || word.equals("-c1"))
+        caseFlag = true;
+      else if (word.equals("-c0"))
+        caseFlag = false;
+      else if (word.equals("-r") || word.equals("-r1"))
+        regexFlag = true;
+      else if (word.equals("-r0"))
+        regexFlag = false;
+      else if ((word.length() == 3) && word.startsWith("-m")
+        && (word.charAt(2) >= '0') && (word.charAt(2) <= '6'))
+      {
+        reportIndex = word.charAt(2) - '0';
+      }
+      else if (word.equals("--")) // end of options, string follows one space
+      {
+        start = Math.min((end + 1), line.length());
+        break;
+      }
+      else                        // not an option, must be search string
+        break;
+      start = end;                // look for another option
+    }
+    text = line.substring(start);
+    if (text.length() == 0)       // nothing to search for
+      throw new IllegalArgumentException("no search string: " + line);
+    express = regexFlag ? text : FileSearch1.makeRegularPlain(text);
+    pattern = Pattern.compile(express, (caseFlag ? 0
+      : (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+    failCount = matchCount = 0;   // no files searched yet
+    output.clear();               // forget report from any earlier search
+  }
+
+} // end of FileSearch1Batch class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Checkpoint class
+
+  This class saves the position of a long search in a file, so that the search
+  can be continued after it is interrupted.  Files and folders are always
+  searched in the same sorted order, so the position is just the last file
+  whose result was reported, plus which of the user's files or folders it came
+  from.  Totals are counted here in the same order as results are reported;
+  with many threads, the main totals include files searched ahead.
+
+  To resume, files and folders that sort before the saved file in the same
+  folder are skipped without being listed, and folders that contain the saved
+  file are listed again (but not counted again).  The checkpoint is written to
+  a temporary file and then renamed, so a crash while writing leaves the last
+  good checkpoint.  It is saved periodically, when the program is stopped by
+  the system (Ctrl-C, shutdown), and at the time limit.  It is deleted after a
+  complete search.
+
+  The file is lines of UTF-8 text: a version line, "arg " with each option
+  and file name (except options for speed), "root " with the number of the
+  user's file or folder, "last " with the path of the last file, and "totals "
+  with the number of files matched and not matched, folders, matching lines,
+  and matches.
+*/
+
+class FileSearch1Checkpoint
+{
+  /* constants */
+
+  static final String[] SPEED_OPTIONS = {"-checkpointtime=", "-d",
+    "-poolmem=", "-prefetch", "-progress", "-rate", "-resume", "-threads=",
+    "-timelimit=", "-virtual"}; // may change when resuming
+  static final String VERSION = "FileSearch1 checkpoint 1"; // first line
+
+  /* instance variables */
+
+  Vector args;                    // command line, without speed options
+  long delay;                     // milliseconds between checkpoints
+  File file;                      // checkpoint file
+  boolean finished;               // true when search is done or saved at end
+  File last;                      // last file reported, or null
+  int lastRoot;                   // root for <last>, starting at 1
+  long pending;                   // folders listed since <last>
+  boolean resume;                 // true if we continue from <file>
+  File[] resumePath;              // folders down to resumed file, or null
+  String[] resumeKeys;            // sort keys for <resumePath>
+  int resumeRoot;                 // root with resumed file, or zero
+  int root;                       // current root, starting at 1
+  long saved;                     // system time of last checkpoint
+  long[] totals;                  // matched, failed, folders, lines, matches
+
+  public FileSearch1Checkpoint(String[] givenArgs)
+  {
+    args = new Vector();
+    for (int i = 0; i < givenArgs.length; i ++)
+      if (speedOption(givenArgs[i]) == false)
+        args.add(givenArgs[i]);   // must be the same when resuming
+    delay = FileSearch1.DEFAULT_CHECKPOINT * 1000;
+    file = null;                  // name comes from -checkpoint=name
+    finished = false;
+    last = null;                  // nothing reported yet
+    lastRoot = resumeRoot = root = 0;
+    pending = 0;                  // no folders listed yet
+    resume = false;               // by default, start from the beginning
+    resumePath = null;
+    resumeKeys = null;
+    saved = System.currentTimeMillis(); // first checkpoint after <delay>
+    totals = new long[5];
+  }
+
+/*
+  fileDone() method
+
+  Called in order after each file is reported.  Saves a checkpoint if enough
+  time has passed.  Files stopped by the time limit for the whole search are
+  searched again when resuming.
+*/
+  synchronized void fileDone(File givenFile, FileSearch1Verdict verdict)
+  {
+    if (FileSearch1.cancelFlag || FileSearch1.timeoutFlag)
+      return;                     // file may not have been searched to end
+    if (verdict.found) totals[0] ++; else totals[1] ++;
+    totals[2] += pending;         // folders before this file are finished
+    pending = 0;
+    if (FileSearch1.countIndex > 0) // matching lines only when counting
+    {
+      totals[3] += verdict.lines;
+      totals[4] += verdict.matches;
+    }
+    last = givenFile;
+    lastRoot = root;
+    if ((System.currentTimeMillis() - saved) >= delay) // time to save?
+      save();
+  }
+
+/*
+  finish() method
+
+  Called at the end of a search.  Delete the checkpoint if the search is
+  complete; otherwise save it with the final position.
+*/
+  synchronized void finish(boolean complete)
+  {
+    finished = true;              // shutdown hook has nothing to do
+    if (complete)
+      file.delete();              // next search starts from the beginning
+    else
+    {
+      save();
+      FileSearch1.putError("Saved position in " + file.getPath()
+        + "; use -resume to continue.");
+    }
+  }
+
+/*
+  folderDone() method
+
+  Called in order when a folder is listed.  Folders that contain the resumed
+  file were already counted.  Other folders are counted with the next file, so
+  that a folder listed after the last file is listed again when resuming.
+*/
+  synchronized void folderDone(File givenFile)
+  {
+    if (resumed(givenFile) == false)
+      pending ++;
+  }
+
+/*
+  load() method
+
+  Read the checkpoint file, check that it's for the same search, and set the
+  totals to continue from there.  A missing file means start from the
+  beginning.
+*/
+  void load()
+  {
+    Vector given;                 // command line from checkpoint file
+    String line;                  // one line from checkpoint file
+    BufferedReader reader;        // reads lines of text
+    String[] words;               // numbers from "totals" line
+
+    if (file.exists() == false)   // no checkpoint, or last search finished
+    {
+      FileSearch1.putError("No checkpoint in " + file.getPath()
+        + "; starting from the beginning.");
+      return;
+    }
+    given = new Vector();
+    try
+    {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+        file), "UTF-8"));
+      if (VERSION.equals(reader.readLine()) == false)
+        throw new IOException("not a checkpoint file");
+      while ((line = reader.readLine()) != null)
+      {
+        if (line.startsWith("arg "))
+          given.add(line.substring(4));
+        else if (line.startsWith("root "))
+          resumeRoot = Integer.parseInt(line.substring(5));
+        else if (line.startsWith("last "))
+          last = new File(line.substring(5));
+        else if (line.startsWith("totals "))
+        {
+          words = line.substring(7).split(" ");
+          for (int i = 0; i < totals.length; i ++)
+            totals[i] = Long.parseLong(words[i]);
+        }
+      }
+      reader.close();
+    }
+    catch (IOException ioe)       // can't read file, or wrong format
+    {
+      System.err.println("Can't read checkpoint " + file.getPath() + ": "
+        + ioe.getMessage());
+      System.exit(-1);            // exit application without help
+    }
+    catch (RuntimeException re)   // bad number, missing totals, etc
+    {
+      System.err.println("Damaged checkpoint file: " + file.getPath());
+      System.exit(-1);            // exit application without help
+    }
+    if (given.equals(args) == false) // different options or files?
+    {
+      System.err.println("Checkpoint " + file.getPath()
+        + " is for a different search: " + given);
+      System.exit(-1);            // exit application without help
+    }
+
+    /* Start with the saved totals, and remember the folders leading to the
+    last file, to skip everything before it. */
+
+    FileSearch1.matchCount = (int) totals[0];
+    FileSearch1.failCount = (int) totals[1];
+    FileSearch1.folderCount = (int) totals[2];
+    FileSearch1.countLines = totals[3];
+    FileSearch1.countMatches = totals[4];
+    lastRoot = resumeRoot;
+    if (last != null)             // has any file been reported?
+    {
+      Vector path = new Vector();
+      for (File next = last; next != null; next = next.getParentFile())
+        path.add(0, next);
+      resumePath = (File[]) path.toArray(new File[path.size()]);
+      resumeKeys = new String[resumePath.length];
+      for (int i = 0; i < resumePath.length; i ++)
+        resumeKeys[i] = FileSearch1.sortKey(resumePath[i]);
+      FileSearch1.putError("Resuming after " + last.getPath());
+    }
+  }
+
+/*
+  resumed() method
+
+  Return true if a folder contains the resumed file, and so was counted before
+  the last checkpoint.
+*/
+  boolean resumed(File folder)
+  {
+    if ((resumePath == null) || (root != resumeRoot))
+      return(false);
+    return(resumePath[resumePath.length - 1].getPath().startsWith(
+      folder.getPath() + File.separator));
+  }
+
+/*
+  save() method
+
+  Write a checkpoint to a temporary file, then replace the old checkpoint.
+  Errors are reported, but the search continues.
+*/
+  synchronized void save()
+  {
+    int i;                        // index variable
+    Writer output;                // writes lines of text
+    File temp;                    // temporary file for new checkpoint
+
+    saved = System.currentTimeMillis();
+    temp = new File(file.getPath() + ".tmp");
+    try
+    {
+      output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+        temp), "UTF-8"));
+      output.write(VERSION + "\n");
+      for (i = 0; i < args.size(); i ++)
+        output.write("arg " + args.get(i) + "\n");
+      output.write("root " + lastRoot + "\n");
+      if (last != null)
+        output.write("last " + last.getPath() + "\n");
+      output.write("totals " + totals[0] + " " + totals[1] + " " + totals[2]
+        + " " + totals[3] + " " + totals[4] + "\n");
+      output.close();
+      Files.move(temp.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      if (FileSearch1.debugFlag)  // does user want debug information?
+        System.err.println("save checkpoint root " + lastRoot + " last <"
+          + last + ">");
+    }
+    catch (IOException ioe)       // disk full, no permission, etc
+    {
+      FileSearch1.putError("Can't save checkpoint: " + ioe.getMessage());
+    }
+  }
+
+/*
+  skipped() method
+
+  Return true if a file or folder was finished before the last checkpoint:
+  it's in a folder leading to the resumed file, and sorts before the next
+  name on that path.  The resumed file itself is also finished.
+*/
+  boolean skipped(File givenFile)
+  {
+    int i;                        // index variable
+    String parent;                // folder containing <givenFile>
+
+    if ((resumePath == null) || (root != resumeRoot))
+      return(false);              // not resuming in this root
+    parent = givenFile.getParent();
+    if (parent == null)
+      return(false);
+    for (i = 1; i < resumePath.length; i ++)
+    {
+      if (parent.equals(resumePath[i - 1].getPath())) // same folder?
+      {
+        if (givenFile.getPath().equals(resumePath[i].getPath()))
+          return(i == (resumePath.length - 1)); // resumed file, or folder
+        return(FileSearch1.sortKey(givenFile).compareTo(resumeKeys[i]) < 0);
+      }
+    }
+    return(false);                // not near resumed file
+  }
+
+/*
+  speedOption() method
+
+  Return true if a command-line option changes only how fast we search, or
+  what we print for debugging, and not the results.  These options may be
+  different when resuming a search.
+*/
+  static boolean speedOption(String arg)
+  {
+    String word = arg.toLowerCase(); // options are not case sensitive
+    if (FileSearch1.mswinFlag && word.startsWith("/"))
+      word = "-" + word.substring(1); // Windows allows slash for options
+    for (int i = 0; i < SPEED_OPTIONS.length; i ++)
+    {
+      if (SPEED_OPTIONS[i].equals("-d") ? word.equals("-d")
+        : word.startsWith(SPEED_OPTIONS[i]))
+      {
+        return(true);
+      }
+    }
+    return(false);
+  }
+
+
+/*
+  startRoot() method
+
+  Called before searching each file or folder given by the user.  Return false
+  if the whole root was finished before the last checkpoint.  The checkpoint
+  is read for the first root, and a shutdown hook saves the position if the
+  program is stopped early.
+*/
+  boolean startRoot(File givenFile)
+  {
+    if (root == 0)                // first file or folder from user?
+    {
+      if ((FileSearch1.batchList != null) || FileSearch1.followFlag
+        || (FileSearch1.countIndex == 3) // results not kept in totals?
+        || (FileSearch1.streamIndex == 2)) // or order isn't repeatable?
+      {
+        System.err.println("Checkpoints can't be used with -batch, -follow,"
+          + " -count=ext, or -stream=unsorted.");
+        System.exit(-1);          // exit application without help
+      }
+      if (file == null)           // only -checkpointtime was given
+      {
+        System.err.println("Checkpoint time needs -checkpoint=name");
+        System.exit(-1);          // exit application without help
+      }
+      if (resume)
+        load();
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        public void run() {
+          synchronized (FileSearch1Checkpoint.this) {
+            if (finished == false) save(); } } }, "FileSearch1Checkpoint"));
+    }
+    root ++;                      // number of this root
+    if (root < resumeRoot)        // finished before last checkpoint?
+      return(false);
+    if ((root == resumeRoot) && (resumePath != null)
+      && givenFile.getPath().equals(resumePath[resumePath.length - 1]
+      .getPath()))                // root was one file, already reported
+    {
+      return(false);
+    }
+    return(true);
+  }
+
+} // end of FileSearch1Checkpoint class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Context class
+
+  This class collects every matching line in a file, with lines of context
+  before and after each match.  Recent lines are kept in a character buffer,
+  with a ring of offsets and lengths for the last <before> lines, so that no
+  strings are created until a match is found.  Text is moved to the start of
+  the buffer when the buffer is full (and only then), keeping only the lines
+  in the ring.  Lines skipped by FileSearch1Scan are never assembled, and only
+  the last few of them are copied from the caller's buffer.  Overlapping or
+  adjacent regions of context are merged, and separate regions are divided by
+  "--".
+*/
+
+class FileSearch1Context
+{
+  int after;                      // lines to show after each match
+  int afterLeft;                  // lines still to show after last match
+  int before;                     // lines to show before each match
+  char[] buffer;                  // text of recent lines
+  int bufferUsed;                 // number of characters used in <buffer>
+  long lastShown;                 // line number of last line shown, or zero
+  Vector output;                  // formatted lines, until file is reported
+  int ringCount;                  // number of lines in ring
+  int[] ringLength;               // length of each line in <buffer>
+  long[] ringNumber;              // line number of each line in ring
+  int ringNext;                   // index in ring for next line
+  int[] ringStart;                // offset of each line in <buffer>
+  StringBuffer skipped;           // one skipped line, reused
+  int[] skipEnd, skipStart;       // last skipped lines, newest first
+
+  public FileSearch1Context(int givenBefore, int givenAfter)
+  {
+    after = givenAfter;
+    afterLeft = 0;                // no matches yet
+    before = givenBefore;
+    buffer = new char[(before > 0) ? FileSearch1.BUFFER_SIZE : 0];
+    bufferUsed = 0;
+    lastShown = 0;                // no lines shown yet
+    output = new Vector();
+    ringCount = ringNext = 0;     // no lines in ring
+    ringLength = new int[before];
+    ringNumber = new long[before];
+    ringStart = new int[before];
+    skipped = new StringBuffer();
+    skipEnd = new int[before];
+    skipStart = new int[before];
+  }
+
+/*
+  addLine() method
+
+  Called for every line in the file.  Show a matching line, with any lines
+  before it that haven't been shown yet.  Show lines after a match.  Remember
+  other lines in case there is a match soon.
+*/
+  void addLine(
+    StringBuffer text,            // line of text
+    long lineNumber,              // line number in file
+    boolean matched)              // true if search pattern found on this line
+  {
+    int i;                        // index variable
+    int slot;                     // index in ring
+
+    if (matched)                  // show this line and context before it
+    {
+      for (i = 0; i < ringCount; i ++) // oldest line first
+      {
+        slot = (ringNext - ringCount + i + before) % before;
+        if (ringNumber[slot] > lastShown) // not already shown after a match?
+          show(ringNumber[slot], new String(buffer, ringStart[slot],
+            ringLength[slot]), '-');
+      }
+      ringCount = 0;              // these lines won't be shown again
+      bufferUsed = 0;
+      show(lineNumber, text, ':');
+      afterLeft = after;          // show lines after this match
+    }
+    else if (afterLeft > 0)       // show this line after a match
+    {
+      show(lineNumber, text, '-');
+      afterLeft --;
+    }
+    else if (before > 0)          // remember this line
+    {
+      if ((bufferUsed + text.length()) > buffer.length) // need more room?
+        compact(text.length());
+      slot = ringNext;            // replaces oldest line, if ring is full
+      ringStart[slot] = bufferUsed;
+      ringLength[slot] = text.length();
+      ringNumber[slot] = lineNumber;
+      text.getChars(0, text.length(), buffer, bufferUsed); // not a string
+      bufferUsed += text.length();
+      ringNext = (ringNext + 1) % before;
+      ringCount = Math.min((ringCount + 1), before);
+    }
+  }
+
+/*
+  addSkipped() method
+
+  Called with complete lines that were skipped because they can't match, from
+  the caller's buffer of raw bytes (as characters) or decoded characters.
+  Only the last <before> lines could be shown before a later match, so we
+  look for those backwards from the end, and remember them the same as
+  addLine().  A line feed at the start that finishes a CR/LF from before
+  isn't a line.
+*/
+  void addSkipped(
+    byte[] bytes,                 // raw bytes, or null for <chars>
+    char[] chars,                 // decoded characters, or null for <bytes>
+    int from,                     // index of first skipped line
+    int to,                       // index after last skipped line
+    boolean cr,                   // true if character before <from> was CR
+    boolean nulls,                // true if <NUL> and <DEL> are ignored
+    long nextNumber)              // line number after skipped lines
+  {
+    int ch;                       // one byte or character
+    int count;                    // number of lines found
+    int i, k;                     // index variables
+
+    if ((before == 0) || (afterLeft > 0)) // caller shows lines after match
+      return;
+    count = 0;
+    i = to - 1;                   // last character of a line end
+    while ((count < before) && (i >= from))
+    {
+      if (skipChar(bytes, chars, i) == '\n') // may finish a CR/LF
+      {
+        k = i - 1;
+        while (nulls && (k >= from) && (((ch = skipChar(bytes, chars, k))
+          == 0x00) || (ch == 0x7F))) // ignored between CR and LF
+        {
+          k --;
+        }
+        if ((k < from) && cr)     // CR/LF started before these lines
+          break;
+        if ((k >= from) && (skipChar(bytes, chars, k) == '\r'))
+          i = k;                  // CR/LF is one line end
+      }
+      k = i - 1;                  // find start of text before line end
+      while ((k >= from) && ((ch = skipChar(bytes, chars, k)) != '\n')
+        && (ch != '\r'))
+      {
+        k --;
+      }
+      skipStart[count] = k + 1;
+      skipEnd[count] = i;
+      count ++;
+      i = k;                      // line end of previous line, if any
+    }
+    while (count > 0)             // oldest line first
+    {
+      count --;
+      skipped.setLength(0);
+      for (i = skipStart[count]; i < skipEnd[count]; i ++)
+      {
+        ch = skipChar(bytes, chars, i);
+        if ((nulls == false) || ((ch != 0x00) && (ch != 0x7F)))
+          skipped.append((char) ch);
+      }
+      addLine(skipped, (nextNumber - count - 1), false);
+    }
+  }
+
+/*
+  compact() method
+
+  Move the lines in the ring (except the oldest, which is about to be replaced
+  if the ring is full) to the start of the buffer, and make the buffer bigger
+  if there still isn't room for a new line.
+*/
+  void compact(int needed)
+  {
+    char[] larger;                // new buffer, maybe bigger
+    int i;                        // index variable
+    int keep;                     // number of lines to keep
+    int slot;                     // index in ring
+    int total;                    // characters in lines that we keep
+    int used;                     // characters used in new buffer
+
+    keep = Math.min(ringCount, (before - 1)); // oldest line will be replaced
+    total = 0;
+    for (i = 0; i < keep; i ++)
+      total += ringLength[(ringNext - keep + i + before) % before];
+    larger = buffer;              // reuse same buffer if big enough
+    if ((total + needed) > buffer.length) // still not enough room?
+      larger = new char[Math.max((buffer.length * 2), (total + needed))];
+    used = 0;
+    for (i = 0; i < keep; i ++)   // oldest line first, so copying is safe
+    {
+      slot = (ringNext - keep + i + before) % before;
+      System.arraycopy(buffer, ringStart[slot], larger, used,
+        ringLength[slot]);
+      ringStart[slot] = used;
+      used += ringLength[slot];
+    }
+    buffer = larger;
+    bufferUsed = used;
+    ringCount = keep;
+  }
+
+/*
+  report() method
+
+  Show the saved lines, after the summary for this file.
+*/
+  void report()
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < output.size(); i ++)
+      FileSearch1.putOutput((String) output.get(i));
+    output = null;                // release memory
+  }
+
+/*
+  skipChar() method
+
+  Return one raw byte (as a character) or one decoded character.
+*/
+  static int skipChar(byte[] bytes, char[] chars, int index)
+  {
+    return((bytes != null) ? (bytes[index] & 0xFF) : chars[index]);
+  }
+
+/*
+  show() method
+
+  Format one line with its line number, replacing characters that aren't
+  printable.  A colon (:) follows the number for matching lines, and a hyphen
+  (-) for lines of context.
+*/
+  void show(long lineNumber, CharSequence text, char mark)
+  {
+    StringBuffer line;            // formatted line
+    char ch;                      // one character from caller's text
+    int i;                        // index variable
+
+    if ((lastShown > 0) && (lineNumber > (lastShown + 1))) // skipped lines?
+      output.add("  --");
+    line = new StringBuffer(text.length() + 16);
+    line.append("  ");
+    line.append(lineNumber);
+    line.append(mark);
+    line.append(' ');
+    for (i = 0; i < text.length(); i ++)
+    {
+      ch = text.charAt(i);        // get one character from caller's text
+      if (Character.isISOControl(ch) || (Character.isDefined(ch) == false))
+        line.append('.');         // replace with the ever-present period
+      else
+        line.append(ch);          // copy character unchanged to result
+    }
+    output.add(line.toString());
+    lastShown = lineNumber;       // remember last line shown
+  }
+
+} // end of FileSearch1Context class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Decoder class
+
+  This class decodes bytes from an input stream into a caller's array of
+  characters, using buffers from FileSearch1Pool instead of allocating new
+  buffers for each file (as BufferedReader and InputStreamReader do).  Getting
+  characters from an array is also much faster than calling the synchronized
+  read() method of a BufferedReader once for each character.  Bad or unmapped
+  bytes become the Unicode replacement character, as with InputStreamReader.
+*/
+
+class FileSearch1Decoder
+{
+  ByteBuffer byteBuffer;          // bytes not yet decoded, ready for reading
+  CharBuffer charBuffer;          // wraps caller's array of characters
+  CharsetDecoder decoder;         // converts bytes to characters
+  int state;                      // 0 reading, 1 end of input, 2 flushing, 3 done
+
+  public FileSearch1Decoder(
+    Charset charset,              // character set encoding for file
+    byte[] bytes,                 // buffer for raw bytes from file
+    int next,                     // index of first byte already in <bytes>
+    int count,                    // number of bytes used in <bytes>
+    char[] chars)                 // buffer for decoded characters
+  {
+    byteBuffer = ByteBuffer.wrap(bytes, next, (count - next)); // sample, if any
+    charBuffer = CharBuffer.wrap(chars);
+    decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    state = 0;                    // more bytes can be read
+  }
+
+/*
+  fill() method
+
+  Replace the caller's characters with newly decoded characters, reading more
+  bytes from the input stream as necessary.  Return the number of characters,
+  or -1 at the end of the input stream.
+*/
+  int fill(InputStream input) throws IOException
+  {
+    int count;                    // number of bytes read, or -1 for EOF
+    CoderResult result;           // underflow, overflow, or error
+
+    charBuffer.clear();           // start filling at first character
+    while ((charBuffer.position() == 0) && (state < 3))
+    {
+      if (state == 0)             // read more bytes after any that are left
+      {
+        byteBuffer.compact();     // now ready for writing
+        count = input.read(byteBuffer.array(), byteBuffer.position(),
+          byteBuffer.remaining());
+        if (count < 0)            // end of input stream
+          state = 1;
+        else
+          byteBuffer.position(byteBuffer.position() + count);
+        byteBuffer.flip();        // ready for reading again
+      }
+      if (state < 2)              // decode bytes, maybe the last bytes
+      {
+        result = decoder.decode(byteBuffer, charBuffer, (state == 1));
+        if ((state == 1) && result.isUnderflow()) // all bytes decoded?
+          state = 2;
+      }
+      if ((state == 2) && decoder.flush(charBuffer).isUnderflow())
+        state = 3;                // nothing more will be decoded
+    }
+    return((charBuffer.position() > 0) ? charBuffer.position() : -1);
+  }
+
+} // end of FileSearch1Decoder class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Follow class
+
+  This class remembers where we stopped reading a file that is being followed
+  as it grows, so that only new data needs to be searched on the next poll.
+*/
+
+class FileSearch1Follow
+{
+  File file;                      // Java File object for followed file
+  Object fileKey;                 // unique file identifier, or null if unknown
+  boolean found;                  // true if any line in this file has matched
+  long lineNumber;                // line number for next byte at <offset>
+  long offset;                    // byte offset of first unsearched line
+  boolean wasCr;                  // true if last byte was carriage return
+
+  public FileSearch1Follow(File givenFile)
+  {
+    file = givenFile;             // remember caller's file
+    fileKey = null;               // we don't know the file identity yet
+    found = false;                // no lines have matched yet
+    lineNumber = 1;               // first line is number one, assuming text
+    offset = 0;                   // start searching at beginning of file
+    wasCr = false;                // no last byte, not DOS carriage return
+  }
+
+} // end of FileSearch1Follow class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Ignore class
+
+  This class has the rules from the ignore files in one folder, and a link to
+  the rules for the folder above.  The rules follow the same syntax as Git:
+  blank lines and lines starting with "#" are ignored; "!" includes a file
+  again; a trailing "/" matches only folders; a pattern with a "/" at the start
+  or in the middle is anchored to this folder, while other patterns match a
+  name at any level below; "*" and "?" don't match "/", "[...]" is a class, and
+  "**" matches any number of folders.  The last matching rule decides, and
+  rules in lower folders take precedence over higher folders.
+
+  Each rule is compiled once.  Rules that are simple names or "*.ext" are
+  compared as strings; other rules become regular expressions for the path
+  relative to this folder.
+*/
+
+class FileSearch1Ignore
+{
+  FileSearch1Ignore parent;       // rules for the folder above, or null
+  int prefix;                     // length of our folder path with separator
+  Vector rules;                   // Object[] {kind, text/pattern, negate, dir}
+
+  /* kinds of rules */
+
+  static final Integer NAME = Integer.valueOf(1); // exact name, any level
+  static final Integer PATTERN = Integer.valueOf(2); // compiled Pattern
+  static final Integer SUFFIX = Integer.valueOf(3); // name ends with text
+
+  public FileSearch1Ignore(File folder, FileSearch1Ignore givenParent)
+  {
+    parent = givenParent;
+    prefix = folder.getPath().length(); // remove folder from paths
+    if (folder.getPath().endsWith(File.separator) == false)
+      prefix ++;                  // and the separator after folder name
+    rules = new Vector();         // no rules yet
+  }
+
+/*
+  add() method
+
+  Compile one line from an ignore file, and add it to our rules.
+*/
+  void add(String line)
+  {
+    boolean anchored;             // true if rule is relative to our folder
+    boolean directory;            // true if rule only matches folders
+    boolean negate;               // true if rule includes files again
+    String text;                  // pattern after removing special marks
+
+    text = line;
+    while (text.endsWith(" ") && (text.endsWith("\\ ") == false))
+      text = text.substring(0, (text.length() - 1)); // unescaped spaces
+    if ((text.length() == 0) || text.startsWith("#")) // blank or comment?
+      return;
+    negate = text.startsWith("!"); // include again?
+    if (negate || text.startsWith("\\!") || text.startsWith("\\#"))
+      text = text.substring(1);   // remove mark or escape
+    directory = text.endsWith("/"); // matches only folders?
+    if (directory)
+      text = text.substring(0, (text.length() - 1));
+    anchored = (text.indexOf('/') >= 0); // relative to our folder?
+    if (text.startsWith("/"))
+      text = text.substring(1);
+    if (text.length() == 0)       // nothing left to match
+      return;
+
+    if ((anchored == false) && (text.indexOf('*') < 0)
+      && (text.indexOf('?') < 0) && (text.indexOf('[') < 0)
+      && (text.indexOf('\\') < 0)) // plain name?
+    {
+      rules.add(new Object[] {NAME, text, Boolean.valueOf(negate),
+        Boolean.valueOf(directory)});
+    }
+    else if ((anchored == false) && text.startsWith("*")
+      && (text.indexOf('*', 1) < 0) && (text.indexOf('?') < 0)
+      && (text.indexOf('[') < 0) && (text.indexOf('\\') < 0)) // "*.ext"?
+    {
+      rules.add(new Object[] {SUFFIX, text.substring(1),
+        Boolean.valueOf(negate), Boolean.valueOf(directory)});
+    }
+    else                          // needs a regular expression
+    {
+      rules.add(new Object[] {PATTERN, Pattern.compile((anchored ? ""
+        : "(?:.*/)?") + globToRegex(text)), Boolean.valueOf(negate),
+        Boolean.valueOf(directory)});
+    }
+  }
+
+/*
+  globToRegex() method
+
+  Convert a Git pattern (without anchors or trailing "/") into a regular
+  expression for a whole relative path, with "/" between names.
+*/
+  static String globToRegex(String glob)
+  {
+    char ch;                      // one character from <glob>
+    int end;                      // index of "]" at end of class
+    int i;                        // index variable
+    StringBuffer result;          // regular expression
+
+    result = new StringBuffer();
+    i = 0;                        // start at beginning of pattern
+    while (i < glob.length())
+    {
+      ch = glob.charAt(i);
+      if (glob.startsWith("**/", i) && ((i == 0)
+        || (glob.charAt(i - 1) == '/'))) // zero or more folders
+      {
+        result.append("(?:.*/)?");
+        i += 3;
+      }
+      else if (glob.startsWith("**", i) && ((i + 2) == glob.length())
+        && ((i == 0) || (glob.charAt(i - 1) == '/'))) // everything inside
+      {
+        result.append(".*");
+        i += 2;
+      }
+      else if (ch == '*')         // any characters except "/"
+      {
+        result.append("[^/]*");
+        i ++;
+      }
+      else if (ch == '?')         // one character except "/"
+      {
+        result.append("[^/]");
+        i ++;
+      }
+      else if ((ch == '[') && ((end = glob.indexOf(']', (i + 2))) > 0))
+      {
+        result.append('[');       // character class
+        i ++;
+        if ((glob.charAt(i) == '!') || (glob.charAt(i) == '^'))
+        {
+          result.append('^');     // not any of these characters
+          i ++;
+        }
+        while (i < end)           // copy class, escape special characters
+        {
+          ch = glob.charAt(i ++);
+          if ((ch == '[') || (ch == ']') || (ch == '&') || (ch == '^')
+            || (ch == '\\'))
+          {
+            result.append('\\');
+          }
+          result.append(ch);
+        }
+        result.append(']');
+        i = end + 1;
+      }
+      else                        // literal character, maybe escaped
+      {
+        if ((ch == '\\') && ((i + 1) < glob.length()))
+          ch = glob.charAt(++ i); // character after backslash
+        if (Character.isLetterOrDigit(ch) == false)
+          result.append('\\');   // quote punctuation
+        result.append(ch);
+        i ++;
+      }
+    }
+    return(result.toString());
+  }
+
+/*
+  ignored() method
+
+  Return true if a file or folder is excluded by our rules, or by the rules
+  for folders above.  The path must be inside our folder.
+*/
+  boolean ignored(String path, boolean directory)
+  {
+    int i;                        // index variable
+    String name;                  // last name in <path>
+    FileSearch1Ignore node;       // rules for one folder
+    String relative;              // path relative to folder, with "/"
+    Object[] rule;                // one rule
+
+    name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    for (node = this; node != null; node = node.parent) // lowest folder first
+    {
+      relative = null;            // only needed for some rules
+      for (i = node.rules.size() - 1; i >= 0; i --) // last rule first
+      {
+        rule = (Object[]) node.rules.get(i);
+        if (((Boolean) rule[3]).booleanValue() && (directory == false))
+          continue;               // rule only matches folders
+        if (rule[0] == NAME)
+        {
+          if (name.equals(rule[1]) == false) continue;
+        }
+        else if (rule[0] == SUFFIX)
+        {
+          if (name.endsWith((String) rule[1]) == false) continue;
+        }
+        else
+        {
+          if (relative == null)   // path relative to this folder
+            relative = path.substring(node.prefix).replace(File.separatorChar,
+              '/');
+          if (((Pattern) rule[1]).matcher(relative).matches() == false)
+            continue;
+        }
+        return(((Boolean) rule[2]).booleanValue() == false); // rule decides
+      }
+    }
+    return(false);                // no rule matches, not excluded
+  }
+
+/*
+  load() method
+
+  Read one ignore file and add its rules.
+*/
+  void load(File file) throws IOException
+  {
+    String line;                  // one line from file
+    BufferedReader reader;        // reads lines of text
+
+    reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+      file), "UTF-8"));           // Git uses UTF-8 for file names
+    while ((line = reader.readLine()) != null)
+      add(line);
+    reader.close();
+  }
+
+} // end of FileSearch1Ignore class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Limit class
+
+  This class limits how fast we read, so that a search doesn't starve other
+  programs using the same disk.  Bytes per second and files per second (files
+  opened plus folders listed) are each a token bucket shared by all threads:
+  tokens are added at the given rate, up to one second's worth, and a thread
+  that takes more tokens than are available sleeps until the debt is paid.
+  Thread priority doesn't help here, because the operating system schedules
+  disk requests without regard to Java priorities.
+
+  In adaptive mode, the time for each read is compared with the usual time.
+  When reads take much longer than usual, the disk is busy, and we slow down
+  to a fraction of our limits (or of full speed, by resting between reads).
+  We speed up again when reads are fast.
+
+  Limits can be changed while searching: from the GUI, or by writing new
+  options to a control file that we check once per second.
+*/
+
+class FileSearch1Limit
+{
+  /* constants */
+
+  static final long CONTROL_DELAY = 1000; // milliseconds between checks
+  static final double MIN_FACTOR = 0.05; // slowest adaptive speed (5%)
+  static final String NO_LIMIT = "(no limit)"; // our special name for none
+
+  /* instance variables */
+
+  boolean adaptive;               // true if we slow down when reads are slow
+  double baseline;                // usual nanoseconds to read one block
+  long byteRate;                  // bytes per second, or zero for no limit
+  double byteTokens;              // bytes we can read now, negative if owed
+  File control;                   // file with new limits, or null
+  long controlChecked;            // system time when <control> was checked
+  long controlModified;           // modification time of <control> when read
+  double factor;                  // adaptive fraction of full speed
+  long factorChanged;             // nanoTime() when <factor> last changed
+  long fileRate;                  // files per second, or zero for no limit
+  double fileTokens;              // files we can open now, negative if owed
+  int generation;                 // changes when limits change
+  double latency;                 // recent nanoseconds to read one block
+  long refilled;                  // nanoTime() when tokens were last added
+  long slowest;                   // number of times we slowed down
+  long waited;                    // total milliseconds that threads waited
+
+  public FileSearch1Limit()
+  {
+    adaptive = false;             // by default, no limits at all
+    byteRate = fileRate = 0;
+    byteTokens = fileTokens = 0.0;
+    baseline = latency = 0.0;     // no reads measured yet
+    control = null;
+    controlChecked = controlModified = 0;
+    factor = 1.0;                 // full speed
+    factorChanged = refilled = System.nanoTime();
+    generation = 0;
+    slowest = waited = 0;
+  }
+
+/*
+  active() method
+
+  Return true if there are any limits, or limits may be set later from a
+  control file.  Otherwise, files are read without any measurements.
+*/
+  synchronized boolean active()
+  {
+    return(adaptive || (byteRate > 0) || (fileRate > 0) || (control != null));
+  }
+
+/*
+  adapt() method
+
+  Compare the time for one read with the usual time, and change our speed.
+  Times are scaled to a full block, because the last block of a file is
+  usually short.  The usual time is the best recent average, which drifts up
+  slowly in case the disk has become slower for a long time.
+*/
+  void adapt(long elapsed, int count)
+  {
+    double cost;                  // nanoseconds for a full block
+    long now;                     // current nanoTime()
+
+    cost = (double) elapsed * FileSearch1.BUFFER_SIZE
+      / Math.max(count, 0x1000);  // don't trust tiny reads
+    latency = (latency == 0.0) ? cost : (latency + ((cost - latency) / 8));
+    if ((baseline == 0.0) || (latency < baseline))
+      baseline = latency;         // fastest we've seen lately
+    else
+      baseline += (latency - baseline) / 1024;
+    now = System.nanoTime();
+    if ((now - factorChanged) < 100000000L) // at most ten changes per second
+      return;
+    if ((latency > (4 * baseline)) && (factor > MIN_FACTOR))
+    {
+      factor = Math.max(MIN_FACTOR, (factor * 0.7)); // disk is busy
+      factorChanged = now;
+      slowest ++;
+    }
+    else if ((latency < (2 * baseline)) && (factor < 1.0))
+    {
+      factor = Math.min(1.0, (factor * 1.1)); // disk is free again
+      factorChanged = now;
+    }
+  }
+
+/*
+  charge() method
+
+  Pay for bytes already read, and wait if we are ahead of our limits.
+*/
+  void charge(long elapsed, int count)
+  {
+    int start;                    // <generation> when we started waiting
+    double wait;                  // seconds to wait
+
+    synchronized (this)
+    {
+      checkControl();             // limits may have changed
+      if (adaptive && (count > 0))
+        adapt(elapsed, count);
+      refill();
+      wait = 0.0;                 // assume no waiting
+      if (byteRate > 0)           // limit on bytes per second?
+      {
+        byteTokens -= count;
+        if (byteTokens < 0)
+          wait = -byteTokens / (byteRate * factor);
+      }
+      else if (adaptive && (factor < 1.0)) // rest between reads
+        wait = elapsed * (1.0 - factor) / factor / 1e9;
+      start = generation;
+    }
+    pause(wait, start);
+  }
+
+/*
+  checkControl() method
+
+  Once per second, check if the control file has changed, and read new limits
+  from it.  A missing control file is the same as an empty one, which doesn't
+  change our limits.  Called while synchronized.
+*/
+  void checkControl()
+  {
+    long modified;                // modification time of control file
+    long now;                     // current system time
+    BufferedReader reader;        // reads lines of text
+    StringBuffer text;            // options from control file
+    String line;                  // one line from control file
+
+    if (control == null) return;  // no control file
+    now = System.currentTimeMillis();
+    if ((now - controlChecked) < CONTROL_DELAY) return; // checked recently
+    controlChecked = now;
+    modified = control.lastModified(); // zero if file doesn't exist
+    if ((modified == 0) || (modified == controlModified)) return;
+    controlModified = modified;
+    text = new StringBuffer();
+    try
+    {
+      reader = new BufferedReader(new FileReader(control));
+      while ((line = reader.readLine()) != null)
+        if (line.trim().startsWith("#") == false) // ignore comments
+          text.append(' ').append(line);
+      reader.close();
+    }
+    catch (IOException ioe)       // file disappeared, etc
+    {
+      return;                     // try again when it changes
+    }
+    if (text.toString().trim().length() == 0) // empty control file?
+      return;
+    if (setLimits(text.toString()))
+    {
+      if (FileSearch1.debugFlag)  // does user want debug information?
+        System.err.println("checkControl new limits " + toString());
+    }
+    else
+      FileSearch1.putError("Bad options in " + control.getPath() + ": "
+        + text.toString().trim());
+  }
+
+/*
+  open() method
+
+  Open a file for reading, after waiting for the file limit.  The stream waits
+  for the byte limit.  With no limits, this is a plain FileInputStream.
+*/
+  InputStream open(File file) throws IOException
+  {
+    if (active() == false)        // are we reading at full speed?
+      return(new FileInputStream(file));
+    takeFile();
+    return(new FileSearch1LimitStream(new FileInputStream(file), this));
+  }
+
+/*
+  pause() method
+
+  Sleep for some seconds, in short steps so that we stop early if the search
+  is cancelled or the limits change.
+*/
+  void pause(double seconds, int start)
+  {
+    long millis;                  // milliseconds left to wait
+
+    millis = (long) (seconds * 1000);
+    if (millis <= 0) return;      // nothing to wait for
+    synchronized (this) { waited += millis; }
+    while ((millis > 0) && (FileSearch1.cancelFlag == false)
+      && (generation == start))
+    {
+      try { Thread.sleep(Math.min(millis, 100)); }
+      catch (InterruptedException ie) { return; }
+      millis -= 100;
+    }
+  }
+
+/*
+  refill() method
+
+  Add tokens for the time since the last refill, up to one second's worth.
+  Called while synchronized.
+*/
+  void refill()
+  {
+    double elapsed;               // seconds since last refill
+    long now;                     // current nanoTime()
+    double rate;                  // current rate, after adaptive factor
+
+    now = System.nanoTime();
+    elapsed = (now - refilled) / 1e9;
+    refilled = now;
+    if (byteRate > 0)
+    {
+      rate = byteRate * factor;
+      byteTokens = Math.min((byteTokens + (elapsed * rate)), Math.max(rate,
+        FileSearch1.BUFFER_SIZE)); // one block is always allowed
+    }
+    if (fileRate > 0)
+    {
+      rate = fileRate * factor;
+      fileTokens = Math.min((fileTokens + (elapsed * rate)), Math.max(rate,
+        1.0));
+    }
+  }
+
+/*
+  report() method
+
+  Return a summary for debugging.
+*/
+  synchronized String report()
+  {
+    return("rate limit " + toString() + ", waited " + waited
+      + " ms, slowed down " + slowest + " times, now at "
+      + Math.round(factor * 100) + "% speed");
+  }
+
+/*
+  setLimits() method
+
+  Set new limits from a string with the same options as the command line:
+  -rate=#, -ratefiles=#, and -rateadapt.  Options not given are turned off.
+  Return false if the syntax is wrong, without changing the limits.
+*/
+  synchronized boolean setLimits(String text)
+  {
+    boolean newAdaptive;          // new value for <adaptive>
+    long newBytes;                // new value for <byteRate>
+    long newFiles;                // new value for <fileRate>
+    String[] words;               // options from <text>
+
+    newAdaptive = false;
+    newBytes = newFiles = 0;
+    if ((text != null) && (text.trim().equals(NO_LIMIT) == false))
+    {
+      words = text.trim().toLowerCase().split("[\\s,;]+");
+      for (int i = 0; i < words.length; i ++)
+      {
+        if (words[i].length() == 0)
+          { /* empty text, nothing to do */ }
+        else if (words[i].equals("-rateadapt"))
+          newAdaptive = true;
+        else if (words[i].startsWith("-rate="))
+        {
+          if ((newBytes = FileSearch1.parseSizeOption(words[i].substring(6)))
+            < 0) return(false);
+        }
+        else if (words[i].startsWith("-ratefiles="))
+        {
+          try { newFiles = Long.parseLong(words[i].substring(11)); }
+          catch (NumberFormatException nfe) { return(false); }
+          if ((newFiles < 0) || (newFiles > 1000000)) return(false);
+        }
+        else
+          return(false);          // not one of our options
+      }
+    }
+    adaptive = newAdaptive;
+    byteRate = newBytes;
+    fileRate = newFiles;
+    byteTokens = fileTokens = 0.0; // start new limits fresh
+    factor = 1.0;
+    refilled = System.nanoTime();
+    generation ++;                // stop waiting for old limits
+    return(true);
+  }
+
+/*
+  takeFile() method
+
+  Wait, if necessary, before opening a file or listing a folder.
+*/
+  void takeFile()
+  {
+    int start;                    // <generation> when we started waiting
+    double wait;                  // seconds to wait
+
+    synchronized (this)
+    {
+      if (active() == false) return; // quick exit with no limits
+      checkControl();
+      refill();
+      wait = 0.0;
+      if (fileRate > 0)
+      {
+        fileTokens -= 1.0;
+        if (fileTokens < 0)
+          wait = -fileTokens / (fileRate * factor);
+      }
+      start = generation;
+    }
+    pause(wait, start);
+  }
+
+/*
+  toString() method
+
+  Return our limits as options, or our special name for no limits.
+*/
+  public synchronized String toString()
+  {
+    StringBuffer result = new StringBuffer();
+    if (byteRate > 0) result.append(" -rate=" + byteRate);
+    if (fileRate > 0) result.append(" -ratefiles=" + fileRate);
+    if (adaptive) result.append(" -rateadapt");
+    return((result.length() == 0) ? NO_LIMIT : result.substring(1));
+  }
+
+} // end of FileSearch1Limit class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1LimitStream class
+
+  This class times each read from a file, and waits for the limits.
+*/
+
+class FileSearch1LimitStream extends FilterInputStream
+{
+  FileSearch1Limit limit;         // shared limits for all files
+
+  public FileSearch1LimitStream(InputStream givenStream,
+    FileSearch1Limit givenLimit)
+  {
+    super(givenStream);
+    limit = givenLimit;
+  }
+
+  public int read() throws IOException
+  {
+    byte[] one = new byte[1];     // rarely used, so not efficient
+    return((read(one, 0, 1) > 0) ? (one[0] & 0xFF) : -1);
+  }
+
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    long start = System.nanoTime();
+    int result = in.read(buffer, offset, length);
+    if (result > 0)
+      limit.charge((System.nanoTime() - start), result);
+    return(result);
+  }
+
+} // end of FileSearch1LimitStream class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Listing class
+
+  This class lists the contents of a folder.  Normally, the whole folder is
+  listed with File.listFiles() and sorted in memory, as this program always
+  has.  When streaming, names are read one at a time from a DirectoryStream.
+  If they aren't sorted, they are given to the caller in batches as they are
+  listed.  If they are sorted, and there are more names than fit in one chunk,
+  then each chunk is sorted in memory and written to a temporary file, and the
+  files are merged.  Memory used is one chunk while listing, then one name per
+  chunk while merging.  Sort keys are the same as sortFileList().
+*/
+
+class FileSearch1Listing
+{
+  int chunk;                      // names sorted in memory at one time
+  Iterator entries;               // Path objects from <stream>, or null
+  File folder;                    // folder being listed
+  File[] memory;                  // sorted contents in memory, or null
+  PriorityQueue merge;            // next Object[] {key, name, input} per chunk
+  DirectoryStream stream;         // open listing, or null
+  Vector temps;                   // temporary files with sorted chunks
+
+  public FileSearch1Listing(
+    File givenFolder,             // folder to be listed
+    boolean streamFlag,           // true if we use a DirectoryStream
+    boolean sortFlag,             // true if contents must be sorted
+    int givenChunk)               // names sorted in memory at one time
+    throws IOException
+  {
+    chunk = givenChunk;
+    entries = null;
+    folder = givenFolder;
+    memory = null;
+    merge = null;
+    stream = null;
+    temps = new Vector();
+
+    if (streamFlag == false)      // list whole folder at once
+    {
+      memory = folder.listFiles();
+      if (sortFlag || (memory == null)) // sorting also replaces null
+        memory = FileSearch1.sortFileList(memory);
+    }
+    else
+    {
+      stream = Files.newDirectoryStream(folder.toPath());
+      entries = stream.iterator();
+      if (sortFlag)               // sort now, so that caller sees order
+        sort();
+    }
+  }
+
+/*
+  close() method
+
+  Close the listing and any temporary files, and delete the temporary files.
+*/
+  void close()
+  {
+    if (FileSearch1.debugFlag && (temps.size() > 0))
+      System.err.println("FileSearch1Listing merged " + temps.size()
+        + " chunks for " + folder.getPath());
+    try
+    {
+      if (stream != null)
+        stream.close();
+      if (merge != null)          // close inputs not at end-of-file
+        while (merge.size() > 0)
+          ((DataInputStream) ((Object[]) merge.poll())[2]).close();
+    }
+    catch (IOException ioe) { /* nothing more we can do */ }
+    stream = null;
+    merge = null;
+    for (int i = 0; i < temps.size(); i ++)
+      ((File) temps.get(i)).delete();
+    temps.clear();
+  }
+
+/*
+  next() method
+
+  Return the next contents of the folder, up to <count> files and subfolders
+  if streaming, or an empty array at the end.  Contents that fit in memory are
+  returned all at once.
+*/
+  File[] next(int count) throws IOException
+  {
+    Object[] head;                // next name from merged chunks
+    Vector result;                // files and subfolders, in order
+
+    if (memory != null)           // all contents in memory?
+    {
+      File[] all = memory;
+      memory = new File[0];       // nothing left for next call
+      return(all);
+    }
+    result = new Vector();
+    if (merge != null)            // merge sorted chunks
+    {
+      while ((result.size() < count) && (merge.size() > 0))
+      {
+        head = (Object[]) merge.poll();
+        result.add(new File(folder, (String) head[1]));
+        readHead((DataInputStream) head[2]); // next name from same chunk
+      }
+    }
+    else                          // unsorted, in order listed
+    {
+      while ((result.size() < count) && entries.hasNext())
+        result.add(new File(folder, ((Path) entries.next()).getFileName()
+          .toString()));
+    }
+    return((File[]) result.toArray(new File[result.size()]));
+  }
+
+/*
+  readHead() method
+
+  Read the next sort key and name from one chunk, and add them to the merge.
+  Close the chunk at end-of-file.
+*/
+  void readHead(DataInputStream input) throws IOException
+  {
+    String key;                   // sort key for next name
+
+    try
+    {
+      key = input.readUTF();
+      merge.add(new Object[] {key, input.readUTF(), input});
+    }
+    catch (EOFException eofe)     // no more names in this chunk
+    {
+      input.close();
+    }
+  }
+
+/*
+  sort() method
+
+  Read all names from the DirectoryStream in chunks.  If there is only one
+  chunk, keep it in memory.  Otherwise, write each sorted chunk to a temporary
+  file, and start merging.
+*/
+  void sort() throws IOException
+  {
+    int i;                        // index variable
+    TreeMap list;                 // one chunk of names, sorted by key
+    File next;                    // one file or subfolder
+
+    list = new TreeMap();
+    while (entries.hasNext())
+    {
+      next = new File(folder, ((Path) entries.next()).getFileName()
+        .toString());             // same path as File.listFiles()
+      list.put(FileSearch1.sortKey(next), next);
+      if (list.size() >= chunk)   // chunk is full?
+      {
+        writeChunk(list);
+        list.clear();
+      }
+    }
+    stream.close();               // done listing
+    stream = null;
+    entries = null;
+    if (temps.size() == 0)        // everything fits in one chunk?
+    {
+      memory = (File[]) list.values().toArray(new File[list.size()]);
+      return;
+    }
+    if (list.size() > 0)          // last partial chunk
+      writeChunk(list);
+    list = null;                  // release memory before merging
+
+    merge = new PriorityQueue(temps.size(), new Comparator() {
+      public int compare(Object one, Object two) {
+        return(((String) ((Object[]) one)[0]).compareTo((String)
+          ((Object[]) two)[0])); } });
+    for (i = 0; i < temps.size(); i ++) // first name from each chunk
+      readHead(new DataInputStream(new BufferedInputStream(
+        new FileInputStream((File) temps.get(i)))));
+  }
+
+/*
+  writeChunk() method
+
+  Write one sorted chunk of sort keys and names to a temporary file.  Names
+  are written with writeUTF(), which allows any characters, even newlines.
+*/
+  void writeChunk(TreeMap list) throws IOException
+  {
+    Iterator keys;                // sort keys in order
+    String key;                   // one sort key
+    DataOutputStream output;      // writes keys and names
+    File temp;                    // temporary file for this chunk
+
+    temp = File.createTempFile("FileSearch1", ".sort");
+    temp.deleteOnExit();          // in case we are stopped
+    temps.add(temp);
+    output = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(temp)));
+    keys = list.keySet().iterator();
+    while (keys.hasNext())
+    {
+      key = (String) keys.next();
+      output.writeUTF(key);
+      output.writeUTF(((File) list.get(key)).getName());
+    }
+    output.close();
+  }
+
+} // end of FileSearch1Listing class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Piece class
+
+  This class is one piece of a huge file, searched on its own thread by the
+  same method that searches whole files.  The piece starts at the beginning of
+  a line, and ends where the next piece starts.  Line numbers start from one
+  in each piece; processPieces() adds the lines in earlier pieces.  A piece
+  stops early when an earlier piece has found a match, because only the first
+  match in the file is reported.
+*/
+
+class FileSearch1Piece implements Runnable
+{
+  long deadline;                  // time limit for whole file, or zero
+  boolean done;                   // true when this piece has finished
+  long end;                       // file offset after last byte in piece
+  String error;                   // error message, or null
+  File file;                      // the huge file
+  volatile boolean found;         // true when a match has been found
+  int index;                      // our index in <pieces>
+  long lineNumber;                // line of first match, or where we stopped
+  long lines;                     // line ends in piece, if searched to end
+  FileSearch1Piece[] pieces;      // all pieces of the same file
+  long read;                      // bytes read, if counted
+  long start;                     // file offset of first byte in piece
+  boolean timeout;                // true if time limit expired
+  FileSearch1Verdict verdict;     // result for this piece, or null
+
+  public FileSearch1Piece(
+    File givenFile,               // the huge file
+    FileSearch1Piece[] givenPieces, // all pieces of the same file
+    int givenIndex,               // our index in <givenPieces>
+    long givenStart,              // file offset of first byte
+    long givenEnd,                // file offset after last byte
+    long givenDeadline)           // time limit for whole file, or zero
+  {
+    deadline = givenDeadline;
+    done = false;                 // piece hasn't run yet
+    end = givenEnd;
+    error = null;                 // no errors yet
+    file = givenFile;
+    found = false;                // no match yet
+    index = givenIndex;
+    lineNumber = lines = read = 0; // nothing searched yet
+    pieces = givenPieces;
+    start = givenStart;
+    timeout = false;              // time limit hasn't expired
+    verdict = null;               // no result yet
+  }
+
+/*
+  finish() method
+
+  Save the results of searching this piece.  Called by processUnknownFile().
+*/
+  void finish(
+    FileSearch1Verdict givenVerdict, // result for this piece
+    long givenLine,               // line number where search stopped
+    boolean givenTimeout,         // true if time limit expired
+    long givenRead)               // bytes read, if counted
+  {
+    verdict = givenVerdict;
+    lineNumber = givenVerdict.found ? givenVerdict.lineNumber : givenLine;
+    lines = givenLine - 1;        // line after last line end is not counted
+    read = givenRead;
+    timeout = givenTimeout;
+  }
+
+/*
+  run() method
+
+  Search our piece of the file.
+*/
+  public void run()
+  {
+    try
+    {
+      FileSearch1.currentPiece.set(this); // read only our piece, save result
+      FileSearch1.processUnknownFile(file);
+    }
+    catch (RuntimeException re)   // should never happen, but report it
+    {
+      error = "Error searching " + file.getPath() + ": " + re;
+    }
+    finally
+    {
+      FileSearch1.currentPiece.set(null); // pool threads run other pieces
+      synchronized (this)
+      {
+        done = true;              // our result is complete
+        notifyAll();              // wake up thread combining results
+      }
+    }
+  }
+
+/*
+  stopped() method
+
+  Return true if an earlier piece has found a match.
+*/
+  boolean stopped()
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < index; i ++)
+      if (pieces[i].found) return(true);
+    return(false);
+  }
+
+/*
+  waitDone() method
+
+  Wait for this piece to finish.
+*/
+  synchronized void waitDone()
+  {
+    while (done == false)         // wait for this piece to finish
+    {
+      try { wait(); } catch (InterruptedException ie) { /* ignore */ }
+    }
+  }
+
+} // end of FileSearch1Piece class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1PieceStream class
+
+  This class reads only one piece of a file, from its first byte to the start
+  of the next piece.
+*/
+
+class FileSearch1PieceStream extends FilterInputStream
+{
+  long left;                      // bytes not yet read from piece
+
+  public FileSearch1PieceStream(InputStream givenStream,
+    FileSearch1Piece givenPiece) throws IOException
+  {
+    super(givenStream);
+    long skip = givenPiece.start; // bytes before our piece
+    while (skip > 0)
+    {
+      long got = in.skip(skip);   // seek for most files
+      if (got <= 0)               // file got shorter?
+        break;
+      skip -= got;
+    }
+    left = givenPiece.end - givenPiece.start;
+  }
+
+  public int read() throws IOException
+  {
+    byte[] one = new byte[1];     // rarely used, so not efficient
+    return((read(one, 0, 1) > 0) ? (one[0] & 0xFF) : -1);
+  }
+
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    if (left <= 0)                // end of our piece
+      return(-1);
+    int result = in.read(buffer, offset, (int) Math.min(length, left));
+    if (result > 0)
+      left -= result;
+    return(result);
+  }
+
+} // end of FileSearch1PieceStream class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Pool class
+
+  This class keeps buffers that are no longer being used, so that they can be
+  reused for the next file instead of being allocated again and later removed
+  by the garbage collector.  There are three kinds of buffers, all for
+  BUFFER_SIZE bytes or characters: raw bytes (also used by the read-ahead
+  thread), decoded characters, and the line buffer that is searched.  One pool
+  is shared by all threads; each thread takes buffers only once per file, so
+  there is little waiting.  The total memory for idle buffers is limited by a
+  budget.  Buffers released when the pool is over budget are left for the
+  garbage collector.  A budget of zero disables reuse.
+*/
+
+class FileSearch1Pool
+{
+  long budget;                    // maximum bytes in idle buffers
+  long dropped;                   // buffers released when over budget
+  Vector freeBytes;               // idle byte[] buffers
+  Vector freeChars;               // idle char[] buffers
+  Vector freeLines;               // idle StringBuffer buffers
+  long hits;                      // buffers reused from the pool
+  long idle;                      // bytes in idle buffers
+  long misses;                    // buffers that had to be allocated
+  long reused;                    // bytes reused instead of allocated
+
+  public FileSearch1Pool(long givenBudget)
+  {
+    budget = givenBudget;
+    dropped = hits = misses = reused = 0; // no statistics yet
+    freeBytes = new Vector();
+    freeChars = new Vector();
+    freeLines = new Vector();
+    idle = 0;                     // no idle buffers yet
+  }
+
+/*
+  release() method
+
+  Return a buffer of any kind to the pool.  Null buffers are ignored.
+*/
+  synchronized void release(Object buffer)
+  {
+    int size;                     // approximate size of buffer in bytes
+    Vector list;                  // free list for this kind of buffer
+
+    if (buffer instanceof byte[]) // raw bytes
+    {
+      list = freeBytes;
+      size = FileSearch1.BUFFER_SIZE;
+    }
+    else if (buffer instanceof char[]) // decoded characters
+    {
+      list = freeChars;
+      size = FileSearch1.BUFFER_SIZE * 2;
+    }
+    else if (buffer instanceof StringBuffer) // line of text
+    {
+      ((StringBuffer) buffer).setLength(0); // empty, but keep capacity
+      list = freeLines;
+      size = FileSearch1.BUFFER_SIZE * 2;
+    }
+    else                          // null or not one of our buffers
+      return;
+
+    if ((idle + size) > budget)   // would this put us over budget?
+      dropped ++;                 // leave buffer for garbage collector
+    else
+    {
+      list.add(buffer);
+      idle += size;
+    }
+  }
+
+/*
+  report() method
+
+  Return a one-line summary of how well the pool avoided allocating buffers.
+*/
+  synchronized String report()
+  {
+    return("buffer pool " + hits + " hits, " + misses + " misses, " + dropped
+      + " dropped, " + FileSearch1.formatComma.format(reused / 1024)
+      + " KB not allocated, budget " + (budget / (1024 * 1024)) + " MB");
+  }
+
+/*
+  take() method
+
+  Remove and return the most recently released buffer from a free list, or
+  null if the list is empty.  Caller must be synchronized.
+*/
+  Object take(Vector list, int size)
+  {
+    if (list.size() == 0)         // nothing to reuse
+    {
+      misses ++;
+      return(null);
+    }
+    hits ++;
+    idle -= size;
+    reused += size;
+    return(list.remove(list.size() - 1)); // most recent is most likely cached
+  }
+
+/*
+  takeBytes(), takeChars(), and takeLine() methods
+
+  Return an idle buffer of the right kind, or allocate a new buffer.
+*/
+  synchronized byte[] takeBytes()
+  {
+    byte[] result = (byte[]) take(freeBytes, FileSearch1.BUFFER_SIZE);
+    return((result != null) ? result : new byte[FileSearch1.BUFFER_SIZE]);
+  }
+
+  synchronized char[] takeChars()
+  {
+    char[] result = (char[]) take(freeChars, (FileSearch1.BUFFER_SIZE * 2));
+    return((result != null) ? result : new char[FileSearch1.BUFFER_SIZE]);
+  }
+
+  synchronized StringBuffer takeLine()
+  {
+    StringBuffer result = (StringBuffer) take(freeLines,
+      (FileSearch1.BUFFER_SIZE * 2));
+    return((result != null) ? result
+      : new StringBuffer(FileSearch1.BUFFER_SIZE));
+  }
+
+} // end of FileSearch1Pool class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Prefetch class
+
+  This class reads files on a separate thread, ahead of the thread that
+  searches them, so that waiting for a disk or network overlaps with searching.
+  Files are read in the order they are added, which must be the same order as
+  they are searched.  Each file is read in blocks of BUFFER_SIZE bytes into
+  buffers that are reused from a pool.  The pool has a maximum size (memory
+  cap), and at most <depth> files after the current file are read ahead.
+  Buffers come from the shared FileSearch1Pool, and idle buffers are given
+  back to it when we are cleared at the end of each folder.
+
+  Since blocks are always read for the earliest unfinished file, and the
+  current file is the earliest, the current file can always get a buffer, even
+  when later files have used all other buffers.
+*/
+
+class FileSearch1Prefetch implements Runnable
+{
+  int bufferLimit;                // maximum number of buffers allocated
+  int bufferMade;                 // number of buffers allocated so far
+  int depth;                      // number of files after current to read
+  Vector freeList;                // buffers that are ready for reuse
+  Vector queue;                   // <FileSearch1PrefetchStream> in order
+  Thread thread;                  // thread that does the reading
+
+  public FileSearch1Prefetch(int givenDepth, long givenMemory)
+  {
+    bufferLimit = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+      (givenMemory / FileSearch1.BUFFER_SIZE)));
+    bufferMade = 0;               // no buffers allocated yet
+    depth = givenDepth;           // number of files to read ahead
+    freeList = new Vector();      // no buffers ready for reuse
+    queue = new Vector();         // no files waiting to be read
+    thread = new Thread(this, "FileSearch1Prefetch");
+    thread.setDaemon(true);       // don't keep application alive
+    thread.start();               // start reading as soon as files are added
+  }
+
+/*
+  add() method
+
+  Add a file to the end of the list of files to be read.
+*/
+  synchronized void add(File givenFile)
+  {
+    queue.add(new FileSearch1PrefetchStream(this, givenFile));
+    notifyAll();                  // wake up reader thread
+  }
+
+/*
+  clear() method
+
+  Forget all files waiting to be read, and release their buffers.
+*/
+  synchronized void clear()
+  {
+    while (queue.size() > 0)      // for each file in order
+      release((FileSearch1PrefetchStream) queue.remove(0));
+    while (freeList.size() > 0)   // idle buffers go back to shared pool
+    {
+      FileSearch1.bufferPool.release(freeList.remove(freeList.size() - 1));
+      bufferMade --;              // can be allocated again later
+    }
+  }
+
+/*
+  close() method
+
+  Called when the searcher closes one of our streams.
+*/
+  synchronized void close(FileSearch1PrefetchStream stream)
+  {
+    queue.remove(stream);         // remove from list, if still there
+    release(stream);              // release buffers and file
+  }
+
+/*
+  nextBlock() method
+
+  Give the caller's stream the next block of bytes, waiting for the reader
+  thread if necessary.  Return false at end-of-file.
+*/
+  synchronized boolean nextBlock(FileSearch1PrefetchStream stream)
+    throws IOException
+  {
+    if (stream.current != null)   // release block that was used up
+    {
+      freeList.add(stream.current);
+      stream.current = null;
+      notifyAll();                // reader may be waiting for a buffer
+    }
+    while ((stream.blocks.size() == 0) && (stream.finished == false)
+      && (FileSearch1.cancelFlag == false))
+    {
+      try { wait(); } catch (InterruptedException ie) { /* ignore */ }
+    }
+    if (stream.blocks.size() > 0) // is there another block of bytes?
+    {
+      stream.current = (byte[]) stream.blocks.remove(0);
+      stream.currentCount = ((Integer) stream.counts.remove(0)).intValue();
+      stream.currentNext = 0;     // start reading at first byte
+      return(true);
+    }
+    if (stream.error != null)     // did reading end with an error?
+      throw stream.error;         // report same error as reading directly
+    return(false);                // end-of-file or user cancelled
+  }
+
+/*
+  open() method
+
+  Return the stream for a file that was added to our list, or null if the file
+  isn't in our list.  Files before it in the list were skipped by the caller,
+  and are forgotten.
+*/
+  synchronized InputStream open(File givenFile)
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < queue.size(); i ++) // search list in order
+    {
+      if (((FileSearch1PrefetchStream) queue.get(i)).file.equals(givenFile))
+      {
+        while (i -- > 0)          // forget any files that were skipped
+          release((FileSearch1PrefetchStream) queue.remove(0));
+        return((InputStream) queue.get(0));
+      }
+    }
+    return(null);                 // caller must read this file directly
+  }
+
+/*
+  release() method
+
+  Return all buffers for a stream to the pool, and close its file if the
+  reader thread isn't using it.  Caller must be synchronized.
+*/
+  void release(FileSearch1PrefetchStream stream)
+  {
+    stream.cancelled = stream.finished = true; // never read anything more
+    freeList.addAll(stream.blocks);
+    stream.blocks.clear();
+    stream.counts.clear();
+    if (stream.current != null)   // block that the searcher was using
+      freeList.add(stream.current);
+    stream.current = null;
+    if ((stream.busy == false) && (stream.input != null))
+    {
+      try { stream.input.close(); } catch (IOException ioe) { /* ignore */ }
+      stream.input = null;
+    }
+    notifyAll();                  // reader may be waiting for a buffer
+  }
+
+/*
+  run() method
+
+  Reader thread.  Read one block at a time for the earliest unfinished file in
+  our list, within the first <depth> files after the current file.
+*/
+  public void run()
+  {
+    byte[] buffer;                // buffer for one block of bytes
+    int count;                    // number of bytes read, or -1 for EOF
+    IOException error;            // error while reading, if any
+    int i;                        // index variable
+    FileSearch1PrefetchStream stream; // file that we are reading
+
+    while (true)                  // thread runs until application exits
+    {
+      /* Choose a file and a buffer, while synchronized. */
+
+      synchronized (this)
+      {
+        stream = null;            // assume nothing to read
+        for (i = 0; (i < queue.size()) && (i <= depth); i ++)
+        {
+          FileSearch1PrefetchStream next = (FileSearch1PrefetchStream)
+            queue.get(i);
+          if (next.finished == false) // earliest file not completely read?
+          {
+            stream = next;
+            break;
+          }
+        }
+        if ((stream == null) || ((freeList.size() == 0)
+          && (bufferMade >= bufferLimit))) // nothing to do, or no buffer?
+        {
+          try { wait(); } catch (InterruptedException ie) { /* ignore */ }
+          continue;               // check again after being woken up
+        }
+        if (freeList.size() > 0)  // reuse a buffer if we can
+          buffer = (byte[]) freeList.remove(freeList.size() - 1);
+        else
+        {
+          buffer = FileSearch1.bufferPool.takeBytes(); // below memory cap
+          bufferMade ++;
+        }
+        stream.busy = true;       // don't close file while we read
+      }
+
+      /* Read one block without holding the lock, so that the searcher can
+      use blocks already read. */
+
+      count = -1;                 // assume end-of-file
+      error = null;               // assume no errors
+      try
+      {
+        if (stream.input == null) // open file on first block
+          stream.input = FileSearch1.rateLimit.open(stream.file);
+        count = stream.input.read(buffer);
+      }
+      catch (IOException ioe)     // file not found, read error, etc
+      {
+        error = ioe;              // report later, when searcher gets here
+      }
+
+      /* Give the block to the searcher, or finish this file. */
+
+      synchronized (this)
+      {
+        stream.busy = false;      // done with file for now
+        if ((stream.cancelled == false) && (count > 0)) // got some bytes?
+        {
+          stream.blocks.add(buffer);
+          stream.counts.add(Integer.valueOf(count));
+        }
+        else                      // cancelled, end-of-file, or error
+        {
+          freeList.add(buffer);   // we didn't use this buffer
+          stream.error = error;
+          stream.finished = true; // nothing more to read
+          if (stream.input != null) // close file now, not later
+          {
+            try { stream.input.close(); } catch (IOException ioe) { }
+            stream.input = null;
+          }
+        }
+        notifyAll();              // wake up searcher
+      }
+    }
+  } // end of run() method
+
+} // end of FileSearch1Prefetch class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1PrefetchStream class
+
+  This class is an input stream for one file read by the FileSearch1Prefetch
+  class.  All fields except <current> are protected by the owner's lock.
+*/
+
+class FileSearch1PrefetchStream extends InputStream
+{
+  Vector blocks;                  // blocks read and not yet used, in order
+  boolean busy;                   // true while reader thread is reading
+  boolean cancelled;              // true if searcher doesn't want any more
+  Vector counts;                  // number of bytes used in each block
+  byte[] current;                 // block that the searcher is using
+  int currentCount;               // number of bytes used in <current>
+  int currentNext;                // index of next byte in <current>
+  IOException error;              // error while reading, or null
+  File file;                      // file to be read
+  boolean finished;               // true when nothing more will be read
+  InputStream input;              // open file, or null
+  FileSearch1Prefetch owner;      // object with reader thread
+
+  public FileSearch1PrefetchStream(FileSearch1Prefetch givenOwner,
+    File givenFile)
+  {
+    blocks = new Vector();        // no blocks read yet
+    busy = cancelled = finished = false;
+    counts = new Vector();
+    current = null;               // searcher has no block yet
+    currentCount = currentNext = 0;
+    error = null;
+    file = givenFile;
+    input = null;                 // file isn't open yet
+    owner = givenOwner;
+  }
+
+  public void close()
+  {
+    owner.close(this);            // release buffers and file
+  }
+
+  public int read() throws IOException
+  {
+    if ((currentNext >= currentCount) && (owner.nextBlock(this) == false))
+      return(-1);                 // end-of-file
+    return(current[currentNext ++] & FileSearch1.BYTE_MASK);
+  }
+
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    int count;                    // number of bytes copied
+
+    if (length <= 0)              // caller doesn't want any bytes
+      return(0);
+    if ((currentNext >= currentCount) && (owner.nextBlock(this) == false))
+      return(-1);                 // end-of-file
+    count = Math.min(length, (currentCount - currentNext));
+    System.arraycopy(current, currentNext, buffer, offset, count);
+    currentNext += count;         // move past bytes that we copied
+    return(count);
+  }
+
+} // end of FileSearch1PrefetchStream class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Progress class
+
+  This class counts bytes and files as they are searched, and shows the speed,
+  percent done, and estimated time left, once per second: on standard error
+  for console applications (one line, rewritten in place), or on the status
+  line of the GUI.  The reader threads only add to atomic counters, so keeping
+  count doesn't slow the search.
+
+  The total size is found by a quick pass through the same files and folders,
+  with the same rules for hidden files, subfolders, size, and dates, but only
+  reading file sizes.  This runs on our own thread at the same time as the
+  search, so the total is an estimate (a lower limit) until the pass is done.
+  Files that stop early, at the first match, count as done for their full
+  size.
+*/
+
+class FileSearch1Progress implements Runnable
+{
+  AtomicLong bytesDone;           // bytes read, or skipped in finished files
+  long bytesTotal;                // total bytes found by size pass so far
+  AtomicLong filesDone;           // number of files finished
+  long filesTotal;                // total files found by size pass so far
+  NumberFormat format;            // one decimal digit, this thread only
+  int lastWidth;                  // characters in last console line
+  Vector roots;                   // files and folders for size pass
+  boolean scanDone;               // true when size pass has finished
+  boolean scanFlag;               // true if we do a size pass
+  long shownTime;                 // system time when progress last shown
+  long startTime;                 // system time when search started
+  volatile boolean stopFlag;      // true when search has finished
+  Thread thread;                  // our thread for size pass and display
+
+  public FileSearch1Progress()
+  {
+    bytesDone = new AtomicLong(0);
+    bytesTotal = filesTotal = 0;  // nothing found yet
+    filesDone = new AtomicLong(0);
+    format = NumberFormat.getInstance(); // current locale
+    format.setMaximumFractionDigits(1);
+    format.setMinimumFractionDigits(1);
+    lastWidth = 0;                // nothing shown yet
+    roots = new Vector();         // no files or folders yet
+    scanDone = scanFlag = false;
+    startTime = shownTime = System.currentTimeMillis();
+    stopFlag = false;
+    thread = null;
+  }
+
+/*
+  addBytes(), addFile(), addRoot() methods
+
+  Count bytes as they are read, the rest of a file when it's finished, and the
+  files or folders to be searched.
+*/
+  void addBytes(long count)
+  {
+    bytesDone.addAndGet(count);
+  }
+
+  void addFile(long remaining)
+  {
+    bytesDone.addAndGet(remaining);
+    filesDone.incrementAndGet();
+  }
+
+  void addRoot(File givenFile)
+  {
+    roots.add(givenFile);
+  }
+
+/*
+  formatBytes() method
+
+  Format a number of bytes as KB, MB, GB, or TB, with one decimal digit.
+*/
+  String formatBytes(double bytes)
+  {
+    final String[] units = {"bytes", "KB", "MB", "GB", "TB"};
+    int unit;                     // index into <units>
+
+    unit = 0;
+    while ((bytes >= 1024.0) && (unit < (units.length - 1)))
+    {
+      bytes /= 1024.0;
+      unit ++;
+    }
+    return(format.format(bytes) + " " + units[unit]);
+  }
+
+/*
+  run() method
+
+  Do the size pass, if requested, then show progress once per second until the
+  search is finished.
+*/
+  public void run()
+  {
+    int i;                        // index variable
+
+    if (scanFlag)                 // measure total size first?
+    {
+      for (i = 0; (i < roots.size()) && (stopFlag == false); i ++)
+        scan((File) roots.get(i));
+      scanDone = (stopFlag == false); // totals are complete
+    }
+    while (stopFlag == false)     // until search is finished
+    {
+      try { Thread.sleep(1000); } catch (InterruptedException ie) { }
+      if (stopFlag == false)      // don't show after summary
+        show();
+    }
+  }
+
+/*
+  scan() method
+
+  Add the sizes of files to the total, using the same rules as the search, and
+  show progress if a second has gone by.
+*/
+  void scan(File givenFile)
+  {
+    File[] contents;              // contents if <givenFile> is a folder
+    int i;                        // index variable
+    FileSearch1Listing listing;   // lists contents in any order
+    File next;                    // next File object from <contents>
+
+    if (stopFlag || FileSearch1.cancelFlag) return; // search is finished
+    if (givenFile.isDirectory())  // is this a folder?
+    {
+      FileSearch1.rateLimit.takeFile(); // size pass has same limits
+      listing = null;
+      try
+      {
+        listing = new FileSearch1Listing(givenFile, (FileSearch1.streamIndex
+          > 0), false, 0);        // order doesn't matter for totals
+        while ((contents = listing.next(FileSearch1.STREAM_BATCH)).length > 0)
+        {
+          for (i = 0; i < contents.length; i ++)
+          {
+            if (stopFlag) return; // search is finished
+            next = contents[i];
+            if ((FileSearch1.hiddenFlag == false) && next.isHidden())
+              continue;           // hidden files and folders are ignored
+            if (next.isDirectory()) // subfolder
+            {
+              if (FileSearch1.recurseFlag) // same as processFileOrFolder()
+                scan(next);
+            }
+            else
+              scan(next);         // normal file, or something else
+          }
+        }
+      }
+      catch (IOException ioe) { /* can't list this folder */ }
+      finally
+      {
+        if (listing != null) listing.close();
+      }
+    }
+    else if (givenFile.isFile() && (FileSearch1.checkFileFilter(givenFile)
+      == null))                   // file will be searched?
+    {
+      synchronized (this)         // totals are read by show()
+      {
+        bytesTotal += givenFile.length();
+        filesTotal ++;
+      }
+      if ((System.currentTimeMillis() - shownTime) >= 1000)
+        show();                   // don't wait for pass to finish
+    }
+  }
+
+/*
+  show() method
+
+  Show the speed, percent done, and time left.
+*/
+  void show()
+  {
+    StringBuffer buffer;          // progress message
+    long bytes;                   // bytes done
+    long elapsed;                 // milliseconds since search started
+    long files;                   // files done
+    long left;                    // seconds left
+    double rate;                  // bytes per second
+    long total;                   // total bytes, maybe not complete
+
+    shownTime = System.currentTimeMillis();
+    elapsed = Math.max(1, (shownTime - startTime));
+    bytes = bytesDone.get();
+    files = filesDone.get();
+    synchronized (this) { total = bytesTotal; }
+    rate = (bytes * 1000.0) / elapsed;
+
+    buffer = new StringBuffer();
+    buffer.append(formatBytes(bytes));
+    if (scanFlag && (total > 0))  // do we know the total size?
+    {
+      buffer.append(" of " + (scanDone ? "" : "at least ")
+        + formatBytes(total) + " (" + Math.min(100, (bytes * 100 / total))
+        + "%)");
+    }
+    buffer.append(", " + formatBytes(rate) + "/s, "
+      + format.format((files * 1000.0) / elapsed) + " files/s");
+    if (scanDone && (rate > 0) && (total > bytes)) // can we guess time left?
+    {
+      left = (long) ((total - bytes) / rate);
+      buffer.append(", " + (left / 3600) + ":" + ((left / 600) % 6)
+        + ((left / 60) % 10) + ":" + ((left % 60) / 10) + (left % 10)
+        + " left");
+    }
+
+    if (FileSearch1.consoleFlag)  // rewrite one line on standard error
+    {
+      while (buffer.length() < lastWidth) // erase end of longer line
+        buffer.append(' ');
+      lastWidth = buffer.length();
+      System.err.print("\r" + buffer);
+      System.err.flush();
+    }
+    else
+      FileSearch1.setStatusMessage(buffer.toString());
+  }
+
+/*
+  start(), stop() methods
+
+  Start our thread.  Stop showing progress when the search is finished, and
+  erase the console line, so the summary starts on a clean line.
+*/
+  void start(boolean scan)
+  {
+    scanFlag = scan;
+    thread = new Thread(this, "FileSearch1Progress");
+    thread.setDaemon(true);       // don't keep application alive
+    thread.start();
+  }
+
+  void stop()
+  {
+    StringBuffer buffer;          // spaces to erase console line
+
+    stopFlag = true;              // tell our thread to stop
+    thread.interrupt();           // wake up if sleeping
+    try { thread.join(2000); } catch (InterruptedException ie) { }
+    if (FileSearch1.consoleFlag && (lastWidth > 0)) // was a line shown?
+    {
+      buffer = new StringBuffer("\r");
+      while (buffer.length() <= lastWidth) buffer.append(' ');
+      System.err.print(buffer + "\r");
+      System.err.flush();
+    }
+  }
+
+} // end of FileSearch1Progress class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1ProgressStream class
+
+  This class counts bytes as they are read from a file, for progress or for a
+  size limit.  With a limit, the file appears to end after that many bytes,
+  and <over> says if the real file has more.
+*/
+
+class FileSearch1ProgressStream extends FilterInputStream
+{
+  long count;                     // bytes read from this file
+  long limit;                     // bytes allowed from this file, or zero
+  boolean over;                   // true if file has more bytes than limit
+  FileSearch1Progress progress;   // where to add bytes read, or null
+
+  public FileSearch1ProgressStream(InputStream givenStream,
+    FileSearch1Progress givenProgress, long givenLimit)
+  {
+    super(givenStream);
+    count = 0;                    // nothing read yet
+    limit = givenLimit;
+    over = false;                 // haven't reached the limit
+    progress = givenProgress;
+  }
+
+  public int read() throws IOException
+  {
+    if ((limit > 0) && (count >= limit)) // no more bytes allowed?
+    {
+      over = over || (in.read() >= 0); // check one more, but don't count it
+      return(-1);
+    }
+    int result = in.read();
+    if (result >= 0) { count ++; if (progress != null) progress.addBytes(1); }
+    return(result);
+  }
+
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    if ((limit > 0) && (count >= limit)) // no more bytes allowed?
+    {
+      over = over || (in.read() >= 0); // check one more, but don't count it
+      return(-1);
+    }
+    if (limit > 0)                // don't read past the limit
+      length = (int) Math.min(length, (limit - count));
+    int result = in.read(buffer, offset, length);
+    if (result > 0)
+    {
+      count += result;
+      if (progress != null) progress.addBytes(result);
+    }
+    return(result);
+  }
+
+} // end of FileSearch1ProgressStream class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Shard class
+
+  This class sends part of a sharded search to one worker, over a socket, and
+  saves the results until they can be reported in order.  The protocol is
+  lines of UTF-8 text.  We send the worker's password, "FileSearch1 1", then
+  "ARG " for each option, "FILE " for each file, and "RUN".  A worker closes
+  the connection if the password is wrong, or replies with an error if it
+  won't accept an option.  Otherwise the worker replies with "OUT " for each
+  line of output, "ERR " for each line of errors, and "EXIT " with the status
+  of its search process.  The last error line from a worker has totals.
+*/
+
+class FileSearch1Shard implements Runnable
+{
+  boolean done;                   // true when worker has finished
+  String error;                   // message if connection failed, or null
+  Vector files;                   // File objects for this worker, in order
+  String host;                    // worker's host name or address
+  Vector items;                   // output (String) and errors (String[])
+  Vector options;                 // command-line options for worker
+  int port;                       // worker's port number
+  String token;                   // password for worker
+  long[] totals;                  // numbers from worker's summary, or null
+
+  public FileSearch1Shard(String givenHost, int givenPort, String givenToken,
+    Vector givenOptions, Vector givenFiles)
+  {
+    done = false;                 // worker hasn't started yet
+    error = null;                 // no errors yet
+    files = givenFiles;
+    host = givenHost;
+    items = new Vector();         // no results yet
+    options = givenOptions;
+    port = givenPort;
+    token = givenToken;
+    totals = null;                // no summary yet
+  }
+
+/*
+  add() method
+
+  Save one line of output or errors, and wake up the report() method.
+*/
+  synchronized void add(Object item)
+  {
+    items.add(item);
+    notifyAll();
+  }
+
+/*
+  report() method
+
+  Report results as they arrive, and return when the worker has finished.
+*/
+  void report()
+  {
+    Object item;                  // one line of output or errors
+    int next;                     // index of next item to report
+
+    next = 0;
+    while (true)
+    {
+      synchronized (this)
+      {
+        while ((next >= items.size()) && (done == false))
+          try { wait(); } catch (InterruptedException ie) { }
+        if (next >= items.size()) // worker finished, nothing left
+          break;
+        item = items.set(next ++, null); // forget after reporting
+      }
+      if (item instanceof String) // normal output
+        FileSearch1.putOutput((String) item);
+      else                        // error message
+        FileSearch1.putError(((String[]) item)[0]);
+    }
+    if (error != null)            // did the connection fail?
+      FileSearch1.putError("Worker " + host + ":" + port + " failed: "
+        + error);
+    else if ((totals == null) && (files.size() > 0))
+      FileSearch1.putError("Worker " + host + ":" + port
+        + " didn't finish searching.");
+  }
+
+/*
+  run() method
+
+  Connect to the worker, send options and files, and save results.
+*/
+  public void run()
+  {
+    int i;                        // index variable
+    String line;                  // one line from worker
+    BufferedReader reader;        // lines from worker
+    Socket socket;                // connection to worker
+    BufferedWriter writer;        // lines to worker
+
+    socket = null;
+    try
+    {
+      socket = new Socket(host, port);
+      writer = new BufferedWriter(new OutputStreamWriter(
+        socket.getOutputStream(), "UTF-8"));
+      writer.write(token + "\n");  // password must be first
+      writer.write("FileSearch1 1\n"); // name and version of protocol
+      for (i = 0; i < options.size(); i ++)
+        writer.write("ARG " + options.get(i) + "\n");
+      for (i = 0; i < files.size(); i ++)
+        writer.write("FILE " + ((File) files.get(i)).getPath() + "\n");
+      writer.write("RUN\n");
+      writer.flush();
+
+      reader = new BufferedReader(new InputStreamReader(
+        socket.getInputStream(), "UTF-8"));
+      while (((line = reader.readLine()) != null)
+        && (line.startsWith("EXIT ") == false))
+      {
+        if (line.startsWith("OUT "))
+          add(line.substring(4));
+        else if (line.startsWith("ERR Totals: ")) // numbers from -totals
+        {
+          String[] numbers = line.substring(12).split(" ");
+          long[] result = new long[numbers.length];
+          for (i = 0; i < numbers.length; i ++)
+            result[i] = Long.parseLong(numbers[i]);
+          totals = result;
+        }
+        else if (line.startsWith("ERR "))
+          add(new String[] {line.substring(4)});
+      }
+    }
+    catch (IOException ioe)       // can't connect, or connection broken
+    {
+      error = ioe.getMessage();
+    }
+    catch (RuntimeException re)   // bad totals from an old worker
+    {
+      error = re.toString();
+    }
+    if (socket != null)
+      try { socket.close(); } catch (IOException ioe) { }
+    synchronized (this)
+    {
+      done = true;                // report() can finish
+      notifyAll();
+    }
+  }
+
+} // end of FileSearch1Shard class
 
-//  try
-//  {
-//    UIManager.setLookAndFeel(
-//      UIManager.getCrossPlatformLookAndFeelClassName());
-////    UIManager.getSystemLookAndFeelClassName());
-//  }
-//  catch (Exception ulafe)
-//  {
-//    System.err.println("Unsupported Java look-and-feel: " + ulafe);
-//  }
+// ------------------------------------------------------------------------- //
 
-    /* Initialize shared graphical objects. */
+/*
+  FileSearch1Task class
+
+  This class searches one file, or lists one folder, on a thread from a pool
+  during a parallel search.  Output is saved in <items> along with tasks for
+  the contents of a folder, so that results can be reported in order.  Items
+  are strings for normal output, one-element string arrays for errors, pairs
+  of a batch query and one line for its report, results for files that may
+  have duplicates, and other tasks.
+*/
 
-    action = new FileSearch1User(); // create our shared action listener
-    fileChooser = new JFileChooser(); // create our shared file chooser
-    statusTimer = new javax.swing.Timer(TIMER_DELAY, action);
-                                  // update status message on clock ticks only
+class FileSearch1Task implements Runnable
+{
+  boolean done;                   // true when this task has finished
+  File file;                      // file or folder to be searched
+  long files;                     // files with matches, when counting
+  boolean folder;                 // true if <file> is a folder
+  Vector items;                   // output and tasks, in order
+  Semaphore limit;                // limit on open files, or null
+  long lines;                     // matching lines, when counting
+  long matches;                   // matches (occurrences), when counting
+  FileSearch1Verdict verdict;     // result for a file, with checkpoints
+
+  public FileSearch1Task(File givenFile, Semaphore givenLimit)
+  {
+    done = false;                 // task hasn't run yet
+    file = givenFile;
+    files = lines = matches = 0;  // nothing counted yet
+    folder = false;               // assume this is a file
+    items = new Vector();         // no output yet
+    limit = givenLimit;
+    verdict = null;               // file hasn't been reported
+  }
 
-    /* If our preferred font is not available for the output text area, then
-    use the boring default font for the local system. */
+/*
+  add() method
 
-    if (fontName.equals((new Font(fontName, Font.PLAIN, fontSize)).getFamily())
-      == false)                   // create font, read back created name
-    {
-      fontName = SYSTEM_FONT;     // must replace with standard system font
-    }
+  Save one output item.  Only the thread running this task adds items.
+*/
+  void add(Object item)
+  {
+    items.add(item);              // <Vector> is synchronized
+  }
 
-    /* Create the graphical interface as a series of little panels inside
-    bigger panels.  The intermediate panel names are of no lasting importance
-    and hence are only numbered (panel01, panel02, etc). */
+/*
+  report() method
 
-    /* Create a vertical box to stack buttons and options. */
+  Wait for this task to finish, then report its output and the output of its
+  tasks, in order.  Counts for a folder include all of its tasks, so they are
+  reported last.  Called only by the thread that started the search.
+*/
+  void report()
+  {
+    FileSearch1Task child;        // task for file or folder in our folder
+    int i;                        // index variable
+    Object item;                  // one output item or task
 
-    JPanel panel01 = new JPanel();
-    panel01.setLayout(new BoxLayout(panel01, BoxLayout.Y_AXIS));
+    synchronized (this)
+    {
+      while (done == false)       // wait for this task to finish
+      {
+        try { wait(); } catch (InterruptedException ie) { /* ignore */ }
+      }
+    }
+    if (folder && (FileSearch1.checkpoint != null)) // count folder in order
+      FileSearch1.checkpoint.folderDone(file);
+    for (i = 0; i < items.size(); i ++)
+    {
+      item = items.get(i);
+      if (item instanceof FileSearch1Task) // file or folder inside folder?
+      {
+        child = (FileSearch1Task) item;
+        child.report();           // wait for and report file or subfolder
+        files += child.files;     // add counts to this folder's totals
+        lines += child.lines;
+        matches += child.matches;
+      }
+      else if (item instanceof String[]) // error message?
+        FileSearch1.putError(((String[]) item)[0]);
+      else if (item instanceof FileSearch1Verdict) // file with copies?
+        FileSearch1.reportDuplicate(file, (FileSearch1Verdict) item);
+      else if (item instanceof Object[]) // line for a batch query's report?
+      {
+        FileSearch1.putBatch((FileSearch1Batch) ((Object[]) item)[0],
+          (String) ((Object[]) item)[1]);
+      }
+      else                        // normal output
+        FileSearch1.putOutput((String) item);
+    }
+    items = null;                 // release memory for saved output
+    if ((verdict != null) && (FileSearch1.checkpoint != null))
+      FileSearch1.checkpoint.fileDone(file, verdict); // output is complete
+    if (folder && (FileSearch1.countIndex == 1)) // folder totals?
+      FileSearch1.reportFolderCount(file, files, lines, matches);
+  }
 
-    /* Create a horizontal panel for the action buttons. */
+/*
+  run() method
 
-    JPanel panel11 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+  Search our file, or list our folder and start tasks for its contents.  The
+  same method that searches with one thread does the work.
+*/
+  public void run()
+  {
+    try
+    {
+      FileSearch1.currentTask.set(this); // save output, start new tasks
+      if (limit != null)          // limit number of open files, folders
+        limit.acquireUninterruptibly();
+      try
+      {
+        FileSearch1.processFileOrFolder(file);
+      }
+      finally
+      {
+        if (limit != null)
+          limit.release();
+      }
+    }
+    catch (RuntimeException re)   // should never happen, but report it
+    {
+      add(new String[] {"Error searching " + file.getPath() + ": " + re});
+    }
+    finally
+    {
+      FileSearch1.currentTask.set(null); // pool threads run other tasks
+      synchronized (this)
+      {
+        done = true;              // our output is complete
+        notifyAll();              // wake up thread reporting results
+      }
+    }
+  }
 
-    openButton = new JButton("Open File/Folder...");
-    openButton.addActionListener(action);
-    if (buttonFont != null) openButton.setFont(buttonFont);
-    openButton.setMnemonic(KeyEvent.VK_O);
-    openButton.setToolTipText("Start finding/opening files.");
-    panel11.add(openButton);
-    panel11.add(Box.createHorizontalStrut(50));
+/*
+  start() method
 
-    cancelButton = new JButton("Cancel");
-    cancelButton.addActionListener(action);
-    cancelButton.setEnabled(false);
-    if (buttonFont != null) cancelButton.setFont(buttonFont);
-    cancelButton.setMnemonic(KeyEvent.VK_C);
-    cancelButton.setToolTipText("Stop finding/opening files.");
-    panel11.add(cancelButton);
-    panel11.add(Box.createHorizontalStrut(50));
+  Start a new task for a file or folder inside our folder.
+*/
+  void start(File givenFile)
+  {
+    FileSearch1Task task;         // new task
 
-    saveButton = new JButton("Save Output...");
-    saveButton.addActionListener(action);
-    if (buttonFont != null) saveButton.setFont(buttonFont);
-    saveButton.setMnemonic(KeyEvent.VK_S);
-    saveButton.setToolTipText("Copy output text to a file.");
-    panel11.add(saveButton);
-    panel11.add(Box.createHorizontalStrut(50));
+    task = new FileSearch1Task(givenFile, limit);
+    items.add(task);              // report after anything already saved
+    FileSearch1.taskExecutor.execute(task);
+  }
 
-    exitButton = new JButton("Exit");
-    exitButton.addActionListener(action);
-    if (buttonFont != null) exitButton.setFont(buttonFont);
-    exitButton.setMnemonic(KeyEvent.VK_X);
-    exitButton.setToolTipText("Close this program.");
-    panel11.add(exitButton);
+} // end of FileSearch1Task class
 
-    panel01.add(panel11);
-    panel01.add(Box.createVerticalStrut(10)); // space between panels
+// ------------------------------------------------------------------------- //
 
-    /* Create a horizontal panel for the search string and encoding. */
+/*
+  FileSearch1Verdict class
 
-    JPanel panel21 = new JPanel(new BorderLayout(10, 0));
+  This class remembers the result of searching one file, so that the result
+  can be reused for duplicates of the same file.
+*/
 
-    JLabel label22 = new JLabel("Search:");
-    if (buttonFont != null) label22.setFont(buttonFont);
-    panel21.add(label22, BorderLayout.WEST);
+class FileSearch1Verdict
+{
+  int edits;                      // edits in first match, when approximate
+  boolean found;                  // true if the search string was found
+  long lineNumber;                // line number of first match, if found
+  long lines;                     // number of matching lines, when counting
+  long matches;                   // number of matches, when counting
+  String path;                    // path name of file that was searched
+  String window;                  // text surrounding first match, if found
+
+  public FileSearch1Verdict(String givenPath)
+  {
+    edits = 0;                    // exact match, or not approximate
+    found = false;                // assume search string is not found
+    lineNumber = 0;               // no line number for first match
+    lines = matches = 0;          // nothing counted yet
+    path = givenPath;             // remember caller's path name
+    window = null;                // no text for first match
+  }
 
-    searchDialog = new JTextField(searchString, 20);
-    if (buttonFont != null) searchDialog.setFont(buttonFont);
-    searchDialog.setMargin(new Insets(1, 3, 2, 3)); // top, left, bottom, right
-//  searchDialog.addActionListener(action); // do last so don't fire early
-    panel21.add(searchDialog, BorderLayout.CENTER);
+} // end of FileSearch1Verdict class
 
-    encodeDialog = new JComboBox();
-    encodeDialog.addItem(LOCAL_ENCODING); // start with our special names
-    encodeDialog.addItem(RAW_ENCODING);
-    Object[] list23 = java.nio.charset.Charset.availableCharsets().keySet()
-      .toArray();                 // get character set names from local system
-    for (i = 0; i < list23.length; i ++)
-      encodeDialog.addItem((String) list23[i]); // insert each encoding name
-    encodeDialog.setEditable(true); // allow user to enter alternate names
-    if (buttonFont != null) encodeDialog.setFont(buttonFont);
-    encodeDialog.setSelectedItem(encodeName); // selected item is our default
-    encodeDialog.setToolTipText(
-      "Select name of character set encoding for reading files.");
-    encodeDialog.addActionListener(action); // do last so don't fire early
-    panel21.add(encodeDialog, BorderLayout.EAST);
+// ------------------------------------------------------------------------- //
 
-    panel01.add(panel21);
-    panel01.add(Box.createVerticalStrut(10)); // space between panels
+/*
+  FileSearch1Worker class
 
-    /* Create a horizontal panel for search options. */
+  This class does one search for a coordinator, as a new Java process with
+  the coordinator's options.  File names are given to the process on its
+  standard input, and its output and errors are sent back over the socket.
+  See the FileSearch1Shard class for the protocol.
 
-    JPanel panel31 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+  The coordinator must send our password first.  Only options that change how
+  files are searched or reported are accepted, so a coordinator can't make us
+  write files, read other lists of files, or start more workers.
+*/
 
-    JLabel label32 = new JLabel("Options:");
-    if (buttonFont != null) label32.setFont(buttonFont);
-    panel31.add(label32);
-    panel31.add(Box.createHorizontalStrut(10));
+class FileSearch1Worker implements Runnable
+{
+  /* constants */
 
-    caseCheckbox = new JCheckBox("exact case", caseFlag);
-    if (buttonFont != null) caseCheckbox.setFont(buttonFont);
-    caseCheckbox.setToolTipText(
-      "Select if uppercase and lowercase are different.");
-    caseCheckbox.addActionListener(action); // do last so don't fire early
-    panel31.add(caseCheckbox);
-    panel31.add(Box.createHorizontalStrut(10));
+  static final int MAX_CONNECTIONS = 8; // searches running at once
+  static final String[] OPTIONS = {"after=", "approx=", "before=", "c", "c0",
+    "c1", "context=", "count", "count=", "d", "dedup", "dedup=", "e*", "f*",
+    "h", "h0", "h1", "ignore", "m*", "n", "n0", "n1", "newer=", "older=",
+    "poolmem=", "prefetch", "prefetch=", "prefetchmem=", "query",
+    "r", "r0", "r1", "rate=", "rateadapt", "ratecontrol=", "ratefiles=", "s",
+    "s0", "s1", "split", "split=", "stream", "stream=", "threads=",
+    "timelimit=", "virtual", "virtual="}; // "*" or "=" are followed by values
+  static final String[] REFUSED = {"batch", "checkpoint", "filelist",
+    "follow", "progress", "resume", "totals", "worker"}; // and anything else
+  static final int TIMEOUT = 30000; // milliseconds to send options and files
+  static final String TOKEN_NAME = "FILESEARCH1_TOKEN"; // environment variable
+
+  /* instance variables */
+
+  Semaphore slots;                // released when our search is done
+  Socket socket;                  // connection from coordinator
+  String token;                   // password expected from coordinator
+  BufferedWriter writer;          // lines to coordinator
+
+  public FileSearch1Worker(Socket givenSocket, String givenToken,
+    Semaphore givenSlots)
+  {
+    slots = givenSlots;
+    socket = givenSocket;
+    token = givenToken;
+    writer = null;                // created by run()
+  }
 
-    nullCheckbox = new JCheckBox("ignore nulls", nullFlag);
-    if (buttonFont != null) nullCheckbox.setFont(buttonFont);
-    nullCheckbox.setToolTipText(
-      "Select to ignore <NUL> and <DEL> characters.");
-    nullCheckbox.addActionListener(action); // do last so don't fire early
-    panel31.add(nullCheckbox);
-    panel31.add(Box.createHorizontalStrut(10));
+/*
+  allowed() method
 
-    regexCheckbox = new JCheckBox("regular expression", regexFlag);
-    if (buttonFont != null) regexCheckbox.setFont(buttonFont);
-    regexCheckbox.setToolTipText(
-      "Select if search string is a Java regular expression.");
-    regexCheckbox.addActionListener(action); // do last so don't fire early
-    panel31.add(regexCheckbox);
-    panel31.add(Box.createHorizontalStrut(10));
+  Return true if we accept an option from a coordinator.  Options that aren't
+  on our list are refused, even if the search process would understand them.
+  The first parameter that isn't an option is the search string; later ones
+  would be file or folder names, which must come as "FILE " lines.
+*/
+  static boolean allowed(String option, boolean stringFlag)
+  {
+    int i;                        // index variable
+    String name;                  // option without "-" and in lowercase
 
-    recurseCheckbox = new JCheckBox("search subfolders", recurseFlag);
-    if (buttonFont != null) recurseCheckbox.setFont(buttonFont);
-    recurseCheckbox.setToolTipText("Select to search folders and subfolders.");
-    recurseCheckbox.addActionListener(action); // do last so don't fire early
-    panel31.add(recurseCheckbox);
+    if (option.length() == 0)     // empty parameters are ignored
+      return(true);
+    if ((option.startsWith("-") == false) && ((FileSearch1.mswinFlag == false)
+      || (option.startsWith("/") == false)))
+    {
+      return(stringFlag == false); // only one search string
+    }
+    name = option.substring(1).toLowerCase();
+    for (i = 0; i < REFUSED.length; i ++)
+      if (name.startsWith(REFUSED[i]))
+        return(false);
+    for (i = 0; i < OPTIONS.length; i ++)
+    {
+      if (OPTIONS[i].endsWith("*")
+        ? name.startsWith(OPTIONS[i].substring(0, OPTIONS[i].length() - 1))
+        : OPTIONS[i].endsWith("=") ? name.startsWith(OPTIONS[i])
+        : name.equals(OPTIONS[i]))
+      {
+        return(true);
+      }
+    }
+    return(false);
+  }
 
-    panel01.add(panel31);
-    panel01.add(Box.createVerticalStrut(10)); // space between panels
+/*
+  command() method
 
-    /* Create a horizontal panel for report options. */
+  Return the command for a new Java process running this program, with UTF-8
+  for standard input and output.
+*/
+  static Vector command()
+  {
+    Vector result = new Vector();
+    result.add(System.getProperty("java.home") + File.separator + "bin"
+      + File.separator + "java");
+    result.add("-Dfile.encoding=UTF-8");
+    result.add("-Dsun.stdout.encoding=UTF-8");
+    result.add("-Dsun.stderr.encoding=UTF-8");
+    result.add("-cp");
+    result.add(System.getProperty("java.class.path"));
+    result.add("FileSearch1");
+    return(result);
+  }
 
-    JPanel panel41 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+/*
+  relay() method
 
-    JLabel label42 = new JLabel("Display:");
-    if (buttonFont != null) label42.setFont(buttonFont);
-    panel41.add(label42);
-    panel41.add(Box.createHorizontalStrut(10));
+  Send each line from our search process to the coordinator, with a prefix.
+*/
+  void relay(InputStream input, String prefix) throws IOException
+  {
+    String line;                  // one line from search process
+    BufferedReader reader;        // lines from search process
 
-    reportDialog = new JComboBox(REPORT_CHOICES);
-    reportDialog.setEditable(false); // user must select one of our choices
-    if (buttonFont != null) reportDialog.setFont(buttonFont);
-    reportDialog.setSelectedIndex(reportIndex); // select default level
-    reportDialog.setToolTipText("Select which files to report.");
-    reportDialog.addActionListener(action); // do last so don't fire early
-    panel41.add(reportDialog);
-    panel41.add(Box.createHorizontalStrut(40));
+    reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    while ((line = reader.readLine()) != null)
+      send(prefix + line);
+    reader.close();
+  }
 
-    JLabel label43 = new JLabel("Font:");
-    if (buttonFont != null) label43.setFont(buttonFont);
-    panel41.add(label43);
-    panel41.add(Box.createHorizontalStrut(10));
+/*
+  run() method
 
-    fontNameDialog = new JComboBox(GraphicsEnvironment
-      .getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
-    fontNameDialog.setEditable(false); // user must select one of our choices
-    if (buttonFont != null) fontNameDialog.setFont(buttonFont);
-    fontNameDialog.setSelectedItem(fontName); // select default font name
-    fontNameDialog.setToolTipText("Font name for output text.");
-    fontNameDialog.addActionListener(action); // do last so don't fire early
-    panel41.add(fontNameDialog);
-    panel41.add(Box.createHorizontalStrut(10));
+  Read the options and file names, run the search, and send the results.
+*/
+  public void run()
+  {
+    ProcessBuilder builder;       // starts search process
+    Vector command;               // command for search process
+    final Vector files;           // file names from coordinator
+    String line;                  // one line from coordinator
+    Process process;              // search process, or null
+    BufferedReader reader;        // lines from coordinator
+    boolean stringFlag;           // true after search string from coordinator
+
+    process = null;
+    try
+    {
+      socket.setSoTimeout(TIMEOUT); // don't hold a slot for idle connections
+      reader = new BufferedReader(new InputStreamReader(
+        socket.getInputStream(), "UTF-8"));
+      writer = new BufferedWriter(new OutputStreamWriter(
+        socket.getOutputStream(), "UTF-8"));
+      line = reader.readLine();   // password must be first
+      if ((line == null) || (MessageDigest.isEqual(line.getBytes("UTF-8"),
+        token.getBytes("UTF-8")) == false))
+      {
+        System.err.println("Worker refused connection from "
+          + socket.getRemoteSocketAddress() + ": wrong password.");
+        throw new EOFException(); // nothing more to say to them
+      }
+      if ("FileSearch1 1".equals(reader.readLine()) == false)
+        throw new EOFException(); // not our protocol, or wrong version
+      command = command();
+      files = new Vector();
+      stringFlag = false;         // no search string yet
+      while (((line = reader.readLine()) != null) && (line.equals("RUN")
+        == false))
+      {
+        if (line.startsWith("ARG "))
+        {
+          if (allowed(line.substring(4), stringFlag) == false)
+          {
+            send("ERR Worker won't accept option: " + line.substring(4));
+            send("EXIT -1");
+            writer.flush();
+            throw new EOFException(); // refuse the whole search
+          }
+          command.add(line.substring(4));
+          if ((line.length() > 4) && (line.startsWith("ARG -") == false)
+            && ((FileSearch1.mswinFlag == false)
+            || (line.startsWith("ARG /") == false)))
+          {
+            stringFlag = true;    // later non-options would be file names
+          }
+        }
+        else if (line.startsWith("FILE "))
+          files.add(line.substring(5));
+      }
+      if (line == null)           // coordinator went away before "RUN"
+        throw new EOFException();
+      socket.setSoTimeout(0);     // searches can take as long as they need
+      command.add("-totals");     // summary is numbers for coordinator
+      command.add("-filelist=-"); // file names from standard input
+
+      builder = new ProcessBuilder(command);
+      builder.environment().remove(TOKEN_NAME); // search doesn't need it
+      process = builder.start();
+      final Process search = process;
+
+      /* Write file names and read errors on other threads, so that none of
+      the pipes can fill up and stop the search process. */
+
+      Thread names = new Thread(new Runnable() {
+        public void run() {
+          try {
+            Writer output = new BufferedWriter(new OutputStreamWriter(
+              search.getOutputStream(), "UTF-8"));
+            for (int i = 0; i < files.size(); i ++)
+              output.write(files.get(i) + "\n");
+            output.close(); }
+          catch (IOException ioe) { } } }, "FileSearch1Worker");
+      names.start();
+      Thread errors = new Thread(new Runnable() {
+        public void run() {
+          try { relay(search.getErrorStream(), "ERR "); }
+          catch (IOException ioe) { } } }, "FileSearch1Worker");
+      errors.start();
+      relay(process.getInputStream(), "OUT ");
+      errors.join();
+      send("EXIT " + process.waitFor());
+      writer.flush();
+    }
+    catch (EOFException eofe) { } // connection refused or closed early
+    catch (IOException ioe)       // coordinator went away, or can't start Java
+    {
+      if (process != null)        // stop searching for nobody
+        process.destroy();
+      System.err.println("Worker connection failed: " + ioe.getMessage());
+    }
+    catch (InterruptedException ie) { }
+    try { socket.close(); } catch (IOException ioe) { }
+    slots.release();              // another search can start
+  }
+
+/*
+  send() method
 
-    TreeSet sizelist = new TreeSet(); // collect font sizes 10 to 99 in order
-    word = String.valueOf(fontSize); // convert number to a string we can use
-    sizelist.add(word);           // add default or user's chosen font size
-    for (i = 0; i < FONT_SIZES.length; i ++) // add our preferred size list
-      sizelist.add(FONT_SIZES[i]); // assume sizes are all two digits (10-99)
-    fontSizeDialog = new JComboBox(sizelist.toArray()); // give user nice list
-    fontSizeDialog.setEditable(false); // user must select one of our choices
-    if (buttonFont != null) fontSizeDialog.setFont(buttonFont);
-    fontSizeDialog.setSelectedItem(word); // selected item is our default size
-    fontSizeDialog.setToolTipText("Point size for output text.");
-    fontSizeDialog.addActionListener(action); // do last so don't fire early
-    panel41.add(fontSizeDialog);
+  Send one line to the coordinator.  Output and errors come from two threads.
+*/
+  synchronized void send(String text) throws IOException
+  {
+    writer.write(text);
+    writer.write('\n');
+  }
 
-    panel01.add(panel41);
+} // end of FileSearch1Worker class
 
-    /* Put above boxed options in a panel that is centered horizontally.  Use
-    FlowLayout's horizontal gap to add padding on the left and right sides. */
+// ------------------------------------------------------------------------- //
 
-    JPanel panel51 = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
-    panel51.add(panel01);
+/*
+  FileSearch1Query class
+
+  This class compiles and evaluates a boolean query.  Terms are plain text or
+  regular expressions (the same as a normal search string), or quoted strings
+  when a term has spaces, parentheses, or looks like an operator.  Operators
+  are in uppercase, from highest to lowest precedence:
+
+    NOT a       -- file doesn't contain <a>
+    a NEAR/# b  -- <a> and <b> within # lines (NEAR/0 or NEAR is same line)
+    a AND b     -- file contains both; AND is optional between terms
+    a OR b      -- file contains either
+
+  Every term is searched in one pass through the file.  After each line, the
+  query is evaluated with three values (true, false, unknown) and the search
+  stops as soon as the result can't change.  A term that has been found isn't
+  searched again, unless it's used by NEAR.  Lines where no term is found are
+  skipped with one search for all terms.
+
+  The compiled query is shared by all threads.  The start() method returns a
+  copy with its own state for one file.
+*/
 
-    /* Use another BorderLayout for precise control over the margins. */
+class FileSearch1Query implements Cloneable
+{
+  /* constants */
 
-    JPanel panel52 = new JPanel(new BorderLayout(0, 0));
-    panel52.add(Box.createVerticalStrut(11), BorderLayout.NORTH);
-    panel52.add(Box.createHorizontalStrut(5), BorderLayout.WEST);
-    panel52.add(panel51, BorderLayout.CENTER);
-    panel52.add(Box.createHorizontalStrut(5), BorderLayout.EAST);
-    panel52.add(Box.createVerticalStrut(10), BorderLayout.SOUTH);
+  static final int AND = 1;       // both sides must be true
+  static final int NEAR = 2;      // both terms within <value> lines
+  static final int NOT = 3;       // left side must be false
+  static final int OR = 4;        // either side must be true
+  static final int TERM = 5;      // term number <value> must be found
 
-    /* Create a scrolling text area for the generated output. */
+  /* instance variables for compiled query (shared) */
 
-    outputText = new JTextArea(20, 40);
-    outputText.setEditable(false); // user can't change this text area
-    outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
-    outputText.setLineWrap(false); // don't wrap text lines
-    outputText.setMargin(new Insets(5, 6, 5, 6)); // top, left, bottom, right
-    outputText.setText(
-      "\nSearch for files that contain or don't contain a given string."
-      + "\n\nChoose your options; then open files or folders to search."
-      + "\n\nCopyright (c) 2007 by Keith Fenske.  By using this program, you"
-      + "\nagree to terms and conditions of the Apache License and/or GNU"
-      + "\nGeneral Public License.\n\n");
+  Pattern anyPattern;             // finds any term, or null if unsafe
+  Vector nodes;                   // int[] {op, left, right, value} for nodes
+  int root;                       // index of node at top of query
+  boolean regex;                  // true if terms are regular expressions
+  boolean[] termNear;             // true if term is used by NEAR
+  Pattern[] termPatterns;         // compiled pattern for each term
+  Vector terms;                   // text for each term, in order
+  Vector tokens;                  // tokens while parsing
+  int index;                      // index of next token while parsing
 
-    /* Create an entire panel just for the status message.  We do this so that
-    we have some control over the margins.  Put the status text in the middle
-    of a BorderLayout so that it expands with the window size. */
+  /* instance variables for searching one file (not shared) */
 
-    JPanel panel53 = new JPanel(new BorderLayout(0, 0));
-    statusDialog = new JLabel(EMPTY_STATUS, JLabel.LEFT);
-    if (buttonFont != null) statusDialog.setFont(buttonFont);
-    statusDialog.setToolTipText(
-      "Running status as files are processed by the Open button.");
-    panel53.add(Box.createVerticalStrut(4), BorderLayout.NORTH);
-    panel53.add(Box.createHorizontalStrut(10), BorderLayout.WEST);
-    panel53.add(statusDialog, BorderLayout.CENTER);
-    panel53.add(Box.createHorizontalStrut(10), BorderLayout.EAST);
-    panel53.add(Box.createVerticalStrut(3), BorderLayout.SOUTH);
+  boolean[] found;                // true if term has been found
+  long[] lastLine;                // line number where term last found
+  boolean[] nearDone;             // true if NEAR node has been satisfied
+  int verdict;                    // 1 true, 0 false, -1 unknown
 
-    /* Create the main window frame for this application.  Stack buttons and
-    options above the text area.  Keep text in the center so that it expands
-    horizontally and vertically.  Put status message at the bottom, which also
-    expands. */
+/*
+  constructor
 
-    mainFrame = new JFrame(PROGRAM_TITLE);
-    Container panel54 = mainFrame.getContentPane(); // where content meets frame
-    panel54.setLayout(new BorderLayout(0, 0));
-    panel54.add(panel52, BorderLayout.NORTH); // buttons and options
-    panel54.add(new JScrollPane(outputText), BorderLayout.CENTER); // text area
-    panel54.add(panel53, BorderLayout.SOUTH); // status message
+  Parse and compile a query.  Throw PatternSyntaxException for a bad regular
+  expression, or IllegalArgumentException for bad query syntax.
+*/
+  public FileSearch1Query(
+    String query,                 // text of query
+    boolean givenRegex,           // true if terms are regular expressions
+    int flags)                    // flags for Pattern.compile()
+  {
+    StringBuffer any;             // combined expression for all terms
+    String express;               // expression for one term
+    int i;                        // index variable
+    int[] node;                   // one node in query
+    boolean safe;                 // true if terms can be combined
+
+    nodes = new Vector();         // no nodes yet
+    regex = givenRegex;
+    terms = new Vector();         // no terms yet
+    tokens = tokenize(query);     // split query into tokens
+    index = 0;                    // start with first token
+    if (tokens.size() == 0)       // nothing to search for
+      throw new IllegalArgumentException("empty query");
+    root = parseOr();             // parse the entire query
+    if (index < tokens.size())    // stopped early at something?
+      throw new IllegalArgumentException("unexpected " + tokens.get(index));
+    tokens = null;                // done parsing
+
+    /* Compile each term, and one pattern that finds any term.  Terms can't be
+    combined if they have back references, since group numbers would change. */
+
+    any = new StringBuffer();
+    safe = true;                  // assume we can combine terms
+    termNear = new boolean[terms.size()];
+    termPatterns = new Pattern[terms.size()];
+    for (i = 0; i < terms.size(); i ++)
+    {
+      express = regex ? (String) terms.get(i)
+        : FileSearch1.makeRegularPlain((String) terms.get(i));
+      termPatterns[i] = Pattern.compile(express, flags);
+      if (regex && Pattern.compile("\\\\([0-9]|k<)").matcher(express).find())
+        safe = false;             // might have back references
+      any.append(((i > 0) ? "|" : "") + "(?:" + express + ")");
+    }
+    anyPattern = safe ? Pattern.compile(any.toString(), flags) : null;
+    for (i = 0; i < nodes.size(); i ++) // mark terms used by NEAR
+    {
+      node = (int[]) nodes.get(i);
+      if (node[0] == NEAR)
+      {
+        termNear[((int[]) nodes.get(node[1]))[3]] = true;
+        termNear[((int[]) nodes.get(node[2]))[3]] = true;
+      }
+    }
+  }
 
-    mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-    mainFrame.setLocation(windowLeft, windowTop); // normal top-left corner
-    if ((windowHeight < MIN_FRAME) || (windowWidth < MIN_FRAME))
-      mainFrame.pack();           // do component layout with minimum size
-    else                          // the user has given us a window size
-      mainFrame.setSize(windowWidth, windowHeight); // size of normal window
-    if (maximizeFlag) mainFrame.setExtendedState(JFrame.MAXIMIZED_BOTH);
-    mainFrame.validate();         // recheck application window layout
-    mainFrame.setVisible(true);   // and then show application window
+/*
+  addNode() method
 
-    /* Let the graphical interface run the application now. */
+  Add a node to the query, and return its index.
+*/
+  int addNode(int op, int left, int right, int value)
+  {
+    nodes.add(new int[] {op, left, right, value});
+    return(nodes.size() - 1);
+  }
 
-    searchDialog.requestFocusInWindow(); // sometimes works, sometimes doesn't
+/*
+  evaluate() method
 
-  } // end of main() method
+  Evaluate a node.  Return 1 for true, 0 for false, or -1 if we don't know yet.
+  At the end of the file, terms not found are false.
+*/
+  int evaluate(int number, boolean eof)
+  {
+    int left, right;              // values for left and right sides
+    int[] node;                   // the node that we are evaluating
 
-// ------------------------------------------------------------------------- //
+    node = (int[]) nodes.get(number);
+    switch (node[0])
+    {
+      case TERM:
+        return(found[node[3]] ? 1 : (eof ? 0 : -1));
+      case NOT:
+        left = evaluate(node[1], eof);
+        return((left < 0) ? -1 : (1 - left));
+      case AND:
+        left = evaluate(node[1], eof);
+        if (left == 0) return(0); // short-circuit
+        right = evaluate(node[2], eof);
+        if (right == 0) return(0);
+        return(((left == 1) && (right == 1)) ? 1 : -1);
+      case OR:
+        left = evaluate(node[1], eof);
+        if (left == 1) return(1); // short-circuit
+        right = evaluate(node[2], eof);
+        if (right == 1) return(1);
+        return(((left == 0) && (right == 0)) ? 0 : -1);
+      default:                    // must be NEAR
+        if (nearDone[number] == false)
+        {
+          long a = lastLine[((int[]) nodes.get(node[1]))[3]];
+          long b = lastLine[((int[]) nodes.get(node[2]))[3]];
+          nearDone[number] = (a > 0) && (b > 0)
+            && (Math.abs(a - b) <= node[3]);
+        }
+        return(nearDone[number] ? 1 : (eof ? 0 : -1));
+    }
+  }
 
 /*
-  doCancelButton() method
+  finish() method
 
-  This method is called while we are opening files or folders if the user wants
-  to end the processing early, perhaps because it is taking too long.  We must
-  cleanly terminate any secondary threads.  Leave whatever output has already
-  been generated in the output text area.
+  Evaluate the query at the end of the file, when every term that wasn't found
+  is false.  Return true if the file matches the query.
 */
-  static void doCancelButton()
+  boolean finish()
   {
-    cancelFlag = true;            // tell other threads that all work stops now
-    putError("Cancelled by user."); // print message and scroll
+    verdict = evaluate(root, true);
+    return(verdict == 1);
   }
 
-
 /*
-  doOpenButton() method
+  parseOr(), parseAnd(), parseNear(), parseUnary() methods
 
-  Allow the user to select one or more files or folders for processing.
+  Recursive descent parser, from lowest to highest precedence.  Each returns
+  the index of a node.
 */
-  static void doOpenButton()
+  int parseOr()
   {
-    /* The only option that must be supplied by the user is a search string. */
+    int result;                   // index of node
 
-    searchString = searchDialog.getText(); // plain text or regular expression
-    if (searchString.length() == 0)
+    result = parseAnd();
+    while ((index < tokens.size()) && tokens.get(index).equals("OR"))
     {
-      JOptionPane.showMessageDialog(mainFrame,
-        "Please enter a search string before opening files or folders.");
-      return;                     // end the Open button early
+      index ++;                   // skip operator
+      result = addNode(OR, result, parseAnd(), 0);
     }
+    return(result);
+  }
 
-    /* Ask the user for input files or folders. */
-
-    fileChooser.resetChoosableFileFilters(); // remove any existing filters
-    fileChooser.setDialogTitle("Open Files or Folders...");
-    fileChooser.setFileHidingEnabled(! hiddenFlag); // may show hidden files
-    fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
-    fileChooser.setMultiSelectionEnabled(true); // allow more than one file
-    if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
-      return;                     // user cancelled file selection dialog box
-    openFileList = sortFileList(fileChooser.getSelectedFiles());
-                                  // get list of files selected by user
+  int parseAnd()
+  {
+    int result;                   // index of node
+    Object token;                 // next token
 
-    /* We have a list of files or folders.  Disable the "Open" button until we
-    are done, and enable a "Cancel" button in case our secondary thread runs
-    for a long time and the user panics. */
+    result = parseNear();
+    while (index < tokens.size()) // AND is optional between terms
+    {
+      token = tokens.get(index);
+      if (token.equals("AND"))
+        index ++;                 // skip operator
+      else if (token.equals("OR") || token.equals(")")
+        || ((token instanceof String) && ((String) token).startsWith("NEAR")))
+      {
+        break;                    // not the start of another operand
+      }
+      result = addNode(AND, result, parseNear(), 0);
+    }
+    return(result);
+  }
 
-    cancelButton.setEnabled(true); // enable button to cancel this processing
-    cancelFlag = false;           // but don't cancel unless user complains
-    failCount = folderCount = matchCount = 0; // no files or folders found yet
-    openButton.setEnabled(false); // suspend "Open" button until we are done
-    outputText.setText("");       // clear output text area
-    searchPattern = null;         // we haven't compiled the search string yet
-    setStatusMessage(EMPTY_STATUS); // clear status message at bottom of window
-    statusTimer.start();          // start updating the status message
+  int parseNear()
+  {
+    int distance;                 // number of lines for NEAR
+    int result, right;            // index of nodes on left and right
+    String token;                 // operator
 
-    openFilesThread = new Thread(new FileSearch1User(), "doOpenRunner");
-    openFilesThread.setPriority(Thread.MIN_PRIORITY);
-                                  // use low priority for heavy-duty workers
-    openFilesThread.start();      // run separate thread to open files, report
+    result = parseUnary();
+    while ((index < tokens.size()) && (tokens.get(index) instanceof String)
+      && ((String) tokens.get(index)).startsWith("NEAR"))
+    {
+      token = (String) tokens.get(index ++);
+      distance = (token.length() > 5) ? Integer.parseInt(token.substring(5))
+        : 0;                      // NEAR alone means on the same line
+      right = parseUnary();
+      if ((((int[]) nodes.get(result))[0] != TERM)
+        || (((int[]) nodes.get(right))[0] != TERM))
+      {
+        throw new IllegalArgumentException("NEAR needs a term on each side");
+      }
+      result = addNode(NEAR, result, right, distance);
+    }
+    return(result);
+  }
 
-  } // end of doOpenButton() method
+  int parseUnary()
+  {
+    int result;                   // index of node
+    Object token;                 // next token
 
+    if (index >= tokens.size())   // missing operand at end of query
+      throw new IllegalArgumentException("query ends too soon");
+    token = tokens.get(index ++);
+    if (token instanceof StringBuffer) // quoted or plain term?
+    {
+      terms.add(token.toString());
+      return(addNode(TERM, -1, -1, (terms.size() - 1)));
+    }
+    if (token.equals("NOT"))
+      return(addNode(NOT, parseUnary(), -1, 0));
+    if (token.equals("("))
+    {
+      result = parseOr();         // parse inside of parentheses
+      if ((index >= tokens.size()) || (tokens.get(index).equals(")") == false))
+        throw new IllegalArgumentException("missing )");
+      index ++;                   // skip closing parenthesis
+      return(result);
+    }
+    throw new IllegalArgumentException("unexpected " + token);
+  }
 
 /*
-  doOpenRunner() method
+  scanLine() method
 
-  This method is called inside a separate thread by the runnable interface of
-  our "user" class to process the user's selected files in the context of the
-  "main" class.  By doing all the heavy-duty work in a separate thread, we
-  won't stall the main thread that runs the graphical interface, and we allow
-  the user to cancel the processing if it takes too long.
+  Search one line for every term that we still need.  Return the starting and
+  ending index of the last term found, if this line makes the query true, or
+  null.  The <verdict> says if the query is now true, false, or unknown.
 */
-  static void doOpenRunner()
+  int[] scanLine(
+    CharSequence text,            // line of text to search
+    long lineNumber,              // line number in file
+    long deadline)                // system time in milliseconds, or zero
   {
     int i;                        // index variable
+    CharSequence input;           // text, maybe with time limit
+    Matcher matcher;              // pattern matcher for one term
+    int[] result;                 // position of last term found
+
+    input = regex ? (CharSequence) new FileSearch1Text(text, deadline) : text;
+    if ((anyPattern != null) && (anyPattern.matcher(input).find() == false))
+      return(null);               // no terms on this line
+    result = null;                // no terms found yet
+    for (i = 0; i < termPatterns.length; i ++)
+    {
+      if (found[i] && (termNear[i] == false))
+        continue;                 // already found, don't need to know again
+      matcher = termPatterns[i].matcher(input);
+      if (matcher.find())         // is this term on this line?
+      {
+        found[i] = true;
+        lastLine[i] = lineNumber;
+        result = new int[] {matcher.start(), matcher.end()};
+      }
+    }
+    if (result == null)           // nothing changed
+      return(null);
+    verdict = evaluate(root, false);
+    return((verdict == 1) ? result : null);
+  }
 
-    /* Loop once for each file name selected.  Don't assume that these are all
-    valid file names. */
+/*
+  start() method
 
-    for (i = 0; i < openFileList.length; i ++)
+  Return a copy of this query, with empty state for searching one file.
+*/
+  FileSearch1Query start()
+  {
+    FileSearch1Query result;      // our copy of this query
+
+    try { result = (FileSearch1Query) clone(); } // share compiled query
+    catch (CloneNotSupportedException cnse) { return(null); } // not possible
+    result.found = new boolean[termPatterns.length];
+    result.lastLine = new long[termPatterns.length]; // zero means not found
+    result.nearDone = new boolean[nodes.size()];
+    result.verdict = -1;          // nothing known yet
+    return(result);
+  }
+
+/*
+  tokenize() method
+
+  Split a query into tokens.  Operators and parentheses are strings.  Terms
+  are StringBuffer objects, so that a quoted "AND" is a term, not an operator.
+*/
+  static Vector tokenize(String query)
+  {
+    char ch;                      // one character from query
+    int i;                        // index variable
+    int length;                   // number of characters in query
+    Vector result;                // our list of tokens
+    StringBuffer term;            // characters in one term
+    String word;                  // plain term as a string
+
+    i = 0;
+    length = query.length();
+    result = new Vector();
+    while (i < length)
     {
-      if (cancelFlag) break;      // exit from <for> loop if user cancelled
-      processFileOrFolder(openFileList[i]); // process this file or folder
+      ch = query.charAt(i);
+      if (Character.isWhitespace(ch)) // spaces between tokens
+        i ++;
+      else if ((ch == '(') || (ch == ')'))
+      {
+        result.add(String.valueOf(ch));
+        i ++;
+      }
+      else if (ch == '"')         // quoted term, with \" and \\ escapes
+      {
+        term = new StringBuffer();
+        i ++;                     // skip opening quote
+        while ((i < length) && (query.charAt(i) != '"'))
+        {
+          if ((query.charAt(i) == '\\') && ((i + 1) < length))
+            i ++;                 // escaped character
+          term.append(query.charAt(i ++));
+        }
+        if (i >= length)
+          throw new IllegalArgumentException("missing closing quote");
+        i ++;                     // skip closing quote
+        result.add(term);
+      }
+      else                        // plain term or operator
+      {
+        term = new StringBuffer();
+        while ((i < length) && (Character.isWhitespace(query.charAt(i))
+          == false) && (query.charAt(i) != '(') && (query.charAt(i) != ')'))
+        {
+          term.append(query.charAt(i ++));
+        }
+        word = term.toString();
+        if (word.equals("AND") || word.equals("OR") || word.equals("NOT")
+          || word.matches("NEAR(/[0-9]{1,6})?"))
+        {
+          result.add(word);       // operator
+        }
+        else
+          result.add(term);       // plain term
+      }
     }
+    return(result);
+  }
 
-    /* Print a summary and scroll the output, even if we were cancelled. */
+/*
+  toString() method
 
-    putError("Matched " + prettyPlural(matchCount, "file")
-      + " and didn't match " + prettyPlural(failCount, "file") + " in "
-      + prettyPlural(folderCount, "folder") + ".");
+  Show the compiled query, for debugging.
+*/
+  public String toString()
+  {
+    return(toString(root));
+  }
 
-    /* We are done.  Turn off the "Cancel" button and allow the user to click
-    the "Start" button again. */
+  String toString(int number)
+  {
+    int[] node;                   // the node that we are showing
 
-    cancelButton.setEnabled(false); // disable "Cancel" button
-    openButton.setEnabled(true);  // enable "Open" button
-    statusTimer.stop();           // stop updating status on timer ticks
-    setStatusMessage(EMPTY_STATUS); // and clear any previous status message
+    node = (int[]) nodes.get(number);
+    switch (node[0])
+    {
+      case TERM: return("<" + terms.get(node[3]) + ">");
+      case NOT: return("NOT " + toString(node[1]));
+      case AND: return("(" + toString(node[1]) + " AND " + toString(node[2])
+        + ")");
+      case OR: return("(" + toString(node[1]) + " OR " + toString(node[2])
+        + ")");
+      default: return("(" + toString(node[1]) + " NEAR/" + node[3] + " "
+        + toString(node[2]) + ")");
+    }
+  }
 
-  } // end of doOpenRunner() method
+} // end of FileSearch1Query class
 
+// ------------------------------------------------------------------------- //
 
 /*
-  doSaveButton() method
-
-  Ask the user for an output file name, create or replace that file, and copy
-  the contents of our output text area to that file.  The output file will be
-  in the default character set for the system, so if there are special Unicode
-  characters in the displayed text (Arabic, Chinese, Eastern European, etc),
-  then you are better off copying and pasting the output text directly into a
-  Unicode-aware application like Microsoft Word.
+  FileSearch1Regex class
+
+  This is a linear-time engine for the common subset of Java regular
+  expressions: literal characters, the "." wildcard, character classes, the
+  predefined \d \s \w classes, groups, alternation, greedy and lazy
+  quantifiers, and the ^ and $ anchors.  The expression is compiled into a
+  Thompson NFA.  Whether a line contains a match is decided by a lazily built
+  DFA, which costs one table lookup per character.  The exact position of a
+  match (needed only once per file) is found by simulating the NFA with
+  threads in priority order, which gives the same leftmost-first result as
+  java.util.regex.  No input can make either step take more time than the
+  length of the line times the size of the expression, so there is no
+  "catastrophic backtracking".
+
+  Back references, lookaround, possessive quantifiers, embedded flags, and
+  other features that need backtracking are not supported.  Neither is a
+  repeated atom that can match empty text or contains an anchor, such as
+  (a*)* or (a|^){2}, because Pattern stops those loops by rules that don't fit
+  an NFA, and the results would be different.  The constructor
+  sets <supported> to false for these, and the caller must use the Pattern
+  class instead.  Uppercase and lowercase are compared with the same rules as
+  Pattern.CASE_INSENSITIVE and Pattern.UNICODE_CASE.
 */
-  static void doSaveButton()
-  {
-    FileWriter output;            // output file stream
-    File userFile;                // file chosen by the user
 
-    /* Ask the user for an output file name. */
+class FileSearch1Regex implements Cloneable
+{
+  /* constants */
 
-    fileChooser.resetChoosableFileFilters(); // remove any existing filters
-    fileChooser.setDialogTitle("Save Output as Text File...");
-    fileChooser.setFileHidingEnabled(true); // don't show hidden files
-    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-    fileChooser.setMultiSelectionEnabled(false); // allow only one file
-    if (fileChooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
-      return;                     // user cancelled file selection dialog box
-    userFile = fileChooser.getSelectedFile();
+  static final int ANY = 1;       // any character except line terminators
+  static final int BOL = 2;       // assertion: beginning of text
+  static final int CHAR = 3;      // one exact character in <opX>
+  static final int CLASS = 4;     // character class, index in <classes>
+  static final int EOL = 5;       // assertion: end of text, or terminator
+  static final int FOLD = 6;      // one character in <opX>, ignoring case
+  static final int JUMP = 7;      // continue at instruction <opX>
+  static final int MATCH = 8;     // successful match, always last instruction
+  static final int MAX_PROGRAM = 20000; // most instructions we will compile
+  static final int MAX_REPEAT = 1000; // largest counted repeat we accept
+  static final int MAX_STATES = 2000; // most DFA states we will cache
+  static final int SPLIT = 9;     // try <opX> first, then <opY>
+  static final int TABLE_SIZE = 0x100; // cached DFA transitions per state
+
+  /* Items in a character class are triples in an integer array, after the
+  first element, which is non-zero if the class is negated. */
+
+  static final int ITEM_CLASS = 1; // nested class, index in <classes>
+  static final int ITEM_FOLD = 2; // one character, ignoring case
+  static final int ITEM_RANGE = 3; // range of characters, maybe ignoring case
+  static final int ITEM_SINGLE = 4; // one exact character
+  static final int ITEM_SPECIAL = 5; // predefined class: 'd', 'D', 's', etc
+
+  /* instance variables */
+
+  Vector classes;                 // int[] items for each character class
+  int count;                      // number of instructions in program
+  int dfaCount;                   // number of cached DFA states
+  boolean[] dfaEnd;               // true if state matches at end of text
+  int dfaFirst;                   // DFA state at beginning of text, or -1
+  HashMap dfaIndex;               // maps NFA state sets to DFA state numbers
+  boolean[] dfaMatch;             // true if state includes MATCH instruction
+  int[][] dfaSets;                // sorted NFA instructions for each state
+  int[][] dfaTable;               // cached transitions for each state
+  String express;                 // regular expression being compiled
+  boolean fold;                   // true if uppercase and lowercase are equal
+  boolean hasEol;                 // true if program has an EOL assertion
+  int index;                      // parser's position in <express>
+  int[] marks;                    // generation when NFA thread was added
+  int[] opCode;                   // instruction codes for NFA program
+  int[] opX;                      // first argument or target for instruction
+  int[] opY;                      // second target for SPLIT instructions
+  boolean supported;              // true if expression could be compiled
 
-    /* See if we can write to the user's chosen file. */
+/*
+  constructor
 
-    if (userFile.isDirectory())   // can't write to directories or folders
+  Compile an expression that has already been accepted by Pattern.compile(),
+  so we don't need to report syntax errors, only what we don't support.
+*/
+  public FileSearch1Regex(
+    String givenExpress,          // regular expression
+    boolean givenFold)            // true if uppercase and lowercase are equal
+  {
+    classes = new Vector();       // no character classes yet
+    count = 0;                    // no instructions yet
+    express = removeQuoting(givenExpress); // same as what Pattern does
+    fold = givenFold;             // remember caller's choice for case
+    hasEol = false;               // no $ anchors found yet
+    index = 0;                    // start parsing at beginning of expression
+    opCode = new int[64];         // initial size, grows as needed
+    opX = new int[64];
+    opY = new int[64];
+    supported = true;             // assume that we can compile expression
+    try                           // unsupported syntax throws an exception
     {
-      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
-        + " is a directory or folder.\nPlease select a normal file."));
-      return;
+      parseAlternation();         // compile the entire expression
+      if (index < express.length()) // stopped early at ")" or something?
+        supported = false;
+      emit(MATCH, 0, 0);          // successful match when we get to the end
     }
-    else if (userFile.isHidden()) // won't write to hidden (protected) files
+    catch (RuntimeException re)   // syntax that we don't support
     {
-      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
-        + " is a hidden or protected file.\nPlease select a normal file."));
-      return;
+      supported = false;
     }
-    else if (userFile.isFile() == false) // if file doesn't exist
+
+    /* Create an empty cache of DFA states. */
+
+    dfaCount = 0;
+    dfaEnd = new boolean[16];     // initial size, grows as needed
+    dfaFirst = -1;                // no state for beginning of text yet
+    dfaIndex = new HashMap();
+    dfaMatch = new boolean[16];
+    dfaSets = new int[16][];
+    dfaTable = new int[16][];
+    marks = new int[count];       // no NFA threads yet
+  }
+
+/*
+  addState() method
+
+  Return the DFA state number for a set of NFA instructions, creating a new
+  state if necessary.  The whole cache is flushed if it gets too big, which
+  invalidates all previous state numbers.
+*/
+  int addState(int[] set)
+  {
+    Integer known;                // existing state number, if any
+    String key;                   // instructions as a string, for hashing
+    int result;                   // our resulting state number
+
+    key = Arrays.toString(set);   // sets are already sorted
+    known = (Integer) dfaIndex.get(key);
+    if (known != null)            // have we seen this set before?
+      return(known.intValue());
+    if (dfaCount >= MAX_STATES)   // too many states in our cache?
     {
-      /* Maybe we can create a new file by this name.  Do nothing here. */
+      dfaCount = 0;               // start again with an empty cache
+      dfaFirst = -1;
+      dfaIndex.clear();
     }
-    else if (userFile.canWrite() == false) // file exists, but is read-only
+    if (dfaCount >= dfaSets.length) // need more room?
     {
-      JOptionPane.showMessageDialog(mainFrame, (userFile.getName()
-        + " is locked or write protected.\nCan't write to this file."));
-      return;
+      dfaEnd = Arrays.copyOf(dfaEnd, (dfaCount * 2));
+      dfaMatch = Arrays.copyOf(dfaMatch, (dfaCount * 2));
+      dfaSets = Arrays.copyOf(dfaSets, (dfaCount * 2));
+      dfaTable = Arrays.copyOf(dfaTable, (dfaCount * 2));
     }
-    else if (JOptionPane.showConfirmDialog(mainFrame, (userFile.getName()
-      + " already exists.\nDo you want to replace this with a new file?"))
-      != JOptionPane.YES_OPTION)
+    result = dfaCount ++;         // number for new state
+    dfaEnd[result] = (Arrays.binarySearch(closure(set, set.length, false,
+      true), (count - 1)) >= 0);  // follow $ anchors to MATCH at end of text
+    dfaIndex.put(key, Integer.valueOf(result));
+    dfaMatch[result] = (set.length > 0) && (set[set.length - 1] == (count - 1));
+    dfaSets[result] = set;
+    dfaTable[result] = new int[TABLE_SIZE];
+    Arrays.fill(dfaTable[result], -1); // no transitions are known yet
+    return(result);
+  }
+
+/*
+  addThread() method
+
+  Add a thread for an NFA instruction to a list, following jumps, splits, and
+  anchors in priority order.  Each instruction is added only once per list.
+*/
+  int addThread(
+    int[] listCode,               // instructions for threads in list
+    int[] listStart,              // starting text index for each thread
+    int size,                     // number of threads already in list
+    int generation,               // marks instructions already in list
+    int pc,                       // instruction for new thread
+    int start,                    // starting text index for new thread
+    CharSequence text,            // text being searched
+    int pos)                      // current index in text
+  {
+    int[] stack;                  // instructions still to be visited
+    int top;                      // number of entries used in <stack>
+
+    stack = new int[count + 1];   // each instruction is pushed at most once
+    top = 0;
+    stack[top ++] = pc;
+    while (top > 0)
     {
-      return;                     // user cancelled file replacement dialog
+      pc = stack[-- top];
+      if (marks[pc] == generation) continue; // already in this list
+      marks[pc] = generation;
+      switch (opCode[pc])
+      {
+        case BOL:
+          if (pos == 0) stack[top ++] = pc + 1;
+          break;
+        case EOL:
+          if (atEnd(text, pos)) stack[top ++] = pc + 1;
+          break;
+        case JUMP:
+          stack[top ++] = opX[pc];
+          break;
+        case SPLIT:
+          stack[top ++] = opY[pc]; // lower priority is visited second
+          stack[top ++] = opX[pc];
+          break;
+        default:
+          listCode[size] = pc;    // consumes a character, or is MATCH
+          listStart[size ++] = start;
+          break;
+      }
     }
+    return(size);                 // new number of threads in list
+  }
 
-    /* Write lines to output file. */
+/*
+  atEnd() method
 
-    try                           // catch file I/O errors
+  Return true if the $ anchor matches at a position in the text.  Without the
+  MULTILINE flag, this is the end of the text or just before a final line
+  terminator.
+*/
+  static boolean atEnd(CharSequence text, int pos)
+  {
+    char ch;                      // one character from text
+    int length;                   // size of text in characters
+
+    length = text.length();
+    if (pos == length)            // end of text always matches
+      return(true);
+    else if (pos == (length - 2)) // must be a final CR/LF pair
+      return((text.charAt(pos) == '\r') && (text.charAt(pos + 1) == '\n'));
+    else if (pos == (length - 1)) // must be a final line terminator
     {
-      output = new FileWriter(userFile); // try to open output file
-      outputText.write(output);   // couldn't be much easier for writing!
-      output.close();             // try to close output file
+      ch = text.charAt(pos);
+      if (ch == '\n')             // but not between CR and LF
+        return((pos == 0) || (text.charAt(pos - 1) != '\r'));
+      return(isTerminator(ch));
     }
-    catch (IOException ioe)
+    return(false);
+  }
+
+/*
+  classMatch() method
+
+  Return true if a character is a member of a character class, using the same
+  rules for uppercase and lowercase as the Pattern class.
+*/
+  boolean classMatch(int number, int ch)
+  {
+    boolean found;                // true if character is found in class
+    int i;                        // index variable
+    int[] items;                  // items in this character class
+    int upper;                    // uppercase version of character
+
+    items = (int[]) classes.get(number);
+    found = false;                // assume character is not in class
+    for (i = 1; (found == false) && (i < items.length); i += 3)
     {
-      putError("Can't write to text file: " + ioe.getMessage());
+      switch (items[i])
+      {
+        case ITEM_CLASS:
+          found = classMatch(items[i + 1], ch);
+          break;
+        case ITEM_FOLD:
+          found = (ch == items[i + 1]) || (items[i + 1]
+            == FileSearch1.foldCase(ch));
+          break;
+        case ITEM_RANGE:
+          found = (ch >= items[i + 1]) && (ch <= items[i + 2]);
+          if (fold && (found == false))
+          {
+            upper = Character.toUpperCase(ch);
+            found = ((upper >= items[i + 1]) && (upper <= items[i + 2]))
+              || ((Character.toLowerCase(upper) >= items[i + 1])
+              && (Character.toLowerCase(upper) <= items[i + 2]));
+          }
+          break;
+        case ITEM_SINGLE:
+          found = (ch == items[i + 1]);
+          break;
+        case ITEM_SPECIAL:
+          found = specialMatch(items[i + 1], ch);
+          break;
+      }
     }
-  } // end of doSaveButton() method
+    return(found != (items[0] != 0)); // first element is true if negated
+  }
 
+/*
+  closure() method
+
+  Return the sorted set of NFA instructions reached from a list of starting
+  instructions by following jumps, splits, and anchors.  Only instructions
+  that consume a character are kept, along with MATCH and any EOL that has
+  not been resolved.  Order is not important for the DFA.
+*/
+  int[] closure(
+    int[] start,                  // starting instructions
+    int startCount,               // number of entries used in <start>
+    boolean atStart,              // true if ^ anchor matches here
+    boolean atFinish)             // true if $ anchor matches here
+  {
+    boolean[] marked;             // instructions already visited
+    int pc;                       // current instruction
+    int[] result;                 // our result, before trimming
+    int size;                     // number of entries used in <result>
+    int[] stack;                  // instructions still to be visited
+    int top;                      // number of entries used in <stack>
+
+    marked = new boolean[count];
+    result = new int[count];
+    size = 0;
+    stack = new int[count + startCount];
+    System.arraycopy(start, 0, stack, 0, startCount);
+    top = startCount;
+    while (top > 0)
+    {
+      pc = stack[-- top];
+      if (marked[pc]) continue;   // already visited this instruction
+      marked[pc] = true;
+      switch (opCode[pc])
+      {
+        case BOL:
+          if (atStart) stack[top ++] = pc + 1;
+          break;
+        case EOL:
+          if (atFinish) stack[top ++] = pc + 1;
+          else result[size ++] = pc; // keep for checking at end of text
+          break;
+        case JUMP:
+          stack[top ++] = opX[pc];
+          break;
+        case SPLIT:
+          stack[top ++] = opY[pc];
+          stack[top ++] = opX[pc];
+          break;
+        default:
+          result[size ++] = pc;   // consumes a character, or is MATCH
+          break;
+      }
+    }
+    result = Arrays.copyOf(result, size);
+    Arrays.sort(result);
+    return(result);
+  }
 
 /*
-  formatMatchWindow() method
+  consumes() method
 
-  Format and return a small portion of an input line that surrounds the
-  starting and ending positions of a matched pattern.
+  Return true if an NFA instruction accepts a given character.
 */
-  static String formatMatchWindow(
-    StringBuffer text,            // input text from caller's string buffer
-    int start,                    // index of first matching character
-    int end)                      // index plus one of last matching character
+  boolean consumes(int pc, int ch)
   {
-    StringBuffer buffer;          // faster than String for multiple appends
-    char ch;                      // one character from input string
-    int i;                        // index variable
-    int left, right;              // our starting and ending(+1) positions
+    switch (opCode[pc])
+    {
+      case ANY:
+        return(isTerminator(ch) == false);
+      case CHAR:
+        return(ch == opX[pc]);
+      case CLASS:
+        return(classMatch(opX[pc], ch));
+      case FOLD:
+        return((ch == opX[pc]) || (opX[pc] == FileSearch1.foldCase(ch)));
+      default:                    // EOL or MATCH
+        return(false);
+    }
+  }
 
-    /* Try to center left side, or stop at start of string. */
+/*
+  copy() method
 
-    left = Math.max(0, (start - ((MATCH_WINDOW + start - end) / 2)));
+  Return a new engine with the same compiled program, but an empty DFA cache.
+  The program is never changed after compiling, and can be shared by threads.
+  The cache is changed while searching, so each thread needs its own copy.
+*/
+  FileSearch1Regex copy()
+  {
+    FileSearch1Regex result;      // our copy of this engine
+
+    try { result = (FileSearch1Regex) clone(); } // copy all fields
+    catch (CloneNotSupportedException cnse) { return(null); } // not possible
+    result.dfaCount = 0;          // empty cache of DFA states
+    result.dfaEnd = new boolean[16];
+    result.dfaFirst = -1;
+    result.dfaIndex = new HashMap();
+    result.dfaMatch = new boolean[16];
+    result.dfaSets = new int[16][];
+    result.dfaTable = new int[16][];
+    result.marks = new int[count];
+    return(result);
+  }
 
-    /* Try to use maximum window for right side, or stop at end of string. */
 
-    right = Math.min((left + MATCH_WINDOW), text.length());
+/*
+  emit() method
 
-    /* Try to use maximum window for left side, or stop at start of string. */
+  Append one instruction to the end of the program, and return its index.
+*/
+  int emit(int code, int x, int y)
+  {
+    if (count >= MAX_PROGRAM)     // don't let counted repeats get too big
+      throw new IllegalArgumentException("program too big");
+    if (count >= opCode.length)   // need more room?
+    {
+      opCode = Arrays.copyOf(opCode, (count * 2));
+      opX = Arrays.copyOf(opX, (count * 2));
+      opY = Arrays.copyOf(opY, (count * 2));
+    }
+    opCode[count] = code;
+    opX[count] = x;
+    opY[count] = y;
+    return(count ++);
+  }
 
-    left = Math.max(0, (right - MATCH_WINDOW));
+/*
+  emitTemplate() method
 
-    /* Extract the characters, substituting anything that's not printable. */
+  Append a copy of a saved sequence of instructions to the program, moving
+  jump targets (which are relative to the start of the template).
+*/
+  void emitTemplate(int[] code, int[] x, int[] y)
+  {
+    int base;                     // index of first copied instruction
+    int i;                        // index variable
 
-    buffer = new StringBuffer();  // allocate empty string buffer for result
-    for (i = left; i < right; i ++)
+    base = count;
+    for (i = 0; i < code.length; i ++)
     {
-      ch = text.charAt(i);        // get one character from caller's string
-      if (Character.isISOControl(ch) || (Character.isDefined(ch) == false))
-        buffer.append('.');       // replace with the ever-present period
+      if ((code[i] == JUMP) || (code[i] == SPLIT))
+        emit(code[i], (x[i] + base), (y[i] + base));
       else
-        buffer.append(ch);        // copy character unchanged to result
+        emit(code[i], x[i], y[i]);
     }
-    return(buffer.toString());    // give caller our converted string
-
-  } // end of formatMatchWindow() method
-
+  }
 
 /*
-  makeRegularPlain() method
+  emptyMatch() method
 
-  Convert plain text into an equivalent regular expression.  This allows us to
-  search for plain text with the same algorithm as regular expressions -- and
-  isn't much slower.
+  Return true if a saved atom (see parseRepeat) can match without consuming a
+  character, or contains a ^ or $ anchor.  We follow jumps and splits from the
+  first instruction, and succeed if we reach the end of the atom.
 */
-  static String makeRegularPlain(String text)
+  boolean emptyMatch(int[] code, int[] x, int[] y)
   {
-    StringBuffer buffer;          // faster than String for multiple appends
-    char ch;                      // one character from input string
     int i;                        // index variable
-    int length;                   // size of input string in characters
-
-    buffer = new StringBuffer();  // allocate empty string buffer for result
-    length = text.length();       // get size of caller's string in characters
-    for (i = 0; i < length; i ++) // do all characters in caller's string
+    boolean[] marked;             // instructions already visited
+    int pc;                       // current instruction
+    int[] stack;                  // instructions still to be visited
+    int top;                      // number of entries used in <stack>
+
+    for (i = 0; i < code.length; i ++)
+      if ((code[i] == BOL) || (code[i] == EOL))
+        return(true);
+    marked = new boolean[code.length + 1];
+    stack = new int[(2 * code.length) + 1];
+    stack[0] = 0;                 // start at first instruction of atom
+    top = 1;
+    while (top > 0)
     {
-      ch = text.charAt(i);        // get one character from caller's string
-      if ((ch == '$') || (ch == '(') || (ch == ')') || (ch == '*')
-        || (ch == '+') || (ch == '.') || (ch == '?') || (ch == '[')
-        || (ch == '\\') || (ch == ']') || (ch == '^') || (ch == '{')
-        || (ch == '|') || (ch == '}'))
+      pc = stack[-- top];
+      if (pc >= code.length)      // reached end without a character
+        return(true);
+      if (marked[pc]) continue;   // already visited this instruction
+      marked[pc] = true;
+      if (code[pc] == JUMP)
+        stack[top ++] = x[pc];
+      else if (code[pc] == SPLIT)
       {
-        buffer.append('\\');      // escape this special character
+        stack[top ++] = y[pc];
+        stack[top ++] = x[pc];
       }
-      buffer.append(ch);          // and append the original character
     }
-    return(buffer.toString());    // give caller our converted string
-
-  } // end of makeRegularPlain() method
-
+    return(false);                // every path consumes a character
+  }
 
 /*
-  prettyPlural() method
+  find() method
 
-  Return a string that formats a number and appends a lowercase "s" to a word
-  if the number is plural (not one).  Also provide a more general method that
-  accepts both a singular word and a plural word.
+  Search a line of text, and return the starting and ending index of the first
+  match, or null if there is no match.  The DFA says if there is a match, and
+  only then do we run the slower NFA simulation for the exact position.  The
+  search may start after the beginning of the line, to count more matches.
+  Callers that count matches copy the line once, and search the copy.
 */
-  static String prettyPlural(
-    long number,                  // number to be formatted
-    String singular)              // singular word
+  int[] find(CharSequence text)
   {
-    return(prettyPlural(number, singular, (singular + "s")));
+    return(find(text, 0));        // search whole line
   }
 
-  static String prettyPlural(
-    long number,                  // number to be formatted
-    String singular,              // singular word
-    String plural)                // plural word
+  int[] find(
+    CharSequence text,            // line of text to search
+    int from)                     // index where search starts
   {
-    final String[] names = {"zero", "one", "two"};
-                                  // names for small counting numbers
-    String result;                // our converted result
-
-    if ((number >= 0) && (number < names.length))
-      result = names[(int) number]; // use names for small counting numbers
-    else
-      result = formatComma.format(number); // format number with digit grouping
+    char[] chars;                 // copy of text, faster than charAt()
+    int length;                   // size of text in characters
 
-    if (number == 1)              // is the number singular or plural?
-      result += " " + singular;   // append singular word
+    length = text.length();
+    if (text instanceof StringBuffer) // synchronized charAt() is slow
+    {
+      chars = new char[length];
+      ((StringBuffer) text).getChars(0, length, chars, 0);
+    }
     else
-      result += " " + plural;     // append plural word
+      chars = text.toString().toCharArray();
+    return(find(chars, length, from));
+  }
 
-    return(result);               // give caller our converted string
+  int[] find(
+    char[] chars,                 // copy of line of text to search
+    int length,                   // number of characters in <chars>
+    int from)                     // index where search starts
+  {
+    int ch;                       // one Unicode code point from text
+    int flushed;                  // DFA states before adding a new state
+    int i;                        // index variable
+    int next;                     // next DFA state number
+    int state;                    // current DFA state number
+    CharSequence text;            // same characters for NFA simulation
+
+    text = CharBuffer.wrap(chars, 0, length); // no copy
+    if (from >= length)           // empty text is a special case for anchors
+      return(simulate(text, from));
+    if ((dfaFirst < 0) && (from == 0)) // need state for beginning of text?
+      dfaFirst = addState(closure(new int[] {0}, 1, true, false));
+    state = (from == 0) ? dfaFirst // ^ only matches at beginning of text
+      : addState(closure(new int[] {0}, 1, false, false));
+    i = from;
+    while (i < length)
+    {
+      if (dfaMatch[state])        // has this state already found a match?
+        return(simulate(text, from)); // yes, find exact position
+      ch = Character.codePointAt(chars, i);
+      if (hasEol && isTerminator(ch)) // $ can match before a terminator
+        return(simulate(text, from));
+      next = (ch < TABLE_SIZE) ? dfaTable[state][ch] : -1; // cached?
+      if (next < 0)               // no, must create or find next state
+      {
+        flushed = dfaCount;
+        next = addState(step(dfaSets[state], ch));
+        if ((ch < TABLE_SIZE) && (dfaCount >= flushed)) // cache not flushed?
+          dfaTable[state][ch] = next; // remember transition for next time
+      }
+      state = next;
+      i += Character.charCount(ch);
+    }
+    if (dfaMatch[state] || dfaEnd[state]) // does this state match at end?
+      return(simulate(text, from));
+    return(null);                 // no match anywhere in this text
+  }
 
-  } // end of prettyPlural() method
+/*
+  isTerminator() method
 
+  Return true if a character is a line terminator for the "." wildcard.
+*/
+  static boolean isTerminator(int ch)
+  {
+    return((ch == '\n') || (ch == '\r') || (ch == '\u0085')
+      || (ch == '\u2028') || (ch == '\u2029'));
+  }
 
 /*
-  processFileOrFolder() method
+  parseAlternation() method
 
-  The caller gives us a Java File object that may be a file, a folder, or just
-  random garbage.  Search all files.  Get folder contents and process each file
-  found, doing subfolders only if the <recurseFlag> is true.
+  Compile alternatives separated by vertical bars.  The first alternative has
+  priority, so it is tried first by a SPLIT instruction.
 */
-  static void processFileOrFolder(File givenFile)
+  void parseAlternation()
   {
-    File[] contents;              // contents if <givenFile> is a folder
-    int i;                        // index variable
-    File next;                    // next File object from <contents>
+    int jump;                     // JUMP at end of first alternative
+    int start;                    // first instruction for this alternation
 
-    if (cancelFlag) return;       // stop if user hit the panic button
+    start = count;
+    parseConcat();
+    if ((index < express.length()) && (express.charAt(index) == '|'))
+    {
+      index ++;                   // skip over vertical bar
+      parseShift(start);          // make room for SPLIT before alternative
+      opCode[start] = SPLIT;
+      opX[start] = start + 1;     // first alternative follows SPLIT
+      jump = emit(JUMP, 0, 0);    // first alternative skips the others
+      opY[start] = count;         // other alternatives start here
+      parseAlternation();         // may be more than two alternatives
+      opX[jump] = count;          // end of all alternatives
+    }
+  }
 
-    /* Decide what kind of File object this is, or if it's even real!  The code
-    when we find a subfolder mimics the overall structure of this method, with
-    the exception of hidden files or folders.  We always process files given to
-    us by the user, whether hidden or not. */
+/*
+  parseAtom() method
 
-    if (givenFile.isDirectory())  // is this "file" actually a folder?
+  Compile one atom: a group, a character class, an anchor, or a run of literal
+  characters.  The Pattern class compares a run of two or more characters with
+  slightly different rules for case than a single character, and we do the
+  same.  The last character is not part of a run if it has a quantifier.
+*/
+  void parseAtom()
+  {
+    char ch;                      // first character of atom
+    int i;                        // index variable
+    int[] items;                  // items for a predefined class
+    int literal;                  // one literal character, or -1 if none
+    int[] run;                    // run of literal characters
+    int size;                     // number of characters in <run>
+    int save;                     // parser's position before literal
+
+    ch = express.charAt(index);
+    if (ch == '(')                // capturing or non-capturing group
     {
-      folderCount ++;             // found one more folder, contents unknown
-      setStatusMessage("Folder " + givenFile.getPath());
-      contents = sortFileList(givenFile.listFiles()); // no filter, but sorted
-      for (i = 0; i < contents.length; i ++) // for each file in order
+      index ++;
+      if (express.charAt(index) == '?') // only "(?:" is supported
       {
-        if (cancelFlag) return;   // stop if user hit the panic button
-        next = contents[i];       // get next File object from <contents>
-        if ((hiddenFlag == false) && next.isHidden()) // hidden file or folder?
-        {
-          if (reportIndex == 6)   // are we reporting all files?
-            putOutput("Ignoring hidden " + next.getPath());
-        }
-        else if (next.isDirectory()) // a subfolder inside caller's folder?
-        {
-          if (recurseFlag)        // do subfolders only if option selected
-            processFileOrFolder(next); // call ourself to handle subfolders
-          else if (reportIndex == 6) // are we reporting all files?
-            putOutput("Ignoring subfolder " + next.getPath());
-        }
-        else if (next.isFile())   // we do want to look at normal files
-        {
-          processUnknownFile(next); // figure out what to do with this file
-        }
-        else if (reportIndex == 6) // file directory has an invalid entry
-        {
-          putOutput("Ignoring unknown " + next.getPath());
-        }
+        if (express.charAt(index + 1) != ':')
+          throw new IllegalArgumentException("special group");
+        index += 2;
       }
+      parseAlternation();
+      if (express.charAt(index) != ')')
+        throw new IllegalArgumentException("unbalanced group");
+      index ++;
     }
-    else if (givenFile.isFile())  // we do want to look at normal files
+    else if (ch == '[')           // character class
     {
-      processUnknownFile(givenFile); // figure out what to do with this file
+      index ++;
+      emit(CLASS, parseClass(), 0);
     }
-    else                          // user gave bad file or folder name
+    else if (ch == '.')           // any character except line terminators
     {
-      putError("Not a file or folder: " + givenFile.getPath());
+      index ++;
+      emit(ANY, 0, 0);
     }
-  } // end of processFileOrFolder() method
-
-
-/*
-  processUnknownFile() method
-
-  The caller gives us a Java File object that is known to be a file, not a
-  directory.  Read until we either find the search string or reach the end of
-  the file.
-*/
-  static void processUnknownFile(File givenFile)
-  {
-    int ch;                       // one input character, or -1 for end-of-file
-    long charRead;                // number of characters read (not bytes)
-    BufferedReader charStream;    // input stream for decoded characters
-    long charTold;                // we've told user about this many characters
-    boolean done;                 // true when we are done reading from file
-    String fileName;              // name for caller's file, fetched once only
-//  long fileSize;                // size of caller's file in bytes (not chars)
-    boolean found;                // true if the search pattern was found
-    StringBuffer lineBuffer;      // buffer for assembling one line of text
-    int lineCount;                // number of characters used in <lineBuffer>
-    long lineNumber;              // current line number in file, assuming text
-    boolean lineReady;            // true when line buffer is complete or full
-    Matcher matcher;              // pattern matcher for <searchPattern>
-    byte[] rawBuffer;             // buffer when reading raw 8-bit bytes
-    int rawCount;                 // number of bytes used in <rawBuffer>
-    int rawNext;                  // index of next byte "read" in <rawBuffer>
-    FileInputStream rawStream;    // input stream for raw 8-bit bytes
-    boolean wasCr;                // true if last character was carriage return
-
-    /* Get some basic information about the caller's file.  Fetching the name
-    and the size won't cause any errors (exceptions). */
-
-    if (cancelFlag) return;       // stop if user hit the panic button
-    fileName = givenFile.getPath(); // use full path name as the file name
-//  fileSize = givenFile.length(); // get total file size in bytes (not chars)
-
-    /* Compile the search string as a regular expression, if we haven't already
-    done so.  Regular expressions may be slower to compile, but once compiled,
-    they can be quickly reused from file to file. */
-
-    if (searchPattern == null)    // if we haven't already compiled expression
+    else if (ch == '^')           // beginning of text
     {
-      String express = regexFlag ? searchString
-        : makeRegularPlain(searchString); // use given regex or convert plain
-      int flags = caseFlag ? 0 : (Pattern.CASE_INSENSITIVE
-        | Pattern.UNICODE_CASE);  // are uppercase and lowercase different?
-      if (debugFlag)              // does user want debug information?
-        System.err.println("processUnknownFile express = <" + express
-          + ">, flags = " + flags);
-      try                         // attempt to compile regular expression
+      index ++;
+      emit(BOL, 0, 0);
+    }
+    else if (ch == '$')           // end of text, or before final terminator
+    {
+      index ++;
+      emit(EOL, 0, 0);
+      hasEol = true;
+    }
+    else if ((ch == '\\') && ("dDsSwW".indexOf(express.charAt(index + 1)) >= 0))
+    {
+      items = new int[] {0, ITEM_SPECIAL, express.charAt(index + 1), 0};
+      classes.add(items);         // predefined class, never ignores case
+      emit(CLASS, (classes.size() - 1), 0);
+      index += 2;
+    }
+    else                          // must be a run of literal characters
+    {
+      run = new int[express.length()];
+      size = 0;
+      literal = parseLiteral();
+      if (literal < 0)            // escape sequence that we don't support
+        throw new IllegalArgumentException("special escape");
+      run[size ++] = literal;
+      while (true)
       {
-        searchPattern = Pattern.compile(express, flags);
+        save = index;             // in case we need to back up
+        literal = parseLiteral();
+        if (literal < 0) break;   // end of run
+        if ((index < express.length())
+          && ("*+?{".indexOf(express.charAt(index)) >= 0))
+        {
+          index = save;           // quantified character is separate atom
+          break;
+        }
+        run[size ++] = literal;
       }
-      catch (PatternSyntaxException pse) // if expression syntax is invalid
+      if (size == 1)              // single character, with or without case
       {
-        cancelFlag = true;        // stop looking at files or folders
-        searchPattern = null;     // invalidate anything created above
-        if (consoleFlag)          // are we running in console mode?
-          putError("Invalid regular expression: " + express);
+        int upper = Character.toUpperCase(run[0]);
+        int lower = Character.toLowerCase(upper);
+        if (fold && (upper != lower))
+          emit(FOLD, lower, 0);
+        else
+          emit(CHAR, run[0], 0);
+      }
+      else for (i = 0; i < size; i ++) // run of two or more characters
+      {
+        if (fold)
+          emit(FOLD, Character.toLowerCase(Character.toUpperCase(run[i])), 0);
         else
-          JOptionPane.showMessageDialog(mainFrame,
-            ("Search string has poor syntax as a regular expression:\n"
-            + express));
-        return;                   // return early from this method
+          emit(CHAR, run[i], 0);
       }
     }
+  }
 
-    /* Tell GUI users which file we are about to open and read.  This status
-    will be updated later for really big files. */
-
-    setStatusMessage("Reading " + fileName);
-
-    /* Try to open the data file for reading. */
+/*
+  parseClass() method
 
-    try                           // catch specific and general I/O errors
+  Compile a character class after the opening bracket, and return an index
+  into our list of classes.  Single characters are added with the same rules
+  for case as the Pattern class, which treats characters below 256 specially.
+  Intersections with && are not supported.
+*/
+  int parseClass()
+  {
+    char ch;                      // one character from expression
+    boolean first;                // true for first character in class
+    int high;                     // last character in a range
+    int[] items;                  // items for this character class
+    int low;                      // one character, or first in a range
+    int size;                     // number of entries used in <items>
+
+    items = new int[16];
+    items[0] = 0;                 // assume class is not negated
+    size = 1;
+    if (express.charAt(index) == '^') // negated class?
+    {
+      items[0] = 1;
+      index ++;
+    }
+    first = true;                 // a leading "]" is a literal
+    while (true)
     {
-      charStream = null;          // assume there will be no character stream
-      rawBuffer = null;           // just to keep compiler happy
-      rawCount = rawNext = 0;     // keep compiler happy: mark raw buffer empty
-      rawStream = new FileInputStream(givenFile); // but always need raw bytes
-      if (encodeName.equals(LOCAL_ENCODING)) // use local system's encoding?
+      if (size + 9 > items.length) // need room for three more items
+        items = Arrays.copyOf(items, (items.length * 2));
+      ch = express.charAt(index);
+      if ((ch == ']') && (first == false)) // end of class
       {
-        charStream = new BufferedReader(new InputStreamReader(rawStream));
+        index ++;
+        break;
       }
-      else if (encodeName.equals(RAW_ENCODING)) // use raw bytes as characters?
+      first = false;
+      if (ch == '[')              // nested class is a union
       {
-        rawBuffer = new byte[BUFFER_SIZE]; // allocate space for reading
+        index ++;
+        items[size ++] = ITEM_CLASS;
+        items[size ++] = parseClass();
+        items[size ++] = 0;
       }
-      else                        // must be some named character set encoding
+      else if ((ch == '&') && (express.charAt(index + 1) == '&'))
+        throw new IllegalArgumentException("intersection");
+      else if ((ch == '\\')
+        && ("dDsSwW".indexOf(express.charAt(index + 1)) >= 0))
       {
-        charStream = new BufferedReader(new InputStreamReader(rawStream,
-          encodeName));
+        items[size ++] = ITEM_SPECIAL;
+        items[size ++] = express.charAt(index + 1);
+        items[size ++] = 0;
+        index += 2;
       }
-
-      /* Basic loop is to assemble one "line" of text, breaking at the standard
-      newline characters (DOS CR/LF, UNIX NL), or when the buffer gets full. */
-
-      charRead = charTold = 0;    // we haven't read any characters yet
-      done = false;               // true when we are done reading from file
-      found = false;              // assume that search pattern won't be found
-      lineBuffer = new StringBuffer(BUFFER_SIZE); // allocate empty line buffer
-      lineNumber = 1;             // first line is number one, assuming text
-      wasCr = false;              // no last character, not DOS carriage return
-      while (done == false)
+      else
       {
-        if (cancelFlag) break;    // exit early; this could be a very big file
-
-        /* Update the running status, if this is a big file.  It would be good
-        to tell the user how many megabytes or what percent we have finished,
-        but the only information we have is the total size of the file in bytes
-        and the number of characters we've read so far.  There is no guaranteed
-        relationship between input bytes and input characters.  While calls to
-        the setStatusMessage() method have no effect for console applications,
-        we still avoid the repeated formatting of this message. */
-
-        if ((consoleFlag == false) && ((charRead - charTold) > BIG_FILE_SIZE))
+        low = parseClassChar();
+        if ((express.charAt(index) == '-')
+          && (express.charAt(index + 1) != ']'))
         {
-          charTold = charRead;    // remember what we last told the user
-          setStatusMessage("Reading " + fileName + " - "
-            + formatComma.format(charRead) + " characters");
+          if (express.charAt(index + 1) == '[')
+            throw new IllegalArgumentException("range with class");
+          index ++;               // skip over hyphen
+          high = parseClassChar();
+          items[size ++] = ITEM_RANGE;
+          items[size ++] = low;
+          items[size ++] = high;
         }
-
-        /* Fill the line buffer by adding one byte or character at a time.  */
-
-        lineBuffer.setLength(0);  // empty anything already in line buffer
-        lineCount = 0;            // mark that we have nothing in line buffer
-        lineReady = false;        // line buffer is not full, not complete
-        do                        // repeat until we have a line in buffer
+        else if ((low < 256) && ((fold == false) || ((low != 0xFF)
+          && (low != 0xB5) && (low != 'I') && (low != 'i') && (low != 'S')
+          && (low != 's') && (low != 'K') && (low != 'k') && (low != 0xC5)
+          && (low != 0xE5))))
         {
-          /* Get the next input byte/character, or -1 for end-of-file. */
+          /* Pattern puts these characters in a bit table, and adds other cases
+          of the same letter that are also below 256. */
 
-          if (charStream == null) // are we reading raw 8-bit bytes?
+          items[size ++] = ITEM_SINGLE;
+          items[size ++] = low;
+          items[size ++] = 0;
+          if (fold)
           {
-            if (rawNext >= rawCount) // should we fill the buffer again?
-            {
-              rawCount = rawStream.read(rawBuffer); // fill some or all buffer
-              rawNext = 0;        // assume we will use first byte in buffer
-              if (rawCount <= 0)  // if nothing read, reached end-of-file
-                ch = -1;          // mark this as the end of the file
-              else
-                ch = rawBuffer[rawNext ++] & BYTE_MASK; // get first byte
-            }
-            else
-              ch = rawBuffer[rawNext ++] & BYTE_MASK; // get next byte
+            high = (low < 128) ? (((low >= 'a') && (low <= 'z')) ? (low - 32)
+              : low) : Character.toUpperCase(low);
+            items[size ++] = ITEM_SINGLE;
+            items[size ++] = (high < 256) ? high : low;
+            items[size ++] = 0;
+            high = (low < 128) ? (((low >= 'A') && (low <= 'Z')) ? (low + 32)
+              : low) : Character.toLowerCase(low);
+            items[size ++] = ITEM_SINGLE;
+            items[size ++] = (high < 256) ? high : low;
+            items[size ++] = 0;
           }
-          else
-            ch = charStream.read(); // get one input character
+        }
+        else                      // same rules as a single literal character
+        {
+          int upper = Character.toUpperCase(low);
+          int lower = Character.toLowerCase(upper);
+          items[size ++] = (fold && (upper != lower)) ? ITEM_FOLD : ITEM_SINGLE;
+          items[size ++] = (fold && (upper != lower)) ? lower : low;
+          items[size ++] = 0;
+        }
+      }
+    }
+    classes.add(Arrays.copyOf(items, size));
+    return(classes.size() - 1);
+  }
 
-          /* Decide if this input character is text, marks the end of the line,
-          or marks the end of the file. */
+/*
+  parseClassChar() method
 
-          if (ch < 0)             // negative is for end-of-file
-            done = lineReady = true; // don't read anything more after this
-          else if (nullFlag && ((ch == 0x00) || (ch == 0x7F)))
-            charRead ++;          // count as characters, but otherwise ignore
-          else if (ch == '\n')    // is this a UNIX newline or DOS line feed?
-          {
-            charRead ++;          // count number of characters read
-            lineReady = ! wasCr;  // bare NL or LF means end of line
-            wasCr = false;        // clear any previous CR status
-          }
-          else if (ch == '\r')    // is this a DOS carriage return?
-          {
-            charRead ++;          // count number of characters read
-            lineReady = true;     // bare CR or start CR/LF means end of line
-            wasCr = true;         // remember this CR in case next is LF
-          }
-          else                    // must be text character, or other control
-          {
-            charRead ++;          // count number of characters read
-            lineBuffer.append((char) ch); // put text character into buffer
-            lineCount ++;         // remember how many characters are in buffer
-            wasCr = false;        // clear any previous CR status
-          }
-        } while ((lineReady == false) && (lineCount < BUFFER_SIZE));
+  Return one character inside a character class, which may be escaped.
+*/
+  int parseClassChar()
+  {
+    int result;                   // our resulting character
 
-        /* We now have a line of text, or the end of the file, or both.  This
-        may be just be a buffer full of garbage for binary files. */
+    if (express.charAt(index) == '\\') // escaped character?
+    {
+      result = parseLiteral();
+      if (result < 0)             // escape sequence that we don't support
+        throw new IllegalArgumentException("special escape in class");
+    }
+    else
+    {
+      result = express.codePointAt(index);
+      index += Character.charCount(result);
+    }
+    return(result);
+  }
 
-        if (debugFlag && (lineCount >= BUFFER_SIZE)) // show debug information?
+/*
+  parseConcat() method
+
+  Compile a sequence of atoms, each of which may have quantifiers.
+*/
+  void parseConcat()
+  {
+    char ch;                      // next character in expression
+
+    while (index < express.length())
+    {
+      ch = express.charAt(index);
+      if ((ch == '|') || (ch == ')')) // end of this alternative or group
+        break;
+      parseRepeat();
+    }
+  }
+
+/*
+  parseLiteral() method
+
+  If the next thing in the expression is a literal character, possibly with an
+  escape sequence, then return the character and move past it.  Otherwise,
+  return -1 and don't move.
+*/
+  int parseLiteral()
+  {
+    char ch;                      // next character in expression
+    char escape;                  // character after a backslash
+    int end;                      // end of digits for an escape sequence
+    int result;                   // our resulting character
+
+    if (index >= express.length()) // end of expression?
+      return(-1);
+    ch = express.charAt(index);
+    if ("$.^([|)*+?{".indexOf(ch) >= 0) // special characters end a run
+      return(-1);
+    if (ch != '\\')               // plain character is a literal
+    {
+      result = express.codePointAt(index);
+      index += Character.charCount(result);
+      return(result);
+    }
+    escape = express.charAt(index + 1);
+    if (((escape < 'A') || (escape > 'Z')) && ((escape < 'a') || (escape > 'z'))
+      && ((escape < '0') || (escape > '9'))) // not an ASCII letter or digit
+    {
+      result = express.codePointAt(index + 1); // escaped punctuation, etc
+      index += 1 + Character.charCount(result);
+      return(result);
+    }
+    end = index + 2;              // end of simple escape sequences
+    switch (escape)
+    {
+      case 'a': result = 0x07; break;
+      case 'e': result = 0x1B; break;
+      case 'f': result = '\f'; break;
+      case 'n': result = '\n'; break;
+      case 'r': result = '\r'; break;
+      case 't': result = '\t'; break;
+      case 'c':                   // control character
+        result = express.charAt(end ++) ^ 64;
+        break;
+      case '0':                   // octal: up to three digits, at most 0377
+        result = 0;
+        while ((end < express.length()) && (end < (index + 5))
+          && (express.charAt(end) >= '0') && (express.charAt(end) <= '7')
+          && (((result * 8) + (express.charAt(end) - '0')) <= 0377))
         {
-          System.err.println("processUnknownFile lineCount = " + lineCount
-            + " (full) at charRead = " + charRead + " for givenFile = <"
-            + givenFile.getPath() + ">");
+          result = (result * 8) + (express.charAt(end ++) - '0');
         }
-        if ((done == false) || (lineCount > 0)) // is there anything to scan?
+        break;
+      case 'u':                   // Unicode escape: four hex digits
+        result = Integer.parseInt(express.substring(end, (end + 4)), 16);
+        end += 4;
+        if (Character.isSurrogate((char) result)) // pairs are special
+          throw new IllegalArgumentException("surrogate escape");
+        break;
+      case 'x':                   // hex escape: two digits or {digits}
+        if (express.charAt(end) == '{')
         {
-          matcher = searchPattern.matcher(lineBuffer); // attempt to match
-          if (matcher.find())     // if the search pattern is found
-          {
-            done = found = true;  // don't read anything more after this
-            matchCount ++;        // one more file matches search pattern
-            if ((reportIndex == 0) || (reportIndex == 6)) // match summary?
-            {
-              putOutput("Match found for " + fileName + " at line "
-                + formatComma.format(lineNumber) + ": "
-                + formatMatchWindow(lineBuffer, matcher.start(),
-                matcher.end()));
-            }
-            else if (reportIndex == 1) // show match path only?
-              putOutput(givenFile.getPath());
-            else if (reportIndex == 2) // show match name only?
-              putOutput(givenFile.getName());
-          }
-          else
-            lineNumber ++;        // increment count for next line number
+          int close = express.indexOf('}', end);
+          result = Integer.parseInt(express.substring((end + 1), close), 16);
+          end = close + 1;
         }
-      } // end of <while> read loop
+        else
+        {
+          result = Integer.parseInt(express.substring(end, (end + 2)), 16);
+          end += 2;
+        }
+        break;
+      default:                    // classes, anchors, back references, etc
+        return(-1);
+    }
+    index = end;                  // move past escape sequence
+    return(result);
+  }
+
+/*
+  parseRepeat() method
 
-      /* Close the input file.  We may only need to close the raw byte stream,
-      but be nice and close the character stream if we opened it that way. */
+  Compile one atom followed by any number of quantifiers.  The instructions for
+  the atom are saved as a template and then copied as many times as needed.
+  Lazy quantifiers reverse the priority of SPLIT instructions.
+*/
+  void parseRepeat()
+  {
+    char ch;                      // next character in expression
+    int[] code, x, y;             // saved instructions for atom
+    boolean greedy;               // false if quantifier is lazy
+    int i;                        // index variable
+    int[] jumps;                  // SPLIT instructions that skip to end
+    int maximum;                  // maximum repeat count, or -1 if unlimited
+    int minimum;                  // minimum repeat count
+    int start;                    // first instruction for atom
+    int top;                      // instruction at top of a loop
+
+    start = count;
+    parseAtom();
+    while (index < express.length())
+    {
+      ch = express.charAt(index);
+      if (ch == '*') { minimum = 0; maximum = -1; index ++; }
+      else if (ch == '+') { minimum = 1; maximum = -1; index ++; }
+      else if (ch == '?') { minimum = 0; maximum = 1; index ++; }
+      else if (ch == '{')         // counted repeat: {n} or {n,} or {n,m}
+      {
+        int close = express.indexOf('}', index);
+        String counts = express.substring((index + 1), close);
+        int comma = counts.indexOf(',');
+        if (comma < 0)
+          minimum = maximum = Integer.parseInt(counts);
+        else
+        {
+          minimum = Integer.parseInt(counts.substring(0, comma));
+          maximum = (comma == (counts.length() - 1)) ? -1
+            : Integer.parseInt(counts.substring(comma + 1));
+        }
+        if ((minimum > MAX_REPEAT) || (maximum > MAX_REPEAT))
+          throw new IllegalArgumentException("repeat too big");
+        index = close + 1;
+      }
+      else
+        break;                    // not a quantifier, end of this atom
+      greedy = true;              // assume quantifier is greedy
+      if ((index < express.length()) && (express.charAt(index) == '?'))
+      {
+        greedy = false;           // lazy quantifier
+        index ++;
+      }
+      else if ((index < express.length()) && (express.charAt(index) == '+'))
+        throw new IllegalArgumentException("possessive quantifier");
 
-      if (charStream != null)     // did we open high-level character stream?
-        charStream.close();       // yes, first close the character stream
+      /* Save the atom as a template, with targets relative to its start. */
 
-      rawStream.close();          // then always close low-level byte stream
+      code = Arrays.copyOfRange(opCode, start, count);
+      x = Arrays.copyOfRange(opX, start, count);
+      y = Arrays.copyOfRange(opY, start, count);
+      for (i = 0; i < code.length; i ++)
+      {
+        if ((code[i] == JUMP) || (code[i] == SPLIT))
+        {
+          x[i] -= start;
+          y[i] -= start;
+        }
+      }
+      count = start;              // remove original atom from program
+      if (emptyMatch(code, x, y)) // Pattern has special rules for these
+        throw new IllegalArgumentException("repeated empty match");
 
-      /* If we didn't find what we were looking for, we should still count this
-      file as a failure, and report it as requested by the user's options. */
+      /* Required copies, then optional copies or a loop. */
 
-      if ((cancelFlag == false) && (found == false)) // only need to do failure
+      for (i = 0; i < minimum; i ++)
+        emitTemplate(code, x, y);
+      if (maximum < 0)            // unlimited: loop back to a SPLIT
+      {
+        top = emit(SPLIT, 0, 0);
+        emitTemplate(code, x, y);
+        emit(JUMP, top, 0);
+        opX[top] = greedy ? (top + 1) : count;
+        opY[top] = greedy ? count : (top + 1);
+      }
+      else                        // nested optional copies: (a(a(a)?)?)?
       {
-        failCount ++;             // one more file doesn't match pattern
-        if ((reportIndex == 3) || (reportIndex == 6)) // show failure summary?
-          putOutput("Failed to match " + fileName);
-        else if (reportIndex == 4) // show failure path only?
-          putOutput(givenFile.getPath());
-        else if (reportIndex == 5) // show failure name only?
-          putOutput(givenFile.getName());
+        jumps = new int[maximum - minimum];
+        for (i = 0; i < jumps.length; i ++)
+        {
+          jumps[i] = emit(SPLIT, 0, 0);
+          emitTemplate(code, x, y);
+        }
+        for (i = 0; i < jumps.length; i ++)
+        {
+          opX[jumps[i]] = greedy ? (jumps[i] + 1) : count;
+          opY[jumps[i]] = greedy ? count : (jumps[i] + 1);
+        }
       }
     }
+  }
 
-    /* Catch any file I/O errors, here or in called methods. */
+/*
+  parseShift() method
 
-    catch (UnsupportedEncodingException uee) // instance of IOException
+  Insert room for one instruction at a given index, moving later instructions
+  up by one, and adjusting jump targets.  Targets in moved instructions that
+  point at or after the index are moved.  Targets in earlier instructions are
+  moved only if they point after the index, so that anything that pointed to
+  the old instruction at the index now points to the new instruction.
+*/
+  void parseShift(int at)
+  {
+    int i;                        // index variable
+
+    emit(0, 0, 0);                // make room at end of program
+    for (i = count - 1; i > at; i --)
     {
-      cancelFlag = true;          // stop looking at files or folders
-      putError("Can't read with character set encoding <" + encodeName + ">.");
+      opCode[i] = opCode[i - 1];
+      opX[i] = opX[i - 1];
+      opY[i] = opY[i - 1];
     }
-    catch (IOException ioe)       // all other I/O errors
+    for (i = 0; i < count; i ++)
     {
-      putError("Can't read from file: " + ioe.getMessage());
+      if ((opCode[i] == JUMP) || (opCode[i] == SPLIT))
+      {
+        if ((i > at) ? (opX[i] >= at) : (opX[i] > at)) opX[i] ++;
+        if ((i > at) ? (opY[i] >= at) : (opY[i] > at)) opY[i] ++;
+      }
     }
-  } // end of processUnknownFile() method
-
+  }
 
 /*
-  putError() method
+  removeQuoting() method
 
-  Similar to putOutput() except write on standard error if running as a console
-  application.  See putOutput() for details.  This method is more for tracing
-  execution than for generating a report.  Routines that can only be called
-  from within GUI applications should always call putOutput().
+  Replace \Q...\E quoted text with escaped characters, the same way as the
+  Pattern class, so that quoted text becomes part of a run of literals.
 */
-  static void putError(String text)
+  static String removeQuoting(String text)
   {
-    if (consoleFlag)              // are we running as a console application?
-      System.err.println(text);   // console output goes onto standard error
-    else
+    StringBuffer buffer;          // faster than String for multiple appends
+    char ch;                      // one character from input string
+    int end;                      // index of \E, or end of string
+    int i;                        // index variable
+
+    if (text.indexOf("\\Q") < 0)  // quick exit for most expressions
+      return(text);
+    buffer = new StringBuffer();
+    i = 0;
+    while (i < text.length())
     {
-      outputText.append(text + "\n"); // graphical output goes into text area
-      outputText.select(999999999, 999999999); // force scroll to end of text
+      ch = text.charAt(i ++);
+      if ((ch == '\\') && (i < text.length()) && (text.charAt(i) == 'Q'))
+      {
+        end = text.indexOf("\\E", (i + 1));
+        if (end < 0) end = text.length();
+        for (i = i + 1; i < end; i ++)
+        {
+          ch = text.charAt(i);
+          if (((ch < 'A') || (ch > 'Z')) && ((ch < 'a') || (ch > 'z'))
+            && ((ch < '0') || (ch > '9')) && (Character.isSurrogate(ch) == false))
+          {
+            buffer.append('\\');  // escape anything but letters and digits
+          }
+          buffer.append(ch);
+        }
+        i = Math.min(text.length(), (end + 2)); // skip over \E
+      }
+      else if (ch == '\\')        // copy any other escape unchanged
+      {
+        buffer.append(ch);
+        if (i < text.length())
+          buffer.append(text.charAt(i ++));
+      }
+      else
+        buffer.append(ch);
     }
+    return(buffer.toString());
   }
 
+/*
+  simulate() method
+
+  Run the NFA over a line of text, with threads kept in priority order, and
+  return the starting and ending index of the first match (by the rules of
+  java.util.regex), or null if there is no match.  A new thread is started at
+  each position until a match is found.  When a thread matches, all threads
+  with lower priority are discarded, but higher priority threads may continue
+  to find a longer (greedy) or shorter (lazy) match.
+*/
+  int[] simulate(
+    CharSequence text,            // line of text to search
+    int from)                     // index where search starts
+  {
+    int ch;                       // one Unicode code point, or -1 at end
+    int[] currCode, currStart;    // current list of threads
+    int currSize;                 // number of threads in current list
+    int generation;               // marks instructions in current list
+    int i;                        // index variable
+    int length;                   // size of text in characters
+    int[] nextCode, nextStart;    // next list of threads
+    int nextPos;                  // text index after current character
+    int nextSize;                 // number of threads in next list
+    int pos;                      // current index in text
+    int[] result;                 // starting and ending index of match
+    int[] swap;                   // temporary for swapping lists
+
+    currCode = new int[count];
+    currStart = new int[count];
+    nextCode = new int[count];
+    nextStart = new int[count];
+    Arrays.fill(marks, 0);        // no instructions are in any list
+    generation = 1;
+    currSize = 0;
+    length = text.length();
+    pos = from;
+    result = null;                // no match found yet
+    while (true)
+    {
+      if (result == null)         // start new thread until a match is found
+        currSize = addThread(currCode, currStart, currSize, generation, 0, pos,
+          text, pos);
+      if ((currSize == 0) && ((result != null) || (pos >= length)))
+        break;                    // nothing more can match
+      ch = (pos < length) ? Character.codePointAt(text, pos) : -1;
+      nextPos = pos + ((ch < 0) ? 0 : Character.charCount(ch));
+      generation ++;              // new marks for next list
+      nextSize = 0;
+      for (i = 0; i < currSize; i ++)
+      {
+        if (opCode[currCode[i]] == MATCH) // this thread has matched
+        {
+          result = new int[] {currStart[i], pos};
+          break;                  // discard lower priority threads
+        }
+        if ((ch >= 0) && consumes(currCode[i], ch))
+          nextSize = addThread(nextCode, nextStart, nextSize, generation,
+            (currCode[i] + 1), currStart[i], text, nextPos);
+      }
+      if (pos >= length)          // end of text
+        break;
+      swap = currCode; currCode = nextCode; nextCode = swap;
+      swap = currStart; currStart = nextStart; nextStart = swap;
+      currSize = nextSize;
+      pos = nextPos;
+    }
+    return(result);
+  }
 
 /*
-  putOutput() method
+  specialMatch() method
 
-  Append a complete line of text to the end of the output text area.  We add a
-  newline character at the end of the line, not the caller.  By forcing all
-  output to go through this same method, one complete line at a time, the
-  generated output is cleaner and can be redirected.
+  Return true if a character is in one of the predefined classes.  Without the
+  UNICODE_CHARACTER_CLASS flag, these are ASCII only.
+*/
+  static boolean specialMatch(int name, int ch)
+  {
+    boolean found;                // true if character is in class
 
-  The output text area is forced to scroll to the end, after the text line is
-  written, by selecting character positions that are much too large (and which
-  are allowed by the definition of the JTextComponent.select() method).  This
-  is easier and faster than manipulating the scroll bars directly.  However, it
-  does cancel any selection that the user might have made, for example, to copy
-  text from the output area.
+    switch (Character.toLowerCase(name))
+    {
+      case 'd':
+        found = (ch >= '0') && (ch <= '9');
+        break;
+      case 's':
+        found = (ch == ' ') || (ch == '\t') || (ch == '\n') || (ch == 0x0B)
+          || (ch == '\f') || (ch == '\r');
+        break;
+      default:                    // must be 'w'
+        found = ((ch >= 'a') && (ch <= 'z')) || ((ch >= 'A') && (ch <= 'Z'))
+          || ((ch >= '0') && (ch <= '9')) || (ch == '_');
+        break;
+    }
+    return(found != Character.isUpperCase(name)); // uppercase is negated
+  }
+
+/*
+  step() method
+
+  Return the set of NFA instructions reached from a DFA state by consuming one
+  character.  Since we are searching (not matching), a new thread starts at
+  every position, so the start of the program is always included.
 */
-  static void putOutput(String text)
+  int[] step(int[] set, int ch)
   {
-    putOutput(text, false);       // by default, do not scroll output lines
+    int i;                        // index variable
+    int[] next;                   // instructions after this character
+    int size;                     // number of entries used in <next>
+
+    next = new int[set.length + 1];
+    size = 0;
+    for (i = 0; i < set.length; i ++)
+    {
+      if (consumes(set[i], ch))
+        next[size ++] = set[i] + 1;
+    }
+    next[size ++] = 0;            // new thread at start of program
+    return(closure(next, size, false, false));
   }
 
-  static void putOutput(String text, boolean scroll)
+} // end of FileSearch1Regex class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Scan class
+
+  This class skips whole lines of plain text that can't match, because they
+  don't have any character that could start the search string (or the first
+  two characters, when the search string is long enough).  Line ends are
+  counted, but nothing is copied into the line buffer.  The lines must start
+  at the beginning of the buffer, and end before the first character that
+  could start a match.  This is the same result as assembling and searching
+  each line, because a buffer is never longer than the line buffer, so lines
+  aren't broken in different places.
+
+  Raw bytes are checked eight at a time as <long> words, with the usual bit
+  tricks to find bytes that are line ends or candidates, and bytes that are
+  only line feeds are counted with Long.bitCount().  Decoded characters are
+  checked one at a time with a table, which is still much faster than adding
+  them to a StringBuffer.  The tables are shared by copies of this object;
+  the results of a scan are not.
+*/
+
+class FileSearch1Scan implements Cloneable
+{
+  /* constants */
+
+  static final long HIGH_BITS = 0x8080808080808080L; // top bit of each byte
+  static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL; // other bits of each byte
+  static final int MAX_WORDS = 4; // most candidate bytes checked by words
+  static final long ONE_BYTES = 0x0101010101010101L; // one in each byte
+  static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(
+    long[].class, ByteOrder.LITTLE_ENDIAN); // eight bytes as one <long>
+
+  /* instance variables */
+
+  int end;                        // index after last line end, so far
+  boolean endCr;                  // true if last line end was carriage return
+  long endLines;                  // line ends before <end>
+  boolean[] first;                // characters that could start a match
+  int found;                      // index of first candidate, or -1 if none
+  long lines;                     // line ends in skipped text
+  boolean nulls;                  // true if <NUL> and <DEL> are ignored
+  int prev;                       // index of last character that was checked
+  boolean prevCr;                 // true if <prev> was carriage return
+  long runLines;                  // line ends so far in this scan
+  boolean[] second;               // characters that could follow, or null
+  boolean wasCr;                  // true if skipped text ends with CR
+  long[] words;                   // candidate bytes repeated in each byte
+
+  public FileSearch1Scan(
+    String text,                  // plain text to search for
+    boolean fold,                 // true if uppercase and lowercase are equal
+    boolean givenNulls)           // true if <NUL> and <DEL> are ignored
   {
-    if (consoleFlag)              // are we running as a console application?
-      System.out.println(text);   // console output goes onto standard output
-    else
+    int count;                    // number of candidate bytes
+    int i;                        // index variable
+
+    first = makeTable(text.charAt(0), fold);
+    nulls = givenNulls;
+    second = null;                // nulls may come between first and second
+    if ((text.length() > 1) && (nulls == false))
+      second = makeTable(text.charAt(1), fold);
+
+    /* Check raw bytes as words when there are only a few candidates. */
+
+    count = 0;
+    for (i = 0; i < 0x100; i ++)
+      if (first[i]) count ++;
+    words = null;                 // assume too many candidate bytes
+    if (count <= MAX_WORDS)
     {
-      outputText.append(text + "\n"); // graphical output goes into text area
-      if (scroll)                 // does caller want us to scroll?
-        outputText.select(999999999, 999999999); // force scroll to end of text
+      words = new long[count];
+      count = 0;
+      for (i = 0; i < 0x100; i ++)
+        if (first[i]) words[count ++] = i * ONE_BYTES;
     }
   }
 
-
 /*
-  setStatusMessage() method
+  check() method
 
-  Set the text for the status message if we are running as a GUI application.
-  This gives the user some indication of our progress if processing is slow.
-  If the update timer is running, then this message will not appear until the
-  timer kicks in.  This prevents the status from being updated too often, and
-  hence being unreadable.
+  Check one character that may be a line end, an ignored null, or the start of
+  a match.  The character before it (but not any characters in between) was
+  also checked.  Return true if this character could start a match.
 */
-  static void setStatusMessage(String text)
+  boolean check(
+    int ch,                       // character at <index>
+    int next,                     // following character, or -1 if unknown
+    int index)                    // index of <ch> in caller's buffer
   {
-    statusPending = text;         // save caller's message for later
-    if (consoleFlag)              // are we running as a console application?
+    if (prev != (index - 1))      // some other character came in between
+      prevCr = false;
+    prev = index;
+    if (ch == '\n')               // UNIX newline or DOS line feed
     {
-      /* Do nothing: console doesn't show running status messages. */
+      if (prevCr == false) runLines ++; // not part of CR/LF
+      prevCr = false;
+      end = index + 1;
+      endCr = false;
+      endLines = runLines;
     }
-    else if (statusTimer.isRunning()) // are we updating on a timed basis?
+    else if (ch == '\r')          // DOS carriage return
     {
-      /* Do nothing: wait for timer to kick in and update GUI text. */
+      runLines ++;                // bare CR or start of CR/LF
+      prevCr = true;
+      end = index + 1;
+      endCr = true;
+      endLines = runLines;
+    }
+    else if (nulls && ((ch == 0x00) || (ch == 0x7F)))
+      { /* do nothing: ignored, and CR/LF may be split by nulls */ }
+    else if (first[ch] && ((second == null) || (next < 0) || second[next]))
+    {
+      found = index;              // line with this character is searched
+      return(true);
     }
     else
-      statusDialog.setText(text); // show the status message now
+      prevCr = false;             // some other character
+    return(false);
   }
 
-
 /*
-  showHelp() method
+  copy() method
 
-  Show the help summary.  This is a UNIX standard and is expected for all
-  console applications, even very simple ones.
+  Return a copy of this object for another thread, sharing the same tables.
 */
-  static void showHelp()
+  FileSearch1Scan copy()
   {
-    System.err.println();
-    System.err.println(PROGRAM_TITLE);
-    System.err.println();
-    System.err.println("  java  FileSearch1  [options]  search_string  files_or_folders");
-    System.err.println();
-    System.err.println("Options:");
-    System.err.println("  -? = -help = show summary of command-line syntax");
-    System.err.println("  -c0 = uppercase and lowercase are equal (default)");
-    System.err.println("  -c1 = -c = uppercase and lowercase are different");
-    System.err.println("  -d = show debug information (may be verbose)");
-    System.err.println("  -e\"name\" = name of character set encoding for reading files");
-    System.err.println("  -f\"string\" = use when search string looks like an option");
-    System.err.println("  -h0 = ignore hidden files or folders except given by user");
-    System.err.println("  -h1 = -h = process hidden files and folders (default)");
-    System.err.println("  -m0 = report files that contain the search string (default)");
-    System.err.println("  -m1 = report file name and path only if string found");
-    System.err.println("  -m2 = report file name only (no path) if string found");
-    System.err.println("  -m3 = report files that don't contain the search string");
-    System.err.println("  -m4 = report file name and path only if string not found");
-    System.err.println("  -m5 = report file name only (no path) if string not found");
-    System.err.println("  -m6 = report all files as to whether string is found");
-    System.err.println("  -n0 = keep <NUL> and <DEL> characters as file text (default)");
-    System.err.println("  -n1 = -n = ignore <NUL> and <DEL> control characters");
-    System.err.println("  -r0 = search string is plain Unicode text (default)");
-    System.err.println("  -r1 = -r = search string is a Java regular expression");
-    System.err.println("  -s0 = do only given files or folders, no subfolders (default)");
-    System.err.println("  -s1 = -s = process files, folders, and subfolders");
-    System.err.println("  -u# = font size for buttons, dialogs, etc; default is local system;");
-    System.err.println("      example: -u16");
-    System.err.println("  -w(#,#,#,#) = normal window position: left, top, width, height;");
-    System.err.println("      example: -w(50,50,700,500)");
-    System.err.println("  -x = maximize application window; default is normal window");
-    System.err.println();
-    System.err.println("Output may be redirected with the \">\" operator.  If no file or folder names");
-    System.err.println("are given on the command line, then a graphical interface will open.  Java");
-    System.err.println("may interpret special characters in command-line options or parameters.");
-    System.err.println();
-    System.err.println(COPYRIGHT_NOTICE);
-//  System.err.println();
+    try { return((FileSearch1Scan) clone()); } // copy all fields
+    catch (CloneNotSupportedException cnse) { return(null); } // not possible
+  }
 
-  } // end of showHelp() method
+/*
+  finish() method
 
+  Set the results of a scan, and return the index after the skipped lines.
+*/
+  int finish(int from, boolean cr)
+  {
+    lines = endLines;             // line ends before <end>
+    wasCr = (end > from) ? endCr : cr; // unchanged if nothing was skipped
+    return(end);
+  }
 
 /*
-  sortFileList() method
+  makeTable() method
 
-  When we ask for a list of files or subfolders in a directory, the list is not
-  likely to be in our preferred order.  Java does not guarantee any particular
-  order, and the observed order is whatever is supplied by the underlying file
-  system (which can be very jumbled for FAT16/FAT32).  We would like the file
-  names to be sorted, and since we recurse on subfolders, we also want the
-  subfolders to appear in order.
-
-  The caller's parameter may be <null> and this may happen if the caller asks
-  File.listFiles() for the contents of a protected system directory.  All calls
-  to listFiles() in this program are wrapped inside a call to us, so we replace
-  a null parameter with an empty array as our result.
+  Return a table with every character equal to the given character, ignoring
+  case if requested, using the same folded characters as the Pattern class.
 */
-  static File[] sortFileList(File[] input)
+  static boolean[] makeTable(char ch, boolean fold)
   {
-    String fileName;              // file name without the path
     int i;                        // index variable
-    TreeMap list;                 // our list of files
-    File[] result;                // our result
-    StringBuffer sortKey;         // created sorting key for each file
+    boolean[] result;             // our table of characters
 
-    if (input == null)            // were we given a null pointer?
-      result = new File[0];       // yes, replace with an empty array
-    else if (input.length < 2)    // don't sort lists with zero or one element
-      result = input;             // just copy input array as result array
-    else
+    result = new boolean[0x10000]; // one entry for each <char> value
+    result[ch] = true;
+    if (fold)                     // uppercase and lowercase are equal?
     {
-      /* First, create a sorted list with our choice of index keys and the File
-      objects as data.  Names are sorted as files or folders, then in lowercase
-      to ignore differences in uppercase versus lowercase, then in the original
-      form for systems where case is distinct. */
+      for (i = 0; i < 0x10000; i ++)
+        if (FileSearch1.foldTable[i] == FileSearch1.foldTable[ch])
+          result[i] = true;
+    }
+    return(result);
+  }
 
-      list = new TreeMap();       // create empty sorted list with keys
-      sortKey = new StringBuffer(); // allocate empty string buffer for keys
-      for (i = 0; i < input.length; i ++)
-      {
-        sortKey.setLength(0);     // empty any previous contents of buffer
-        if (input[i].isDirectory()) // is this "file" actually a folder?
-          sortKey.append("2 ");   // yes, put subfolders after files
-        else                      // must be a file or an unknown object
-          sortKey.append("1 ");   // put files before subfolders
+/*
+  skipBytes() method
 
-        fileName = input[i].getName(); // get the file name without the path
-        sortKey.append(fileName.toLowerCase()); // start by ignoring case
-        sortKey.append(" ");      // separate lowercase from original case
-        sortKey.append(fileName); // then sort file name on original case
-        list.put(sortKey.toString(), input[i]); // put file into sorted list
+  Skip lines of raw bytes that can't match, starting at <from> and stopping
+  before <to>.  Return the index after the last skipped line, which is <from>
+  if no lines were skipped.  The number of skipped line ends is in <lines>,
+  and the index of the first candidate byte is in <found>.
+*/
+  int skipBytes(
+    byte[] bytes,                 // buffer of raw bytes
+    int from,                     // index of first byte, at start of line
+    int to,                       // index after last byte
+    boolean cr)                   // true if byte before <from> was CR
+  {
+    long cand;                    // top bit of each byte that is a candidate
+    int i;                        // index of first byte in word
+    int j;                        // index of one checked byte
+    long lf;                      // top bit of each byte that is a line feed
+    long other;                   // top bit of each carriage return or null
+    long word;                    // eight bytes from buffer
+
+    start(from, cr);
+    i = from;
+    if (words != null)            // few enough candidates for words?
+    {
+      while ((i + 8) <= to)
+      {
+        word = (long) WORDS.get(bytes, i);
+        lf = zeros(word ^ ('\n' * ONE_BYTES));
+        other = zeros(word ^ ('\r' * ONE_BYTES));
+        if (nulls)                // ignored nulls keep CR/LF together
+          other |= zeros(word) | zeros(word ^ (0x7F * ONE_BYTES));
+        cand = 0;
+        for (j = 0; j < words.length; j ++)
+          cand |= zeros(word ^ words[j]);
+        if (((other | cand) == 0) && (lf != 0) && (((lf & 0x80) == 0)
+          || (prevCr == false) || (prev != (i - 1)))) // only line feeds?
+        {
+          runLines += Long.bitCount(lf); // none are part of CR/LF
+          prev = i + ((63 - Long.numberOfLeadingZeros(lf)) >>> 3);
+          prevCr = endCr = false;
+          end = prev + 1;
+          endLines = runLines;
+        }
+        else
+        {
+          other |= lf | cand;     // every byte that must be checked
+          while (other != 0)      // check each byte, in order
+          {
+            j = i + (Long.numberOfTrailingZeros(other) >>> 3);
+            if (check((bytes[j] & 0xFF), (((j + 1) < to) ? (bytes[j + 1]
+              & 0xFF) : -1), j))
+            {
+              return(finish(from, cr)); // candidate found
+            }
+            other &= other - 1;   // clear lowest bit
+          }
+        }
+        i += 8;
+      }
+    }
+    for (j = i; j < to; j ++)     // remaining bytes, or too many candidates
+    {
+      int ch = bytes[j] & 0xFF;
+      if (((ch <= '\r') || first[ch] || (ch == 0x7F)) && check(ch,
+        (((j + 1) < to) ? (bytes[j + 1] & 0xFF) : -1), j))
+      {
+        return(finish(from, cr)); // candidate found
       }
+    }
+    return(finish(from, cr));     // no candidates in buffer
+  }
 
-      /* Second, now that the TreeMap object has done all the hard work of
-      sorting, pull the File objects from the list in order as determined by
-      the sort keys that we created. */
+/*
+  skipChars() method
 
-      result = (File[]) list.values().toArray(new File[0]);
+  Skip lines of decoded characters that can't match, the same as skipBytes().
+*/
+  int skipChars(
+    char[] chars,                 // buffer of decoded characters
+    int from,                     // index of first character, at start of line
+    int to,                       // index after last character
+    boolean cr)                   // true if character before <from> was CR
+  {
+    int ch;                       // one character from buffer
+    int j;                        // index variable
+
+    start(from, cr);
+    for (j = from; j < to; j ++)
+    {
+      ch = chars[j];
+      if (((ch <= '\r') || first[ch] || (ch == 0x7F)) && check(ch,
+        (((j + 1) < to) ? chars[j + 1] : -1), j))
+      {
+        break;                    // candidate found
+      }
     }
-    return(result);               // give caller whatever we could find
+    return(finish(from, cr));
+  }
 
-  } // end of sortFileList() method
+/*
+  start() method
 
+  Clear the results before a scan.
+*/
+  void start(int from, boolean cr)
+  {
+    end = from;                   // nothing skipped yet
+    endCr = cr;
+    endLines = runLines = 0;
+    found = -1;                   // no candidate found yet
+    prev = from - 1;              // character before <from> ...
+    prevCr = cr;                  // ... may be a carriage return
+  }
 
 /*
-  userButton() method
+  toString() method
 
-  This method is called by our action listener actionPerformed() to process
-  buttons, in the context of the main FileSearch1 class.
+  Describe the candidates, for debugging.
 */
-  static void userButton(ActionEvent event)
+  public String toString()
   {
-    Object source = event.getSource(); // where the event came from
-    if (source == cancelButton)   // "Cancel" button
-    {
-      doCancelButton();           // stop opening files or folders
-    }
-    else if (source == caseCheckbox) // if uppercase differs from lowercase
-    {
-      caseFlag = caseCheckbox.isSelected();
-    }
-    else if (source == encodeDialog) // name of assumed character set encoding
-    {
-      /* Accept anything for a character set name, because availableCharsets()
-      can be incomplete.  For example, MacRoman is optional on Java 1.4 for
-      Windows and is missing from the official list even if installed.  Illegal
-      names will generate an error message when they are first used. */
+    int count;                    // number of candidate characters
+    int i;                        // index variable
 
-      encodeName = (String) encodeDialog.getSelectedItem();
-    }
-    else if (source == exitButton) // "Exit" button
-    {
-      System.exit(0);             // always exit with zero status from GUI
-    }
-    else if (source == fontNameDialog) // font name for output text area
-    {
-      /* We can safely assume that the font name is valid, because we obtained
-      the names from getAvailableFontFamilyNames(), and the user can't edit
-      this dialog field. */
+    count = 0;
+    for (i = 0; i < 0x10000; i ++)
+      if (first[i]) count ++;
+    return(count + " first characters" + ((second != null) ? ", pair" : "")
+      + ((words != null) ? (", " + words.length + " bytes by words") : ""));
+  }
 
-      fontName = (String) fontNameDialog.getSelectedItem();
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
-    }
-    else if (source == fontSizeDialog) // point size for output text area
-    {
-      /* We can safely parse the point size as an integer, because we supply
-      the only choices allowed, and the user can't edit this dialog field. */
+/*
+  zeros() method
 
-      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
-    }
-    else if (source == nullCheckbox) // if <NUL> and <DEL> chars are ignored
-    {
-      nullFlag = nullCheckbox.isSelected();
-    }
-    else if (source == openButton) // "Open" button for files or folders
-    {
-      doOpenButton();             // open files or folders for processing
-    }
-    else if (source == recurseCheckbox) // recursion for folders, subfolders
-    {
-      recurseFlag = recurseCheckbox.isSelected();
-    }
-    else if (source == regexCheckbox) // if search is Java regular expression
-    {
-      regexFlag = regexCheckbox.isSelected();
-    }
-    else if (source == reportDialog) // select which files to report
-    {
-      reportIndex = reportDialog.getSelectedIndex();
-    }
-    else if (source == saveButton) // "Save Output" button
-    {
-      doSaveButton();             // write output text area to a file
-    }
-    else if (source == statusTimer) // update timer for status message text
-    {
-      if (statusPending.equals(statusDialog.getText()) == false)
-        statusDialog.setText(statusPending); // new message, update the display
-    }
-    else                          // fault in program logic, not by user
-    {
-      System.err.println("Error in userButton(): unknown ActionEvent: "
-        + event);                 // should never happen, so write on console
-    }
-  } // end of userButton() method
+  Return a word with the top bit set in each byte that is zero, and no other
+  bits.  Unlike the shorter version, this doesn't mark bytes after a zero.
+*/
+  static long zeros(long word)
+  {
+    return(~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS));
+  }
 
-} // end of FileSearch1 class
+} // end of FileSearch1Scan class
 
 // ------------------------------------------------------------------------- //
 
 /*
-  FileSearch1User class
+  FileSearch1Text class
 
-  This class listens to input from the user and passes back event parameters to
-  a static method in the main class.
+  This class wraps the text being searched, so that the Pattern class can be
+  interrupted if the user cancels or a time limit expires.  Pattern has no way
+  of stopping a match that takes too long, but it does read every character
+  through charAt(), so we check the clock (and the cancel flag) every few
+  thousand characters.
 */
 
-class FileSearch1User implements ActionListener, Runnable
+class FileSearch1Text implements CharSequence
 {
-  /* empty constructor */
+  /* constants */
 
-  public FileSearch1User() { }
+  static final int CHECK_INTERVAL = 4096; // characters between clock checks
 
-  /* button listener, dialog boxes, etc */
+  /* instance variables */
 
-  public void actionPerformed(ActionEvent event)
+  int countdown;                  // characters left before next check
+  long deadline;                  // system time in milliseconds, or zero
+  CharSequence text;              // caller's text
+
+  public FileSearch1Text(CharSequence givenText, long givenDeadline)
   {
-    FileSearch1.userButton(event);
+    countdown = CHECK_INTERVAL;   // don't check until we've done some work
+    deadline = givenDeadline;     // zero means no time limit
+    text = givenText;
   }
 
-  /* separate heavy-duty processing thread */
+  public char charAt(int index)
+  {
+    if (-- countdown < 0)         // time to check for cancel or deadline?
+    {
+      countdown = CHECK_INTERVAL;
+      if (FileSearch1.cancelFlag || ((deadline > 0)
+        && (System.currentTimeMillis() > deadline)))
+      {
+        throw new FileSearch1Timeout();
+      }
+    }
+    return(text.charAt(index));
+  }
 
-  public void run()
+  public int length()
   {
-    FileSearch1.doOpenRunner();
+    return(text.length());
   }
 
-} // end of FileSearch1User class
+  public CharSequence subSequence(int start, int end)
+  {
+    return(new FileSearch1Text(text.subSequence(start, end), deadline));
+  }
+
+  public String toString()
+  {
+    return(text.toString());
+  }
+
+} // end of FileSearch1Text class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FileSearch1Timeout class
+
+  Unchecked exception thrown when a search is stopped by the user cancelling,
+  or because a time limit has expired.
+*/
+
+class FileSearch1Timeout extends RuntimeException
+{
+  private static final long serialVersionUID = 1L; // never saved, but quiet
+
+  public FileSearch1Timeout() { }
+
+} // end of FileSearch1Timeout class
 
 /* Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL. */